@@ -38,19 +38,24 @@ public abstract class AbstractByteBufAllocator implements ByteBufAllocator {
         ResourceLeakTracker<ByteBuf> leak;
         switch (ResourceLeakDetector.getLevel()) {
             case SIMPLE:
-                leak = AbstractByteBuf.leakDetector.track(buf);
+                leak = ByteBufAllocationProfiler.track(buf, AbstractByteBuf.leakDetector.track(buf));
                 if (leak != null) {
                     buf = new SimpleLeakAwareByteBuf(buf, leak);
                 }
                 break;
             case ADVANCED:
             case PARANOID:
-                leak = AbstractByteBuf.leakDetector.track(buf);
+                leak = ByteBufAllocationProfiler.track(buf, AbstractByteBuf.leakDetector.track(buf));
                 if (leak != null) {
                     buf = new AdvancedLeakAwareByteBuf(buf, leak);
                 }
                 break;
             default:
+                // The profiler also uses the leak aware wrapper to get notified when the buffer is released.
+                leak = ByteBufAllocationProfiler.track(buf, null);
+                if (leak != null) {
+                    buf = new SimpleLeakAwareByteBuf(buf, leak);
+                }
                 break;
         }
         return buf;
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+/**
+ * A {@link PooledByteBufAllocator} for direct buffers whose memory address and capacity are multiples of a block
+ * size, as required to read and write files opened with {@code O_DIRECT} (see {@link DirectFileIo}). Such buffers
+ * can be filled from a file and written to a channel without copying them through the page cache.
+ *
+ * The capacity of a new direct buffer is rounded up to a multiple of the block size if its maximum capacity permits.
+ * This allocator does not pool heap buffers. It requires {@code sun.misc.Unsafe}, see
+ * {@link PooledByteBufAllocator#isDirectMemoryCacheAlignmentSupported()}.
+ */
+public final class AlignedDirectByteBufAllocator extends PooledByteBufAllocator {
+
+    /**
+     * The block size that is used by default, which is the logical block size of most devices and file systems.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    private final int blockSize;
+
+    /**
+     * Creates a new instance which aligns buffers to {@link #DEFAULT_BLOCK_SIZE}.
+     */
+    public AlignedDirectByteBufAllocator() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a new instance which aligns buffers to the given block size, which must be a power of two. Use
+     * {@link DirectFileIo#blockSize(java.io.File)} to find the block size of a file.
+     */
+    public AlignedDirectByteBufAllocator(int blockSize) {
+        super(true, 0, defaultNumDirectArena(), pageSize(blockSize), maxOrder(blockSize),
+                0, defaultSmallCacheSize(), defaultNormalCacheSize(), defaultUseCacheForAllThreads(),
+                checkBlockSize(blockSize));
+        this.blockSize = blockSize;
+    }
+
+    private static int checkBlockSize(int blockSize) {
+        if (blockSize <= 0 || (blockSize & blockSize - 1) != 0) {
+            throw new IllegalArgumentException("blockSize: " + blockSize + " (expected: power of two)");
+        }
+        return blockSize;
+    }
+
+    // Each page must be aligned, so it can not be smaller than a block.
+    private static int pageSize(int blockSize) {
+        return Math.max(defaultPageSize(), checkBlockSize(blockSize));
+    }
+
+    // Keep the default chunk size if the pages are larger than by default.
+    private static int maxOrder(int blockSize) {
+        int maxOrder = defaultMaxOrder();
+        for (int pageSize = defaultPageSize(); pageSize < blockSize && maxOrder > 0; pageSize <<= 1) {
+            maxOrder--;
+        }
+        return maxOrder;
+    }
+
+    /**
+     * Returns the block size the memory address and capacity of the direct buffers are aligned to.
+     */
+    public int blockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Returns the given length rounded up to a multiple of the block size.
+     */
+    public int alignedLength(int length) {
+        return DirectFileIo.alignedLength(length, blockSize);
+    }
+
+    @Override
+    protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+        int capacity = initialCapacity <= Integer.MAX_VALUE - blockSize ? alignedLength(initialCapacity) : maxCapacity;
+        return super.newDirectBuffer(Math.min(capacity, maxCapacity), maxCapacity);
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.ResourceLeakTracker;
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.StringUtil;
+import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+/**
+ * Sampling profiler for the buffers that are created by the {@link ByteBufAllocator}s of this package.
+ *
+ * When enabled, one in {@link #sampleInterval()} buffers is sampled: the stack of the allocation, the size class of
+ * the buffer and the time until it is released are recorded and aggregated per allocation site. This allows to find
+ * the call sites that allocate the most memory or keep their buffers the longest without the overhead of
+ * {@link io.netty.util.ResourceLeakDetector.Level#PARANOID}. The number of sites is bounded, samples of new sites are
+ * dropped once the limit is reached.
+ *
+ * The profiler is disabled by default. It can be enabled with the {@code io.netty.buffer.profiler.sampleInterval}
+ * system property or at runtime via {@link #setSampleInterval(int)}, the collected data can be retrieved via
+ * {@link #sites()} or {@link #dump()}.
+ */
+public final class ByteBufAllocationProfiler {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(ByteBufAllocationProfiler.class);
+
+    private static final int DEFAULT_SAMPLE_INTERVAL;
+    private static final int MAX_SITES;
+    private static final int MAX_STACK_DEPTH;
+
+    static {
+        DEFAULT_SAMPLE_INTERVAL = Math.max(0, SystemPropertyUtil.getInt("io.netty.buffer.profiler.sampleInterval", 0));
+        MAX_SITES = Math.max(1, SystemPropertyUtil.getInt("io.netty.buffer.profiler.maxSites", 1024));
+        MAX_STACK_DEPTH = Math.max(1, SystemPropertyUtil.getInt("io.netty.buffer.profiler.maxStackDepth", 8));
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("-Dio.netty.buffer.profiler.sampleInterval: {}", DEFAULT_SAMPLE_INTERVAL);
+            logger.debug("-Dio.netty.buffer.profiler.maxSites: {}", MAX_SITES);
+            logger.debug("-Dio.netty.buffer.profiler.maxStackDepth: {}", MAX_STACK_DEPTH);
+        }
+    }
+
+    private static final String PROFILER_CLASS_NAME = ByteBufAllocationProfiler.class.getName();
+    private static final String PACKAGE_PREFIX = "io.netty.buffer.";
+
+    private static final Comparator<Site> ESTIMATED_BYTES_COMPARATOR = new Comparator<Site>() {
+        @Override
+        public int compare(Site o1, Site o2) {
+            return o1.estimatedBytes > o2.estimatedBytes ? -1 : o1.estimatedBytes < o2.estimatedBytes ? 1 : 0;
+        }
+    };
+
+    // Replaced as a whole by reset(), so samples that race with it update the discarded data only.
+    private static final AtomicReference<Profile> profile = new AtomicReference<Profile>(new Profile());
+
+    private static volatile int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+    /**
+     * Returns the interval in which buffers are sampled, {@code 0} means the profiler is disabled.
+     */
+    public static int sampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * Sample one in {@code sampleInterval} buffers, {@code 0} disables the profiler. Data that was collected before
+     * is retained until {@link #reset()} is called.
+     */
+    public static void setSampleInterval(int sampleInterval) {
+        ByteBufAllocationProfiler.sampleInterval = checkPositiveOrZero(sampleInterval, "sampleInterval");
+    }
+
+    /**
+     * Returns a snapshot of all allocation sites, ordered by the estimated number of allocated bytes, the biggest
+     * first.
+     */
+    public static List<Site> sites() {
+        Map<List<StackTraceElement>, Site> sites = profile.get().sites;
+        List<Site> snapshot = new ArrayList<Site>(sites.size());
+        for (Site site: sites.values()) {
+            snapshot.add(site.snapshot());
+        }
+        Collections.sort(snapshot, ESTIMATED_BYTES_COMPARATOR);
+        return snapshot;
+    }
+
+    /**
+     * Returns the number of samples that were dropped because the maximum number of allocation sites was reached.
+     */
+    public static long droppedSamples() {
+        return profile.get().droppedSamples.value();
+    }
+
+    /**
+     * Discard all data collected so far. Buffers that were sampled before and are released afterwards are not
+     * accounted anymore.
+     */
+    public static void reset() {
+        // If the CAS fails another thread did reset the profile concurrently, so there is nothing left to do.
+        Profile current = profile.get();
+        profile.compareAndSet(current, new Profile());
+    }
+
+    /**
+     * Returns a human readable dump of all allocation sites, ordered by the estimated number of allocated bytes.
+     */
+    public static String dump() {
+        List<Site> sites = sites();
+        StringBuilder buf = new StringBuilder(256 * (sites.size() + 1))
+                .append("ByteBuf allocation sites(sampleInterval: ").append(sampleInterval)
+                .append(", sites: ").append(sites.size())
+                .append(", droppedSamples: ").append(droppedSamples())
+                .append(')').append(StringUtil.NEWLINE);
+        int i = 0;
+        for (Site site: sites) {
+            buf.append('#').append(++i).append(": ").append(site).append(StringUtil.NEWLINE);
+            for (StackTraceElement element: site.stackTrace()) {
+                buf.append('\t').append(element).append(StringUtil.NEWLINE);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Returns a {@link ResourceLeakTracker} for the given buffer if it is sampled, which wraps the given tracker of
+     * the {@link io.netty.util.ResourceLeakDetector} if it is not {@code null}. Otherwise {@code leak} is returned.
+     */
+    static ResourceLeakTracker<ByteBuf> track(ByteBuf buf, ResourceLeakTracker<ByteBuf> leak) {
+        int interval = sampleInterval;
+        if (interval == 0 || interval > 1 && PlatformDependent.threadLocalRandom().nextInt(interval) != 0) {
+            return leak;
+        }
+        Profile profile = ByteBufAllocationProfiler.profile.get();
+        Site site = site(profile.sites);
+        if (site == null) {
+            profile.droppedSamples.increment();
+            return leak;
+        }
+        int sizeClass = buf instanceof PooledByteBuf ? ((PooledByteBuf<?>) buf).maxLength : buf.capacity();
+        site.allocated(sizeClass, interval);
+        return new Sample(site, leak);
+    }
+
+    private static Site site(ConcurrentMap<List<StackTraceElement>, Site> sites) {
+        StackTraceElement[] elements = new Throwable().getStackTrace();
+        int start = 0;
+        // Skip the frames of the profiler and the allocators, the site is where the buffer was requested.
+        while (start < elements.length && isAllocatorFrame(elements[start].getClassName())) {
+            start++;
+        }
+        List<StackTraceElement> stackTrace = Collections.unmodifiableList(Arrays.asList(
+                Arrays.copyOfRange(elements, start, Math.min(elements.length, start + MAX_STACK_DEPTH))));
+        Site site = sites.get(stackTrace);
+        if (site == null) {
+            if (sites.size() >= MAX_SITES) {
+                return null;
+            }
+            Site newSite = new Site(stackTrace);
+            site = sites.putIfAbsent(stackTrace, newSite);
+            if (site == null) {
+                site = newSite;
+            }
+        }
+        return site;
+    }
+
+    private static boolean isAllocatorFrame(String className) {
+        return className.equals(PROFILER_CLASS_NAME) ||
+                className.startsWith(PACKAGE_PREFIX) && className.endsWith("Allocator");
+    }
+
+    /**
+     * The data that was collected since the last {@link #reset()}.
+     */
+    private static final class Profile {
+        final ConcurrentMap<List<StackTraceElement>, Site> sites = PlatformDependent.newConcurrentHashMap();
+        final LongCounter droppedSamples = PlatformDependent.newLongCounter();
+    }
+
+    /**
+     * The data that was collected for all buffers that were allocated by the same stack.
+     */
+    public static final class Site {
+        private final List<StackTraceElement> stackTrace;
+        private final Map<Integer, Long> sizeClasses;
+
+        private long numSamples;
+        private long numReleased;
+        private long sampledBytes;
+        private long estimatedBytes;
+        private long totalLifetimeNanos;
+        private long maxLifetimeNanos;
+
+        Site(List<StackTraceElement> stackTrace) {
+            this.stackTrace = stackTrace;
+            sizeClasses = new TreeMap<Integer, Long>();
+        }
+
+        private Site(Site site) {
+            stackTrace = site.stackTrace;
+            sizeClasses = Collections.unmodifiableMap(new TreeMap<Integer, Long>(site.sizeClasses));
+            numSamples = site.numSamples;
+            numReleased = site.numReleased;
+            sampledBytes = site.sampledBytes;
+            estimatedBytes = site.estimatedBytes;
+            totalLifetimeNanos = site.totalLifetimeNanos;
+            maxLifetimeNanos = site.maxLifetimeNanos;
+        }
+
+        synchronized Site snapshot() {
+            return new Site(this);
+        }
+
+        synchronized void allocated(int sizeClass, int interval) {
+            numSamples++;
+            sampledBytes += sizeClass;
+            estimatedBytes += (long) sizeClass * interval;
+            Long count = sizeClasses.get(sizeClass);
+            sizeClasses.put(sizeClass, count == null ? 1L : count + 1);
+        }
+
+        synchronized void released(long lifetimeNanos) {
+            numReleased++;
+            totalLifetimeNanos += lifetimeNanos;
+            if (lifetimeNanos > maxLifetimeNanos) {
+                maxLifetimeNanos = lifetimeNanos;
+            }
+        }
+
+        /**
+         * Returns the innermost frames of the stack that allocated the buffers, excluding the allocator itself.
+         */
+        public List<StackTraceElement> stackTrace() {
+            return stackTrace;
+        }
+
+        /**
+         * Returns the number of sampled buffers per size class, the size class of a pooled buffer is the size of the
+         * memory that was reserved for it.
+         */
+        public Map<Integer, Long> sizeClasses() {
+            return sizeClasses;
+        }
+
+        /**
+         * Returns the number of sampled buffers.
+         */
+        public long numSamples() {
+            return numSamples;
+        }
+
+        /**
+         * Returns the number of sampled buffers that were released.
+         */
+        public long numReleased() {
+            return numReleased;
+        }
+
+        /**
+         * Returns the number of sampled buffers that were not released yet, which includes buffers that leaked.
+         */
+        public long numLive() {
+            return numSamples - numReleased;
+        }
+
+        /**
+         * Returns the sum of the size classes of all sampled buffers.
+         */
+        public long sampledBytes() {
+            return sampledBytes;
+        }
+
+        /**
+         * Returns the estimated number of bytes that were allocated by this site, which is the sum of the size
+         * classes of all sampled buffers scaled by the sample interval at the time they were sampled.
+         */
+        public long estimatedBytes() {
+            return estimatedBytes;
+        }
+
+        /**
+         * Returns the average time from allocation to release of the released sampled buffers.
+         */
+        public long averageLifetime(TimeUnit unit) {
+            return numReleased == 0 ? 0 : unit.convert(totalLifetimeNanos / numReleased, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns the maximum time from allocation to release of the released sampled buffers.
+         */
+        public long maxLifetime(TimeUnit unit) {
+            return unit.convert(maxLifetimeNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return new StringBuilder(128)
+                    .append("estimatedBytes: ").append(estimatedBytes)
+                    .append(", samples: ").append(numSamples)
+                    .append(", live: ").append(numSamples - numReleased)
+                    .append(", averageLifetime: ").append(averageLifetime(TimeUnit.MICROSECONDS)).append("us")
+                    .append(", maxLifetime: ").append(maxLifetime(TimeUnit.MICROSECONDS)).append("us")
+                    .append(", sizeClasses: ").append(sizeClasses)
+                    .toString();
+        }
+    }
+
+    private static final class Sample implements ResourceLeakTracker<ByteBuf> {
+        private static final AtomicIntegerFieldUpdater<Sample> releasedUpdater =
+                AtomicIntegerFieldUpdater.newUpdater(Sample.class, "released");
+
+        private final Site site;
+        private final ResourceLeakTracker<ByteBuf> leak;
+        private final long allocationTime = System.nanoTime();
+        // Set by the thread that closes the tracker, only the first one accounts the release.
+        private volatile int released;
+
+        Sample(Site site, ResourceLeakTracker<ByteBuf> leak) {
+            this.site = site;
+            this.leak = leak;
+        }
+
+        @Override
+        public void record() {
+            if (leak != null) {
+                leak.record();
+            }
+        }
+
+        @Override
+        public void record(Object hint) {
+            if (leak != null) {
+                leak.record(hint);
+            }
+        }
+
+        @Override
+        public boolean close(ByteBuf trackedObject) {
+            boolean closed = leak == null || leak.close(trackedObject);
+            if (releasedUpdater.compareAndSet(this, 0, 1)) {
+                site.released(System.nanoTime() - allocationTime);
+            }
+            return closed;
+        }
+    }
+
+    private ByteBufAllocationProfiler() { }
+}
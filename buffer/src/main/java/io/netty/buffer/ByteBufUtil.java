@@ -61,6 +61,13 @@ public final class ByteBufUtil {
     };
 
     private static final byte WRITE_UTF_UNKNOWN = (byte) '?';
+
+    // Use SWAR (SIMD within a register) to process 8 bytes per step if the memory of a buffer can be read one
+    // long at a time at any index.
+    private static final boolean SWAR_SUPPORTED = PlatformDependent.hasUnsafe() && PlatformDependent.isUnaligned();
+    private static final long SWAR_LOW_BITS = 0x0101010101010101L;
+    private static final long SWAR_HIGH_BITS = 0x8080808080808080L;
+    private static final long SWAR_NO_HIGH_BITS = 0x7F7F7F7F7F7F7F7FL;
     private static final int MAX_CHAR_BUFFER_SIZE;
     private static final int THREAD_LOCAL_BUFFER_SIZE;
     private static final int MAX_BYTES_PER_CHAR_UTF8 =
@@ -448,7 +455,64 @@ public final class ByteBufUtil {
             return -1;
         }
 
-        return buffer.forEachByte(fromIndex, toIndex - fromIndex, new ByteProcessor.IndexOfProcessor(value));
+        final int length = toIndex - fromIndex;
+        if (length >= Long.SIZE / Byte.SIZE && canUseSwar(buffer)) {
+            ((AbstractByteBuf) buffer).checkIndex(fromIndex, length);
+            return firstIndexOfSwar(buffer, fromIndex, toIndex, value);
+        }
+        return buffer.forEachByte(fromIndex, length, new ByteProcessor.IndexOfProcessor(value));
+    }
+
+    /**
+     * Returns {@code true} if the memory of the given {@link ByteBuf} can be read 8 bytes at a time.
+     */
+    private static boolean canUseSwar(ByteBuf buffer) {
+        return SWAR_SUPPORTED && buffer instanceof AbstractByteBuf && (buffer.hasArray() || buffer.hasMemoryAddress());
+    }
+
+    private static int firstIndexOfSwar(ByteBuf buffer, int fromIndex, int toIndex, byte value) {
+        final byte[] array;
+        final long offset;
+        if (buffer.hasArray()) {
+            array = buffer.array();
+            offset = buffer.arrayOffset();
+        } else {
+            array = null;
+            offset = buffer.memoryAddress();
+        }
+
+        final long pattern = (value & 0xFFL) * SWAR_LOW_BITS;
+        int i = fromIndex;
+        for (; i <= toIndex - Long.SIZE / Byte.SIZE; i += Long.SIZE / Byte.SIZE) {
+            // All bytes that are equal to value are 0 now.
+            long word = getLongNative(array, offset, i) ^ pattern;
+            // Sets the high bit of all bytes which are 0 (and only of these).
+            long tmp = ~((word & SWAR_NO_HIGH_BITS) + SWAR_NO_HIGH_BITS | word | SWAR_NO_HIGH_BITS);
+            if (tmp != 0) {
+                // Find the first byte in memory order.
+                return i + (PlatformDependent.BIG_ENDIAN_NATIVE_ORDER ?
+                        Long.numberOfLeadingZeros(tmp) : Long.numberOfTrailingZeros(tmp)) / Byte.SIZE;
+            }
+        }
+        for (; i < toIndex; i++) {
+            if (getByte(array, offset, i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads 8 bytes in native byte order from the given array, or from the given memory address if {@code array} is
+     * {@code null}.
+     */
+    private static long getLongNative(byte[] array, long offset, int index) {
+        return array != null ? PlatformDependent.getLong(array, (int) offset + index)
+                : PlatformDependent.getLong(offset + index);
+    }
+
+    private static byte getByte(byte[] array, long offset, int index) {
+        return array != null ? array[(int) offset + index] : PlatformDependent.getByte(offset + index);
     }
 
     private static int lastIndexOf(ByteBuf buffer, int fromIndex, int toIndex, byte value) {
@@ -524,7 +588,17 @@ public final class ByteBufUtil {
 
         // We can use the _set methods as these not need to do any index checks and reference checks.
         // This is possible as we called ensureWritable(...) before.
-        for (int i = 0; i < len; i++) {
+        int i = 0;
+        // Most strings start with (or only contain) ASCII chars, encode these 8 at a time.
+        for (; i <= len - Long.SIZE / Byte.SIZE; i += Long.SIZE / Byte.SIZE) {
+            long word = asciiWord(seq, i);
+            if (word < 0) {
+                break;
+            }
+            buffer._setLong(writerIndex, word);
+            writerIndex += Long.SIZE / Byte.SIZE;
+        }
+        for (; i < len; i++) {
             char c = seq.charAt(i);
             if (c < 0x80) {
                 buffer._setByte(writerIndex++, (byte) c);
@@ -695,12 +769,52 @@ public final class ByteBufUtil {
 
         // We can use the _set methods as these not need to do any index checks and reference checks.
         // This is possible as we called ensureWritable(...) before.
-        for (int i = 0; i < len; i++) {
+        int i = 0;
+        for (; i <= len - Long.SIZE / Byte.SIZE; i += Long.SIZE / Byte.SIZE) {
+            buffer._setLong(writerIndex, c2bWord(seq, i));
+            writerIndex += Long.SIZE / Byte.SIZE;
+        }
+        for (; i < len; i++) {
             buffer._setByte(writerIndex++, AsciiString.c2b(seq.charAt(i)));
         }
         return len;
     }
 
+    /**
+     * Returns the 8 chars of {@code seq} starting at {@code index} as big-endian {@code long}, or {@code -1} if any of
+     * these chars is not ASCII.
+     */
+    private static long asciiWord(CharSequence seq, int index) {
+        char c0 = seq.charAt(index);
+        char c1 = seq.charAt(index + 1);
+        char c2 = seq.charAt(index + 2);
+        char c3 = seq.charAt(index + 3);
+        char c4 = seq.charAt(index + 4);
+        char c5 = seq.charAt(index + 5);
+        char c6 = seq.charAt(index + 6);
+        char c7 = seq.charAt(index + 7);
+        if ((c0 | c1 | c2 | c3 | c4 | c5 | c6 | c7) >= 0x80) {
+            return -1;
+        }
+        return (long) c0 << 56 | (long) c1 << 48 | (long) c2 << 40 | (long) c3 << 32 |
+               (long) c4 << 24 | (long) c5 << 16 | (long) c6 << 8 | c7;
+    }
+
+    /**
+     * Returns the 8 chars of {@code seq} starting at {@code index} converted via {@link AsciiString#c2b(char)} as
+     * big-endian {@code long}.
+     */
+    private static long c2bWord(CharSequence seq, int index) {
+        return (AsciiString.c2b(seq.charAt(index)) & 0xFFL) << 56 |
+               (AsciiString.c2b(seq.charAt(index + 1)) & 0xFFL) << 48 |
+               (AsciiString.c2b(seq.charAt(index + 2)) & 0xFFL) << 40 |
+               (AsciiString.c2b(seq.charAt(index + 3)) & 0xFFL) << 32 |
+               (AsciiString.c2b(seq.charAt(index + 4)) & 0xFFL) << 24 |
+               (AsciiString.c2b(seq.charAt(index + 5)) & 0xFFL) << 16 |
+               (AsciiString.c2b(seq.charAt(index + 6)) & 0xFFL) << 8 |
+               AsciiString.c2b(seq.charAt(index + 7)) & 0xFFL;
+    }
+
     /**
      * Encode the given {@link CharBuffer} using the given {@link Charset} into a new {@link ByteBuf} which
      * is allocated via the {@link ByteBufAllocator}.
@@ -776,7 +890,9 @@ public final class ByteBufUtil {
             offset = 0;
             src.getBytes(readerIndex, array, 0, len);
         }
-        if (CharsetUtil.US_ASCII.equals(charset)) {
+        if (CharsetUtil.US_ASCII.equals(charset) ||
+                // UTF-8 encoded ASCII is the same as US-ASCII but much cheaper to decode as such.
+                CharsetUtil.UTF_8.equals(charset) && isAscii(array, offset, len)) {
             // Fast-path for US-ASCII which is used frequently.
             return new String(array, 0, offset, len);
         }
@@ -1256,9 +1372,47 @@ public final class ByteBufUtil {
      * @param length The length of the specified buffer.
      */
     private static boolean isAscii(ByteBuf buf, int index, int length) {
+        if (length >= Long.SIZE / Byte.SIZE && canUseSwar(buf)) {
+            ((AbstractByteBuf) buf).checkIndex(index, length);
+            if (buf.hasArray()) {
+                return isAscii(buf.array(), buf.arrayOffset() + index, length);
+            }
+            return isAsciiSwar(null, buf.memoryAddress(), index, length);
+        }
         return buf.forEachByte(index, length, FIND_NON_ASCII) == -1;
     }
 
+    /**
+     * Returns {@code true} if the specified bytes of the given array are valid ASCII text.
+     */
+    private static boolean isAscii(byte[] array, int offset, int length) {
+        if (SWAR_SUPPORTED) {
+            return isAsciiSwar(array, offset, 0, length);
+        }
+        for (int i = offset; i < offset + length; i++) {
+            if (array[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAsciiSwar(byte[] array, long offset, int index, int length) {
+        final int endIndex = index + length;
+        int i = index;
+        for (; i <= endIndex - Long.SIZE / Byte.SIZE; i += Long.SIZE / Byte.SIZE) {
+            if ((getLongNative(array, offset, i) & SWAR_HIGH_BITS) != 0) {
+                return false;
+            }
+        }
+        for (; i < endIndex; i++) {
+            if (getByte(array, offset, i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Returns {@code true} if the specified {@link ByteBuf} starting at {@code index} with {@code length} is valid
      * UTF8 text, otherwise return {@code false}.
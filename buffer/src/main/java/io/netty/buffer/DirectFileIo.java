@@ -0,0 +1,228 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.SuppressJava6Requirement;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads and writes files that are opened with {@code O_DIRECT}, which bypasses the page cache. The memory address of
+ * the buffer, the file position and the length of each transfer must be multiples of the block size of the file, so
+ * the buffers should be allocated by an {@link AlignedDirectByteBufAllocator}.
+ *
+ * Opening a file with {@code O_DIRECT} requires Java 10+ and a file system that supports it. The read and write
+ * methods work with any {@link FileChannel} but always check the alignment.
+ */
+public final class DirectFileIo {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(DirectFileIo.class);
+
+    // com.sun.nio.file.ExtendedOpenOption.DIRECT and FileStore.getBlockSize(), which were both added in Java 10.
+    private static final Object DIRECT_OPTION;
+    private static final Method GET_BLOCK_SIZE;
+
+    static {
+        Object directOption = null;
+        Method getBlockSize = null;
+        if (PlatformDependent.javaVersion() >= 10) {
+            try {
+                directOption = directOption();
+                getBlockSize = getBlockSizeMethod();
+            } catch (Throwable cause) {
+                logger.debug("Unable to load O_DIRECT support", cause);
+                directOption = null;
+                getBlockSize = null;
+            }
+        }
+        DIRECT_OPTION = directOption;
+        GET_BLOCK_SIZE = getBlockSize;
+        logger.debug("O_DIRECT: {}", DIRECT_OPTION != null ? "available" : "unavailable");
+    }
+
+    @SuppressJava6Requirement(reason = "Only called on Java 10+")
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object directOption() throws ClassNotFoundException {
+        Class<?> extendedOpenOption = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+        return (OpenOption) Enum.valueOf((Class) extendedOpenOption, "DIRECT");
+    }
+
+    @SuppressJava6Requirement(reason = "Only called on Java 10+")
+    private static Method getBlockSizeMethod() throws NoSuchMethodException {
+        return FileStore.class.getMethod("getBlockSize");
+    }
+
+    /**
+     * Returns {@code true} if files can be opened with {@code O_DIRECT} via {@link #open(File, boolean)}.
+     */
+    public static boolean isAvailable() {
+        return DIRECT_OPTION != null;
+    }
+
+    /**
+     * Opens the given file with {@code O_DIRECT} for reading and, if {@code write} is {@code true}, for writing, in
+     * which case it is created if it does not exist.
+     *
+     * @throws UnsupportedOperationException if {@link #isAvailable()} returns {@code false}
+     * @throws IOException if the file can not be opened, for example as the file system does not support
+     *                     {@code O_DIRECT}
+     */
+    @SuppressJava6Requirement(reason = "Only usable on Java 10+")
+    public static FileChannel open(File file, boolean write) throws IOException {
+        if (DIRECT_OPTION == null) {
+            throw new UnsupportedOperationException("O_DIRECT requires Java 10+");
+        }
+        Set<OpenOption> options = new HashSet<OpenOption>();
+        options.add(StandardOpenOption.READ);
+        if (write) {
+            options.add(StandardOpenOption.WRITE);
+            options.add(StandardOpenOption.CREATE);
+        }
+        options.add((OpenOption) DIRECT_OPTION);
+        return FileChannel.open(file.toPath(), options);
+    }
+
+    /**
+     * Returns the block size of the file system the given existing file is stored on, or
+     * {@link AlignedDirectByteBufAllocator#DEFAULT_BLOCK_SIZE} if it can not be determined before Java 10.
+     */
+    @SuppressJava6Requirement(reason = "Only usable on Java 10+")
+    public static int blockSize(File file) throws IOException {
+        if (GET_BLOCK_SIZE == null) {
+            return AlignedDirectByteBufAllocator.DEFAULT_BLOCK_SIZE;
+        }
+        FileStore store = Files.getFileStore(file.toPath());
+        try {
+            return (int) ((Long) GET_BLOCK_SIZE.invoke(store)).longValue();
+        } catch (Exception e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            return AlignedDirectByteBufAllocator.DEFAULT_BLOCK_SIZE;
+        }
+    }
+
+    /**
+     * Returns the given length rounded up to a multiple of the given block size.
+     */
+    public static int alignedLength(int length, int blockSize) {
+        checkBlockSize(blockSize);
+        int mask = blockSize - 1;
+        return length + mask & ~mask;
+    }
+
+    /**
+     * Reads up to {@code length} bytes at the given file position into {@code dst}, starting at its writer index
+     * which is increased by the number of read bytes. Less bytes are only read if the end of the file is reached.
+     *
+     * @return the number of read bytes, or {@code -1} if the file position is at or after the end of the file
+     * @throws IllegalArgumentException if the position, length or memory address of {@code dst} at its writer index
+     *                                  is not aligned to the block size
+     */
+    public static int read(FileChannel channel, ByteBuf dst, long position, int length, int blockSize)
+            throws IOException {
+        dst.ensureWritable(length);
+        int index = dst.writerIndex();
+        checkAligned(dst, index, position, length, blockSize);
+
+        ByteBuffer buffer = dst.nioBuffer(index, length);
+        int read = 0;
+        while (read < length) {
+            int n = channel.read(buffer, position + read);
+            if (n < 0) {
+                if (read == 0) {
+                    return -1;
+                }
+                break;
+            }
+            read += n;
+            if ((n & blockSize - 1) != 0) {
+                // A partial block is only read at the end of the file.
+                break;
+            }
+        }
+        dst.writerIndex(index + read);
+        return read;
+    }
+
+    /**
+     * Writes {@code length} readable bytes of {@code src} at the given file position, starting at its reader index
+     * which is increased by the number of written bytes.
+     *
+     * @return the number of written bytes, which is {@code length}
+     * @throws IllegalArgumentException if the position, length or memory address of {@code src} at its reader index
+     *                                  is not aligned to the block size
+     */
+    public static int write(FileChannel channel, ByteBuf src, long position, int length, int blockSize)
+            throws IOException {
+        if (length > src.readableBytes()) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "length(%d) exceeds src.readableBytes(%d) where src is: %s", length, src.readableBytes(), src));
+        }
+        int index = src.readerIndex();
+        checkAligned(src, index, position, length, blockSize);
+
+        ByteBuffer buffer = src.nioBuffer(index, length);
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        src.readerIndex(index + written);
+        return written;
+    }
+
+    private static void checkBlockSize(int blockSize) {
+        if (blockSize <= 0 || (blockSize & blockSize - 1) != 0) {
+            throw new IllegalArgumentException("blockSize: " + blockSize + " (expected: power of two)");
+        }
+    }
+
+    private static void checkAligned(ByteBuf buf, int index, long position, int length, int blockSize) {
+        checkBlockSize(blockSize);
+        int mask = blockSize - 1;
+        if ((position & mask) != 0) {
+            throw new IllegalArgumentException(
+                    "position: " + position + " (expected: multiple of " + blockSize + ')');
+        }
+        if (length < 0 || (length & mask) != 0) {
+            throw new IllegalArgumentException("length: " + length + " (expected: multiple of " + blockSize + ')');
+        }
+        if (!buf.isDirect() || buf.nioBufferCount() != 1) {
+            throw new IllegalArgumentException("buffer must be a direct buffer backed by a single memory region: "
+                    + buf);
+        }
+        if (buf.hasMemoryAddress() && (buf.memoryAddress() + index & mask) != 0) {
+            throw new IllegalArgumentException(
+                    "buffer is not aligned to " + blockSize + " at index " + index + ": " + buf);
+        }
+    }
+
+    private DirectFileIo() { }
+}
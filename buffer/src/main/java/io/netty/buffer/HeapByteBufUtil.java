@@ -20,15 +20,24 @@ package io.netty.buffer;
  */
 final class HeapByteBufUtil {
 
+    // Used to access multi-byte values with a single memory access on Java 9+, see VarHandleAccessor.
+    private static final VarHandleAccessor ACCESSOR = VarHandleAccessor.instance();
+
     static byte getByte(byte[] memory, int index) {
         return memory[index];
     }
 
     static short getShort(byte[] memory, int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getShort(memory, index);
+        }
         return (short) (memory[index] << 8 | memory[index + 1] & 0xFF);
     }
 
     static short getShortLE(byte[] memory, int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getShortLE(memory, index);
+        }
         return (short) (memory[index] & 0xff | memory[index + 1] << 8);
     }
 
@@ -45,6 +54,9 @@ final class HeapByteBufUtil {
     }
 
     static int getInt(byte[] memory, int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getInt(memory, index);
+        }
         return  (memory[index]     & 0xff) << 24 |
                 (memory[index + 1] & 0xff) << 16 |
                 (memory[index + 2] & 0xff) <<  8 |
@@ -52,6 +64,9 @@ final class HeapByteBufUtil {
     }
 
     static int getIntLE(byte[] memory, int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getIntLE(memory, index);
+        }
         return  memory[index]      & 0xff        |
                 (memory[index + 1] & 0xff) << 8  |
                 (memory[index + 2] & 0xff) << 16 |
@@ -59,6 +74,9 @@ final class HeapByteBufUtil {
     }
 
     static long getLong(byte[] memory, int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getLong(memory, index);
+        }
         return  ((long) memory[index]     & 0xff) << 56 |
                 ((long) memory[index + 1] & 0xff) << 48 |
                 ((long) memory[index + 2] & 0xff) << 40 |
@@ -70,6 +88,9 @@ final class HeapByteBufUtil {
     }
 
     static long getLongLE(byte[] memory, int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getLongLE(memory, index);
+        }
         return  (long) memory[index]      & 0xff        |
                 ((long) memory[index + 1] & 0xff) <<  8 |
                 ((long) memory[index + 2] & 0xff) << 16 |
@@ -85,11 +106,19 @@ final class HeapByteBufUtil {
     }
 
     static void setShort(byte[] memory, int index, int value) {
+        if (ACCESSOR != null) {
+            ACCESSOR.setShort(memory, index, value);
+            return;
+        }
         memory[index]     = (byte) (value >>> 8);
         memory[index + 1] = (byte) value;
     }
 
     static void setShortLE(byte[] memory, int index, int value) {
+        if (ACCESSOR != null) {
+            ACCESSOR.setShortLE(memory, index, value);
+            return;
+        }
         memory[index]     = (byte) value;
         memory[index + 1] = (byte) (value >>> 8);
     }
@@ -107,6 +136,10 @@ final class HeapByteBufUtil {
     }
 
     static void setInt(byte[] memory, int index, int value) {
+        if (ACCESSOR != null) {
+            ACCESSOR.setInt(memory, index, value);
+            return;
+        }
         memory[index]     = (byte) (value >>> 24);
         memory[index + 1] = (byte) (value >>> 16);
         memory[index + 2] = (byte) (value >>> 8);
@@ -114,6 +147,10 @@ final class HeapByteBufUtil {
     }
 
     static void setIntLE(byte[] memory, int index, int value) {
+        if (ACCESSOR != null) {
+            ACCESSOR.setIntLE(memory, index, value);
+            return;
+        }
         memory[index]     = (byte) value;
         memory[index + 1] = (byte) (value >>> 8);
         memory[index + 2] = (byte) (value >>> 16);
@@ -121,6 +158,10 @@ final class HeapByteBufUtil {
     }
 
     static void setLong(byte[] memory, int index, long value) {
+        if (ACCESSOR != null) {
+            ACCESSOR.setLong(memory, index, value);
+            return;
+        }
         memory[index]     = (byte) (value >>> 56);
         memory[index + 1] = (byte) (value >>> 48);
         memory[index + 2] = (byte) (value >>> 40);
@@ -132,6 +173,10 @@ final class HeapByteBufUtil {
     }
 
     static void setLongLE(byte[] memory, int index, long value) {
+        if (ACCESSOR != null) {
+            ACCESSOR.setLongLE(memory, index, value);
+            return;
+        }
         memory[index]     = (byte) value;
         memory[index + 1] = (byte) (value >>> 8);
         memory[index + 2] = (byte) (value >>> 16);
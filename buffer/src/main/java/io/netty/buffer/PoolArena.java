@@ -28,7 +28,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.Math.max;
 
-abstract class PoolArena<T> implements PoolArenaMetric {
+abstract class PoolArena<T> implements PoolArenaMetric, PoolArenaHugeChunkCacheMetric {
     static final boolean HAS_UNSAFE = PlatformDependent.hasUnsafe();
 
     enum SizeClass {
@@ -49,6 +49,10 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     final int numSmallSubpagePools;
     final int directMemoryCacheAlignment;
     final int directMemoryCacheAlignmentMask;
+    // The fine-grained size classes or null if all sizes >= 512 are rounded up to the next power of two.
+    final SizeClasses sizeClasses;
+    // Caches the chunks of released huge allocations, or null if these are always destroyed directly.
+    private final PoolHugeChunkCache<T> hugeChunkCache;
     private final PoolSubpage<T>[] tinySubpagePools;
     private final PoolSubpage<T>[] smallSubpagePools;
 
@@ -62,18 +66,16 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     private final List<PoolChunkListMetric> chunkListMetrics;
 
     // Metrics for allocations and deallocations
-    private long allocationsNormal;
-    // We need to use the LongCounter here as this is not guarded via synchronized block.
+    // We need to use the LongCounter here as these are not guarded via a synchronized block.
     private final LongCounter allocationsTiny = PlatformDependent.newLongCounter();
     private final LongCounter allocationsSmall = PlatformDependent.newLongCounter();
+    private final LongCounter allocationsNormal = PlatformDependent.newLongCounter();
     private final LongCounter allocationsHuge = PlatformDependent.newLongCounter();
     private final LongCounter activeBytesHuge = PlatformDependent.newLongCounter();
 
-    private long deallocationsTiny;
-    private long deallocationsSmall;
-    private long deallocationsNormal;
-
-    // We need to use the LongCounter here as this is not guarded via synchronized block.
+    private final LongCounter deallocationsTiny = PlatformDependent.newLongCounter();
+    private final LongCounter deallocationsSmall = PlatformDependent.newLongCounter();
+    private final LongCounter deallocationsNormal = PlatformDependent.newLongCounter();
     private final LongCounter deallocationsHuge = PlatformDependent.newLongCounter();
 
     // Number of thread caches backed by this arena.
@@ -83,7 +85,8 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     //private long pad0, pad1, pad2, pad3, pad4, pad5, pad6, pad7;
 
     protected PoolArena(PooledByteBufAllocator parent, int pageSize,
-          int maxOrder, int pageShifts, int chunkSize, int cacheAlignment) {
+          int maxOrder, int pageShifts, int chunkSize, int cacheAlignment, boolean useSizeClasses,
+          int maxCachedHugeBytes) {
         this.parent = parent;
         this.pageSize = pageSize;
         this.maxOrder = maxOrder;
@@ -92,12 +95,14 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         directMemoryCacheAlignment = cacheAlignment;
         directMemoryCacheAlignmentMask = cacheAlignment - 1;
         subpageOverflowMask = ~(pageSize - 1);
+        sizeClasses = useSizeClasses ? new SizeClasses(pageSize, chunkSize) : null;
+        hugeChunkCache = maxCachedHugeBytes > 0 ? new PoolHugeChunkCache<T>(this, maxCachedHugeBytes) : null;
         tinySubpagePools = newSubpagePoolArray(numTinySubpagePools);
         for (int i = 0; i < tinySubpagePools.length; i ++) {
             tinySubpagePools[i] = newSubpagePoolHead(pageSize);
         }
 
-        numSmallSubpagePools = pageShifts - 9;
+        numSmallSubpagePools = sizeClasses != null ? sizeClasses.numSubpageSizes() : pageShifts - 9;
         smallSubpagePools = newSubpagePoolArray(numSmallSubpagePools);
         for (int i = 0; i < smallSubpagePools.length; i ++) {
             smallSubpagePools[i] = newSubpagePoolHead(pageSize);
@@ -144,6 +149,7 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     PooledByteBuf<T> allocate(PoolThreadCache cache, int reqCapacity, int maxCapacity) {
         PooledByteBuf<T> buf = newByteBuf(maxCapacity);
         allocate(cache, buf, reqCapacity);
+        cache.confineRefCnt(buf);
         return buf;
     }
 
@@ -151,7 +157,10 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         return normCapacity >>> 4;
     }
 
-    static int smallIdx(int normCapacity) {
+    int smallIdx(int normCapacity) {
+        if (sizeClasses != null) {
+            return sizeClasses.subpageIdx(normCapacity);
+        }
         int tableIdx = 0;
         int i = normCapacity >>> 10;
         while (i != 0) {
@@ -161,8 +170,38 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         return tableIdx;
     }
 
-    // capacity < pageSize
+    int normalIdx(int normCapacity) {
+        if (sizeClasses != null) {
+            return sizeClasses.normalIdx(normCapacity);
+        }
+        return log2(normCapacity >> pageShifts);
+    }
+
+    /**
+     * Returns the number of sizes which are allocated as run of pages and are {@code <= maxCapacity}.
+     */
+    int numNormalSizes(int maxCapacity) {
+        if (sizeClasses != null) {
+            return sizeClasses.numNormalSizes(maxCapacity);
+        }
+        return log2(maxCapacity >> pageShifts) + 1;
+    }
+
+    /**
+     * Returns the number of pages of the run that is split into subpages of {@code elemSize}.
+     */
+    int subpageRunPages(int elemSize) {
+        if (sizeClasses == null || isTiny(elemSize)) {
+            return 1;
+        }
+        return sizeClasses.subpageRunPages(sizeClasses.subpageIdx(elemSize));
+    }
+
+    // capacity < pageSize, or if size classes are used a size class that is not a multiple of pageSize
     boolean isTinyOrSmall(int normCapacity) {
+        if (sizeClasses != null) {
+            return isTiny(normCapacity) || sizeClasses.isSubpage(normCapacity);
+        }
         return (normCapacity & subpageOverflowMask) == 0;
     }
 
@@ -173,7 +212,7 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
     private void allocate(PoolThreadCache cache, PooledByteBuf<T> buf, final int reqCapacity) {
         final int normCapacity = normalizeCapacity(reqCapacity);
-        if (isTinyOrSmall(normCapacity)) { // capacity < pageSize
+        if (isTinyOrSmall(normCapacity)) {
             int tableIdx;
             PoolSubpage<T>[] table;
             boolean tiny = isTiny(normCapacity);
@@ -210,9 +249,7 @@ abstract class PoolArena<T> implements PoolArenaMetric {
                     return;
                 }
             }
-            synchronized (this) {
-                allocateNormal(buf, reqCapacity, normCapacity);
-            }
+            allocateNormal(buf, reqCapacity, normCapacity);
 
             incTinySmallAllocation(tiny);
             return;
@@ -222,30 +259,41 @@ abstract class PoolArena<T> implements PoolArenaMetric {
                 // was able to allocate out of the cache so move on
                 return;
             }
-            synchronized (this) {
-                allocateNormal(buf, reqCapacity, normCapacity);
-                ++allocationsNormal;
-            }
+            allocateNormal(buf, reqCapacity, normCapacity);
+            allocationsNormal.increment();
         } else {
             // Huge allocations are never served via the cache so just call allocateHuge
             allocateHuge(buf, reqCapacity);
         }
     }
 
-    // Method must be called inside synchronized(this) { ... } block
     private void allocateNormal(PooledByteBuf<T> buf, int reqCapacity, int normCapacity) {
-        if (q050.allocate(buf, reqCapacity, normCapacity) || q025.allocate(buf, reqCapacity, normCapacity) ||
-            q000.allocate(buf, reqCapacity, normCapacity) || qInit.allocate(buf, reqCapacity, normCapacity) ||
-            q075.allocate(buf, reqCapacity, normCapacity)) {
+        if (allocateFromChunkLists(buf, reqCapacity, normCapacity)) {
             return;
         }
 
-        // Add a new chunk.
-        PoolChunk<T> c = newChunk(pageSize, maxOrder, pageShifts, chunkSize);
-        long handle = c.allocate(normCapacity);
-        assert handle > 0;
-        c.initBuf(buf, handle, reqCapacity);
-        qInit.add(c);
+        // Synchronize on the arena so only one thread at a time adds a new chunk. Each PoolChunkList is guarded by
+        // its own lock, see PoolChunkList for details.
+        synchronized (this) {
+            // Check again as another thread may have added a new chunk while we were waiting for the lock. This
+            // ensures we do not grow the arena more than needed when multiple threads allocate at the same time.
+            if (allocateFromChunkLists(buf, reqCapacity, normCapacity)) {
+                return;
+            }
+
+            // Add a new chunk.
+            PoolChunk<T> c = newChunk(pageSize, maxOrder, pageShifts, chunkSize);
+            long handle = c.allocate(normCapacity);
+            assert handle > 0;
+            c.initBuf(buf, handle, reqCapacity);
+            qInit.add(c);
+        }
+    }
+
+    private boolean allocateFromChunkLists(PooledByteBuf<T> buf, int reqCapacity, int normCapacity) {
+        return q050.allocate(buf, reqCapacity, normCapacity) || q025.allocate(buf, reqCapacity, normCapacity) ||
+               q000.allocate(buf, reqCapacity, normCapacity) || qInit.allocate(buf, reqCapacity, normCapacity) ||
+               q075.allocate(buf, reqCapacity, normCapacity);
     }
 
     private void incTinySmallAllocation(boolean tiny) {
@@ -257,7 +305,19 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     }
 
     private void allocateHuge(PooledByteBuf<T> buf, int reqCapacity) {
-        PoolChunk<T> chunk = newUnpooledChunk(reqCapacity);
+        final PoolChunk<T> chunk;
+        if (hugeChunkCache == null) {
+            chunk = newUnpooledChunk(reqCapacity);
+        } else {
+            int normCapacity = PoolHugeChunkCache.normalizeCapacity(reqCapacity);
+            if (hugeChunkCache.canCache(normCapacity)) {
+                // Round up so the chunk can be reused by later allocations of a similar size.
+                chunk = hugeChunkCache.allocate(normCapacity);
+            } else {
+                // The chunk will never be cached so there is no point in rounding up.
+                chunk = newUnpooledChunk(reqCapacity);
+            }
+        }
         activeBytesHuge.add(chunk.chunkSize());
         buf.initUnpooled(chunk, reqCapacity);
         allocationsHuge.increment();
@@ -266,7 +326,9 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     void free(PoolChunk<T> chunk, long handle, int normCapacity, PoolThreadCache cache) {
         if (chunk.unpooled) {
             int size = chunk.chunkSize();
-            destroyChunk(chunk);
+            if (hugeChunkCache == null || !hugeChunkCache.add(chunk)) {
+                destroyChunk(chunk);
+            }
             activeBytesHuge.add(-size);
             deallocationsHuge.increment();
         } else {
@@ -288,27 +350,58 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     }
 
     void freeChunk(PoolChunk<T> chunk, long handle, SizeClass sizeClass) {
-        final boolean destroyChunk;
-        synchronized (this) {
-            switch (sizeClass) {
-            case Normal:
-                ++deallocationsNormal;
-                break;
-            case Small:
-                ++deallocationsSmall;
-                break;
-            case Tiny:
-                ++deallocationsTiny;
-                break;
-            default:
-                throw new Error();
-            }
-            destroyChunk = !chunk.parent.free(chunk, handle);
+        switch (sizeClass) {
+        case Normal:
+            deallocationsNormal.increment();
+            break;
+        case Small:
+            deallocationsSmall.increment();
+            break;
+        case Tiny:
+            deallocationsTiny.increment();
+            break;
+        default:
+            throw new Error();
+        }
+        if (!PoolChunkList.free(chunk, handle)) {
+            // The chunk was already removed from all PoolChunkLists and no lock is held at this point.
+            destroyChunk(chunk);
         }
-        if (destroyChunk) {
-            // destroyChunk not need to be called while holding the synchronized lock.
+    }
+
+    /**
+     * Release the memory of all {@link PoolChunk}s which were not used since the last call of this method. The runs
+     * of pages that are kept by the subpage pools even if none of their elements is allocated are released as well,
+     * so these do not prevent a {@link PoolChunk} from becoming unused.
+     */
+    void trimIdleChunks() {
+        trimSubpagePools(tinySubpagePools);
+        trimSubpagePools(smallSubpagePools);
+
+        // Only qInit keeps PoolChunks which are completely unused, all other PoolChunkLists release these directly.
+        for (PoolChunk<T> chunk : qInit.removeIdleChunks()) {
             destroyChunk(chunk);
         }
+        if (hugeChunkCache != null) {
+            hugeChunkCache.trim();
+        }
+    }
+
+    private void trimSubpagePools(PoolSubpage<T>[] pools) {
+        for (PoolSubpage<T> head : pools) {
+            final PoolSubpage<T> subpage;
+            synchronized (head) {
+                subpage = head.next;
+                if (subpage == head || subpage.next != head) {
+                    // Either no PoolSubpage at all or more than one, which are released once they become unused.
+                    continue;
+                }
+            }
+            // The PoolSubpage may be used again in the meantime, this is checked while holding the needed locks.
+            if (!PoolChunkList.freeIdleSubpage(subpage)) {
+                destroyChunk(subpage.chunk);
+            }
+        }
     }
 
     PoolSubpage<T> findSubpagePoolHead(int elemSize) {
@@ -318,12 +411,7 @@ abstract class PoolArena<T> implements PoolArenaMetric {
             tableIdx = elemSize >>> 4;
             table = tinySubpagePools;
         } else {
-            tableIdx = 0;
-            elemSize >>>= 10;
-            while (elemSize != 0) {
-                elemSize >>>= 1;
-                tableIdx ++;
-            }
+            tableIdx = smallIdx(elemSize);
             table = smallSubpagePools;
         }
 
@@ -340,6 +428,12 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
 
         if (!isTiny(reqCapacity)) { // >= 512
+            if (sizeClasses != null) {
+                int normalizedCapacity = SizeClasses.normalizeSize(reqCapacity);
+                // Aligning a size class results in another size class, see SizeClasses.
+                return directMemoryCacheAlignment == 0 ? normalizedCapacity : alignCapacity(normalizedCapacity);
+            }
+
             // Doubled
 
             int normalizedCapacity = reqCapacity;
@@ -457,15 +551,17 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     private static List<PoolSubpageMetric> subPageMetricList(PoolSubpage<?>[] pages) {
         List<PoolSubpageMetric> metrics = new ArrayList<PoolSubpageMetric>();
         for (PoolSubpage<?> head : pages) {
-            if (head.next == head) {
-                continue;
-            }
-            PoolSubpage<?> s = head.next;
-            for (;;) {
-                metrics.add(s);
-                s = s.next;
-                if (s == head) {
-                    break;
+            synchronized (head) {
+                if (head.next == head) {
+                    continue;
+                }
+                PoolSubpage<?> s = head.next;
+                for (;;) {
+                    metrics.add(s);
+                    s = s.next;
+                    if (s == head) {
+                        break;
+                    }
                 }
             }
         }
@@ -474,11 +570,8 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
     @Override
     public long numAllocations() {
-        final long allocsNormal;
-        synchronized (this) {
-            allocsNormal = allocationsNormal;
-        }
-        return allocationsTiny.value() + allocationsSmall.value() + allocsNormal + allocationsHuge.value();
+        return allocationsTiny.value() + allocationsSmall.value() + allocationsNormal.value() +
+                allocationsHuge.value();
     }
 
     @Override
@@ -492,32 +585,29 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     }
 
     @Override
-    public synchronized long numNormalAllocations() {
-        return allocationsNormal;
+    public long numNormalAllocations() {
+        return allocationsNormal.value();
     }
 
     @Override
     public long numDeallocations() {
-        final long deallocs;
-        synchronized (this) {
-            deallocs = deallocationsTiny + deallocationsSmall + deallocationsNormal;
-        }
-        return deallocs + deallocationsHuge.value();
+        return deallocationsTiny.value() + deallocationsSmall.value() + deallocationsNormal.value() +
+                deallocationsHuge.value();
     }
 
     @Override
-    public synchronized long numTinyDeallocations() {
-        return deallocationsTiny;
+    public long numTinyDeallocations() {
+        return deallocationsTiny.value();
     }
 
     @Override
-    public synchronized long numSmallDeallocations() {
-        return deallocationsSmall;
+    public long numSmallDeallocations() {
+        return deallocationsSmall.value();
     }
 
     @Override
-    public synchronized long numNormalDeallocations() {
-        return deallocationsNormal;
+    public long numNormalDeallocations() {
+        return deallocationsNormal.value();
     }
 
     @Override
@@ -532,11 +622,9 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
     @Override
     public  long numActiveAllocations() {
-        long val = allocationsTiny.value() + allocationsSmall.value() + allocationsHuge.value()
-                - deallocationsHuge.value();
-        synchronized (this) {
-            val += allocationsNormal - (deallocationsTiny + deallocationsSmall + deallocationsNormal);
-        }
+        long val = allocationsTiny.value() + allocationsSmall.value() + allocationsNormal.value() +
+                allocationsHuge.value() - deallocationsTiny.value() - deallocationsSmall.value() -
+                deallocationsNormal.value() - deallocationsHuge.value();
         return max(val, 0);
     }
 
@@ -552,11 +640,7 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
     @Override
     public long numActiveNormalAllocations() {
-        final long val;
-        synchronized (this) {
-            val = allocationsNormal - deallocationsNormal;
-        }
-        return max(val, 0);
+        return max(numNormalAllocations() - numNormalDeallocations(), 0);
     }
 
     @Override
@@ -566,17 +650,53 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
     @Override
     public long numActiveBytes() {
+        long val = activeBytesHuge.value() + numCachedHugeBytes();
+        for (int i = 0; i < chunkListMetrics.size(); i++) {
+            for (PoolChunkMetric m: chunkListMetrics.get(i)) {
+                val += m.chunkSize();
+            }
+        }
+        return max(0, val);
+    }
+
+    @Override
+    public long numHugeCacheHits() {
+        return hugeChunkCache == null ? 0 : hugeChunkCache.numHits();
+    }
+
+    @Override
+    public long numHugeCacheEvictions() {
+        return hugeChunkCache == null ? 0 : hugeChunkCache.numEvictions();
+    }
+
+    @Override
+    public int numCachedHugeChunks() {
+        return hugeChunkCache == null ? 0 : hugeChunkCache.numCachedChunks();
+    }
+
+    @Override
+    public long numCachedHugeBytes() {
+        return hugeChunkCache == null ? 0 : hugeChunkCache.numCachedBytes();
+    }
+
+    /**
+     * Returns the number of bytes that are currently allocated from this arena, which is never more than
+     * {@link #numActiveBytes()}.
+     */
+    long numAllocatedBytes() {
         long val = activeBytesHuge.value();
-        synchronized (this) {
-            for (int i = 0; i < chunkListMetrics.size(); i++) {
-                for (PoolChunkMetric m: chunkListMetrics.get(i)) {
-                    val += m.chunkSize();
-                }
+        for (int i = 0; i < chunkListMetrics.size(); i++) {
+            for (PoolChunkMetric m: chunkListMetrics.get(i)) {
+                val += m.chunkSize() - m.freeBytes();
             }
         }
         return max(0, val);
     }
 
+    private static int log2(int val) {
+        return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(val);
+    }
+
     protected abstract PoolChunk<T> newChunk(int pageSize, int maxOrder, int pageShifts, int chunkSize);
     protected abstract PoolChunk<T> newUnpooledChunk(int capacity);
     protected abstract PooledByteBuf<T> newByteBuf(int maxCapacity);
@@ -584,7 +704,7 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     protected abstract void destroyChunk(PoolChunk<T> chunk);
 
     @Override
-    public synchronized String toString() {
+    public String toString() {
         StringBuilder buf = new StringBuilder()
             .append("Chunk(s) at 0~25%:")
             .append(StringUtil.NEWLINE)
@@ -623,19 +743,21 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     private static void appendPoolSubPages(StringBuilder buf, PoolSubpage<?>[] subpages) {
         for (int i = 0; i < subpages.length; i ++) {
             PoolSubpage<?> head = subpages[i];
-            if (head.next == head) {
-                continue;
-            }
+            synchronized (head) {
+                if (head.next == head) {
+                    continue;
+                }
 
-            buf.append(StringUtil.NEWLINE)
-                    .append(i)
-                    .append(": ");
-            PoolSubpage<?> s = head.next;
-            for (;;) {
-                buf.append(s);
-                s = s.next;
-                if (s == head) {
-                    break;
+                buf.append(StringUtil.NEWLINE)
+                        .append(i)
+                        .append(": ");
+                PoolSubpage<?> s = head.next;
+                for (;;) {
+                    buf.append(s);
+                    s = s.next;
+                    if (s == head) {
+                        break;
+                    }
                 }
             }
         }
@@ -649,6 +771,9 @@ abstract class PoolArena<T> implements PoolArenaMetric {
             destroyPoolSubPages(smallSubpagePools);
             destroyPoolSubPages(tinySubpagePools);
             destroyPoolChunkLists(qInit, q000, q025, q050, q075, q100);
+            if (hugeChunkCache != null) {
+                hugeChunkCache.free();
+            }
         }
     }
 
@@ -667,9 +792,10 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     static final class HeapArena extends PoolArena<byte[]> {
 
         HeapArena(PooledByteBufAllocator parent, int pageSize, int maxOrder,
-                int pageShifts, int chunkSize, int directMemoryCacheAlignment) {
+                int pageShifts, int chunkSize, int directMemoryCacheAlignment, boolean useSizeClasses,
+                int maxCachedHugeBytes) {
             super(parent, pageSize, maxOrder, pageShifts, chunkSize,
-                    directMemoryCacheAlignment);
+                    directMemoryCacheAlignment, useSizeClasses, maxCachedHugeBytes);
         }
 
         private static byte[] newByteArray(int size) {
@@ -715,9 +841,10 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     static final class DirectArena extends PoolArena<ByteBuffer> {
 
         DirectArena(PooledByteBufAllocator parent, int pageSize, int maxOrder,
-                int pageShifts, int chunkSize, int directMemoryCacheAlignment) {
+                int pageShifts, int chunkSize, int directMemoryCacheAlignment, boolean useSizeClasses,
+                int maxCachedHugeBytes) {
             super(parent, pageSize, maxOrder, pageShifts, chunkSize,
-                    directMemoryCacheAlignment);
+                    directMemoryCacheAlignment, useSizeClasses, maxCachedHugeBytes);
         }
 
         @Override
@@ -728,8 +855,10 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         private int offsetCacheLine(ByteBuffer memory) {
             // We can only calculate the offset if Unsafe is present as otherwise directBufferAddress(...) will
             // throw an NPE.
-            return HAS_UNSAFE ?
+            int remainder = HAS_UNSAFE ?
                     (int) (PlatformDependent.directBufferAddress(memory) & directMemoryCacheAlignmentMask) : 0;
+            // The offset to the next aligned address, 0 if the memory is aligned already.
+            return (directMemoryCacheAlignment - remainder) & directMemoryCacheAlignmentMask;
         }
 
         @Override
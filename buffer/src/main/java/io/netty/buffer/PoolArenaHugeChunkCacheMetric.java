@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package io.netty.buffer;
+
+/**
+ * Expose metrics for the cache of huge chunks of an arena. The {@link PoolArenaMetric}s of a
+ * {@link PooledByteBufAllocator} implement this interface as well.
+ */
+public interface PoolArenaHugeChunkCacheMetric {
+
+    /**
+     * Return the number of huge allocations that were served by reusing a cached chunk.
+     */
+    long numHugeCacheHits();
+
+    /**
+     * Return the number of cached huge chunks that were released because the cache was full or they were idle.
+     */
+    long numHugeCacheEvictions();
+
+    /**
+     * Return the number of huge chunks that are currently cached by the arena.
+     */
+    int numCachedHugeChunks();
+
+    /**
+     * Return the number of bytes of the huge chunks that are currently cached by the arena.
+     */
+    long numCachedHugeBytes();
+}
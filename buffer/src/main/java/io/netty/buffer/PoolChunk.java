@@ -32,7 +32,7 @@ package io.netty.buffer;
  *
  * For simplicity all sizes are normalized according to PoolArena#normalizeCapacity method
  * This ensures that when we request for memory segments of size >= pageSize the normalizedCapacity
- * equals the next nearest power of 2
+ * equals the next nearest power of 2 (or a multiple of pageSize if the PoolArena uses SizeClasses)
  *
  * To search for the first offset in chunk that has at least requested size available we construct a
  * complete balanced binary tree and store it in an array (just like heaps) - memoryMap
@@ -91,6 +91,15 @@ package io.netty.buffer;
  * 2) use this handle to construct the PoolSubpage object or if it already exists just call init(normCapacity)
  *    note that this PoolSubpage object is added to subpagesPool in the PoolArena when we init() it
  *
+ * Runs of n pages where n is not a power of 2:
+ * -------------------------------------------
+ * If the PoolArena uses SizeClasses, runs (and the runs PoolSubpages are carved out of) may consist of a number
+ * of pages that is not a power of 2.
+ * 1) use allocateNode(d) to find the node of the smallest power of 2 number of pages >= n
+ * 2) mark the nodes covering the first n pages of this subtree as unusable and recompute the values of all nodes
+ *    in between, so the remaining pages of the subtree are still free to be allocated
+ * The number of pages is encoded into the handle so the run can be released again via free(handle).
+ *
  * Note:
  * -----
  * In the implementation for improving cache coherence,
@@ -111,8 +120,6 @@ final class PoolChunk<T> implements PoolChunkMetric {
     private final byte[] memoryMap;
     private final byte[] depthMap;
     private final PoolSubpage<T>[] subpages;
-    /** Used to determine if the requested capacity is equal to or greater than pageSize. */
-    private final int subpageOverflowMask;
     private final int pageSize;
     private final int pageShifts;
     private final int maxOrder;
@@ -122,12 +129,19 @@ final class PoolChunk<T> implements PoolChunkMetric {
     /** Used to mark memory as unusable */
     private final byte unusable;
 
-    private int freeBytes;
+    // Only modified while holding the lock of the PoolChunkList this PoolChunk belongs to, but read without any lock
+    // for metrics.
+    private volatile int freeBytes;
 
-    PoolChunkList<T> parent;
+    // The PoolChunkList this PoolChunk belongs to or null if it is moved between two PoolChunkLists at the moment.
+    // See PoolChunkList for details.
+    volatile PoolChunkList<T> parent;
     PoolChunk<T> prev;
     PoolChunk<T> next;
 
+    // Used to find idle PoolChunks, see PoolChunkList.removeIdleChunks(). Guarded by the lock of the parent.
+    boolean usedSinceLastTrim;
+
     // TODO: Test if adding padding helps under contention
     //private long pad0, pad1, pad2, pad3, pad4, pad5, pad6, pad7;
 
@@ -142,7 +156,6 @@ final class PoolChunk<T> implements PoolChunkMetric {
         this.offset = offset;
         unusable = (byte) (maxOrder + 1);
         log2ChunkSize = log2(chunkSize);
-        subpageOverflowMask = ~(pageSize - 1);
         freeBytes = chunkSize;
 
         assert maxOrder < 30 : "maxOrder should be < 30, but is: " + maxOrder;
@@ -174,7 +187,6 @@ final class PoolChunk<T> implements PoolChunkMetric {
         memoryMap = null;
         depthMap = null;
         subpages = null;
-        subpageOverflowMask = 0;
         pageSize = 0;
         pageShifts = 0;
         maxOrder = 0;
@@ -191,10 +203,6 @@ final class PoolChunk<T> implements PoolChunkMetric {
 
     @Override
     public int usage() {
-        final int freeBytes;
-        synchronized (arena) {
-            freeBytes = this.freeBytes;
-        }
         return usage(freeBytes);
     }
 
@@ -211,7 +219,8 @@ final class PoolChunk<T> implements PoolChunkMetric {
     }
 
     long allocate(int normCapacity) {
-        if ((normCapacity & subpageOverflowMask) != 0) { // >= pageSize
+        usedSinceLastTrim = true;
+        if (!arena.isTinyOrSmall(normCapacity)) { // >= pageSize, or a multiple of pageSize if size classes are used
             return allocateRun(normCapacity);
         } else {
             return allocateSubpage(normCapacity);
@@ -300,6 +309,15 @@ final class PoolChunk<T> implements PoolChunkMetric {
      * @return index in memoryMap
      */
     private long allocateRun(int normCapacity) {
+        int runPages = normCapacity >>> pageShifts;
+        if ((runPages & runPages - 1) != 0) {
+            int id = allocatePages(runPages);
+            if (id < 0) {
+                return id;
+            }
+            freeBytes -= normCapacity;
+            return (long) runPages << Integer.SIZE | id;
+        }
         int d = maxOrder - (log2(normCapacity) - pageShifts);
         int id = allocateNode(d);
         if (id < 0) {
@@ -309,6 +327,65 @@ final class PoolChunk<T> implements PoolChunkMetric {
         return id;
     }
 
+    /**
+     * Allocate a run of pages which may not be a power of 2
+     *
+     * @param runPages number of pages
+     * @return index in memoryMap of the node that contains the run, the run always starts at the first page of it
+     */
+    private int allocatePages(int runPages) {
+        int nodePages = runPages == 1 ? 1 : Integer.highestOneBit(runPages - 1) << 1;
+        int id = allocateNode(maxOrder - log2(nodePages));
+        if (id < 0 || nodePages == runPages) {
+            return id;
+        }
+        // Give back the pages of the node that are not part of the run.
+        markPages(id, runPages, true);
+        updateParentsAlloc(id);
+        return id;
+    }
+
+    /**
+     * Marks the first runPages pages of the subtree rooted at id as allocated (or free) and updates the values of
+     * all nodes of the subtree accordingly. runPages must be smaller than the number of pages of the subtree.
+     */
+    private void markPages(int id, int runPages, boolean allocated) {
+        int left = id << 1;
+        int halfPages = runLength(left) >>> pageShifts;
+        if (runPages < halfPages) {
+            markPages(left, runPages, allocated);
+        } else {
+            setValue(left, allocated ? unusable : depth(left));
+            if (runPages > halfPages) {
+                markPages(left ^ 1, runPages - halfPages, allocated);
+            }
+        }
+
+        byte val1 = value(left);
+        byte val2 = value(left ^ 1);
+        byte childDepth = depth(left);
+        if (val1 == childDepth && val2 == childDepth) {
+            setValue(id, depth(id));
+        } else {
+            setValue(id, val1 < val2 ? val1 : val2);
+        }
+    }
+
+    /**
+     * Free a run of pages that was allocated via allocateNode(d) or allocatePages(runPages)
+     */
+    private void freePages(int id, int runPages) {
+        int nodePages = runLength(id) >>> pageShifts;
+        if (runPages == 0 || runPages == nodePages) {
+            freeBytes += runLength(id);
+            setValue(id, depth(id));
+        } else {
+            freeBytes += runPages << pageShifts;
+            markPages(id, runPages, false);
+        }
+        updateParentsFree(id);
+    }
+
     /**
      * Create/ initialize a new PoolSubpage of normCapacity
      * Any PoolSubpage created/ initialized here is added to subpage pool in the PoolArena that owns this PoolChunk
@@ -320,25 +397,26 @@ final class PoolChunk<T> implements PoolChunkMetric {
         // Obtain the head of the PoolSubPage pool that is owned by the PoolArena and synchronize on it.
         // This is need as we may add it back and so alter the linked-list structure.
         PoolSubpage<T> head = arena.findSubpagePoolHead(normCapacity);
+        int runPages = arena.subpageRunPages(normCapacity);
         synchronized (head) {
-            int d = maxOrder; // subpages are only be allocated from pages i.e., leaves
-            int id = allocateNode(d);
+            // subpages are allocated from pages i.e., leaves, or from runs of pages when size classes are used
+            int id = runPages == 1 ? allocateNode(maxOrder) : allocatePages(runPages);
             if (id < 0) {
                 return id;
             }
 
             final PoolSubpage<T>[] subpages = this.subpages;
-            final int pageSize = this.pageSize;
+            final int runSize = runPages << pageShifts;
 
-            freeBytes -= pageSize;
+            freeBytes -= runSize;
 
             int subpageIdx = subpageIdx(id);
             PoolSubpage<T> subpage = subpages[subpageIdx];
             if (subpage == null) {
-                subpage = new PoolSubpage<T>(head, this, id, runOffset(id), pageSize, normCapacity);
+                subpage = new PoolSubpage<T>(head, this, id, runOffset(id), runSize, normCapacity);
                 subpages[subpageIdx] = subpage;
             } else {
-                subpage.init(head, normCapacity);
+                subpage.init(head, id, runSize, normCapacity);
             }
             return subpage.allocate();
         }
@@ -356,7 +434,8 @@ final class PoolChunk<T> implements PoolChunkMetric {
         int memoryMapIdx = memoryMapIdx(handle);
         int bitmapIdx = bitmapIdx(handle);
 
-        if (bitmapIdx != 0) { // free a subpage
+        final int runPages;
+        if (isSubpage(bitmapIdx)) { // free a subpage
             PoolSubpage<T> subpage = subpages[subpageIdx(memoryMapIdx)];
             assert subpage != null && subpage.doNotDestroy;
 
@@ -367,11 +446,36 @@ final class PoolChunk<T> implements PoolChunkMetric {
                 if (subpage.free(head, bitmapIdx & 0x3FFFFFFF)) {
                     return;
                 }
+                runPages = subpage.runSize() >>> pageShifts;
             }
+        } else {
+            // The number of pages of the run or 0 if the run covers the whole node.
+            runPages = bitmapIdx;
         }
-        freeBytes += runLength(memoryMapIdx);
-        setValue(memoryMapIdx, depth(memoryMapIdx));
-        updateParentsFree(memoryMapIdx);
+        freePages(memoryMapIdx, runPages);
+    }
+
+    /**
+     * Free the run of pages of the given {@link PoolSubpage} if none of its elements is allocated and it is the
+     * only {@link PoolSubpage} left in its subpage pool.
+     *
+     * @return {@code true} if the run was freed.
+     */
+    boolean freeIdleSubpage(PoolSubpage<T> subpage) {
+        assert subpage.chunk == this;
+        final int memoryMapIdx;
+        final int runPages;
+        // The elemSize can only change while holding the lock of the PoolChunkList this PoolChunk belongs to.
+        PoolSubpage<T> head = arena.findSubpagePoolHead(subpage.elemSize);
+        synchronized (head) {
+            if (!subpage.removeIfIdle(head)) {
+                return false;
+            }
+            memoryMapIdx = subpage.memoryMapIdx();
+            runPages = subpage.runSize() >>> pageShifts;
+        }
+        freePages(memoryMapIdx, runPages);
+        return true;
     }
 
     void initBuf(PooledByteBuf<T> buf, long handle, int reqCapacity) {
@@ -382,6 +486,10 @@ final class PoolChunk<T> implements PoolChunkMetric {
             assert val == unusable : String.valueOf(val);
             buf.init(this, handle, runOffset(memoryMapIdx) + offset, reqCapacity, runLength(memoryMapIdx),
                      arena.parent.threadCache());
+        } else if (!isSubpage(bitmapIdx)) {
+            // A run of pages which is not a power of 2.
+            buf.init(this, handle, runOffset(memoryMapIdx) + offset, reqCapacity, bitmapIdx << pageShifts,
+                     arena.parent.threadCache());
         } else {
             initBufWithSubpage(buf, handle, bitmapIdx, reqCapacity);
         }
@@ -392,7 +500,7 @@ final class PoolChunk<T> implements PoolChunkMetric {
     }
 
     private void initBufWithSubpage(PooledByteBuf<T> buf, long handle, int bitmapIdx, int reqCapacity) {
-        assert bitmapIdx != 0;
+        assert isSubpage(bitmapIdx);
 
         int memoryMapIdx = memoryMapIdx(handle);
 
@@ -435,7 +543,13 @@ final class PoolChunk<T> implements PoolChunkMetric {
     }
 
     private int subpageIdx(int memoryMapIdx) {
-        return memoryMapIdx ^ maxSubpageAllocs; // remove highest set bit, to get offset
+        // the index of the first page of the run
+        return runOffset(memoryMapIdx) >>> pageShifts;
+    }
+
+    private static boolean isSubpage(int bitmapIdx) {
+        // See PoolSubpage.toHandle(int)
+        return (bitmapIdx & 0x40000000) != 0;
     }
 
     private static int memoryMapIdx(long handle) {
@@ -453,17 +567,12 @@ final class PoolChunk<T> implements PoolChunkMetric {
 
     @Override
     public int freeBytes() {
-        synchronized (arena) {
-            return freeBytes;
-        }
+        return freeBytes;
     }
 
     @Override
     public String toString() {
-        final int freeBytes;
-        synchronized (arena) {
-            freeBytes = this.freeBytes;
-        }
+        final int freeBytes = this.freeBytes;
 
         return new StringBuilder()
                 .append("Chunk(")
@@ -25,6 +25,16 @@ import java.util.List;
 
 import static java.lang.Math.*;
 
+/**
+ * A list of {@link PoolChunk}s with a usage in the range of {@code [minUsage, maxUsage)}.
+ *
+ * Each {@link PoolChunkList} uses its own monitor to guard the linked-list structure as well as the state of all
+ * the {@link PoolChunk}s that belong to it. This way allocations and deallocations which are served by different
+ * {@link PoolChunkList}s of the same {@link PoolArena} do not contend with each other. A {@link PoolChunk} that
+ * moves between {@link PoolChunkList}s is unlinked while holding the lock of its current {@link PoolChunkList} and
+ * is only accessed by the moving thread until it was added to the new one, which means we never need to hold the
+ * locks of two {@link PoolChunkList}s at the same time.
+ */
 final class PoolChunkList<T> implements PoolChunkListMetric {
     private static final Iterator<PoolChunkMetric> EMPTY_METRICS = Collections.<PoolChunkMetric>emptyList().iterator();
     private final PoolArena<T> arena;
@@ -75,38 +85,96 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
     }
 
     boolean allocate(PooledByteBuf<T> buf, int reqCapacity, int normCapacity) {
-        if (head == null || normCapacity > maxCapacity) {
-            // Either this PoolChunkList is empty or the requested capacity is larger then the capacity which can
-            // be handled by the PoolChunks that are contained in this PoolChunkList.
+        if (normCapacity > maxCapacity) {
+            // The requested capacity is larger then the capacity which can be handled by the PoolChunks that are
+            // contained in this PoolChunkList.
             return false;
         }
 
-        for (PoolChunk<T> cur = head;;) {
-            long handle = cur.allocate(normCapacity);
-            if (handle < 0) {
-                cur = cur.next;
-                if (cur == null) {
-                    return false;
-                }
-            } else {
-                cur.initBuf(buf, handle, reqCapacity);
-                if (cur.usage() >= maxUsage) {
+        final PoolChunk<T> full;
+        synchronized (this) {
+            if (head == null) {
+                // This PoolChunkList is empty.
+                return false;
+            }
+
+            for (PoolChunk<T> cur = head;;) {
+                long handle = cur.allocate(normCapacity);
+                if (handle < 0) {
+                    cur = cur.next;
+                    if (cur == null) {
+                        return false;
+                    }
+                } else {
+                    cur.initBuf(buf, handle, reqCapacity);
+                    if (cur.usage() < maxUsage) {
+                        return true;
+                    }
                     remove(cur);
-                    nextList.add(cur);
+                    full = cur;
+                    break;
                 }
-                return true;
             }
         }
+        // The PoolChunk was unlinked while holding our lock, so no other thread can access it until it was added
+        // to the next PoolChunkList.
+        nextList.add(full);
+        return true;
     }
 
-    boolean free(PoolChunk<T> chunk, long handle) {
-        chunk.free(handle);
-        if (chunk.usage() < minUsage) {
-            remove(chunk);
+    /**
+     * Free the given {@code handle} of the {@link PoolChunk} while holding the lock of the {@link PoolChunkList}
+     * the {@link PoolChunk} belongs to, moving the {@link PoolChunk} down the {@link PoolChunkList} linked-list if
+     * needed.
+     *
+     * @return {@code false} if the {@link PoolChunk} is not used anymore and should be destroyed by the caller.
+     */
+    static <T> boolean free(PoolChunk<T> chunk, long handle) {
+        return free(chunk, handle, null);
+    }
+
+    /**
+     * Release the run of pages of the given {@link PoolSubpage} if it is not used anymore. This is needed as the
+     * last {@link PoolSubpage} of each subpage pool is never released by {@link PoolChunk#free(long)}.
+     *
+     * @return {@code false} if the {@link PoolChunk} is not used anymore and should be destroyed by the caller.
+     */
+    static <T> boolean freeIdleSubpage(PoolSubpage<T> subpage) {
+        return free(subpage.chunk, -1, subpage);
+    }
+
+    private static <T> boolean free(PoolChunk<T> chunk, long handle, PoolSubpage<T> idleSubpage) {
+        for (;;) {
+            final PoolChunkList<T> list = chunk.parent;
+            if (list == null) {
+                if (idleSubpage != null) {
+                    // The PoolSubpage was in use again and the PoolChunk is moved between two PoolChunkLists or was
+                    // even destroyed in the meantime. Just give up, the PoolSubpage can be trimmed the next time.
+                    return true;
+                }
+                // The PoolChunk is moved between two PoolChunkLists by another thread at the moment.
+                Thread.yield();
+                continue;
+            }
+            synchronized (list) {
+                if (chunk.parent != list) {
+                    // The PoolChunk was moved to another PoolChunkList before we were able to acquire the lock.
+                    continue;
+                }
+                if (idleSubpage == null) {
+                    chunk.free(handle);
+                } else if (!chunk.freeIdleSubpage(idleSubpage)) {
+                    // The PoolSubpage is in use again, nothing to do.
+                    return true;
+                }
+                if (chunk.usage() >= list.minUsage) {
+                    return true;
+                }
+                list.remove(chunk);
+            }
             // Move the PoolChunk down the PoolChunkList linked-list.
-            return move0(chunk);
+            return list.move0(chunk);
         }
-        return true;
     }
 
     private boolean move(PoolChunk<T> chunk) {
@@ -148,20 +216,29 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
      * Adds the {@link PoolChunk} to this {@link PoolChunkList}.
      */
     void add0(PoolChunk<T> chunk) {
-        chunk.parent = this;
-        if (head == null) {
-            head = chunk;
-            chunk.prev = null;
-            chunk.next = null;
-        } else {
-            chunk.prev = null;
-            chunk.next = head;
-            head.prev = chunk;
-            head = chunk;
+        synchronized (this) {
+            if (head == null) {
+                head = chunk;
+                chunk.prev = null;
+                chunk.next = null;
+            } else {
+                chunk.prev = null;
+                chunk.next = head;
+                head.prev = chunk;
+                head = chunk;
+            }
+            // Publish the new parent last so threads that free memory of the PoolChunk will only acquire our lock
+            // once the PoolChunk is fully linked.
+            chunk.parent = this;
         }
     }
 
+    /**
+     * Removes the {@link PoolChunk} from this {@link PoolChunkList}. Must be called while holding the lock of this
+     * {@link PoolChunkList}.
+     */
     private void remove(PoolChunk<T> cur) {
+        assert Thread.holdsLock(this);
         if (cur == head) {
             head = cur.next;
             if (head != null) {
@@ -174,6 +251,33 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
                 next.prev = cur.prev;
             }
         }
+        // The PoolChunk does not belong to any PoolChunkList until it is added to another one.
+        cur.parent = null;
+    }
+
+    /**
+     * Removes all {@link PoolChunk}s which are completely unused and were not used to allocate any buffer since the
+     * last call of this method.
+     */
+    List<PoolChunk<T>> removeIdleChunks() {
+        List<PoolChunk<T>> idleChunks = null;
+        synchronized (this) {
+            PoolChunk<T> cur = head;
+            while (cur != null) {
+                PoolChunk<T> next = cur.next;
+                if (cur.usedSinceLastTrim) {
+                    cur.usedSinceLastTrim = false;
+                } else if (cur.freeBytes() == cur.chunkSize()) {
+                    remove(cur);
+                    if (idleChunks == null) {
+                        idleChunks = new ArrayList<PoolChunk<T>>();
+                    }
+                    idleChunks.add(cur);
+                }
+                cur = next;
+            }
+        }
+        return idleChunks == null ? Collections.<PoolChunk<T>>emptyList() : idleChunks;
     }
 
     @Override
@@ -192,7 +296,7 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
 
     @Override
     public Iterator<PoolChunkMetric> iterator() {
-        synchronized (arena) {
+        synchronized (this) {
             if (head == null) {
                 return EMPTY_METRICS;
             }
@@ -211,7 +315,7 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
     @Override
     public String toString() {
         StringBuilder buf = new StringBuilder();
-        synchronized (arena) {
+        synchronized (this) {
             if (head == null) {
                 return "none";
             }
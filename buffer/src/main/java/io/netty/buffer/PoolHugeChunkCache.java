@@ -0,0 +1,213 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of the unpooled {@link PoolChunk}s that are used by a {@link PoolArena} to serve huge allocations
+ * ({@code > chunkSize}).
+ *
+ * The size of huge allocations is rounded up to the same size classes that {@link SizeClasses} uses (four per
+ * doubling) so released {@link PoolChunk}s can be reused by later allocations of a similar size. The cached
+ * {@link PoolChunk}s are bucketed by their size, and once more than {@code maxCachedBytes} are cached the least
+ * recently cached {@link PoolChunk}s are evicted.
+ */
+final class PoolHugeChunkCache<T> {
+
+    // Larger sizes are not rounded up as this could overflow.
+    private static final int MAX_NORMALIZED_SIZE = 1 << 30;
+
+    private final PoolArena<T> arena;
+    private final int maxCachedBytes;
+
+    // Cached PoolChunks by their size, the most recently cached last.
+    private final Map<Integer, ArrayDeque<PoolChunk<T>>> buckets = new HashMap<Integer, ArrayDeque<PoolChunk<T>>>();
+    // All cached PoolChunks, the least recently cached first.
+    private final ArrayDeque<PoolChunk<T>> lru = new ArrayDeque<PoolChunk<T>>();
+    private long cachedBytes;
+    private long hits;
+    private long evictions;
+
+    PoolHugeChunkCache(PoolArena<T> arena, int maxCachedBytes) {
+        this.arena = arena;
+        this.maxCachedBytes = maxCachedBytes;
+    }
+
+    /**
+     * Returns the capacity of the {@link PoolChunk} that is used to serve a huge allocation of {@code reqCapacity}
+     * bytes.
+     */
+    static int normalizeCapacity(int reqCapacity) {
+        return reqCapacity <= MAX_NORMALIZED_SIZE ? SizeClasses.normalizeSize(reqCapacity) : reqCapacity;
+    }
+
+    /**
+     * Returns {@code true} if a {@link PoolChunk} of {@code capacity} bytes can be cached once it is released.
+     */
+    boolean canCache(int capacity) {
+        return capacity <= maxCachedBytes;
+    }
+
+    /**
+     * Returns a {@link PoolChunk} of {@code capacity} bytes, which was either cached or is newly allocated.
+     */
+    PoolChunk<T> allocate(int capacity) {
+        synchronized (this) {
+            ArrayDeque<PoolChunk<T>> bucket = buckets.get(capacity);
+            if (bucket != null) {
+                PoolChunk<T> chunk = bucket.pollLast();
+                if (bucket.isEmpty()) {
+                    buckets.remove(capacity);
+                }
+                // The chunk is one of the most recently cached so search from the end.
+                boolean removed = lru.removeLastOccurrence(chunk);
+                assert removed;
+                cachedBytes -= capacity;
+                hits++;
+                return chunk;
+            }
+        }
+        return arena.newUnpooledChunk(capacity);
+    }
+
+    /**
+     * Add the given {@link PoolChunk} to the cache, which may evict other {@link PoolChunk}s.
+     *
+     * @return {@code false} if the {@link PoolChunk} was not cached and so should be destroyed by the caller.
+     */
+    boolean add(PoolChunk<T> chunk) {
+        assert chunk.unpooled;
+        int size = chunk.chunkSize();
+        if (!canCache(size)) {
+            return false;
+        }
+        List<PoolChunk<T>> evicted = null;
+        synchronized (this) {
+            ArrayDeque<PoolChunk<T>> bucket = buckets.get(size);
+            if (bucket == null) {
+                bucket = new ArrayDeque<PoolChunk<T>>();
+                buckets.put(size, bucket);
+            }
+            bucket.addLast(chunk);
+            lru.addLast(chunk);
+            chunk.usedSinceLastTrim = true;
+            cachedBytes += size;
+
+            while (cachedBytes > maxCachedBytes) {
+                if (evicted == null) {
+                    evicted = new ArrayList<PoolChunk<T>>(2);
+                }
+                evicted.add(removeLeastRecentlyCached());
+            }
+        }
+        destroy(evicted);
+        return true;
+    }
+
+    /**
+     * Release all cached {@link PoolChunk}s that were not reused since the last call of this method.
+     */
+    void trim() {
+        List<PoolChunk<T>> idle = null;
+        synchronized (this) {
+            for (PoolChunk<T> chunk : lru) {
+                if (chunk.usedSinceLastTrim) {
+                    chunk.usedSinceLastTrim = false;
+                } else {
+                    if (idle == null) {
+                        idle = new ArrayList<PoolChunk<T>>();
+                    }
+                    idle.add(chunk);
+                }
+            }
+            if (idle != null) {
+                for (PoolChunk<T> chunk : idle) {
+                    remove(chunk);
+                    lru.removeFirstOccurrence(chunk);
+                }
+            }
+        }
+        destroy(idle);
+    }
+
+    /**
+     * Release all cached {@link PoolChunk}s.
+     */
+    void free() {
+        List<PoolChunk<T>> chunks;
+        synchronized (this) {
+            chunks = new ArrayList<PoolChunk<T>>(lru);
+            lru.clear();
+            buckets.clear();
+            cachedBytes = 0;
+        }
+        destroy(chunks);
+    }
+
+    private PoolChunk<T> removeLeastRecentlyCached() {
+        PoolChunk<T> chunk = lru.pollFirst();
+        ArrayDeque<PoolChunk<T>> bucket = buckets.get(chunk.chunkSize());
+        // The least recently cached chunk is also the least recently cached one of its bucket.
+        PoolChunk<T> removed = bucket.pollFirst();
+        assert removed == chunk;
+        if (bucket.isEmpty()) {
+            buckets.remove(chunk.chunkSize());
+        }
+        cachedBytes -= chunk.chunkSize();
+        evictions++;
+        return chunk;
+    }
+
+    private void remove(PoolChunk<T> chunk) {
+        int size = chunk.chunkSize();
+        ArrayDeque<PoolChunk<T>> bucket = buckets.get(size);
+        bucket.removeFirstOccurrence(chunk);
+        if (bucket.isEmpty()) {
+            buckets.remove(size);
+        }
+        cachedBytes -= size;
+        evictions++;
+    }
+
+    private void destroy(List<PoolChunk<T>> chunks) {
+        if (chunks != null) {
+            for (PoolChunk<T> chunk : chunks) {
+                arena.destroyChunk(chunk);
+            }
+        }
+    }
+
+    synchronized int numCachedChunks() {
+        return lru.size();
+    }
+
+    synchronized long numCachedBytes() {
+        return cachedBytes;
+    }
+
+    synchronized long numHits() {
+        return hits;
+    }
+
+    synchronized long numEvictions() {
+        return evictions;
+    }
+}
@@ -19,10 +19,10 @@ package io.netty.buffer;
 final class PoolSubpage<T> implements PoolSubpageMetric {
 
     final PoolChunk<T> chunk;
-    private final int memoryMapIdx;
     private final int runOffset;
-    private final int pageSize;
     private final long[] bitmap;
+    private int memoryMapIdx;
+    private int runSize;
 
     PoolSubpage<T> prev;
     PoolSubpage<T> next;
@@ -43,24 +43,26 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
         memoryMapIdx = -1;
         runOffset = -1;
         elemSize = -1;
-        this.pageSize = pageSize;
+        runSize = pageSize;
         bitmap = null;
     }
 
-    PoolSubpage(PoolSubpage<T> head, PoolChunk<T> chunk, int memoryMapIdx, int runOffset, int pageSize, int elemSize) {
+    PoolSubpage(PoolSubpage<T> head, PoolChunk<T> chunk, int memoryMapIdx, int runOffset, int runSize, int elemSize) {
         this.chunk = chunk;
-        this.memoryMapIdx = memoryMapIdx;
         this.runOffset = runOffset;
-        this.pageSize = pageSize;
-        bitmap = new long[pageSize >>> 10]; // pageSize / 16 / 64
-        init(head, elemSize);
+        // pageSize / 16 / 64, runs of more than one page are only used for elements of at least 512 bytes and
+        // contain at most pageSize / 16 elements as well.
+        bitmap = new long[chunk.arena.pageSize >>> 10];
+        init(head, memoryMapIdx, runSize, elemSize);
     }
 
-    void init(PoolSubpage<T> head, int elemSize) {
+    void init(PoolSubpage<T> head, int memoryMapIdx, int runSize, int elemSize) {
         doNotDestroy = true;
+        this.memoryMapIdx = memoryMapIdx;
+        this.runSize = runSize;
         this.elemSize = elemSize;
         if (elemSize != 0) {
-            maxNumElems = numAvail = pageSize / elemSize;
+            maxNumElems = numAvail = runSize / elemSize;
             nextAvail = 0;
             bitmapLength = maxNumElems >>> 6;
             if ((maxNumElems & 63) != 0) {
@@ -135,6 +137,21 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
         }
     }
 
+    /**
+     * Removes this {@link PoolSubpage} from the pool if none of its elements is allocated. Only the last
+     * {@link PoolSubpage} of a pool is kept while not in use, see {@link #free(PoolSubpage, int)}.
+     *
+     * @return {@code true} if this subpage was removed and so is not used by its chunk anymore.
+     */
+    boolean removeIfIdle(PoolSubpage<T> head) {
+        if (!doNotDestroy || elemSize == 0 || numAvail != maxNumElems || prev != head || next != head) {
+            return false;
+        }
+        doNotDestroy = false;
+        removeFromPool();
+        return true;
+    }
+
     private void addToPool(PoolSubpage<T> head) {
         assert prev == null && next == null;
         prev = head;
@@ -204,7 +221,11 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
         final int maxNumElems;
         final int numAvail;
         final int elemSize;
-        synchronized (chunk.arena) {
+        final int memoryMapIdx;
+        final int runSize;
+        synchronized (poolHead()) {
+            memoryMapIdx = this.memoryMapIdx;
+            runSize = this.runSize;
             if (!this.doNotDestroy) {
                 doNotDestroy = false;
                 // Not used for creating the String.
@@ -222,33 +243,58 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
         }
 
         return "(" + memoryMapIdx + ": " + (maxNumElems - numAvail) + '/' + maxNumElems +
-                ", offset: " + runOffset + ", length: " + pageSize + ", elemSize: " + elemSize + ')';
+                ", offset: " + runOffset + ", length: " + runSize + ", elemSize: " + elemSize + ')';
     }
 
     @Override
     public int maxNumElements() {
-        synchronized (chunk.arena) {
+        synchronized (poolHead()) {
             return maxNumElems;
         }
     }
 
     @Override
     public int numAvailable() {
-        synchronized (chunk.arena) {
+        synchronized (poolHead()) {
             return numAvail;
         }
     }
 
     @Override
     public int elementSize() {
-        synchronized (chunk.arena) {
+        synchronized (poolHead()) {
             return elemSize;
         }
     }
 
     @Override
     public int pageSize() {
-        return pageSize;
+        synchronized (poolHead()) {
+            return runSize;
+        }
+    }
+
+    /**
+     * Returns the index in the memoryMap of the {@link PoolChunk} of the run this {@link PoolSubpage} was carved out
+     * of.
+     */
+    int memoryMapIdx() {
+        return memoryMapIdx;
+    }
+
+    /**
+     * Returns the size (in bytes) of the run of pages this {@link PoolSubpage} was carved out of.
+     */
+    int runSize() {
+        return runSize;
+    }
+
+    /**
+     * Returns the head of the subpage pool this {@link PoolSubpage} belongs to. Its monitor guards the state of
+     * this {@link PoolSubpage}.
+     */
+    private PoolSubpage<T> poolHead() {
+        return chunk.arena.findSubpagePoolHead(elemSize);
     }
 
     void destroy() {
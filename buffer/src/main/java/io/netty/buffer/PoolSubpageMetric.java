@@ -36,7 +36,7 @@ public interface PoolSubpageMetric {
     int elementSize();
 
     /**
-     * Return the size (in bytes) of this page.
+     * Return the size (in bytes) of this page, or of the run of pages if the sub-page spans more than one page.
      */
     int pageSize();
 }
@@ -27,7 +27,10 @@ import io.netty.util.internal.logging.InternalLoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * Acts a Thread cache for allocations. This implementation is moduled after
@@ -36,9 +39,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * <a href="https://www.facebook.com/notes/facebook-engineering/scalable-memory-allocation-using-jemalloc/480222803919">
  * Scalable memory allocation using jemalloc</a>.
  */
-final class PoolThreadCache {
+final class PoolThreadCache implements PoolThreadCacheMetric {
 
     private static final InternalLogger logger = InternalLoggerFactory.getInstance(PoolThreadCache.class);
+    private static final AtomicLongFieldUpdater<PoolThreadCache> HITS_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(PoolThreadCache.class, "hits");
+    private static final AtomicLongFieldUpdater<PoolThreadCache> MISSES_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(PoolThreadCache.class, "misses");
 
     final PoolArena<byte[]> heapArena;
     final PoolArena<ByteBuffer> directArena;
@@ -51,82 +58,114 @@ final class PoolThreadCache {
     private final MemoryRegionCache<byte[]>[] normalHeapCaches;
     private final MemoryRegionCache<ByteBuffer>[] normalDirectCaches;
 
-    // Used for bitshifting when calculate the index of normal caches later
-    private final int numShiftsNormalDirect;
-    private final int numShiftsNormalHeap;
     private final int freeSweepAllocationThreshold;
     private final AtomicBoolean freed = new AtomicBoolean();
+    // If true this cache is shared by multiple threads, see PooledByteBufAllocator.threadCache().
+    private final boolean shared;
+    private final String threadName;
+    // The thread the reference count of the buffers it allocates is confined to, see PooledByteBuf.confineRefCnt(...).
+    // null if the reference count is not confined or once this cache was freed.
+    private volatile Thread refCntOwner;
+    // Buffers whose reference count must be merged by refCntOwner, see mergeRefCntLater(...).
+    private final Queue<PooledByteBuf<?>> refCntMerges;
 
     private int allocations;
 
+    // Only updated by the Thread that owns this cache, or racy (and so only approximate) if the cache is shared. The
+    // updates are published with lazySet, so the metric readers see complete values without slowing down the owner.
+    private volatile long hits;
+    private volatile long misses;
+
     // TODO: Test if adding padding helps under contention
     //private long pad0, pad1, pad2, pad3, pad4, pad5, pad6, pad7;
 
     PoolThreadCache(PoolArena<byte[]> heapArena, PoolArena<ByteBuffer> directArena,
                     int tinyCacheSize, int smallCacheSize, int normalCacheSize,
-                    int maxCachedBufferCapacity, int freeSweepAllocationThreshold) {
+                    int maxCachedBufferCapacity, int freeSweepAllocationThreshold, AtomicLong adaptiveCacheBudget,
+                    boolean shared, boolean confineRefCnt) {
         if (maxCachedBufferCapacity < 0) {
             throw new IllegalArgumentException("maxCachedBufferCapacity: "
                     + maxCachedBufferCapacity + " (expected: >= 0)");
         }
         this.freeSweepAllocationThreshold = freeSweepAllocationThreshold;
+        if (shared && adaptiveCacheBudget != null) {
+            throw new IllegalArgumentException("a shared cache can not be sized adaptively");
+        }
+        if (shared && confineRefCnt) {
+            throw new IllegalArgumentException("a shared cache can not confine the reference count");
+        }
+        if (confineRefCnt) {
+            refCntOwner = Thread.currentThread();
+            refCntMerges = new ConcurrentLinkedQueue<PooledByteBuf<?>>();
+        } else {
+            refCntMerges = null;
+        }
+        this.shared = shared;
+        threadName = shared ? null : Thread.currentThread().getName();
         this.heapArena = heapArena;
         this.directArena = directArena;
         if (directArena != null) {
             tinySubPageDirectCaches = createSubPageCaches(
-                    tinyCacheSize, PoolArena.numTinySubpagePools, SizeClass.Tiny);
+                    tinyCacheSize, PoolArena.numTinySubpagePools, SizeClass.Tiny, adaptiveCacheBudget, shared);
             smallSubPageDirectCaches = createSubPageCaches(
-                    smallCacheSize, directArena.numSmallSubpagePools, SizeClass.Small);
+                    smallCacheSize, directArena.numSmallSubpagePools, SizeClass.Small, adaptiveCacheBudget, shared);
 
-            numShiftsNormalDirect = log2(directArena.pageSize);
             normalDirectCaches = createNormalCaches(
-                    normalCacheSize, maxCachedBufferCapacity, directArena);
+                    normalCacheSize, maxCachedBufferCapacity, directArena, adaptiveCacheBudget, shared);
 
-            directArena.numThreadCaches.getAndIncrement();
+            if (!shared) {
+                directArena.numThreadCaches.getAndIncrement();
+            }
         } else {
             // No directArea is configured so just null out all caches
             tinySubPageDirectCaches = null;
             smallSubPageDirectCaches = null;
             normalDirectCaches = null;
-            numShiftsNormalDirect = -1;
         }
         if (heapArena != null) {
             // Create the caches for the heap allocations
             tinySubPageHeapCaches = createSubPageCaches(
-                    tinyCacheSize, PoolArena.numTinySubpagePools, SizeClass.Tiny);
+                    tinyCacheSize, PoolArena.numTinySubpagePools, SizeClass.Tiny, adaptiveCacheBudget, shared);
             smallSubPageHeapCaches = createSubPageCaches(
-                    smallCacheSize, heapArena.numSmallSubpagePools, SizeClass.Small);
+                    smallCacheSize, heapArena.numSmallSubpagePools, SizeClass.Small, adaptiveCacheBudget, shared);
 
-            numShiftsNormalHeap = log2(heapArena.pageSize);
             normalHeapCaches = createNormalCaches(
-                    normalCacheSize, maxCachedBufferCapacity, heapArena);
+                    normalCacheSize, maxCachedBufferCapacity, heapArena, adaptiveCacheBudget, shared);
 
-            heapArena.numThreadCaches.getAndIncrement();
+            if (!shared) {
+                heapArena.numThreadCaches.getAndIncrement();
+            }
         } else {
             // No heapArea is configured so just null out all caches
             tinySubPageHeapCaches = null;
             smallSubPageHeapCaches = null;
             normalHeapCaches = null;
-            numShiftsNormalHeap = -1;
         }
 
         // Only check if there are caches in use.
-        if ((tinySubPageDirectCaches != null || smallSubPageDirectCaches != null || normalDirectCaches != null
-                || tinySubPageHeapCaches != null || smallSubPageHeapCaches != null || normalHeapCaches != null)
-                && freeSweepAllocationThreshold < 1) {
+        if (isCaching() && freeSweepAllocationThreshold < 1) {
             throw new IllegalArgumentException("freeSweepAllocationThreshold: "
                     + freeSweepAllocationThreshold + " (expected: > 0)");
         }
     }
 
+    /**
+     * Returns {@code true} if this cache holds any {@link MemoryRegionCache}, {@code false} if all of its sizes are
+     * {@code 0} and so every allocation goes directly to the arenas.
+     */
+    boolean isCaching() {
+        return tinySubPageDirectCaches != null || smallSubPageDirectCaches != null || normalDirectCaches != null
+                || tinySubPageHeapCaches != null || smallSubPageHeapCaches != null || normalHeapCaches != null;
+    }
+
     private static <T> MemoryRegionCache<T>[] createSubPageCaches(
-            int cacheSize, int numCaches, SizeClass sizeClass) {
+            int cacheSize, int numCaches, SizeClass sizeClass, AtomicLong adaptiveCacheBudget, boolean shared) {
         if (cacheSize > 0 && numCaches > 0) {
             @SuppressWarnings("unchecked")
             MemoryRegionCache<T>[] cache = new MemoryRegionCache[numCaches];
             for (int i = 0; i < cache.length; i++) {
                 // TODO: maybe use cacheSize / cache.length
-                cache[i] = new SubPageMemoryRegionCache<T>(cacheSize, sizeClass);
+                cache[i] = new SubPageMemoryRegionCache<T>(cacheSize, sizeClass, adaptiveCacheBudget, shared);
             }
             return cache;
         } else {
@@ -135,15 +174,16 @@ final class PoolThreadCache {
     }
 
     private static <T> MemoryRegionCache<T>[] createNormalCaches(
-            int cacheSize, int maxCachedBufferCapacity, PoolArena<T> area) {
+            int cacheSize, int maxCachedBufferCapacity, PoolArena<T> area, AtomicLong adaptiveCacheBudget,
+            boolean shared) {
         if (cacheSize > 0 && maxCachedBufferCapacity > 0) {
             int max = Math.min(area.chunkSize, maxCachedBufferCapacity);
-            int arraySize = Math.max(1, log2(max / area.pageSize) + 1);
+            int arraySize = Math.max(1, area.numNormalSizes(max));
 
             @SuppressWarnings("unchecked")
             MemoryRegionCache<T>[] cache = new MemoryRegionCache[arraySize];
             for (int i = 0; i < cache.length; i++) {
-                cache[i] = new NormalMemoryRegionCache<T>(cacheSize);
+                cache[i] = new NormalMemoryRegionCache<T>(cacheSize, adaptiveCacheBudget, shared);
             }
             return cache;
         } else {
@@ -151,43 +191,39 @@ final class PoolThreadCache {
         }
     }
 
-    private static int log2(int val) {
-        int res = 0;
-        while (val > 1) {
-            val >>= 1;
-            res++;
-        }
-        return res;
-    }
-
     /**
      * Try to allocate a tiny buffer out of the cache. Returns {@code true} if successful {@code false} otherwise
      */
     boolean allocateTiny(PoolArena<?> area, PooledByteBuf<?> buf, int reqCapacity, int normCapacity) {
-        return allocate(cacheForTiny(area, normCapacity), buf, reqCapacity);
+        return allocate(cacheForTiny(area, normCapacity), buf, reqCapacity, normCapacity);
     }
 
     /**
      * Try to allocate a small buffer out of the cache. Returns {@code true} if successful {@code false} otherwise
      */
     boolean allocateSmall(PoolArena<?> area, PooledByteBuf<?> buf, int reqCapacity, int normCapacity) {
-        return allocate(cacheForSmall(area, normCapacity), buf, reqCapacity);
+        return allocate(cacheForSmall(area, normCapacity), buf, reqCapacity, normCapacity);
     }
 
     /**
      * Try to allocate a small buffer out of the cache. Returns {@code true} if successful {@code false} otherwise
      */
     boolean allocateNormal(PoolArena<?> area, PooledByteBuf<?> buf, int reqCapacity, int normCapacity) {
-        return allocate(cacheForNormal(area, normCapacity), buf, reqCapacity);
+        return allocate(cacheForNormal(area, normCapacity), buf, reqCapacity, normCapacity);
     }
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
-    private boolean allocate(MemoryRegionCache<?> cache, PooledByteBuf buf, int reqCapacity) {
+    private boolean allocate(MemoryRegionCache<?> cache, PooledByteBuf buf, int reqCapacity, int normCapacity) {
         if (cache == null) {
             // no cache found so just return false here
             return false;
         }
-        boolean allocated = cache.allocate(buf, reqCapacity);
+        boolean allocated = cache.allocate(buf, reqCapacity, normCapacity);
+        if (allocated) {
+            HITS_UPDATER.lazySet(this, hits + 1);
+        } else {
+            MISSES_UPDATER.lazySet(this, misses + 1);
+        }
         if (++ allocations >= freeSweepAllocationThreshold) {
             allocations = 0;
             trim();
@@ -238,6 +274,12 @@ final class PoolThreadCache {
         // As free() may be called either by the finalizer or by FastThreadLocal.onRemoval(...) we need to ensure
         // we only call this one time.
         if (freed.compareAndSet(false, true)) {
+            if (refCntMerges != null) {
+                // Other threads merge the reference counts themselves from now on, see mergeRefCntLater(...).
+                refCntOwner = null;
+                mergeRefCnts();
+            }
+
             int numFreed = free(tinySubPageDirectCaches) +
                     free(smallSubPageDirectCaches) +
                     free(normalDirectCaches) +
@@ -250,16 +292,58 @@ final class PoolThreadCache {
                         Thread.currentThread().getName());
             }
 
-            if (directArena != null) {
+            if (directArena != null && !shared) {
                 directArena.numThreadCaches.getAndDecrement();
             }
 
-            if (heapArena != null) {
+            if (heapArena != null && !shared) {
                 heapArena.numThreadCaches.getAndDecrement();
             }
         }
     }
 
+    /**
+     * Confine the reference count of a buffer that was just allocated by the owning thread to it, if enabled.
+     */
+    void confineRefCnt(PooledByteBuf<?> buf) {
+        if (refCntOwner != null) {
+            buf.confineRefCnt(this);
+            if (!refCntMerges.isEmpty()) {
+                mergeRefCnts();
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if the current thread owns the reference count of the buffers this cache confined.
+     */
+    boolean isRefCntOwner() {
+        return refCntOwner == Thread.currentThread();
+    }
+
+    /**
+     * Called by another thread if the owning thread must merge the reference count of the given buffer.
+     */
+    void mergeRefCntLater(PooledByteBuf<?> buf) {
+        refCntMerges.offer(buf);
+        // If the owning thread is gone it will not merge anymore, so merge ourself. Either we or free() will see
+        // the buffer.
+        Thread refCntOwner = this.refCntOwner;
+        if (refCntOwner == null || !refCntOwner.isAlive()) {
+            mergeRefCnts();
+        }
+    }
+
+    /**
+     * Merge the reference counts of all queued buffers, must be called by the owning thread or once it is gone.
+     */
+    private void mergeRefCnts() {
+        PooledByteBuf<?> buf;
+        while ((buf = refCntMerges.poll()) != null) {
+            buf.mergeRefCnt();
+        }
+    }
+
     private static int free(MemoryRegionCache<?>[] caches) {
         if (caches == null) {
             return 0;
@@ -280,6 +364,9 @@ final class PoolThreadCache {
     }
 
     void trim() {
+        if (refCntMerges != null && isRefCntOwner()) {
+            mergeRefCnts();
+        }
         trim(tinySubPageDirectCaches);
         trim(smallSubPageDirectCaches);
         trim(normalDirectCaches);
@@ -304,6 +391,28 @@ final class PoolThreadCache {
         cache.trim();
     }
 
+    @Override
+    public String threadName() {
+        return threadName;
+    }
+
+    @Override
+    public long numHits() {
+        return hits;
+    }
+
+    @Override
+    public long numMisses() {
+        return misses;
+    }
+
+    @Override
+    public double hitRatio() {
+        long hits = this.hits;
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
     private MemoryRegionCache<?> cacheForTiny(PoolArena<?> area, int normCapacity) {
         int idx = PoolArena.tinyIdx(normCapacity);
         if (area.isDirect()) {
@@ -313,7 +422,7 @@ final class PoolThreadCache {
     }
 
     private MemoryRegionCache<?> cacheForSmall(PoolArena<?> area, int normCapacity) {
-        int idx = PoolArena.smallIdx(normCapacity);
+        int idx = area.smallIdx(normCapacity);
         if (area.isDirect()) {
             return cache(smallSubPageDirectCaches, idx);
         }
@@ -321,11 +430,10 @@ final class PoolThreadCache {
     }
 
     private MemoryRegionCache<?> cacheForNormal(PoolArena<?> area, int normCapacity) {
+        int idx = area.normalIdx(normCapacity);
         if (area.isDirect()) {
-            int idx = log2(normCapacity >> numShiftsNormalDirect);
             return cache(normalDirectCaches, idx);
         }
-        int idx = log2(normCapacity >> numShiftsNormalHeap);
         return cache(normalHeapCaches, idx);
     }
 
@@ -340,8 +448,8 @@ final class PoolThreadCache {
      * Cache used for buffers which are backed by TINY or SMALL size.
      */
     private static final class SubPageMemoryRegionCache<T> extends MemoryRegionCache<T> {
-        SubPageMemoryRegionCache(int size, SizeClass sizeClass) {
-            super(size, sizeClass);
+        SubPageMemoryRegionCache(int size, SizeClass sizeClass, AtomicLong adaptiveCacheBudget, boolean shared) {
+            super(size, sizeClass, adaptiveCacheBudget, shared);
         }
 
         @Override
@@ -355,8 +463,8 @@ final class PoolThreadCache {
      * Cache used for buffers which are backed by NORMAL size.
      */
     private static final class NormalMemoryRegionCache<T> extends MemoryRegionCache<T> {
-        NormalMemoryRegionCache(int size) {
-            super(size, SizeClass.Normal);
+        NormalMemoryRegionCache(int size, AtomicLong adaptiveCacheBudget, boolean shared) {
+            super(size, SizeClass.Normal, adaptiveCacheBudget, shared);
         }
 
         @Override
@@ -370,12 +478,27 @@ final class PoolThreadCache {
         private final int size;
         private final Queue<Entry<T>> queue;
         private final SizeClass sizeClass;
+        // Shared by all caches of the allocator, null if the caches have a fixed size.
+        private final AtomicLong adaptiveCacheBudget;
         private int allocations;
+        private int misses;
 
-        MemoryRegionCache(int size, SizeClass sizeClass) {
+        // The number of entries that may be cached, which is adjusted by trim() if the cache is sized adaptively.
+        // Read without synchronization by other threads that add entries, which is fine as it is only a soft limit.
+        private int limit;
+        // The bytes of the adaptive cache budget that were taken to grow the limit beyond a single entry.
+        private long reservedBytes;
+        // The size of the cached buffers, known once the cache missed an allocation.
+        private int normCapacity;
+
+        MemoryRegionCache(int size, SizeClass sizeClass, AtomicLong adaptiveCacheBudget, boolean shared) {
             this.size = MathUtil.safeFindNextPositivePowerOfTwo(size);
-            queue = PlatformDependent.newFixedMpscQueue(this.size);
+            // A shared cache is also polled by multiple threads, the MPMC queue needs a capacity of at least 2.
+            queue = shared ? PlatformDependent.<Entry<T>>newFixedMpmcQueue(Math.max(2, this.size))
+                    : PlatformDependent.<Entry<T>>newFixedMpscQueue(this.size);
             this.sizeClass = sizeClass;
+            this.adaptiveCacheBudget = adaptiveCacheBudget;
+            limit = adaptiveCacheBudget == null ? this.size : 1;
         }
 
         /**
@@ -389,6 +512,9 @@ final class PoolThreadCache {
          */
         @SuppressWarnings("unchecked")
         public final boolean add(PoolChunk<T> chunk, long handle) {
+            if (adaptiveCacheBudget != null && queue.size() >= limit) {
+                return false;
+            }
             Entry<T> entry = newEntry(chunk, handle);
             boolean queued = queue.offer(entry);
             if (!queued) {
@@ -402,15 +528,18 @@ final class PoolThreadCache {
         /**
          * Allocate something out of the cache if possible and remove the entry from the cache.
          */
-        public final boolean allocate(PooledByteBuf<T> buf, int reqCapacity) {
+        public final boolean allocate(PooledByteBuf<T> buf, int reqCapacity, int normCapacity) {
             Entry<T> entry = queue.poll();
             if (entry == null) {
+                this.normCapacity = normCapacity;
+                ++ misses;
                 return false;
             }
             initBuf(entry.chunk, entry.handle, buf, reqCapacity);
             entry.recycle();
 
-            // allocations is not thread-safe which is fine as this is only called from the same thread all time.
+            // allocations is not thread-safe which is fine as this is only called from the same thread all time,
+            // or only used as an estimate for trim() if the cache is shared.
             ++ allocations;
             return true;
         }
@@ -419,6 +548,11 @@ final class PoolThreadCache {
          * Clear out this cache and free up all previous cached {@link PoolChunk}s and {@code handle}s.
          */
         public final int free() {
+            if (adaptiveCacheBudget != null) {
+                adaptiveCacheBudget.addAndGet(reservedBytes);
+                reservedBytes = 0;
+                limit = 1;
+            }
             return free(Integer.MAX_VALUE);
         }
 
@@ -440,8 +574,12 @@ final class PoolThreadCache {
          * Free up cached {@link PoolChunk}s if not allocated frequently enough.
          */
         public final void trim() {
-            int free = size - allocations;
+            if (adaptiveCacheBudget != null) {
+                adapt();
+            }
+            int free = limit - allocations;
             allocations = 0;
+            misses = 0;
 
             // We not even allocated all the number that are
             if (free > 0) {
@@ -449,6 +587,39 @@ final class PoolThreadCache {
             }
         }
 
+        /**
+         * Grow the limit if more than one out of nine allocations since the last trim missed the cache, or shrink it
+         * if there were no misses and less than half of the limit was used.
+         */
+        private void adapt() {
+            if (misses > allocations >>> 3 && limit < size) {
+                int newLimit = Math.min(limit << 1, size);
+                long bytes = (long) (newLimit - limit) * normCapacity;
+                if (reserve(bytes)) {
+                    reservedBytes += bytes;
+                    limit = newLimit;
+                }
+            } else if (misses == 0 && allocations < limit >>> 1 && limit > 1) {
+                int newLimit = limit >>> 1;
+                long bytes = (long) (limit - newLimit) * normCapacity;
+                adaptiveCacheBudget.addAndGet(bytes);
+                reservedBytes -= bytes;
+                limit = newLimit;
+            }
+        }
+
+        private boolean reserve(long bytes) {
+            for (;;) {
+                long available = adaptiveCacheBudget.get();
+                if (available < bytes) {
+                    return false;
+                }
+                if (adaptiveCacheBudget.compareAndSet(available, available - bytes)) {
+                    return true;
+                }
+            }
+        }
+
         @SuppressWarnings({ "unchecked", "rawtypes" })
         private  void freeEntry(Entry entry) {
             PoolChunk chunk = entry.chunk;
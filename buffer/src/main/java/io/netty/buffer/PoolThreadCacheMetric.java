@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+/**
+ * Metrics for a thread local cache of a {@link PooledByteBufAllocator}. The values are updated by the owning
+ * {@link Thread} without synchronization, so they may be slightly out of date when read by another {@link Thread}.
+ */
+public interface PoolThreadCacheMetric {
+
+    /**
+     * Return the name of the {@link Thread} that owns the cache, or {@code null} if the cache is shared by multiple
+     * threads.
+     */
+    String threadName();
+
+    /**
+     * Return the number of allocations that were served by the cache.
+     */
+    long numHits();
+
+    /**
+     * Return the number of allocations of a cacheable size that could not be served by the cache.
+     */
+    long numMisses();
+
+    /**
+     * Return the ratio of allocations of a cacheable size that were served by the cache, between {@code 0} and
+     * {@code 1}, or {@code 0} if there were none yet.
+     */
+    double hitRatio();
+}
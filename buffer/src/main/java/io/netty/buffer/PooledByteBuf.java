@@ -16,14 +16,34 @@
 
 package io.netty.buffer;
 
+import io.netty.util.IllegalReferenceCountException;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
 
 abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
 
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<PooledByteBuf> sharedRefCntUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(PooledByteBuf.class, "sharedRefCnt");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<PooledByteBuf> ownerRefCntUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(PooledByteBuf.class, "ownerRefCnt");
+
+    // Flags in the lowest bits of sharedRefCnt, the count itself is stored in the upper bits. Once MERGED is set, the
+    // count of the owner is part of the shared count. QUEUED is set while the buffer is queued for a merge by the
+    // owner, see PoolThreadCache.mergeRefCntLater(...).
+    private static final int MERGED = 1;
+    private static final int QUEUED = 2;
+    private static final int SHARED_REF_CNT_SHIFT = 2;
+    private static final int MAX_SHARED_REF_CNT = Integer.MAX_VALUE >> SHARED_REF_CNT_SHIFT;
+    private static final int MIN_SHARED_REF_CNT = Integer.MIN_VALUE >> SHARED_REF_CNT_SHIFT;
+
     private final Recycler.Handle<PooledByteBuf<T>> recyclerHandle;
 
     protected PoolChunk<T> chunk;
@@ -36,6 +56,12 @@ abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
     private ByteBuffer tmpNioBuf;
     private ByteBufAllocator allocator;
 
+    // Only used if the reference count is confined to the allocating thread, see confineRefCnt(...).
+    private PoolThreadCache refCntOwner;
+    // Only written by refCntOwner.
+    private volatile int ownerRefCnt;
+    private volatile int sharedRefCnt;
+
     @SuppressWarnings("unchecked")
     protected PooledByteBuf(Recycler.Handle<? extends PooledByteBuf<T>> recyclerHandle, int maxCapacity) {
         super(maxCapacity);
@@ -71,6 +97,7 @@ abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
     final void reuse(int maxCapacity) {
         maxCapacity(maxCapacity);
         setRefCnt(1);
+        refCntOwner = null;
         setIndex0(0, 0);
         discardMarks();
     }
@@ -150,6 +177,226 @@ abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
         return PooledSlicedByteBuf.newInstance(this, this, index, length);
     }
 
+    /**
+     * Confine the reference count to the current thread, which must be the thread that just allocated this buffer.
+     *
+     * The owner updates its own count while all other threads atomically update a shared count, which may become
+     * negative if they release references the owner handed to them. Only the owner writes its count, so as long as
+     * the shared count is not negative it retains and releases with plain ordered writes. Once the count of the owner
+     * drops to {@code 0}, it merges its count into the shared count and uses atomic updates from then on.
+     *
+     * Other threads update the shared count atomically and then read the count of the owner, so they see if the sum
+     * of both counts dropped to {@code 0} and then claim the buffer by marking the shared count as merged, deallocate
+     * it and return {@code true}. If a release drives the shared count below {@code 0} and the sum is not {@code 0},
+     * the owner may release its last reference concurrently and the write may not be visible yet. So the buffer is
+     * queued on the {@link PoolThreadCache} of the owner, which merges both counts on its next allocation, on a trim
+     * or when the cache is freed. While the shared count is negative the owner releases with volatile writes, so the
+     * release that drops the sum to {@code 0} only returns {@code false}, and leaves the deallocation to the merge,
+     * if it raced with a release by the owner.
+     */
+    final void confineRefCnt(PoolThreadCache refCntOwner) {
+        this.refCntOwner = refCntOwner;
+        ownerRefCntUpdater.lazySet(this, 1);
+        sharedRefCntUpdater.lazySet(this, 0);
+    }
+
+    @Override
+    public int refCnt() {
+        if (refCntOwner == null) {
+            return super.refCnt();
+        }
+        int sharedRefCnt = this.sharedRefCnt;
+        int refCnt = sharedRefCnt >> SHARED_REF_CNT_SHIFT;
+        return (sharedRefCnt & MERGED) != 0 ? refCnt : refCnt + ownerRefCnt;
+    }
+
+    @Override
+    public ByteBuf retain() {
+        return refCntOwner == null ? super.retain() : retainConfined(1);
+    }
+
+    @Override
+    public ByteBuf retain(int increment) {
+        return refCntOwner == null ? super.retain(increment) :
+                retainConfined(checkPositive(increment, "increment"));
+    }
+
+    private ByteBuf retainConfined(int increment) {
+        if (refCntOwner.isRefCntOwner() && (sharedRefCnt & MERGED) == 0) {
+            int refCnt = ownerRefCnt;
+            if (refCnt + increment < refCnt) {
+                throw new IllegalReferenceCountException(refCnt, increment);
+            }
+            // The owner holds a reference, so the buffer can not be released concurrently and an ordered write is
+            // enough.
+            ownerRefCntUpdater.lazySet(this, refCnt + increment);
+            return this;
+        }
+        for (;;) {
+            int sharedRefCnt = this.sharedRefCnt;
+            int refCnt = sharedRefCnt >> SHARED_REF_CNT_SHIFT;
+            long totalRefCnt = (sharedRefCnt & MERGED) != 0 ? refCnt : (long) refCnt + ownerRefCnt;
+            // Ensure we don't resurrect (which means the total count was 0) and that we do not overflow.
+            if (totalRefCnt <= 0 || refCnt > MAX_SHARED_REF_CNT - increment) {
+                throw new IllegalReferenceCountException((int) totalRefCnt, increment);
+            }
+            if (sharedRefCntUpdater.compareAndSet(
+                    this, sharedRefCnt, sharedRefCnt + (increment << SHARED_REF_CNT_SHIFT))) {
+                return this;
+            }
+        }
+    }
+
+    @Override
+    public boolean release() {
+        return refCntOwner == null ? super.release() : releaseConfined(1);
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return refCntOwner == null ? super.release(decrement) :
+                releaseConfined(checkPositive(decrement, "decrement"));
+    }
+
+    private boolean releaseConfined(int decrement) {
+        int sharedRefCnt;
+        if (refCntOwner.isRefCntOwner() && ((sharedRefCnt = this.sharedRefCnt) & MERGED) == 0) {
+            int refCnt = ownerRefCnt;
+            if (decrement < refCnt) {
+                if (sharedRefCnt >= 0) {
+                    // The owner keeps a reference. Another thread that concurrently releases a reference the owner
+                    // handed to it sees a negative shared count and queues the buffer to be merged, so an ordered
+                    // write is enough.
+                    ownerRefCntUpdater.lazySet(this, refCnt - decrement);
+                    return false;
+                }
+                long totalRefCnt = (long) (sharedRefCnt >> SHARED_REF_CNT_SHIFT) + refCnt;
+                if (decrement > totalRefCnt) {
+                    throw new IllegalReferenceCountException((int) totalRefCnt, -decrement);
+                }
+                // A volatile write, so either this thread or another thread that concurrently releases the last
+                // reference it got from the owner sees that the buffer is dead.
+                ownerRefCnt = refCnt - decrement;
+                return releaseIfDead();
+            }
+            return releaseOwner(refCnt, decrement);
+        }
+        for (;;) {
+            sharedRefCnt = this.sharedRefCnt;
+            int refCnt = sharedRefCnt >> SHARED_REF_CNT_SHIFT;
+            if ((sharedRefCnt & MERGED) != 0) {
+                if (decrement > refCnt) {
+                    throw new IllegalReferenceCountException(refCnt, -decrement);
+                }
+                if (sharedRefCntUpdater.compareAndSet(
+                        this, sharedRefCnt, sharedRefCnt - (decrement << SHARED_REF_CNT_SHIFT))) {
+                    if (decrement == refCnt) {
+                        deallocateConfined(sharedRefCnt);
+                        return true;
+                    }
+                    return false;
+                }
+            } else {
+                long totalRefCnt = (long) refCnt + ownerRefCnt;
+                if (decrement > totalRefCnt || refCnt < MIN_SHARED_REF_CNT + decrement) {
+                    throw new IllegalReferenceCountException((int) totalRefCnt, -decrement);
+                }
+                if (sharedRefCntUpdater.compareAndSet(
+                        this, sharedRefCnt, sharedRefCnt - (decrement << SHARED_REF_CNT_SHIFT))) {
+                    return releaseIfDead();
+                }
+            }
+        }
+    }
+
+    /**
+     * Deallocate the buffer if the sum of the shared count and the count of the owner is {@code 0}, which must be
+     * checked after every release that does not merge the counts.
+     */
+    private boolean releaseIfDead() {
+        for (;;) {
+            int sharedRefCnt = this.sharedRefCnt;
+            if ((sharedRefCnt & MERGED) != 0) {
+                // Merged by the owner or claimed by another release, which saw this release and deallocates if needed.
+                return false;
+            }
+            int refCnt = sharedRefCnt >> SHARED_REF_CNT_SHIFT;
+            if ((long) refCnt + ownerRefCnt != 0) {
+                if (refCnt >= 0 || (sharedRefCnt & QUEUED) != 0 || refCntOwner.isRefCntOwner()) {
+                    return false;
+                }
+                // The owner may concurrently release its last reference with an ordered write, which we may not
+                // see yet.
+                if (sharedRefCntUpdater.compareAndSet(this, sharedRefCnt, sharedRefCnt | QUEUED)) {
+                    refCntOwner.mergeRefCntLater(this);
+                    return false;
+                }
+            } else if (sharedRefCntUpdater.compareAndSet(this, sharedRefCnt, sharedRefCnt & QUEUED | MERGED)) {
+                deallocateConfined(sharedRefCnt);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Merge the count of the owner into the shared count, must be called by the owner or once it is gone.
+     */
+    final void mergeRefCnt() {
+        for (;;) {
+            int sharedRefCnt = this.sharedRefCnt;
+            if ((sharedRefCnt & MERGED) != 0) {
+                // Merged or claimed by a release already.
+                return;
+            }
+            long refCnt = (long) (sharedRefCnt >> SHARED_REF_CNT_SHIFT) + ownerRefCnt;
+            if (refCnt < 0 || refCnt > MAX_SHARED_REF_CNT) {
+                // Released more often than retained, which the releases failed to detect as the count of the owner
+                // was not visible to them yet. Keep the buffer as it is.
+                return;
+            }
+            // This buffer is not in the queue anymore.
+            if (sharedRefCntUpdater.compareAndSet(
+                    this, sharedRefCnt, (int) refCnt << SHARED_REF_CNT_SHIFT | MERGED)) {
+                if (refCnt == 0) {
+                    deallocateConfined(0);
+                }
+                return;
+            }
+        }
+    }
+
+    private boolean releaseOwner(int ownerRefCnt, int decrement) {
+        for (;;) {
+            int sharedRefCnt = this.sharedRefCnt;
+            if ((sharedRefCnt & MERGED) != 0) {
+                // Claimed by another release, so the buffer is dead already.
+                throw new IllegalReferenceCountException(sharedRefCnt >> SHARED_REF_CNT_SHIFT, -decrement);
+            }
+            long refCnt = (long) (sharedRefCnt >> SHARED_REF_CNT_SHIFT) + ownerRefCnt - decrement;
+            if (refCnt < 0 || refCnt > MAX_SHARED_REF_CNT) {
+                throw new IllegalReferenceCountException((int) (refCnt + decrement), -decrement);
+            }
+            if (sharedRefCntUpdater.compareAndSet(
+                    this, sharedRefCnt, (int) refCnt << SHARED_REF_CNT_SHIFT | sharedRefCnt & QUEUED | MERGED)) {
+                if (refCnt == 0) {
+                    deallocateConfined(sharedRefCnt);
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+
+    private void deallocateConfined(int sharedRefCnt) {
+        setRefCnt(0);
+        if ((sharedRefCnt & QUEUED) == 0) {
+            deallocate();
+        } else if (handle >= 0) {
+            // Still queued to be merged, so do not recycle it as it could be merged after it was reused.
+            freeMemory();
+        }
+    }
+
     protected final ByteBuffer internalNioBuffer() {
         ByteBuffer tmpNioBuf = this.tmpNioBuf;
         if (tmpNioBuf == null) {
@@ -163,16 +410,20 @@ abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
     @Override
     protected final void deallocate() {
         if (handle >= 0) {
-            final long handle = this.handle;
-            this.handle = -1;
-            memory = null;
-            tmpNioBuf = null;
-            chunk.arena.free(chunk, handle, maxLength, cache);
-            chunk = null;
+            freeMemory();
             recycle();
         }
     }
 
+    private void freeMemory() {
+        final long handle = this.handle;
+        this.handle = -1;
+        memory = null;
+        tmpNioBuf = null;
+        chunk.arena.free(chunk, handle, maxLength, cache);
+        chunk = null;
+    }
+
     private void recycle() {
         recyclerHandle.recycle(this);
     }
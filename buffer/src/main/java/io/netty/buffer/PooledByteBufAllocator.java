@@ -17,18 +17,27 @@
 package io.netty.buffer;
 
 import io.netty.util.NettyRuntime;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.FastThreadLocal;
 import io.netty.util.concurrent.FastThreadLocalThread;
+import io.netty.util.internal.MathUtil;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.StringUtil;
 import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.ThreadExecutorMap;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PooledByteBufAllocator extends AbstractByteBufAllocator implements ByteBufAllocatorMetricProvider {
 
@@ -45,6 +54,13 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     private static final int DEFAULT_CACHE_TRIM_INTERVAL;
     private static final boolean DEFAULT_USE_CACHE_FOR_ALL_THREADS;
     private static final int DEFAULT_DIRECT_MEMORY_CACHE_ALIGNMENT;
+    private static final boolean DEFAULT_USE_SIZE_CLASSES;
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS;
+    private static final int DEFAULT_MAX_CACHED_HUGE_BYTES;
+    private static final long DEFAULT_ADAPTIVE_CACHE_BUDGET;
+    private static final int DEFAULT_NUM_SHARED_CACHES;
+    private static final boolean DEFAULT_THREAD_CONFINED_REF_CNT;
+    private static final boolean DEFAULT_ARENA_PER_EVENT_LOOP;
 
     private static final int MIN_PAGE_SIZE = 4096;
     private static final int MAX_CHUNK_SIZE = (int) (((long) Integer.MAX_VALUE + 1) / 2);
@@ -116,6 +132,39 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         DEFAULT_DIRECT_MEMORY_CACHE_ALIGNMENT = SystemPropertyUtil.getInt(
                 "io.netty.allocator.directMemoryCacheAlignment", 0);
 
+        // Use jemalloc 4 like size classes (four per doubling) instead of rounding up to the next power of two.
+        DEFAULT_USE_SIZE_CLASSES = SystemPropertyUtil.getBoolean(
+                "io.netty.allocator.useSizeClasses", false);
+
+        // Disabled by default, so memory is only released when trimIdleChunks() / trimCurrentThreadCache() is called.
+        DEFAULT_IDLE_TIMEOUT_MILLIS = Math.max(0, SystemPropertyUtil.getLong(
+                "io.netty.allocator.idleTimeoutMillis", 0));
+
+        // The number of bytes of released huge buffers each arena keeps for reuse, 0 disables the cache.
+        DEFAULT_MAX_CACHED_HUGE_BYTES = Math.max(0, SystemPropertyUtil.getInt(
+                "io.netty.allocator.maxCachedHugeBytes", 0));
+
+        // The number of bytes the thread local caches of an allocator may grow by in total when sizing each cache
+        // from its hit rate, 0 disables the adaptive sizing so the caches have a fixed size.
+        DEFAULT_ADAPTIVE_CACHE_BUDGET = Math.max(0, SystemPropertyUtil.getLong(
+                "io.netty.allocator.adaptiveCacheBudget", 0));
+
+        // The number of caches that are shared by the threads which do not get their own thread local cache (see
+        // useCacheForAllThreads), 0 disables caching for these threads.
+        DEFAULT_NUM_SHARED_CACHES = Math.max(0, SystemPropertyUtil.getInt(
+                "io.netty.allocator.numSharedCaches", 0));
+
+        // Use plain instead of atomic updates for the reference count of buffers while they are used by the thread
+        // that allocated them from its thread local cache.
+        DEFAULT_THREAD_CONFINED_REF_CNT = SystemPropertyUtil.getBoolean(
+                "io.netty.allocator.threadConfinedRefCnt", false);
+
+        // Give the n-th event loop of a group the n-th arena instead of the least used one. If the event loops are
+        // pinned to CPUs, the memory of the arena of a loop is then allocated on its NUMA node, as Linux allocates
+        // pages on the node of the thread that touches them first.
+        DEFAULT_ARENA_PER_EVENT_LOOP = SystemPropertyUtil.getBoolean(
+                "io.netty.allocator.arenaPerEventLoop", false);
+
         if (logger.isDebugEnabled()) {
             logger.debug("-Dio.netty.allocator.numHeapArenas: {}", DEFAULT_NUM_HEAP_ARENA);
             logger.debug("-Dio.netty.allocator.numDirectArenas: {}", DEFAULT_NUM_DIRECT_ARENA);
@@ -136,6 +185,13 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
             logger.debug("-Dio.netty.allocator.maxCachedBufferCapacity: {}", DEFAULT_MAX_CACHED_BUFFER_CAPACITY);
             logger.debug("-Dio.netty.allocator.cacheTrimInterval: {}", DEFAULT_CACHE_TRIM_INTERVAL);
             logger.debug("-Dio.netty.allocator.useCacheForAllThreads: {}", DEFAULT_USE_CACHE_FOR_ALL_THREADS);
+            logger.debug("-Dio.netty.allocator.useSizeClasses: {}", DEFAULT_USE_SIZE_CLASSES);
+            logger.debug("-Dio.netty.allocator.idleTimeoutMillis: {}", DEFAULT_IDLE_TIMEOUT_MILLIS);
+            logger.debug("-Dio.netty.allocator.maxCachedHugeBytes: {}", DEFAULT_MAX_CACHED_HUGE_BYTES);
+            logger.debug("-Dio.netty.allocator.adaptiveCacheBudget: {}", DEFAULT_ADAPTIVE_CACHE_BUDGET);
+            logger.debug("-Dio.netty.allocator.numSharedCaches: {}", DEFAULT_NUM_SHARED_CACHES);
+            logger.debug("-Dio.netty.allocator.threadConfinedRefCnt: {}", DEFAULT_THREAD_CONFINED_REF_CNT);
+            logger.debug("-Dio.netty.allocator.arenaPerEventLoop: {}", DEFAULT_ARENA_PER_EVENT_LOOP);
         }
     }
 
@@ -152,6 +208,19 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     private final PoolThreadLocalCache threadCache;
     private final int chunkSize;
     private final PooledByteBufAllocatorMetric metric;
+    // The last time idle chunks were trimmed by one of the TrimTasks.
+    private final AtomicLong lastIdleChunksTrimNanos = new AtomicLong(System.nanoTime());
+    // The number of bytes the thread local caches may still grow by, null if the caches have a fixed size.
+    private final AtomicLong adaptiveCacheBudget;
+    // All PoolThreadCaches that are in use. Weak as a PoolThreadCache is released by its finalizer if the Thread
+    // terminates without removing it.
+    private final Map<PoolThreadCache, Boolean> threadCaches =
+            Collections.synchronizedMap(new WeakHashMap<PoolThreadCache, Boolean>());
+    // Used instead of thread local caches by threads that are not FastThreadLocalThreads if useCacheForAllThreads is
+    // false, null if these threads should not use a cache at all.
+    private final PoolThreadCache[] sharedCaches;
+    private final List<PoolThreadCacheMetric> sharedCacheMetrics;
+    private final boolean threadConfinedRefCnt;
 
     public PooledByteBufAllocator() {
         this(false);
@@ -200,7 +269,89 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
                                   int tinyCacheSize, int smallCacheSize, int normalCacheSize,
                                   boolean useCacheForAllThreads, int directMemoryCacheAlignment) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder,
+                tinyCacheSize, smallCacheSize, normalCacheSize,
+                useCacheForAllThreads, directMemoryCacheAlignment, DEFAULT_USE_SIZE_CLASSES);
+    }
+
+    /**
+     * @param useSizeClasses {@code true} if buffers of {@code 512} bytes and more should be rounded up to the
+     *                       next of four size classes per power of two (like jemalloc 4 does) instead of the next
+     *                       power of two. This reduces the internal fragmentation for sizes which are slightly
+     *                       bigger than a power of two.
+     */
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                                  boolean useSizeClasses) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder,
+                tinyCacheSize, smallCacheSize, normalCacheSize,
+                useCacheForAllThreads, directMemoryCacheAlignment, useSizeClasses, DEFAULT_MAX_CACHED_HUGE_BYTES);
+    }
+
+    /**
+     * @param maxCachedHugeBytes the maximum number of bytes of released huge buffers ({@code > chunkSize}) each arena
+     *                           keeps for reuse by later huge allocations, or {@code 0} to release these directly.
+     *                           Huge allocations are rounded up to four size classes per power of two if enabled.
+     */
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                                  boolean useSizeClasses, int maxCachedHugeBytes) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder,
+                tinyCacheSize, smallCacheSize, normalCacheSize,
+                useCacheForAllThreads, directMemoryCacheAlignment, useSizeClasses, maxCachedHugeBytes,
+                DEFAULT_ADAPTIVE_CACHE_BUDGET);
+    }
+
+    /**
+     * @param adaptiveCacheBudget the number of bytes the thread local caches of this allocator may grow by in total,
+     *                            or {@code 0} to use caches of a fixed size. If positive, each cache starts with a
+     *                            single buffer and is grown (up to {@code tinyCacheSize}, {@code smallCacheSize}
+     *                            or {@code normalCacheSize}) when allocations miss it, and shrunk when it is not
+     *                            used, so busy threads cache more and idle threads less.
+     */
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                                  boolean useSizeClasses, int maxCachedHugeBytes, long adaptiveCacheBudget) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder,
+                tinyCacheSize, smallCacheSize, normalCacheSize,
+                useCacheForAllThreads, directMemoryCacheAlignment, useSizeClasses, maxCachedHugeBytes,
+                adaptiveCacheBudget, DEFAULT_NUM_SHARED_CACHES);
+    }
+
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                                  boolean useSizeClasses, int maxCachedHugeBytes, long adaptiveCacheBudget,
+                                  int numSharedCaches) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder,
+                tinyCacheSize, smallCacheSize, normalCacheSize,
+                useCacheForAllThreads, directMemoryCacheAlignment, useSizeClasses, maxCachedHugeBytes,
+                adaptiveCacheBudget, numSharedCaches, DEFAULT_THREAD_CONFINED_REF_CNT);
+    }
+
+    /**
+     * @param numSharedCaches the number of caches that are shared by the threads which are no
+     *                        {@link FastThreadLocalThread}s if {@code useCacheForAllThreads} is {@code false}, or
+     *                        {@code 0} to not cache buffers for these threads at all. Each thread uses one of the
+     *                        shared caches, selected by a hash of its id, so large thread pools can use a cache
+     *                        without every thread retaining buffers in its own cache. Rounded up to a power of two.
+     * @param threadConfinedRefCnt {@code true} if buffers that are allocated from a thread local cache should use
+     *                             plain writes instead of atomic updates of their reference count while they are
+     *                             retained and released by the allocating thread. Other threads still update the
+     *                             reference count atomically. If they release references the allocating thread
+     *                             handed to them concurrently to it, a buffer may only be deallocated on the next
+     *                             allocation or trim of the allocating thread, or once its cache is freed.
+     */
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                                  boolean useSizeClasses, int maxCachedHugeBytes, long adaptiveCacheBudget,
+                                  int numSharedCaches, boolean threadConfinedRefCnt) {
         super(preferDirect);
+        this.threadConfinedRefCnt = threadConfinedRefCnt;
         threadCache = new PoolThreadLocalCache(useCacheForAllThreads);
         this.tinyCacheSize = tinyCacheSize;
         this.smallCacheSize = smallCacheSize;
@@ -214,6 +365,17 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
             throw new IllegalArgumentException("nDirectArea: " + nDirectArena + " (expected: >= 0)");
         }
 
+        if (maxCachedHugeBytes < 0) {
+            throw new IllegalArgumentException("maxCachedHugeBytes: " + maxCachedHugeBytes + " (expected: >= 0)");
+        }
+        if (adaptiveCacheBudget < 0) {
+            throw new IllegalArgumentException("adaptiveCacheBudget: " + adaptiveCacheBudget + " (expected: >= 0)");
+        }
+        this.adaptiveCacheBudget = adaptiveCacheBudget > 0 ? new AtomicLong(adaptiveCacheBudget) : null;
+        if (numSharedCaches < 0) {
+            throw new IllegalArgumentException("numSharedCaches: " + numSharedCaches + " (expected: >= 0)");
+        }
+
         if (directMemoryCacheAlignment < 0) {
             throw new IllegalArgumentException("directMemoryCacheAlignment: "
                     + directMemoryCacheAlignment + " (expected: >= 0)");
@@ -235,7 +397,7 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
             for (int i = 0; i < heapArenas.length; i ++) {
                 PoolArena.HeapArena arena = new PoolArena.HeapArena(this,
                         pageSize, maxOrder, pageShifts, chunkSize,
-                        directMemoryCacheAlignment);
+                        directMemoryCacheAlignment, useSizeClasses, maxCachedHugeBytes);
                 heapArenas[i] = arena;
                 metrics.add(arena);
             }
@@ -250,7 +412,8 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
             List<PoolArenaMetric> metrics = new ArrayList<PoolArenaMetric>(directArenas.length);
             for (int i = 0; i < directArenas.length; i ++) {
                 PoolArena.DirectArena arena = new PoolArena.DirectArena(
-                        this, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment);
+                        this, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment, useSizeClasses,
+                        maxCachedHugeBytes);
                 directArenas[i] = arena;
                 metrics.add(arena);
             }
@@ -259,6 +422,21 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
             directArenas = null;
             directArenaMetrics = Collections.emptyList();
         }
+
+        if (!useCacheForAllThreads && numSharedCaches > 0 && (heapArenas != null || directArenas != null)) {
+            sharedCaches = new PoolThreadCache[MathUtil.safeFindNextPositivePowerOfTwo(numSharedCaches)];
+            for (int i = 0; i < sharedCaches.length; i ++) {
+                sharedCaches[i] = new PoolThreadCache(
+                        heapArenas != null ? heapArenas[i % heapArenas.length] : null,
+                        directArenas != null ? directArenas[i % directArenas.length] : null,
+                        tinyCacheSize, smallCacheSize, normalCacheSize,
+                        DEFAULT_MAX_CACHED_BUFFER_CAPACITY, DEFAULT_CACHE_TRIM_INTERVAL, null, true, false);
+            }
+            sharedCacheMetrics = Collections.<PoolThreadCacheMetric>unmodifiableList(Arrays.asList(sharedCaches));
+        } else {
+            sharedCaches = null;
+            sharedCacheMetrics = Collections.emptyList();
+        }
         metric = new PooledByteBufAllocatorMetric(this);
     }
 
@@ -299,7 +477,7 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
 
     @Override
     protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
-        PoolThreadCache cache = threadCache.get();
+        PoolThreadCache cache = threadCache();
         PoolArena<byte[]> heapArena = cache.heapArena;
 
         final ByteBuf buf;
@@ -316,7 +494,7 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
 
     @Override
     protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
-        PoolThreadCache cache = threadCache.get();
+        PoolThreadCache cache = threadCache();
         PoolArena<ByteBuffer> directArena = cache.directArena;
 
         final ByteBuf buf;
@@ -366,6 +544,61 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         return DEFAULT_USE_CACHE_FOR_ALL_THREADS;
     }
 
+    /**
+     * Default use of fine-grained size classes - System Property: io.netty.allocator.useSizeClasses - default false
+     */
+    public static boolean defaultUseSizeClasses() {
+        return DEFAULT_USE_SIZE_CLASSES;
+    }
+
+    /**
+     * Default number of bytes of huge buffers cached by each arena - System Property:
+     * io.netty.allocator.maxCachedHugeBytes - default 0 (disabled)
+     */
+    public static int defaultMaxCachedHugeBytes() {
+        return DEFAULT_MAX_CACHED_HUGE_BYTES;
+    }
+
+    /**
+     * Default number of bytes the thread local caches may grow by when sized adaptively - System Property:
+     * io.netty.allocator.adaptiveCacheBudget - default 0 (fixed cache sizes)
+     */
+    public static long defaultAdaptiveCacheBudget() {
+        return DEFAULT_ADAPTIVE_CACHE_BUDGET;
+    }
+
+    /**
+     * Default number of caches that are shared by threads without a thread local cache - System Property:
+     * io.netty.allocator.numSharedCaches - default 0 (disabled)
+     */
+    public static int defaultNumSharedCaches() {
+        return DEFAULT_NUM_SHARED_CACHES;
+    }
+
+    /**
+     * Default use of thread confined reference counts - System Property:
+     * io.netty.allocator.threadConfinedRefCnt - default false
+     */
+    public static boolean defaultThreadConfinedRefCnt() {
+        return DEFAULT_THREAD_CONFINED_REF_CNT;
+    }
+
+    /**
+     * Default binding of each event loop to its own arena - System Property:
+     * io.netty.allocator.arenaPerEventLoop - default false
+     */
+    public static boolean defaultArenaPerEventLoop() {
+        return DEFAULT_ARENA_PER_EVENT_LOOP;
+    }
+
+    /**
+     * Default idle timeout after which unused memory is released - System Property:
+     * io.netty.allocator.idleTimeoutMillis - default 0 (disabled)
+     */
+    public static long defaultIdleTimeoutMillis() {
+        return DEFAULT_IDLE_TIMEOUT_MILLIS;
+    }
+
     /**
      * Default prefer direct - System Property: io.netty.noPreferDirect - default false
      */
@@ -423,6 +656,48 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         threadCache.remove();
     }
 
+    /**
+     * Trim the thread local cache of the calling {@link Thread}, which will give back the cached buffers that were
+     * not used since the last trim to their arenas.
+     *
+     * @return {@code true} if a cache for the calling {@link Thread} was found and trimmed.
+     */
+    public boolean trimCurrentThreadCache() {
+        // Use isSet() so we not create a cache if there is none yet.
+        if (!threadCache.isSet()) {
+            return false;
+        }
+        threadCache.get().trim();
+        return true;
+    }
+
+    /**
+     * Release the memory of all chunks that are completely unused and were not used to allocate buffers since the
+     * last call of this method, so it is given back to the OS. Calling this method periodically releases chunks
+     * that were idle for at least one period. The caches that are shared by threads without a thread local cache are
+     * trimmed first, so the buffers they did not reuse since the last call are given back as well.
+     *
+     * If {@code io.netty.allocator.idleTimeoutMillis} is set this is done automatically for all allocators that are
+     * used from {@link EventExecutor}s.
+     */
+    public void trimIdleChunks() {
+        if (sharedCaches != null) {
+            for (PoolThreadCache cache : sharedCaches) {
+                cache.trim();
+            }
+        }
+        trimIdleChunks(heapArenas);
+        trimIdleChunks(directArenas);
+    }
+
+    private static void trimIdleChunks(PoolArena<?>[] arenas) {
+        if (arenas != null) {
+            for (PoolArena<?> arena : arenas) {
+                arena.trimIdleChunks();
+            }
+        }
+    }
+
     final class PoolThreadLocalCache extends FastThreadLocal<PoolThreadCache> {
         private final boolean useCacheForAllThreads;
 
@@ -432,21 +707,42 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
 
         @Override
         protected synchronized PoolThreadCache initialValue() {
-            final PoolArena<byte[]> heapArena = leastUsedArena(heapArenas);
-            final PoolArena<ByteBuffer> directArena = leastUsedArena(directArenas);
+            final int eventLoopIndex = DEFAULT_ARENA_PER_EVENT_LOOP ? eventLoopIndex() : -1;
+            final PoolArena<byte[]> heapArena = eventLoopIndex < 0 ? leastUsedArena(heapArenas)
+                                                                   : arenaAt(heapArenas, eventLoopIndex);
+            final PoolArena<ByteBuffer> directArena = eventLoopIndex < 0 ? leastUsedArena(directArenas)
+                                                                         : arenaAt(directArenas, eventLoopIndex);
 
+            final PoolThreadCache cache;
             Thread current = Thread.currentThread();
             if (useCacheForAllThreads || current instanceof FastThreadLocalThread) {
-                return new PoolThreadCache(
+                cache = new PoolThreadCache(
                         heapArena, directArena, tinyCacheSize, smallCacheSize, normalCacheSize,
-                        DEFAULT_MAX_CACHED_BUFFER_CAPACITY, DEFAULT_CACHE_TRIM_INTERVAL);
+                        DEFAULT_MAX_CACHED_BUFFER_CAPACITY, DEFAULT_CACHE_TRIM_INTERVAL, adaptiveCacheBudget, false,
+                        threadConfinedRefCnt);
+            } else {
+                // No caching so just use 0 as sizes.
+                cache = new PoolThreadCache(heapArena, directArena, 0, 0, 0, 0, 0, null, false, false);
+            }
+            if (cache.isCaching()) {
+                // Only track the caches that hold memory, so threads which do not cache don't grow the registry.
+                threadCaches.put(cache, Boolean.TRUE);
+            }
+
+            if (DEFAULT_IDLE_TIMEOUT_MILLIS > 0) {
+                final EventExecutor executor = ThreadExecutorMap.currentExecutor();
+                if (executor != null) {
+                    TrimTask task = new TrimTask(cache);
+                    task.future = executor.scheduleAtFixedRate(
+                            task, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                }
             }
-            // No caching so just use 0 as sizes.
-            return new PoolThreadCache(heapArena, directArena, 0, 0, 0, 0, 0);
+            return cache;
         }
 
         @Override
         protected void onRemoval(PoolThreadCache threadCache) {
+            threadCaches.remove(threadCache);
             threadCache.free();
         }
 
@@ -465,6 +761,65 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
 
             return minArena;
         }
+
+        private <T> PoolArena<T> arenaAt(PoolArena<T>[] arenas, int index) {
+            if (arenas == null || arenas.length == 0) {
+                return null;
+            }
+            return arenas[index % arenas.length];
+        }
+
+        /**
+         * Returns the index of the event loop of the current thread in its group, or {@code -1} if the current thread
+         * is not an event loop of a group.
+         */
+        private int eventLoopIndex() {
+            EventExecutor executor = ThreadExecutorMap.currentExecutor();
+            if (executor == null || executor.parent() == null) {
+                return -1;
+            }
+            int index = 0;
+            for (EventExecutor e: executor.parent()) {
+                if (e == executor) {
+                    return index;
+                }
+                index++;
+            }
+            return -1;
+        }
+
+        /**
+         * Periodically trims the {@link PoolThreadCache} of an {@link EventExecutor} and the idle chunks of all
+         * arenas. The task runs in the {@link EventExecutor} that owns the {@link PoolThreadCache}, so no other
+         * {@link Thread} ever needs to access it.
+         */
+        private final class TrimTask implements Runnable {
+            private final PoolThreadCache cache;
+            Future<?> future;
+
+            TrimTask(PoolThreadCache cache) {
+                this.cache = cache;
+            }
+
+            @Override
+            public void run() {
+                // Use isSet() so we not create a new cache if the cache was removed in the meantime.
+                if (!isSet() || get() != cache) {
+                    future.cancel(false);
+                    return;
+                }
+                cache.trim();
+
+                // Chunks are released once they were unused for a whole period. Ensure we do this at most once per
+                // period even if multiple EventExecutors share this allocator.
+                long now = System.nanoTime();
+                long last = lastIdleChunksTrimNanos.get();
+                if (now - last >= TimeUnit.MILLISECONDS.toNanos(DEFAULT_IDLE_TIMEOUT_MILLIS) &&
+                        lastIdleChunksTrimNanos.compareAndSet(last, now)) {
+                    trimIdleChunks();
+                }
+            }
+        }
     }
 
     @Override
@@ -580,6 +935,42 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         return usedMemory(directArenas);
     }
 
+    final long allocatedHeapMemory() {
+        return allocatedMemory(heapArenas);
+    }
+
+    final long allocatedDirectMemory() {
+        return allocatedMemory(directArenas);
+    }
+
+    final List<PoolThreadCacheMetric> threadCaches() {
+        synchronized (threadCaches) {
+            return new ArrayList<PoolThreadCacheMetric>(threadCaches.keySet());
+        }
+    }
+
+    final List<PoolThreadCacheMetric> sharedCaches() {
+        return sharedCacheMetrics;
+    }
+
+    final long availableAdaptiveCacheBudget() {
+        return adaptiveCacheBudget == null ? 0 : adaptiveCacheBudget.get();
+    }
+
+    private static long allocatedMemory(PoolArena<?>[] arenas) {
+        if (arenas == null) {
+            return -1;
+        }
+        long allocated = 0;
+        for (PoolArena<?> arena : arenas) {
+            allocated += arena.numAllocatedBytes();
+            if (allocated < 0) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return allocated;
+    }
+
     private static long usedMemory(PoolArena<?>[] arenas) {
         if (arenas == null) {
             return -1;
@@ -595,6 +986,14 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     }
 
     final PoolThreadCache threadCache() {
+        if (sharedCaches != null) {
+            Thread current = Thread.currentThread();
+            if (!(current instanceof FastThreadLocalThread)) {
+                // Fibonacci hashing, so consecutive thread ids are spread over all shared caches.
+                long hash = current.getId() * 0x9E3779B97F4A7C15L;
+                return sharedCaches[(int) (hash >>> 32) & sharedCaches.length - 1];
+            }
+        }
         PoolThreadCache cache =  threadCache.get();
         assert cache != null;
         return cache;
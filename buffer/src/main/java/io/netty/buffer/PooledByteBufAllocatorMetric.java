@@ -66,6 +66,32 @@ public final class PooledByteBufAllocatorMetric implements ByteBufAllocatorMetri
         return allocator.numThreadLocalCaches();
     }
 
+    /**
+     * Return a {@link List} of the {@link PoolThreadCacheMetric}s of all thread local caches that are currently used
+     * by this {@link PooledByteBufAllocator}.
+     */
+    public List<PoolThreadCacheMetric> threadCaches() {
+        return allocator.threadCaches();
+    }
+
+    /**
+     * Return a {@link List} of the {@link PoolThreadCacheMetric}s of the caches that are shared by threads which do
+     * not use a thread local cache, see
+     * {@link PooledByteBufAllocator#PooledByteBufAllocator(boolean, int, int, int, int, int, int, int, boolean, int,
+     * boolean, int, long, int)}.
+     */
+    public List<PoolThreadCacheMetric> sharedCaches() {
+        return allocator.sharedCaches();
+    }
+
+    /**
+     * Return the number of bytes the thread local caches may still grow by if they are sized adaptively, or
+     * {@code 0} if the caches have a fixed size.
+     */
+    public long availableAdaptiveCacheBudget() {
+        return allocator.availableAdaptiveCacheBudget();
+    }
+
     /**
      * Return the size of the tiny cache.
      */
@@ -104,12 +130,32 @@ public final class PooledByteBufAllocatorMetric implements ByteBufAllocatorMetri
         return allocator.usedDirectMemory();
     }
 
+    /**
+     * Return the number of bytes of heap memory that are allocated from the chunks of the arenas, including buffers
+     * that are cached by thread local caches. In contrast to {@link #usedHeapMemory()}, which returns all memory that
+     * is retained by the arenas, this does not include the unused parts of the chunks.
+     */
+    public long allocatedHeapMemory() {
+        return allocator.allocatedHeapMemory();
+    }
+
+    /**
+     * Return the number of bytes of direct memory that are allocated from the chunks of the arenas, including buffers
+     * that are cached by thread local caches. In contrast to {@link #usedDirectMemory()}, which returns all memory
+     * that is retained by the arenas, this does not include the unused parts of the chunks.
+     */
+    public long allocatedDirectMemory() {
+        return allocator.allocatedDirectMemory();
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder(256);
         sb.append(StringUtil.simpleClassName(this))
                 .append("(usedHeapMemory: ").append(usedHeapMemory())
                 .append("; usedDirectMemory: ").append(usedDirectMemory())
+                .append("; allocatedHeapMemory: ").append(allocatedHeapMemory())
+                .append("; allocatedDirectMemory: ").append(allocatedDirectMemory())
                 .append("; numHeapArenas: ").append(numHeapArenas())
                 .append("; numDirectArenas: ").append(numDirectArenas())
                 .append("; tinyCacheSize: ").append(tinyCacheSize())
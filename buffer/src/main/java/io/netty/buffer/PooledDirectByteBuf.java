@@ -29,6 +29,8 @@ import java.nio.channels.ScatteringByteChannel;
 
 final class PooledDirectByteBuf extends PooledByteBuf<ByteBuffer> {
 
+    private static final VarHandleAccessor ACCESSOR = VarHandleAccessor.instance();
+
     private static final Recycler<PooledDirectByteBuf> RECYCLER = new Recycler<PooledDirectByteBuf>() {
         @Override
         protected PooledDirectByteBuf newObject(Handle<PooledDirectByteBuf> handle) {
@@ -63,11 +65,17 @@ final class PooledDirectByteBuf extends PooledByteBuf<ByteBuffer> {
 
     @Override
     protected short _getShort(int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getShort(memory, idx(index));
+        }
         return memory.getShort(idx(index));
     }
 
     @Override
     protected short _getShortLE(int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getShortLE(memory, idx(index));
+        }
         return ByteBufUtil.swapShort(_getShort(index));
     }
 
@@ -89,21 +97,33 @@ final class PooledDirectByteBuf extends PooledByteBuf<ByteBuffer> {
 
     @Override
     protected int _getInt(int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getInt(memory, idx(index));
+        }
         return memory.getInt(idx(index));
     }
 
     @Override
     protected int _getIntLE(int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getIntLE(memory, idx(index));
+        }
         return ByteBufUtil.swapInt(_getInt(index));
     }
 
     @Override
     protected long _getLong(int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getLong(memory, idx(index));
+        }
         return memory.getLong(idx(index));
     }
 
     @Override
     protected long _getLongLE(int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getLongLE(memory, idx(index));
+        }
         return ByteBufUtil.swapLong(_getLong(index));
     }
 
@@ -263,12 +283,20 @@ final class PooledDirectByteBuf extends PooledByteBuf<ByteBuffer> {
 
     @Override
     protected void _setShort(int index, int value) {
-        memory.putShort(idx(index), (short) value);
+        if (ACCESSOR != null) {
+            ACCESSOR.setShort(memory, idx(index), value);
+        } else {
+            memory.putShort(idx(index), (short) value);
+        }
     }
 
     @Override
     protected void _setShortLE(int index, int value) {
-        _setShort(index, ByteBufUtil.swapShort((short) value));
+        if (ACCESSOR != null) {
+            ACCESSOR.setShortLE(memory, idx(index), value);
+        } else {
+            _setShort(index, ByteBufUtil.swapShort((short) value));
+        }
     }
 
     @Override
@@ -289,22 +317,38 @@ final class PooledDirectByteBuf extends PooledByteBuf<ByteBuffer> {
 
     @Override
     protected void _setInt(int index, int value) {
-        memory.putInt(idx(index), value);
+        if (ACCESSOR != null) {
+            ACCESSOR.setInt(memory, idx(index), value);
+        } else {
+            memory.putInt(idx(index), value);
+        }
     }
 
     @Override
     protected void _setIntLE(int index, int value) {
-        _setInt(index, ByteBufUtil.swapInt(value));
+        if (ACCESSOR != null) {
+            ACCESSOR.setIntLE(memory, idx(index), value);
+        } else {
+            _setInt(index, ByteBufUtil.swapInt(value));
+        }
     }
 
     @Override
     protected void _setLong(int index, long value) {
-        memory.putLong(idx(index), value);
+        if (ACCESSOR != null) {
+            ACCESSOR.setLong(memory, idx(index), value);
+        } else {
+            memory.putLong(idx(index), value);
+        }
     }
 
     @Override
     protected void _setLongLE(int index, long value) {
-        _setLong(index, ByteBufUtil.swapLong(value));
+        if (ACCESSOR != null) {
+            ACCESSOR.setLongLE(memory, idx(index), value);
+        } else {
+            _setLong(index, ByteBufUtil.swapLong(value));
+        }
     }
 
     @Override
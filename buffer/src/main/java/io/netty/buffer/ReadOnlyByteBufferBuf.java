@@ -15,6 +15,7 @@
  */
 package io.netty.buffer;
 
+import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.StringUtil;
 
 import java.io.IOException;
@@ -35,21 +36,42 @@ class ReadOnlyByteBufferBuf extends AbstractReferenceCountedByteBuf {
 
     protected final ByteBuffer buffer;
     private final ByteBufAllocator allocator;
+    // The ByteBuffer to free once this buffer is deallocated, or null if it is not owned by this buffer.
+    private final ByteBuffer bufferToFree;
     private ByteBuffer tmpNioBuf;
 
     ReadOnlyByteBufferBuf(ByteBufAllocator allocator, ByteBuffer buffer) {
+        this(allocator, buffer, false);
+    }
+
+    /**
+     * @param doFree {@code true} if {@code buffer} is a direct buffer which should be freed (or unmapped if it is a
+     *               {@link java.nio.MappedByteBuffer}) once this buffer is deallocated.
+     */
+    ReadOnlyByteBufferBuf(ByteBufAllocator allocator, ByteBuffer buffer, boolean doFree) {
         super(buffer.remaining());
         if (!buffer.isReadOnly()) {
             throw new IllegalArgumentException("must be a readonly buffer: " + StringUtil.simpleClassName(buffer));
         }
 
+        if (doFree && !buffer.isDirect()) {
+            throw new IllegalArgumentException("must be a direct buffer: " + StringUtil.simpleClassName(buffer));
+        }
+
         this.allocator = allocator;
+        // Keep the original buffer as only this one can be freed, not the slice.
+        bufferToFree = doFree ? buffer : null;
         this.buffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
         writerIndex(this.buffer.limit());
     }
 
     @Override
-    protected void deallocate() { }
+    protected void deallocate() {
+        if (bufferToFree != null) {
+            tmpNioBuf = null;
+            PlatformDependent.freeDirectBuffer(bufferToFree);
+        }
+    }
 
     @Override
     public boolean isWritable() {
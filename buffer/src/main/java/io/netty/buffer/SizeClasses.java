@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+/**
+ * Fine-grained size classes used by a {@link PoolArena} for all sizes {@code >= 512} and {@code <= chunkSize}.
+ *
+ * Like in jemalloc 4 every doubling is split into four size classes, so each group {@code (2^k, 2^(k+1)]} contains
+ * the sizes {@code 2^k + i * 2^(k-2)} with {@code i = 1..4}:
+ *
+ * <pre>
+ * 512, 640, 768, 896, 1024, 1280, 1536, 1792, 2048, 2560, ..., 8192, 10240, 12288, 14336, 16384, 20480, ...
+ * </pre>
+ *
+ * This bounds the internal fragmentation to 25% instead of 50% when rounding up to the next power of two.
+ *
+ * Size classes that are a multiple of the page size are allocated as run of pages out of the {@link PoolChunk}.
+ * All other size classes (which are always smaller than {@code 4 * pageSize}) are served by {@link PoolSubpage}s which
+ * use a run of one or more pages, sized so that at most 1/8 of the run is wasted.
+ */
+final class SizeClasses {
+
+    static final int MIN_SIZE = 512;
+    private static final int LOG2_MIN_SIZE = 9;
+    // 2^2 = 4 size classes per doubling.
+    private static final int LOG2_GROUP_SIZE = 2;
+
+    private final int pageMask;
+    private final int chunkSize;
+
+    // Maps a size index to the index of the subpage pool or the index of the normal size class.
+    private final int[] sizeIdx2PoolIdx;
+    // The number of pages of the runs used by each subpage pool.
+    private final int[] subpageRunPages;
+    private final int[] normalSizes;
+
+    SizeClasses(int pageSize, int chunkSize) {
+        this.chunkSize = chunkSize;
+        pageMask = pageSize - 1;
+
+        int numSizes = sizeIdx(chunkSize) + 1;
+        sizeIdx2PoolIdx = new int[numSizes];
+        int[] subpageRunPages = new int[numSizes];
+        int[] normalSizes = new int[numSizes];
+        int numSubpageSizes = 0;
+        int numNormalSizes = 0;
+        for (int sizeIdx = 0; sizeIdx < numSizes; sizeIdx++) {
+            int size = sizeOf(sizeIdx);
+            assert sizeIdx(size) == sizeIdx;
+            if ((size & pageMask) != 0) {
+                subpageRunPages[numSubpageSizes] = runPages(size, pageSize);
+                sizeIdx2PoolIdx[sizeIdx] = numSubpageSizes++;
+            } else {
+                normalSizes[numNormalSizes] = size;
+                sizeIdx2PoolIdx[sizeIdx] = numNormalSizes++;
+            }
+        }
+        this.subpageRunPages = copyOf(subpageRunPages, numSubpageSizes);
+        this.normalSizes = copyOf(normalSizes, numNormalSizes);
+    }
+
+    /**
+     * Returns the number of pages of the run used for subpages of {@code size} bytes, which is the smallest number
+     * of pages that wastes at most 1/8 of the run. As {@code size} is a multiple of 128 and smaller than
+     * {@code 4 * pageSize} this is at most 7.
+     */
+    private static int runPages(int size, int pageSize) {
+        int runPages = 1;
+        for (;;) {
+            int runSize = runPages * pageSize;
+            if (runSize >= size && (runSize % size) << 3 <= runSize) {
+                return runPages;
+            }
+            runPages++;
+        }
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * Returns the smallest size class which is {@code >= size}, where {@code size} is {@code >= 512}.
+     */
+    static int normalizeSize(int size) {
+        if (size <= MIN_SIZE) {
+            return MIN_SIZE;
+        }
+        // The distance between two size classes of the group that contains size.
+        int delta = 1 << log2(size - 1) - LOG2_GROUP_SIZE;
+        return size + delta - 1 & -delta;
+    }
+
+    /**
+     * Returns the index of the size class {@code normSize}.
+     */
+    static int sizeIdx(int normSize) {
+        if (normSize == MIN_SIZE) {
+            return 0;
+        }
+        int log2Group = log2(normSize - 1);
+        int mod = (normSize - 1 >>> log2Group - LOG2_GROUP_SIZE) & (1 << LOG2_GROUP_SIZE) - 1;
+        return (log2Group - LOG2_MIN_SIZE << LOG2_GROUP_SIZE) + mod + 1;
+    }
+
+    /**
+     * Returns the size class with the given index.
+     */
+    static int sizeOf(int sizeIdx) {
+        if (sizeIdx == 0) {
+            return MIN_SIZE;
+        }
+        int log2Group = (sizeIdx - 1 >>> LOG2_GROUP_SIZE) + LOG2_MIN_SIZE;
+        int mod = (sizeIdx - 1 & (1 << LOG2_GROUP_SIZE) - 1) + 1;
+        return (1 << log2Group) + (mod << log2Group - LOG2_GROUP_SIZE);
+    }
+
+    /**
+     * Returns {@code true} if the size class {@code normSize} is served by a {@link PoolSubpage}.
+     */
+    boolean isSubpage(int normSize) {
+        return (normSize & pageMask) != 0 && normSize < chunkSize;
+    }
+
+    /**
+     * Returns the number of subpage pools.
+     */
+    int numSubpageSizes() {
+        return subpageRunPages.length;
+    }
+
+    /**
+     * Returns the index of the subpage pool for the size class {@code normSize}.
+     */
+    int subpageIdx(int normSize) {
+        assert isSubpage(normSize);
+        return sizeIdx2PoolIdx[sizeIdx(normSize)];
+    }
+
+    /**
+     * Returns the number of pages of the runs used by the subpage pool with the given index.
+     */
+    int subpageRunPages(int subpageIdx) {
+        return subpageRunPages[subpageIdx];
+    }
+
+    /**
+     * Returns the index of the size class {@code normSize} among all size classes that are a multiple of the page
+     * size.
+     */
+    int normalIdx(int normSize) {
+        assert !isSubpage(normSize);
+        return sizeIdx2PoolIdx[sizeIdx(normSize)];
+    }
+
+    /**
+     * Returns the number of size classes that are a multiple of the page size and {@code <= maxSize}.
+     */
+    int numNormalSizes(int maxSize) {
+        int num = 0;
+        while (num < normalSizes.length && normalSizes[num] <= maxSize) {
+            num++;
+        }
+        return num;
+    }
+
+    private static int log2(int val) {
+        return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(val);
+    }
+}
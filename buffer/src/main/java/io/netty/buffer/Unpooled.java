@@ -16,14 +16,22 @@
 package io.netty.buffer;
 
 import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
@@ -61,6 +69,13 @@ import java.util.List;
  * you want to create a buffer which is composed of more than one array to
  * reduce the number of memory copy.
  *
+ * <h3>Creating a memory-mapped buffer</h3>
+ *
+ * Memory-mapped buffer is a read-only buffer which maps a region of a file
+ * into memory, so the content of the file can be read without copying it into
+ * heap or direct memory first.  The region is unmapped as soon as the buffer is
+ * released, if the platform allows it.  The methods are named {@code mappedBuffer()}.
+ *
  * <h3>Creating a copied buffer</h3>
  *
  * Copied buffer is a deep copy of one or more existing byte arrays, byte
@@ -71,8 +86,12 @@ import java.util.List;
  */
 public final class Unpooled {
 
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(Unpooled.class);
+
     private static final ByteBufAllocator ALLOC = UnpooledByteBufAllocator.DEFAULT;
 
+    private static final AtomicBoolean mappedBufferWarned = new AtomicBoolean();
+
     /**
      * Big endian byte order.
      */
@@ -364,6 +383,63 @@ public final class Unpooled {
         return EMPTY_BUFFER;
     }
 
+    /**
+     * Creates a new read-only big-endian buffer which maps the whole content of the specified {@code file} into
+     * memory.  See {@link #mappedBuffer(FileChannel, long, int)} for details.
+     *
+     * @throws IllegalArgumentException if the file is bigger than {@link Integer#MAX_VALUE} bytes, use
+     *                                  {@link #mappedBuffer(FileChannel, long, int)} to map it in regions.
+     */
+    public static ByteBuf mappedBuffer(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("file too large to be mapped at once: " + file + " (" + length +
+                        " bytes, expected: <= " + Integer.MAX_VALUE + ')');
+            }
+            // The mapping stays valid after the file is closed.
+            return mappedBuffer(raf.getChannel(), 0, (int) length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Creates a new read-only big-endian buffer which maps the region of {@code length} bytes starting at
+     * {@code position} of the specified {@code channel} into memory.  The new buffer's {@code readerIndex} and
+     * {@code writerIndex} are {@code 0} and {@code length} respectively.
+     * <p>
+     * The region is unmapped as soon as the buffer is released, instead of when the mapping is garbage collected.
+     * This requires {@code sun.misc.Unsafe}. Without it the region stays mapped until the garbage collector
+     * reclaims the mapping, and a warning is logged the first time a region is mapped.
+     * Slices and duplicates of the buffer share its memory and reference count, so a large region can be split
+     * into smaller windows without copying.  None of these may be accessed after the buffer was released.
+     * <p>
+     * In contrast to a {@code FileRegion} the buffer can be used with any codec and handler, including
+     * {@code SslHandler}.
+     */
+    public static ByteBuf mappedBuffer(FileChannel channel, long position, int length) throws IOException {
+        if (position < 0) {
+            throw new IllegalArgumentException("position: " + position + " (expected: >= 0)");
+        }
+        if (length < 0) {
+            throw new IllegalArgumentException("length: " + length + " (expected: >= 0)");
+        }
+        if (length == 0) {
+            return EMPTY_BUFFER;
+        }
+        if (!PlatformDependent.canFreeDirectBuffer() && mappedBufferWarned.compareAndSet(false, true)) {
+            logger.warn("Mapped buffers cannot be unmapped on this platform, so a mapped region is only unmapped " +
+                    "once it is garbage collected. Enable sun.misc.Unsafe to unmap it as soon as it is released.");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        if (PlatformDependent.hasUnsafe()) {
+            return new ReadOnlyUnsafeDirectByteBuf(ALLOC, buffer, true);
+        }
+        return new ReadOnlyByteBufferBuf(ALLOC, buffer, true);
+    }
+
     /**
      * Returns a new big-endian composite buffer with no components.
      */
@@ -34,6 +34,8 @@ import java.nio.channels.ScatteringByteChannel;
  */
 public class UnpooledDirectByteBuf extends AbstractReferenceCountedByteBuf {
 
+    private static final VarHandleAccessor ACCESSOR = VarHandleAccessor.instance();
+
     private final ByteBufAllocator alloc;
 
     private ByteBuffer buffer;
@@ -227,11 +229,17 @@ public class UnpooledDirectByteBuf extends AbstractReferenceCountedByteBuf {
 
     @Override
     protected short _getShort(int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getShort(buffer, index);
+        }
         return buffer.getShort(index);
     }
 
     @Override
     protected short _getShortLE(int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getShortLE(buffer, index);
+        }
         return ByteBufUtil.swapShort(buffer.getShort(index));
     }
 
@@ -263,11 +271,17 @@ public class UnpooledDirectByteBuf extends AbstractReferenceCountedByteBuf {
 
     @Override
     protected int _getInt(int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getInt(buffer, index);
+        }
         return buffer.getInt(index);
     }
 
     @Override
     protected int _getIntLE(int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getIntLE(buffer, index);
+        }
         return ByteBufUtil.swapInt(buffer.getInt(index));
     }
 
@@ -279,11 +293,17 @@ public class UnpooledDirectByteBuf extends AbstractReferenceCountedByteBuf {
 
     @Override
     protected long _getLong(int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getLong(buffer, index);
+        }
         return buffer.getLong(index);
     }
 
     @Override
     protected long _getLongLE(int index) {
+        if (ACCESSOR != null) {
+            return ACCESSOR.getLongLE(buffer, index);
+        }
         return ByteBufUtil.swapLong(buffer.getLong(index));
     }
 
@@ -380,12 +400,20 @@ public class UnpooledDirectByteBuf extends AbstractReferenceCountedByteBuf {
 
     @Override
     protected void _setShort(int index, int value) {
-        buffer.putShort(index, (short) value);
+        if (ACCESSOR != null) {
+            ACCESSOR.setShort(buffer, index, value);
+        } else {
+            buffer.putShort(index, (short) value);
+        }
     }
 
     @Override
     protected void _setShortLE(int index, int value) {
-        buffer.putShort(index, ByteBufUtil.swapShort((short) value));
+        if (ACCESSOR != null) {
+            ACCESSOR.setShortLE(buffer, index, value);
+        } else {
+            buffer.putShort(index, ByteBufUtil.swapShort((short) value));
+        }
     }
 
     @Override
@@ -418,12 +446,20 @@ public class UnpooledDirectByteBuf extends AbstractReferenceCountedByteBuf {
 
     @Override
     protected void _setInt(int index, int value) {
-        buffer.putInt(index, value);
+        if (ACCESSOR != null) {
+            ACCESSOR.setInt(buffer, index, value);
+        } else {
+            buffer.putInt(index, value);
+        }
     }
 
     @Override
     protected void _setIntLE(int index, int value) {
-        buffer.putInt(index, ByteBufUtil.swapInt(value));
+        if (ACCESSOR != null) {
+            ACCESSOR.setIntLE(buffer, index, value);
+        } else {
+            buffer.putInt(index, ByteBufUtil.swapInt(value));
+        }
     }
 
     @Override
@@ -435,12 +471,20 @@ public class UnpooledDirectByteBuf extends AbstractReferenceCountedByteBuf {
 
     @Override
     protected void _setLong(int index, long value) {
-        buffer.putLong(index, value);
+        if (ACCESSOR != null) {
+            ACCESSOR.setLong(buffer, index, value);
+        } else {
+            buffer.putLong(index, value);
+        }
     }
 
     @Override
     protected void _setLongLE(int index, long value) {
-        buffer.putLong(index, ByteBufUtil.swapLong(value));
+        if (ACCESSOR != null) {
+            ACCESSOR.setLongLE(buffer, index, value);
+        } else {
+            buffer.putLong(index, ByteBufUtil.swapLong(value));
+        }
     }
 
     @Override
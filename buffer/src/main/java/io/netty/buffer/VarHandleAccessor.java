@@ -0,0 +1,144 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+
+/**
+ * Access to the memory of heap and direct buffers via {@code java.lang.invoke.VarHandle}s, which allows to read and
+ * write multi-byte values with a single memory access on Java 9+ if {@code sun.misc.Unsafe} is not available. If it is
+ * available the buffers keep using the existing code paths, so the common setup is not affected.
+ *
+ * The implementation lives in {@code src/main/java9} as it needs to be compiled with {@code --release 9} to be able
+ * to invoke the signature polymorphic methods of {@code VarHandle}. It is only loaded when running on Java 9+, so
+ * {@link #instance()} returns {@code null} if it is not available. All values are read and written in the byte order
+ * that is specified by the method name, independent of the {@link java.nio.ByteOrder} of a {@link ByteBuffer}.
+ */
+abstract class VarHandleAccessor {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(VarHandleAccessor.class);
+
+    private static final String IMPLEMENTATION = "io.netty.buffer.VarHandleAccessorJava9";
+
+    private static final VarHandleAccessor INSTANCE;
+
+    static {
+        VarHandleAccessor accessor = null;
+        Throwable error = null;
+        if (SystemPropertyUtil.getBoolean("io.netty.noVarHandle", false)) {
+            error = new UnsupportedOperationException("io.netty.noVarHandle: true");
+        } else if (PlatformDependent.hasUnsafe()) {
+            error = new UnsupportedOperationException("sun.misc.Unsafe is used instead");
+        } else {
+            Object maybeAccessor = newAccessor();
+            if (maybeAccessor instanceof VarHandleAccessor) {
+                accessor = (VarHandleAccessor) maybeAccessor;
+            } else {
+                error = (Throwable) maybeAccessor;
+            }
+        }
+        if (error == null) {
+            logger.debug("java.lang.invoke.VarHandle: available");
+        } else {
+            logger.debug("java.lang.invoke.VarHandle: unavailable", error);
+        }
+        INSTANCE = accessor;
+    }
+
+    /**
+     * Returns a new {@link VarHandleAccessor}, or the {@link Throwable} that prevented its creation.
+     */
+    static Object newAccessor() {
+        if (PlatformDependent.javaVersion() < 9) {
+            return new UnsupportedOperationException("java.lang.invoke.VarHandle requires Java 9+");
+        }
+        return AccessController.doPrivileged(new PrivilegedAction<Object>() {
+            @Override
+            public Object run() {
+                try {
+                    Class<?> clazz = Class.forName(
+                            IMPLEMENTATION, true, PlatformDependent.getClassLoader(VarHandleAccessor.class));
+                    return clazz.getDeclaredConstructor().newInstance();
+                } catch (Throwable cause) {
+                    // Either the sources for Java 9 were not compiled or the VarHandles could not be created.
+                    return cause;
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the {@link VarHandleAccessor} or {@code null} if {@code VarHandle}s can not or should not be used.
+     */
+    static VarHandleAccessor instance() {
+        return INSTANCE;
+    }
+
+    abstract short getShort(byte[] array, int index);
+
+    abstract short getShortLE(byte[] array, int index);
+
+    abstract int getInt(byte[] array, int index);
+
+    abstract int getIntLE(byte[] array, int index);
+
+    abstract long getLong(byte[] array, int index);
+
+    abstract long getLongLE(byte[] array, int index);
+
+    abstract void setShort(byte[] array, int index, int value);
+
+    abstract void setShortLE(byte[] array, int index, int value);
+
+    abstract void setInt(byte[] array, int index, int value);
+
+    abstract void setIntLE(byte[] array, int index, int value);
+
+    abstract void setLong(byte[] array, int index, long value);
+
+    abstract void setLongLE(byte[] array, int index, long value);
+
+    abstract short getShort(ByteBuffer buffer, int index);
+
+    abstract short getShortLE(ByteBuffer buffer, int index);
+
+    abstract int getInt(ByteBuffer buffer, int index);
+
+    abstract int getIntLE(ByteBuffer buffer, int index);
+
+    abstract long getLong(ByteBuffer buffer, int index);
+
+    abstract long getLongLE(ByteBuffer buffer, int index);
+
+    abstract void setShort(ByteBuffer buffer, int index, int value);
+
+    abstract void setShortLE(ByteBuffer buffer, int index, int value);
+
+    abstract void setInt(ByteBuffer buffer, int index, int value);
+
+    abstract void setIntLE(ByteBuffer buffer, int index, int value);
+
+    abstract void setLong(ByteBuffer buffer, int index, long value);
+
+    abstract void setLongLE(ByteBuffer buffer, int index, long value);
+}
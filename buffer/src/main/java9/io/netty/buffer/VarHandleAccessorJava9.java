@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * {@link VarHandleAccessor} that uses the {@link VarHandle}s of {@link MethodHandles#byteArrayViewVarHandle} and
+ * {@link MethodHandles#byteBufferViewVarHandle}. Only loaded on Java 9+, see {@link VarHandleAccessor#instance()}.
+ */
+final class VarHandleAccessorJava9 extends VarHandleAccessor {
+
+    private static final VarHandle SHORT_ARRAY_BE =
+            MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle SHORT_ARRAY_LE =
+            MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_ARRAY_BE =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT_ARRAY_LE =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG_ARRAY_BE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG_ARRAY_LE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle SHORT_BUFFER_BE =
+            MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle SHORT_BUFFER_LE =
+            MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_BUFFER_BE =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT_BUFFER_LE =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG_BUFFER_BE =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG_BUFFER_LE =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    @Override
+    short getShort(byte[] array, int index) {
+        return (short) SHORT_ARRAY_BE.get(array, index);
+    }
+
+    @Override
+    short getShortLE(byte[] array, int index) {
+        return (short) SHORT_ARRAY_LE.get(array, index);
+    }
+
+    @Override
+    int getInt(byte[] array, int index) {
+        return (int) INT_ARRAY_BE.get(array, index);
+    }
+
+    @Override
+    int getIntLE(byte[] array, int index) {
+        return (int) INT_ARRAY_LE.get(array, index);
+    }
+
+    @Override
+    long getLong(byte[] array, int index) {
+        return (long) LONG_ARRAY_BE.get(array, index);
+    }
+
+    @Override
+    long getLongLE(byte[] array, int index) {
+        return (long) LONG_ARRAY_LE.get(array, index);
+    }
+
+    @Override
+    void setShort(byte[] array, int index, int value) {
+        SHORT_ARRAY_BE.set(array, index, (short) value);
+    }
+
+    @Override
+    void setShortLE(byte[] array, int index, int value) {
+        SHORT_ARRAY_LE.set(array, index, (short) value);
+    }
+
+    @Override
+    void setInt(byte[] array, int index, int value) {
+        INT_ARRAY_BE.set(array, index, value);
+    }
+
+    @Override
+    void setIntLE(byte[] array, int index, int value) {
+        INT_ARRAY_LE.set(array, index, value);
+    }
+
+    @Override
+    void setLong(byte[] array, int index, long value) {
+        LONG_ARRAY_BE.set(array, index, value);
+    }
+
+    @Override
+    void setLongLE(byte[] array, int index, long value) {
+        LONG_ARRAY_LE.set(array, index, value);
+    }
+
+    @Override
+    short getShort(ByteBuffer buffer, int index) {
+        return (short) SHORT_BUFFER_BE.get(buffer, index);
+    }
+
+    @Override
+    short getShortLE(ByteBuffer buffer, int index) {
+        return (short) SHORT_BUFFER_LE.get(buffer, index);
+    }
+
+    @Override
+    int getInt(ByteBuffer buffer, int index) {
+        return (int) INT_BUFFER_BE.get(buffer, index);
+    }
+
+    @Override
+    int getIntLE(ByteBuffer buffer, int index) {
+        return (int) INT_BUFFER_LE.get(buffer, index);
+    }
+
+    @Override
+    long getLong(ByteBuffer buffer, int index) {
+        return (long) LONG_BUFFER_BE.get(buffer, index);
+    }
+
+    @Override
+    long getLongLE(ByteBuffer buffer, int index) {
+        return (long) LONG_BUFFER_LE.get(buffer, index);
+    }
+
+    @Override
+    void setShort(ByteBuffer buffer, int index, int value) {
+        SHORT_BUFFER_BE.set(buffer, index, (short) value);
+    }
+
+    @Override
+    void setShortLE(ByteBuffer buffer, int index, int value) {
+        SHORT_BUFFER_LE.set(buffer, index, (short) value);
+    }
+
+    @Override
+    void setInt(ByteBuffer buffer, int index, int value) {
+        INT_BUFFER_BE.set(buffer, index, value);
+    }
+
+    @Override
+    void setIntLE(ByteBuffer buffer, int index, int value) {
+        INT_BUFFER_LE.set(buffer, index, value);
+    }
+
+    @Override
+    void setLong(ByteBuffer buffer, int index, long value) {
+        LONG_BUFFER_BE.set(buffer, index, value);
+    }
+
+    @Override
+    void setLongLE(ByteBuffer buffer, int index, long value) {
+        LONG_BUFFER_LE.set(buffer, index, value);
+    }
+}
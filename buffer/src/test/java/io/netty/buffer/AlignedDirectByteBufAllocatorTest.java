@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assume.assumeTrue;
+
+public class AlignedDirectByteBufAllocatorTest {
+
+    @Test
+    public void testAlignment() {
+        testAlignment(AlignedDirectByteBufAllocator.DEFAULT_BLOCK_SIZE);
+    }
+
+    @Test
+    public void testAlignmentLargerThanPageSize() {
+        testAlignment(16384);
+    }
+
+    private static void testAlignment(int blockSize) {
+        assumeTrue(PooledByteBufAllocator.isDirectMemoryCacheAlignmentSupported());
+        AlignedDirectByteBufAllocator allocator = new AlignedDirectByteBufAllocator(blockSize);
+        assertEquals(blockSize, allocator.blockSize());
+        for (int size : new int[] { 1, 100, blockSize, blockSize + 1, 70000, 20 * 1024 * 1024 }) {
+            ByteBuf buffer = allocator.directBuffer(size);
+            try {
+                assertTrue(buffer.hasMemoryAddress());
+                assertEquals(0, buffer.memoryAddress() & blockSize - 1);
+                assertEquals(allocator.alignedLength(size), buffer.capacity());
+            } finally {
+                buffer.release();
+            }
+        }
+    }
+
+    @Test
+    public void testCapacityLimitedByMaxCapacity() {
+        assumeTrue(PooledByteBufAllocator.isDirectMemoryCacheAlignmentSupported());
+        AlignedDirectByteBufAllocator allocator = new AlignedDirectByteBufAllocator();
+        ByteBuf buffer = allocator.directBuffer(100, 200);
+        try {
+            assertEquals(200, buffer.capacity());
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBlockSize() {
+        new AlignedDirectByteBufAllocator(1000);
+    }
+
+    @Test
+    public void testAlignedLength() {
+        assertEquals(0, DirectFileIo.alignedLength(0, 512));
+        assertEquals(512, DirectFileIo.alignedLength(1, 512));
+        assertEquals(512, DirectFileIo.alignedLength(512, 512));
+        assertEquals(1024, DirectFileIo.alignedLength(513, 512));
+    }
+
+    @Test
+    public void testReadWrite() throws IOException {
+        assumeTrue(PooledByteBufAllocator.isDirectMemoryCacheAlignmentSupported());
+        File file = File.createTempFile("netty-", ".tmp");
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            testReadWrite(raf.getChannel());
+        } finally {
+            raf.close();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testDirectReadWrite() throws IOException {
+        assumeTrue(PooledByteBufAllocator.isDirectMemoryCacheAlignmentSupported());
+        assumeTrue(DirectFileIo.isAvailable());
+        File file = File.createTempFile("netty-", ".tmp");
+        file.deleteOnExit();
+        FileChannel channel;
+        try {
+            channel = DirectFileIo.open(file, true);
+        } catch (IOException e) {
+            // The file system does not support O_DIRECT, like tmpfs.
+            file.delete();
+            assumeNoException(e);
+            return;
+        }
+        try {
+            testReadWrite(channel);
+        } finally {
+            channel.close();
+            file.delete();
+        }
+    }
+
+    private static void testReadWrite(FileChannel channel) throws IOException {
+        AlignedDirectByteBufAllocator allocator = new AlignedDirectByteBufAllocator();
+        int blockSize = allocator.blockSize();
+        ByteBuf src = allocator.directBuffer(3 * blockSize);
+        ByteBuf dst = allocator.directBuffer(blockSize);
+        try {
+            for (int i = 0; i < 3 * blockSize; i++) {
+                src.writeByte(i);
+            }
+            assertEquals(blockSize, DirectFileIo.write(channel, src, 0, blockSize, blockSize));
+            assertEquals(blockSize, src.readerIndex());
+            assertEquals(2 * blockSize, DirectFileIo.write(channel, src, blockSize, 2 * blockSize, blockSize));
+            assertEquals(0, src.readableBytes());
+
+            // The destination grows but stays aligned.
+            assertEquals(3 * blockSize, DirectFileIo.read(channel, dst, 0, 4 * blockSize, blockSize));
+            assertEquals(0, dst.memoryAddress() & blockSize - 1);
+            assertEquals(src.resetReaderIndex(), dst);
+            assertEquals(-1, DirectFileIo.read(channel, dst, 3 * blockSize, blockSize, blockSize));
+        } finally {
+            src.release();
+            dst.release();
+        }
+    }
+
+    @Test
+    public void testMisaligned() throws IOException {
+        assumeTrue(PooledByteBufAllocator.isDirectMemoryCacheAlignmentSupported());
+        AlignedDirectByteBufAllocator allocator = new AlignedDirectByteBufAllocator();
+        int blockSize = allocator.blockSize();
+        ByteBuf buffer = allocator.directBuffer(2 * blockSize).writeZero(2 * blockSize);
+        File file = File.createTempFile("netty-", ".tmp");
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            assertMisaligned(channel, buffer, 1, blockSize, blockSize);
+            assertMisaligned(channel, buffer, 0, blockSize - 1, blockSize);
+            buffer.readerIndex(1);
+            assertMisaligned(channel, buffer, 0, blockSize, blockSize);
+            buffer.readerIndex(0);
+            assertMisaligned(channel, Unpooled.buffer(blockSize).writeZero(blockSize), 0, blockSize, blockSize);
+            assertEquals(0, channel.size());
+        } finally {
+            raf.close();
+            file.delete();
+            buffer.release();
+        }
+    }
+
+    private static void assertMisaligned(FileChannel channel, ByteBuf buffer, long position, int length,
+                                         int blockSize) throws IOException {
+        try {
+            DirectFileIo.write(channel, buffer, position, length, blockSize);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.ResourceLeakDetector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ByteBufAllocationProfilerTest {
+
+    private ResourceLeakDetector.Level level;
+
+    @Before
+    public void setUp() {
+        level = ResourceLeakDetector.getLevel();
+        ByteBufAllocationProfiler.reset();
+    }
+
+    @After
+    public void tearDown() {
+        ResourceLeakDetector.setLevel(level);
+        ByteBufAllocationProfiler.setSampleInterval(0);
+        ByteBufAllocationProfiler.reset();
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertEquals(0, ByteBufAllocationProfiler.sampleInterval());
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(false);
+        ByteBuf buffer = allocator.heapBuffer(16);
+        assertTrue(buffer.release());
+        assertTrue(ByteBufAllocationProfiler.sites().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeSampleInterval() {
+        ByteBufAllocationProfiler.setSampleInterval(-1);
+    }
+
+    @Test
+    public void testSampleWithoutLeakDetection() {
+        testSample(ResourceLeakDetector.Level.DISABLED);
+    }
+
+    @Test
+    public void testSampleWithSimpleLeakDetection() {
+        testSample(ResourceLeakDetector.Level.SIMPLE);
+    }
+
+    @Test
+    public void testSampleWithParanoidLeakDetection() {
+        testSample(ResourceLeakDetector.Level.PARANOID);
+    }
+
+    private static void testSample(ResourceLeakDetector.Level level) {
+        ResourceLeakDetector.setLevel(level);
+        ByteBufAllocationProfiler.setSampleInterval(1);
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true);
+
+        // Both buffers are allocated by the same site.
+        ByteBuf[] buffers = new ByteBuf[2];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = allocator.directBuffer(i == 0 ? 1000 : 100);
+        }
+        ByteBuf released = buffers[0];
+        ByteBuf live = buffers[1];
+        ByteBuf slice = released.retainedSlice();
+        assertFalse(released.release());
+        assertEquals(0, ByteBufAllocationProfiler.sites().get(0).numReleased());
+        assertTrue(slice.release());
+
+        List<ByteBufAllocationProfiler.Site> sites = ByteBufAllocationProfiler.sites();
+        assertEquals(1, sites.size());
+        ByteBufAllocationProfiler.Site site = sites.get(0);
+        assertEquals(2, site.numSamples());
+        assertEquals(1, site.numReleased());
+        assertEquals(1, site.numLive());
+        // The size classes of the pooled buffers.
+        assertEquals(1024 + 112, site.sampledBytes());
+        assertEquals(1024 + 112, site.estimatedBytes());
+        assertEquals(Long.valueOf(1), site.sizeClasses().get(1024));
+        assertEquals(Long.valueOf(1), site.sizeClasses().get(112));
+        assertTrue(site.maxLifetime(TimeUnit.NANOSECONDS) > 0);
+        assertEquals(site.maxLifetime(TimeUnit.NANOSECONDS), site.averageLifetime(TimeUnit.NANOSECONDS));
+        StackTraceElement element = site.stackTrace().get(0);
+        assertEquals(ByteBufAllocationProfilerTest.class.getName(), element.getClassName());
+        assertEquals("testSample", element.getMethodName());
+
+        assertTrue(live.release());
+        assertEquals(0, ByteBufAllocationProfiler.sites().get(0).numLive());
+    }
+
+    @Test
+    public void testSitesOrderedByEstimatedBytes() {
+        ByteBufAllocationProfiler.setSampleInterval(1);
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(false);
+        allocator.heapBuffer(10).release();
+        allocator.heapBuffer(20).release();
+        ByteBufAllocationProfiler.setSampleInterval(0);
+        allocator.heapBuffer(30).release();
+
+        List<ByteBufAllocationProfiler.Site> sites = ByteBufAllocationProfiler.sites();
+        assertEquals(2, sites.size());
+        assertEquals(32, sites.get(0).estimatedBytes());
+        assertEquals(16, sites.get(1).estimatedBytes());
+
+        String dump = ByteBufAllocationProfiler.dump();
+        assertTrue(dump, dump.contains("sites: 2"));
+        assertTrue(dump, dump.contains("testSitesOrderedByEstimatedBytes"));
+
+        ByteBufAllocationProfiler.reset();
+        assertTrue(ByteBufAllocationProfiler.sites().isEmpty());
+    }
+
+    @Test
+    public void testReleaseAfterResetIsNotAccounted() {
+        ByteBufAllocationProfiler.setSampleInterval(1);
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(false);
+        ByteBuf buffer = allocator.heapBuffer(10);
+        ByteBufAllocationProfiler.reset();
+
+        assertTrue(buffer.release());
+        assertTrue(ByteBufAllocationProfiler.sites().isEmpty());
+        assertEquals(0, ByteBufAllocationProfiler.droppedSamples());
+    }
+}
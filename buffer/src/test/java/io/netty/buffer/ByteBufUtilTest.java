@@ -671,6 +671,142 @@ public class ByteBufUtilTest {
         }
     }
 
+    @Test
+    public void testIndexOfAllPositions() {
+        testIndexOfAllPositions(Unpooled.buffer(64));
+        testIndexOfAllPositions(Unpooled.directBuffer(64));
+        testIndexOfAllPositions(Unpooled.wrappedBuffer(new byte[70], 3, 64).clear());
+    }
+
+    private static void testIndexOfAllPositions(ByteBuf buffer) {
+        try {
+            buffer.writeZero(buffer.capacity());
+            for (int pos = 0; pos < buffer.capacity(); pos++) {
+                // Also use a value with the high bit set and one that differs only in the high bit.
+                for (byte value : new byte[] { 1, (byte) 0x81, (byte) 0xFF }) {
+                    buffer.setByte(pos, value);
+                    for (int from = 0; from <= pos; from += 3) {
+                        assertEquals(pos, ByteBufUtil.indexOf(buffer, from, buffer.capacity(), value));
+                        assertEquals(pos, buffer.indexOf(from, pos + 1, value));
+                        assertEquals(-1, ByteBufUtil.indexOf(buffer, from, pos, value));
+                    }
+                    assertEquals(-1, ByteBufUtil.indexOf(buffer, pos + 1, buffer.capacity(), value));
+                    assertEquals(-1, ByteBufUtil.indexOf(buffer, 0, buffer.capacity(), (byte) (value ^ 0x80)));
+                    buffer.setByte(pos, 0);
+                }
+            }
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testIndexOfFindsFirstOccurrence() {
+        ByteBuf buffer = Unpooled.copiedBuffer("abcdefgh\r\nijklmn\r\nopqrstuvwxyz", CharsetUtil.US_ASCII);
+        try {
+            assertEquals(8, ByteBufUtil.indexOf(buffer, 0, buffer.writerIndex(), (byte) '\r'));
+            assertEquals(9, ByteBufUtil.indexOf(buffer, 0, buffer.writerIndex(), (byte) '\n'));
+            assertEquals(17, ByteBufUtil.indexOf(buffer, 10, buffer.writerIndex(), (byte) '\n'));
+            assertEquals(17, ByteBufUtil.indexOf(buffer, buffer.writerIndex(), 10, (byte) '\n'));
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testIndexOfOutOfBounds() {
+        ByteBuf buffer = Unpooled.buffer(16).writeZero(16);
+        try {
+            ByteBufUtil.indexOf(buffer, 0, 17, (byte) 1);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testIsTextWithAsciiAllPositions() {
+        testIsTextWithAsciiAllPositions(Unpooled.buffer(40));
+        testIsTextWithAsciiAllPositions(Unpooled.directBuffer(40));
+    }
+
+    private static void testIsTextWithAsciiAllPositions(ByteBuf buffer) {
+        try {
+            buffer.writeBytes(new byte[buffer.capacity()]);
+            assertTrue(ByteBufUtil.isText(buffer, CharsetUtil.US_ASCII));
+            for (int pos = 0; pos < buffer.capacity(); pos++) {
+                buffer.setByte(pos, 0x80);
+                assertFalse(ByteBufUtil.isText(buffer, CharsetUtil.US_ASCII));
+                assertTrue(ByteBufUtil.isText(buffer, pos + 1, buffer.capacity() - pos - 1, CharsetUtil.US_ASCII));
+                buffer.setByte(pos, 0x7F);
+            }
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testWriteUtf8AndAsciiAllLengths() {
+        String text = "HTTP/1.1 200 OK\r\nContent-Type: text/plain; charset=UTF-8\r\n";
+        String mixed = "Some UTF-8 like äÄ∏ŒŒ and some more ASCII afterwards";
+        for (int len = 0; len <= mixed.length(); len++) {
+            assertWriteUtf8(mixed.substring(0, len));
+            assertWriteUtf8(mixed.substring(mixed.length() - len));
+        }
+        for (int len = 0; len <= text.length(); len++) {
+            assertWriteUtf8(text.substring(0, len));
+            assertWriteAscii(text.substring(0, len));
+        }
+        // Chars > 0xFF are written as '?' and chars > 0x7F are truncated to a byte.
+        assertWriteAscii("0123\u00e44567\u0100abcdefgh\u00ff");
+    }
+
+    private static void assertWriteUtf8(String text) {
+        ByteBuf buf = Unpooled.buffer(text.length() * 3);
+        ByteBuf direct = Unpooled.directBuffer(text.length() * 3);
+        try {
+            assertEquals(ByteBufUtil.utf8Bytes(text), ByteBufUtil.writeUtf8(buf, text));
+            ByteBufUtil.writeUtf8(direct, new StringBuilder(text));
+            assertArrayEquals(text.getBytes(CharsetUtil.UTF_8), ByteBufUtil.getBytes(buf));
+            assertEquals(buf, direct);
+            assertEquals(text, buf.toString(CharsetUtil.UTF_8));
+            assertEquals(text, direct.toString(CharsetUtil.UTF_8));
+        } finally {
+            buf.release();
+            direct.release();
+        }
+    }
+
+    private static void assertWriteAscii(String text) {
+        ByteBuf buf = Unpooled.buffer(text.length());
+        ByteBuf direct = Unpooled.directBuffer(text.length());
+        try {
+            ByteBufUtil.writeAscii(buf, text);
+            ByteBufUtil.writeAscii(direct, new StringBuilder(text));
+            byte[] expected = new byte[text.length()];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = AsciiString.c2b(text.charAt(i));
+            }
+            assertArrayEquals(expected, ByteBufUtil.getBytes(buf));
+            assertEquals(buf, direct);
+        } finally {
+            buf.release();
+            direct.release();
+        }
+    }
+
+    @Test
+    public void testDecodeUtf8Ascii() {
+        testDecodeString("This is a test with some more ASCII chars", CharsetUtil.UTF_8);
+        testDecodeString("This is a test with some more ASCII chars and \u00e4", CharsetUtil.UTF_8);
+        ByteBuf direct = Unpooled.directBuffer().writeBytes("ASCII in a direct buffer".getBytes(CharsetUtil.UTF_8));
+        try {
+            assertEquals("ASCII in a direct buffer", ByteBufUtil.decodeString(direct, 0, direct.readableBytes(),
+                    CharsetUtil.UTF_8));
+        } finally {
+            direct.release();
+        }
+    }
+
     @Test
     public void testIsTextMultiThreaded() throws Throwable {
         final ByteBuf buffer = Unpooled.copiedBuffer("Hello, World!", CharsetUtil.ISO_8859_1);
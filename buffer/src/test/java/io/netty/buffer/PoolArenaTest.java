@@ -25,7 +25,7 @@ public class PoolArenaTest {
 
     @Test
     public void testNormalizeCapacity() throws Exception {
-        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, 0, 0, 9, 999999, 0);
+        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, 0, 0, 9, 999999, 0, false, 0);
         int[] reqCapacities = {0, 15, 510, 1024, 1023, 1025};
         int[] expectedResult = {0, 16, 512, 1024, 1024, 2048};
         for (int i = 0; i < reqCapacities.length; i ++) {
@@ -35,7 +35,7 @@ public class PoolArenaTest {
 
     @Test
     public void testNormalizeAlignedCapacity() throws Exception {
-        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, 0, 0, 9, 999999, 64);
+        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, 0, 0, 9, 999999, 64, false, 0);
         int[] reqCapacities = {0, 15, 510, 1024, 1023, 1025};
         int[] expectedResult = {0, 64, 512, 1024, 1024, 2048};
         for (int i = 0; i < reqCapacities.length; i ++) {
@@ -43,6 +43,52 @@ public class PoolArenaTest {
         }
     }
 
+    @Test
+    public void testNormalizeCapacityWithSizeClasses() throws Exception {
+        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, 8192, 11, 13, 8192 << 11, 0, true, 0);
+        int[] reqCapacities = {0, 15, 510, 512, 513, 1023, 1025, 8192, 8193, 9216, 10241, 16385, 40000,
+                               8192 << 11, (8192 << 11) + 1};
+        int[] expectedResult = {0, 16, 512, 512, 640, 1024, 1280, 8192, 10240, 10240, 12288, 20480, 40960,
+                                8192 << 11, (8192 << 11) + 1};
+        for (int i = 0; i < reqCapacities.length; i ++) {
+            Assert.assertEquals(expectedResult[i], arena.normalizeCapacity(reqCapacities[i]));
+        }
+    }
+
+    @Test
+    public void testNormalizeAlignedCapacityWithSizeClasses() throws Exception {
+        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, 8192, 11, 13, 8192 << 11, 512, true, 0);
+        int[] reqCapacities = {0, 15, 510, 513, 1025, 9216};
+        int[] expectedResult = {0, 512, 512, 1024, 1536, 10240};
+        for (int i = 0; i < reqCapacities.length; i ++) {
+            Assert.assertEquals(expectedResult[i], arena.normalizeCapacity(reqCapacities[i]));
+        }
+    }
+
+    @Test
+    public void testSizeClasses() {
+        SizeClasses sizeClasses = new SizeClasses(8192, 8192 << 11);
+        int size = SizeClasses.MIN_SIZE;
+        for (int sizeIdx = 0; size < 8192 << 11; sizeIdx++) {
+            size = SizeClasses.sizeOf(sizeIdx);
+            Assert.assertEquals(sizeIdx, SizeClasses.sizeIdx(size));
+            Assert.assertEquals(size, SizeClasses.normalizeSize(size));
+            if (sizeIdx > 0) {
+                Assert.assertEquals(size, SizeClasses.normalizeSize(SizeClasses.sizeOf(sizeIdx - 1) + 1));
+            }
+            if (sizeClasses.isSubpage(size)) {
+                int runSize = sizeClasses.subpageRunPages(sizeClasses.subpageIdx(size)) * 8192;
+                Assert.assertTrue(runSize >= size);
+                // At most 1/8 of the run is wasted.
+                Assert.assertTrue((runSize % size) * 8 <= runSize);
+            } else {
+                Assert.assertEquals(0, size % 8192);
+            }
+        }
+        // 4 size classes per doubling from 512 to 16 MiB.
+        Assert.assertEquals((24 - 9) * 4 + 1, SizeClasses.sizeIdx(8192 << 11) + 1);
+    }
+
     @Test
     public final void testAllocationCounter() {
         final PooledByteBufAllocator allocator = new PooledByteBufAllocator(
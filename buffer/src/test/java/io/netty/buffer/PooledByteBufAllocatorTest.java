@@ -16,6 +16,8 @@
 
 package io.netty.buffer;
 
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ResourceLeakDetector;
 import io.netty.util.concurrent.FastThreadLocal;
 import io.netty.util.concurrent.FastThreadLocalThread;
 import io.netty.util.internal.PlatformDependent;
@@ -23,11 +25,13 @@ import io.netty.util.internal.SystemPropertyUtil;
 import org.junit.Assume;
 import org.junit.Test;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.LockSupport;
@@ -36,7 +40,11 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class PooledByteBufAllocatorTest extends AbstractByteBufAllocatorTest<PooledByteBufAllocator> {
 
@@ -436,6 +444,801 @@ public class PooledByteBufAllocatorTest extends AbstractByteBufAllocatorTest<Poo
         }
     }
 
+    @Test(timeout = 30000)
+    public void testConcurrentAllocationsDoNotOverlap() throws Throwable {
+        // Use no caches and only one arena so all threads contend on the same PoolChunkLists and subpage pools.
+        testConcurrentAllocationsDoNotOverlap(new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0),
+                16, 496, 512, 2048, 8192, 16384, 65536, 1024 * 1024);
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentAllocationsDoNotOverlapWithSizeClasses() throws Throwable {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0, true, 0, true);
+        // Mix sizes that use runs of pages which are not a power of two with the ones that do.
+        testConcurrentAllocationsDoNotOverlap(allocator,
+                16, 640, 5120, 9216, 20480, 24576, 40000, 65536, 81920, 1000 * 1000);
+        // Only the runs of the subpages that are kept in the subpage pools are still in use.
+        PoolArenaMetric metric = allocator.metric().directArenas().get(0);
+        long subpageBytes = 0;
+        List<PoolSubpageMetric> subpages = new ArrayList<PoolSubpageMetric>(metric.tinySubpages());
+        subpages.addAll(metric.smallSubpages());
+        for (PoolSubpageMetric subpage : subpages) {
+            assertEquals(subpage.maxNumElements(), subpage.numAvailable());
+            subpageBytes += subpage.pageSize();
+        }
+        assertEquals(subpageBytes, usedBytes(metric));
+    }
+
+    private static void testConcurrentAllocationsDoNotOverlap(
+            final PooledByteBufAllocator allocator, final int... sizes) throws Throwable {
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final CountDownLatch latch = new CountDownLatch(16);
+        for (int i = 0; i < 16; i++) {
+            final byte value = (byte) i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Queue<ByteBuf> buffers = new ArrayDeque<ByteBuf>();
+                        for (int j = 0; j < 4096; j++) {
+                            ByteBuf buf = allocator.directBuffer(sizes[j % sizes.length]);
+                            for (int k = 0; k < buf.capacity(); k += step(buf)) {
+                                buf.setByte(k, value);
+                            }
+                            buffers.add(buf);
+                            if (buffers.size() > 8) {
+                                releaseAndVerify(buffers.poll(), value);
+                            }
+                        }
+                        for (;;) {
+                            ByteBuf buf = buffers.poll();
+                            if (buf == null) {
+                                break;
+                            }
+                            releaseAndVerify(buf, value);
+                        }
+                    } catch (Throwable cause) {
+                        error.compareAndSet(null, cause);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+        }
+        latch.await();
+        Throwable cause = error.get();
+        if (cause != null) {
+            throw cause;
+        }
+        PoolArenaMetric metric = allocator.metric().directArenas().get(0);
+        assertEquals(0, metric.numActiveAllocations());
+        assertEquals(metric.numAllocations(), metric.numDeallocations());
+    }
+
+    @Test
+    public void testSizeClassesSubpageMetric() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0, true, 0, true);
+        // Rounded up to 10 KiB which is served out of a run of 4 pages.
+        ByteBuf buffer = allocator.heapBuffer(9 * 1024);
+        try {
+            PoolArenaMetric metric = allocator.metric().heapArenas().get(0);
+            assertEquals(1, metric.smallSubpages().size());
+            PoolSubpageMetric subpageMetric = metric.smallSubpages().get(0);
+            assertEquals(10 * 1024, subpageMetric.elementSize());
+            assertEquals(4 * 8192, subpageMetric.pageSize());
+            assertEquals(3, subpageMetric.maxNumElements());
+            assertEquals(1, subpageMetric.maxNumElements() - subpageMetric.numAvailable());
+            assertEquals(4 * 8192, usedBytes(metric));
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testSizeClassesRunOfPages() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0, true, 0, true);
+        PoolArenaMetric metric = allocator.metric().heapArenas().get(0);
+        // Rounded up to 40 KiB which is a run of 5 pages.
+        ByteBuf buffer = allocator.heapBuffer(40000);
+        assertEquals(0, buffer.arrayOffset());
+        assertEquals(5 * 8192, usedBytes(metric));
+        // Must be placed in the 3 pages which are left over by the first run.
+        ByteBuf buffer2 = allocator.heapBuffer(8192);
+        ByteBuf buffer3 = allocator.heapBuffer(2 * 8192);
+        assertEquals(5 * 8192, buffer2.arrayOffset());
+        assertEquals(6 * 8192, buffer3.arrayOffset());
+        assertEquals(8 * 8192, usedBytes(metric));
+        ByteBuf buffer4 = allocator.heapBuffer(7 * 8192);
+        assertEquals(8 * 8192, buffer4.arrayOffset());
+        assertEquals(15 * 8192, usedBytes(metric));
+        assertTrue(buffer.release());
+        assertEquals(10 * 8192, usedBytes(metric));
+        assertTrue(buffer2.release());
+        assertTrue(buffer3.release());
+        assertTrue(buffer4.release());
+        assertEquals(0, usedBytes(metric));
+
+        // Once all runs were released the whole chunk can be allocated again.
+        ByteBuf buffer5 = allocator.heapBuffer(allocator.metric().chunkSize());
+        assertEquals(allocator.metric().chunkSize(), usedBytes(metric));
+        assertTrue(buffer5.release());
+    }
+
+    @Test
+    public void testTrimIdleChunks() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 0, 8192, 11, 0, 0, 0, true);
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+        ByteBuf buffer = allocator.heapBuffer(8192);
+        assertEquals(8192, metric.allocatedHeapMemory());
+        assertEquals(metric.chunkSize(), metric.usedHeapMemory());
+        assertTrue(buffer.release());
+        assertEquals(0, metric.allocatedHeapMemory());
+        assertEquals(metric.chunkSize(), metric.usedHeapMemory());
+
+        // The chunk was used since it was created so it is only released by the second trim.
+        allocator.trimIdleChunks();
+        assertEquals(metric.chunkSize(), metric.usedHeapMemory());
+        allocator.trimIdleChunks();
+        assertEquals(0, metric.usedHeapMemory());
+
+        // Allocating again creates a new chunk.
+        buffer = allocator.heapBuffer(8192);
+        assertEquals(metric.chunkSize(), metric.usedHeapMemory());
+        assertTrue(buffer.release());
+    }
+
+    @Test
+    public void testTrimIdleChunksKeepsUsedChunk() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 0, 8192, 11, 0, 0, 0, true);
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+        assertTrue(allocator.heapBuffer(8192).release());
+        allocator.trimIdleChunks();
+
+        // Used between the two trims so it must be kept.
+        assertTrue(allocator.heapBuffer(8192).release());
+        allocator.trimIdleChunks();
+        assertEquals(metric.chunkSize(), metric.usedHeapMemory());
+
+        allocator.trimIdleChunks();
+        assertEquals(0, metric.usedHeapMemory());
+    }
+
+    @Test
+    public void testTrimIdleChunksReleasesUnusedSubpages() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 0, 8192, 11, 0, 0, 0, true);
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+        PoolArenaMetric arenaMetric = metric.heapArenas().get(0);
+        assertTrue(allocator.heapBuffer(16).release());
+        assertTrue(allocator.heapBuffer(1024).release());
+
+        // The last subpage of each pool is kept even if unused, which also keeps the chunk.
+        assertEquals(2 * 8192, usedBytes(arenaMetric));
+        allocator.trimIdleChunks();
+        assertEquals(0, usedBytes(arenaMetric));
+        assertEquals(metric.chunkSize(), metric.usedHeapMemory());
+        allocator.trimIdleChunks();
+        assertEquals(0, metric.usedHeapMemory());
+    }
+
+    @Test
+    public void testTrimIdleChunksKeepsSubpagesInUse() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 0, 8192, 11, 0, 0, 0, true);
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+        ByteBuf buffer = allocator.heapBuffer(16);
+        allocator.trimIdleChunks();
+        allocator.trimIdleChunks();
+        assertEquals(16, metric.heapArenas().get(0).tinySubpages().get(0).elementSize());
+        assertEquals(metric.chunkSize(), metric.usedHeapMemory());
+        assertTrue(buffer.release());
+    }
+
+    @Test
+    public void testTrimCurrentThreadCache() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 0, 8192, 11, 0, 0, 64, true);
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+        ByteBuf buffer = allocator.heapBuffer(8192);
+        assertTrue(buffer.release());
+        // Still cached by the thread local cache.
+        assertEquals(8192, metric.allocatedHeapMemory());
+
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(0, metric.allocatedHeapMemory());
+    }
+
+    @Test
+    public void testTrimCurrentThreadCacheWithoutCache() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 0, 8192, 11, 0, 0, 64, true);
+        assertFalse(allocator.trimCurrentThreadCache());
+        assertEquals(0, allocator.metric().numThreadLocalCaches());
+    }
+
+    @Test
+    public void testHugeChunkCacheReusesChunk() {
+        // Use a chunkSize of 8192 so every allocation > 8192 bytes is huge.
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 1, 0, 8192, 0, 0, 0, 0, true, 0, false, 4 * 10240);
+        PoolArenaMetric metric = allocator.metric().heapArenas().get(0);
+        PoolArenaHugeChunkCacheMetric cacheMetric = (PoolArenaHugeChunkCacheMetric) metric;
+        ByteBuf buffer = allocator.heapBuffer(9000);
+        byte[] array = buffer.array();
+        // Rounded up to the next size class.
+        assertEquals(10240, array.length);
+        assertEquals(9000, buffer.capacity());
+        assertTrue(buffer.release());
+        assertEquals(1, cacheMetric.numCachedHugeChunks());
+        assertEquals(10240, cacheMetric.numCachedHugeBytes());
+        assertEquals(10240, metric.numActiveBytes());
+        assertEquals(0, allocator.metric().allocatedHeapMemory());
+
+        // Same size class so the cached chunk is reused.
+        buffer = allocator.heapBuffer(10000);
+        assertSame(array, buffer.array());
+        assertEquals(1, cacheMetric.numHugeCacheHits());
+        assertEquals(0, cacheMetric.numCachedHugeChunks());
+        assertEquals(0, cacheMetric.numCachedHugeBytes());
+        assertEquals(10240, allocator.metric().allocatedHeapMemory());
+
+        // Different size class so a new chunk is needed.
+        ByteBuf buffer2 = allocator.heapBuffer(11000);
+        assertNotSame(array, buffer2.array());
+        assertEquals(12288, buffer2.array().length);
+        assertEquals(1, cacheMetric.numHugeCacheHits());
+        assertEquals(2, metric.numHugeAllocations() - metric.numHugeDeallocations());
+        assertTrue(buffer.release());
+        assertTrue(buffer2.release());
+        assertEquals(2, cacheMetric.numCachedHugeChunks());
+        assertEquals(10240 + 12288, cacheMetric.numCachedHugeBytes());
+    }
+
+    @Test
+    public void testHugeChunkCacheEvictsLeastRecentlyCached() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 1, 0, 8192, 0, 0, 0, 0, true, 0, false, 2 * 10240);
+        PoolArenaMetric metric = allocator.metric().heapArenas().get(0);
+        PoolArenaHugeChunkCacheMetric cacheMetric = (PoolArenaHugeChunkCacheMetric) metric;
+        ByteBuf buffer = allocator.heapBuffer(9000);
+        ByteBuf buffer2 = allocator.heapBuffer(9000);
+        ByteBuf buffer3 = allocator.heapBuffer(9000);
+        byte[] array2 = buffer2.array();
+        byte[] array3 = buffer3.array();
+        assertTrue(buffer.release());
+        assertTrue(buffer2.release());
+        assertTrue(buffer3.release());
+        assertEquals(2, cacheMetric.numCachedHugeChunks());
+        assertEquals(1, cacheMetric.numHugeCacheEvictions());
+
+        // The most recently cached chunk is reused first.
+        buffer3 = allocator.heapBuffer(9000);
+        buffer2 = allocator.heapBuffer(9000);
+        assertSame(array3, buffer3.array());
+        assertSame(array2, buffer2.array());
+        assertTrue(buffer2.release());
+        assertTrue(buffer3.release());
+
+        // Too big to be cached at all.
+        assertTrue(allocator.heapBuffer(30000).release());
+        assertEquals(2, cacheMetric.numCachedHugeChunks());
+        assertEquals(2 * 10240, cacheMetric.numCachedHugeBytes());
+    }
+
+    @Test
+    public void testTrimIdleChunksReleasesCachedHugeChunks() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 1, 0, 8192, 0, 0, 0, 0, true, 0, false, 4 * 10240);
+        PoolArenaMetric metric = allocator.metric().heapArenas().get(0);
+        PoolArenaHugeChunkCacheMetric cacheMetric = (PoolArenaHugeChunkCacheMetric) metric;
+        assertTrue(allocator.heapBuffer(9000).release());
+        allocator.trimIdleChunks();
+        assertEquals(1, cacheMetric.numCachedHugeChunks());
+        allocator.trimIdleChunks();
+        assertEquals(0, cacheMetric.numCachedHugeChunks());
+        assertEquals(0, metric.numActiveBytes());
+    }
+
+    @Test
+    public void testHugeChunkCacheDoesNotRoundUpUncacheableSize() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 1, 0, 8192, 0, 0, 0, 0, true, 0, false, 2 * 10240);
+        PoolArenaMetric metric = allocator.metric().heapArenas().get(0);
+        PoolArenaHugeChunkCacheMetric cacheMetric = (PoolArenaHugeChunkCacheMetric) metric;
+        ByteBuf buffer = allocator.heapBuffer(30000);
+        // Too big to be cached so not rounded up.
+        assertEquals(30000, buffer.array().length);
+        assertEquals(30000, metric.numActiveBytes());
+        assertTrue(buffer.release());
+        assertEquals(0, cacheMetric.numCachedHugeChunks());
+        assertEquals(0, metric.numActiveBytes());
+    }
+
+    @Test
+    public void testHugeChunkCacheDisabled() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 1, 0, 8192, 0, 0, 0, 0, true, 0, false, 0);
+        PoolArenaMetric metric = allocator.metric().heapArenas().get(0);
+        PoolArenaHugeChunkCacheMetric cacheMetric = (PoolArenaHugeChunkCacheMetric) metric;
+        ByteBuf buffer = allocator.heapBuffer(9000);
+        // Not rounded up if there is no cache.
+        assertEquals(9000, buffer.array().length);
+        assertTrue(buffer.release());
+        assertEquals(0, cacheMetric.numCachedHugeChunks());
+        assertEquals(0, metric.numActiveBytes());
+    }
+
+    @Test
+    public void testThreadCacheMetric() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 0, 8192, 11, 64, 64, 64, true);
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+        assertTrue(metric.threadCaches().isEmpty());
+
+        // Misses the cache and is cached once released.
+        assertTrue(allocator.heapBuffer(256).release());
+        assertTrue(allocator.heapBuffer(256).release());
+
+        List<PoolThreadCacheMetric> threadCaches = metric.threadCaches();
+        assertEquals(1, threadCaches.size());
+        PoolThreadCacheMetric threadCache = threadCaches.get(0);
+        assertEquals(Thread.currentThread().getName(), threadCache.threadName());
+        assertEquals(1, threadCache.numHits());
+        assertEquals(1, threadCache.numMisses());
+        assertEquals(0.5, threadCache.hitRatio(), 0);
+
+        allocator.freeThreadLocalCache();
+        assertTrue(metric.threadCaches().isEmpty());
+    }
+
+    @Test
+    public void testThreadCacheMetricSkipsNonCachingThreads() {
+        // The current thread is not a FastThreadLocalThread and so does not use a cache.
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 0, 8192, 11, 64, 64, 64, false);
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+
+        assertTrue(allocator.heapBuffer(256).release());
+        assertTrue(metric.threadCaches().isEmpty());
+        allocator.freeThreadLocalCache();
+    }
+
+    @Test
+    public void testAdaptiveCacheGrowsAndShrinks() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 1, 0, 8192, 11, 64, 64, 64, true, 0, false, 0, 1024);
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+        assertEquals(1024, metric.availableAdaptiveCacheBudget());
+
+        // Both allocations miss the cache, which starts with a single entry.
+        allocateAndRelease(allocator, 256, 2);
+        PoolThreadCacheMetric threadCache = metric.threadCaches().get(0);
+        assertEquals(0, threadCache.numHits());
+
+        // So it grows to two entries.
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(1024 - 256, metric.availableAdaptiveCacheBudget());
+        allocateAndRelease(allocator, 256, 2);
+        allocateAndRelease(allocator, 256, 2);
+        assertEquals(2, threadCache.numHits());
+
+        // Missed again, so grows to four entries.
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(1024 - 768, metric.availableAdaptiveCacheBudget());
+
+        // Not used anymore, so shrinks back to a single entry.
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(1024 - 256, metric.availableAdaptiveCacheBudget());
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(1024, metric.availableAdaptiveCacheBudget());
+        allocator.freeThreadLocalCache();
+        assertEquals(1024, metric.availableAdaptiveCacheBudget());
+    }
+
+    @Test
+    public void testAdaptiveCacheGrowthIsLimitedByBudget() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 1, 0, 8192, 11, 64, 64, 64, true, 0, false, 0, 200);
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+
+        allocateAndRelease(allocator, 128, 2);
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(200 - 128, metric.availableAdaptiveCacheBudget());
+        allocator.freeThreadLocalCache();
+        assertEquals(200, metric.availableAdaptiveCacheBudget());
+
+        // Growing the cache of 256 bytes buffers needs more than the whole budget.
+        allocateAndRelease(allocator, 256, 2);
+        assertTrue(allocator.trimCurrentThreadCache());
+        assertEquals(200, metric.availableAdaptiveCacheBudget());
+        allocateAndRelease(allocator, 256, 2);
+        allocateAndRelease(allocator, 256, 2);
+        assertEquals(1, metric.threadCaches().get(0).numHits());
+    }
+
+    @Test
+    public void testAdaptiveCacheDisabled() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 1, 0, 8192, 11, 64, 64, 64, true, 0, false, 0, 0);
+        allocateAndRelease(allocator, 256, 2);
+        allocateAndRelease(allocator, 256, 2);
+        assertEquals(0, allocator.metric().availableAdaptiveCacheBudget());
+        assertEquals(2, allocator.metric().threadCaches().get(0).numHits());
+    }
+
+    @Test
+    public void testSharedCaches() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 1, 0, 8192, 11, 64, 64, 64, false, 0, false, 0, 0, 3);
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+        // Rounded up to a power of two.
+        assertEquals(4, metric.sharedCaches().size());
+
+        allocateAndRelease(allocator, 256, 1);
+        allocateAndRelease(allocator, 256, 1);
+        long hits = 0;
+        long misses = 0;
+        for (PoolThreadCacheMetric sharedCache : metric.sharedCaches()) {
+            assertNull(sharedCache.threadName());
+            hits += sharedCache.numHits();
+            misses += sharedCache.numMisses();
+        }
+        assertEquals(1, hits);
+        assertEquals(1, misses);
+
+        // No thread local cache was created for the calling thread.
+        assertEquals(0, metric.numThreadLocalCaches());
+        assertTrue(metric.threadCaches().isEmpty());
+    }
+
+    @Test
+    public void testSharedCachesNotUsedByFastThreadLocalThread() throws Throwable {
+        final PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 1, 0, 8192, 11, 64, 64, 64, false, 0, false, 0, 0, 2);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread thread = new FastThreadLocalThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    allocateAndRelease(allocator, 256, 1);
+                    allocateAndRelease(allocator, 256, 1);
+                    assertEquals(1, allocator.metric().threadCaches().get(0).numHits());
+                    allocator.freeThreadLocalCache();
+                } catch (Throwable cause) {
+                    error.set(cause);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        if (error.get() != null) {
+            throw error.get();
+        }
+        for (PoolThreadCacheMetric sharedCache : allocator.metric().sharedCaches()) {
+            assertEquals(0, sharedCache.numHits() + sharedCache.numMisses());
+        }
+    }
+
+    @Test
+    public void testTrimIdleChunksTrimsSharedCaches() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 1, 0, 8192, 11, 64, 64, 64, false, 0, false, 0, 0, 1);
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+        allocateAndRelease(allocator, 8192, 1);
+        // Still cached by the shared cache.
+        assertEquals(8192, metric.allocatedHeapMemory());
+
+        allocator.trimIdleChunks();
+        assertEquals(0, metric.allocatedHeapMemory());
+    }
+
+    @Test
+    public void testThreadConfinedRefCnt() {
+        ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+        // Do not wrap the buffer, so the thread confined reference count is used directly.
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.DISABLED);
+        try {
+            ByteBuf buf = newThreadConfinedAllocator().heapBuffer(256);
+            assertSame(buf, buf.retain(2));
+            assertEquals(3, buf.refCnt());
+            assertFalse(buf.release(2));
+            assertEquals(1, buf.refCnt());
+            assertTrue(buf.release());
+            assertEquals(0, buf.refCnt());
+            try {
+                buf.retain();
+                fail();
+            } catch (IllegalReferenceCountException expected) {
+                // expected
+            }
+            try {
+                buf.getByte(0);
+                fail();
+            } catch (IllegalReferenceCountException expected) {
+                // expected
+            }
+        } finally {
+            ResourceLeakDetector.setLevel(level);
+        }
+    }
+
+    @Test
+    public void testThreadConfinedRefCntReleasedByOtherThread() throws Throwable {
+        ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.DISABLED);
+        try {
+            PooledByteBufAllocator allocator = newThreadConfinedAllocator();
+            final ByteBuf buf = allocator.heapBuffer(256);
+            final ByteBuf retained = allocator.heapBuffer(256).retain();
+            runInOtherThread(new Runnable() {
+                @Override
+                public void run() {
+                    // The other thread sees the count of the allocating thread, so the last release is reported.
+                    assertTrue(buf.release());
+                    assertFalse(retained.release());
+                }
+            });
+            assertEquals(0, buf.refCnt());
+            try {
+                buf.getByte(0);
+                fail();
+            } catch (IllegalReferenceCountException expected) {
+                // expected
+            }
+            assertEquals(1, retained.refCnt());
+            assertTrue(retained.release());
+        } finally {
+            ResourceLeakDetector.setLevel(level);
+        }
+    }
+
+    @Test
+    public void testThreadConfinedRefCntNoResurrection() throws Throwable {
+        ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.DISABLED);
+        try {
+            final ByteBuf buf = newThreadConfinedAllocator().heapBuffer(256);
+            buf.retain();
+            runInOtherThread(new Runnable() {
+                @Override
+                public void run() {
+                    // Release both references the allocating thread still counts as its own.
+                    assertFalse(buf.release());
+                    assertTrue(buf.release());
+                    try {
+                        buf.retain();
+                        fail();
+                    } catch (IllegalReferenceCountException expected) {
+                        // expected
+                    }
+                }
+            });
+            assertEquals(0, buf.refCnt());
+            try {
+                buf.retain();
+                fail();
+            } catch (IllegalReferenceCountException expected) {
+                // expected
+            }
+            try {
+                buf.release();
+                fail();
+            } catch (IllegalReferenceCountException expected) {
+                // expected
+            }
+        } finally {
+            ResourceLeakDetector.setLevel(level);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testThreadConfinedRefCntConcurrentLastRelease() throws Throwable {
+        ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.DISABLED);
+        try {
+            PooledByteBufAllocator allocator = newThreadConfinedAllocator();
+            for (int i = 0; i < 1000; i++) {
+                // The allocating thread hands one of its two references to the other thread and both release their
+                // reference at the same time, so at most one of them sees the release of the last reference.
+                final ByteBuf buf = allocator.heapBuffer(256).retain();
+                final CyclicBarrier barrier = new CyclicBarrier(2);
+                final AtomicBoolean released = new AtomicBoolean();
+                final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            barrier.await();
+                            released.set(buf.release());
+                        } catch (Throwable cause) {
+                            error.set(cause);
+                        }
+                    }
+                });
+                thread.start();
+                barrier.await();
+                boolean releasedByOwner = buf.release();
+                thread.join();
+                Throwable cause = error.get();
+                if (cause != null) {
+                    throw cause;
+                }
+                assertFalse(releasedByOwner && released.get());
+                assertEquals(0, buf.refCnt());
+                if (!releasedByOwner && !released.get()) {
+                    // The other thread queued the buffer, so it is deallocated on the next allocation.
+                    assertTrue(allocator.heapBuffer(256).release());
+                    assertEquals(-1, ((PooledByteBuf<?>) buf).handle);
+                }
+            }
+        } finally {
+            ResourceLeakDetector.setLevel(level);
+        }
+    }
+
+    @Test
+    public void testThreadConfinedRefCntAfterFreeThreadLocalCache() throws Throwable {
+        ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.DISABLED);
+        try {
+            PooledByteBufAllocator allocator = newThreadConfinedAllocator();
+            final ByteBuf buf = allocator.heapBuffer(256).retain();
+            // The allocating thread is still alive, but does not own the count anymore.
+            allocator.freeThreadLocalCache();
+            runInOtherThread(new Runnable() {
+                @Override
+                public void run() {
+                    assertFalse(buf.release());
+                }
+            });
+            buf.retain();
+            assertEquals(2, buf.refCnt());
+            assertFalse(buf.release());
+            assertTrue(buf.release());
+            assertEquals(0, buf.refCnt());
+        } finally {
+            ResourceLeakDetector.setLevel(level);
+        }
+    }
+
+    @Test
+    public void testThreadConfinedRefCntAfterOwnerTerminated() throws Throwable {
+        ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.DISABLED);
+        try {
+            final PooledByteBufAllocator allocator = newThreadConfinedAllocator();
+            final AtomicReference<ByteBuf> ref = new AtomicReference<ByteBuf>();
+            runInOtherThread(new Runnable() {
+                @Override
+                public void run() {
+                    ref.set(allocator.heapBuffer(256).retain());
+                }
+            });
+            // The allocating thread terminated without merging, so the count of it is merged by this thread.
+            ByteBuf buf = ref.get();
+            assertFalse(buf.release());
+            assertEquals(1, buf.refCnt());
+            buf.retain();
+            assertFalse(buf.release());
+            assertTrue(buf.release());
+            assertEquals(0, buf.refCnt());
+        } finally {
+            ResourceLeakDetector.setLevel(level);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testThreadConfinedRefCntConcurrentUpdates() throws Throwable {
+        ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.DISABLED);
+        try {
+            final ByteBuf buf = newThreadConfinedAllocator().heapBuffer(256);
+            final CountDownLatch latch = new CountDownLatch(1);
+            final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        latch.await();
+                        for (int i = 0; i < 100000; i++) {
+                            buf.retain();
+                            assertFalse(buf.release());
+                        }
+                    } catch (Throwable cause) {
+                        error.set(cause);
+                    }
+                }
+            });
+            thread.start();
+            latch.countDown();
+            for (int i = 0; i < 100000; i++) {
+                buf.retain();
+                assertFalse(buf.release());
+            }
+            thread.join();
+            Throwable cause = error.get();
+            if (cause != null) {
+                throw cause;
+            }
+            assertEquals(1, buf.refCnt());
+            assertTrue(buf.release());
+        } finally {
+            ResourceLeakDetector.setLevel(level);
+        }
+    }
+
+    @Test
+    public void testThreadConfinedRefCntWithLeakDetection() {
+        ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+        try {
+            final ByteBuf buf = newThreadConfinedAllocator().heapBuffer(256);
+            final AtomicBoolean released = new AtomicBoolean();
+            runInOtherThread(new Runnable() {
+                @Override
+                public void run() {
+                    released.set(buf.release());
+                }
+            });
+            // The leak detector must see the release of the last reference.
+            assertTrue(released.get());
+        } catch (Throwable cause) {
+            throw new AssertionError(cause);
+        } finally {
+            ResourceLeakDetector.setLevel(level);
+        }
+    }
+
+    private static PooledByteBufAllocator newThreadConfinedAllocator() {
+        return new PooledByteBufAllocator(true, 1, 0, 8192, 11, 64, 64, 64, true, 0, false, 0, 0, 0, true);
+    }
+
+    private static void runInOtherThread(final Runnable task) throws Throwable {
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (Throwable cause) {
+                    error.set(cause);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        Throwable cause = error.get();
+        if (cause != null) {
+            throw cause;
+        }
+    }
+
+    private static void allocateAndRelease(PooledByteBufAllocator allocator, int capacity, int num) {
+        List<ByteBuf> buffers = new ArrayList<ByteBuf>(num);
+        for (int i = 0; i < num; i++) {
+            buffers.add(allocator.heapBuffer(capacity));
+        }
+        for (ByteBuf buffer : buffers) {
+            assertTrue(buffer.release());
+        }
+    }
+
+    private static long usedBytes(PoolArenaMetric metric) {
+        long used = 0;
+        for (PoolChunkListMetric list : metric.chunkLists()) {
+            for (PoolChunkMetric chunk : list) {
+                used += chunk.chunkSize() - chunk.freeBytes();
+            }
+        }
+        return used;
+    }
+
+    private static void releaseAndVerify(ByteBuf buf, byte value) {
+        for (int k = 0; k < buf.capacity(); k += step(buf)) {
+            assertEquals(value, buf.getByte(k));
+        }
+        assertTrue(buf.release());
+    }
+
+    private static int step(ByteBuf buf) {
+        // Only sample the content of bigger buffers to keep the runtime of the test low.
+        return Math.max(8, buf.capacity() >>> 8);
+    }
+
     private static boolean isExpired(long start, long expireTime) {
         return System.nanoTime() - start > expireTime;
     }
@@ -15,10 +15,15 @@
  */
 package io.netty.buffer;
 
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.internal.PlatformDependent;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.ScatteringByteChannel;
 import java.util.ArrayList;
@@ -709,6 +714,84 @@ public class UnpooledTest {
         }
     }
 
+    @Test
+    public void testMappedBuffer() throws Exception {
+        byte[] bytes = new byte[8192];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        File file = writeTempFile(bytes);
+        try {
+            ByteBuf buffer = mappedBuffer(file);
+            assertTrue(buffer.isDirect());
+            assertTrue(buffer.isReadOnly());
+            assertEquals(PlatformDependent.hasUnsafe(), buffer.hasMemoryAddress());
+            assertEquals(0, buffer.readerIndex());
+            assertEquals(bytes.length, buffer.writerIndex());
+            assertEquals(wrappedBuffer(bytes), buffer);
+
+            // Slices share the memory and the reference count.
+            ByteBuf slice = buffer.retainedSlice(4096, 1024);
+            assertEquals(wrappedBuffer(bytes, 4096, 1024), slice);
+            assertEquals(2, buffer.refCnt());
+            assertFalse(buffer.release());
+            assertTrue(slice.release());
+            assertEquals(0, buffer.refCnt());
+
+            try {
+                buffer.getByte(0);
+                fail();
+            } catch (IllegalReferenceCountException expected) {
+                // expected
+            }
+            try {
+                slice.getByte(0);
+                fail();
+            } catch (IllegalReferenceCountException expected) {
+                // expected
+            }
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void testMappedBufferRegion() throws Exception {
+        byte[] bytes = new byte[1024];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        File file = writeTempFile(bytes);
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            ByteBuf buffer;
+            try {
+                buffer = mappedBuffer(raf.getChannel(), 100, 200);
+                assertSame(EMPTY_BUFFER, mappedBuffer(raf.getChannel(), 100, 0));
+            } finally {
+                raf.close();
+            }
+            // Still accessible after the file was closed.
+            assertEquals(wrappedBuffer(bytes, 100, 200), buffer);
+            assertEquals(ByteBuffer.wrap(bytes, 100, 200), buffer.nioBuffer());
+            assertTrue(buffer.release());
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    private static File writeTempFile(byte[] bytes) throws Exception {
+        File file = File.createTempFile("netty-mapped", ".tmp");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
     @Test(expected = IndexOutOfBoundsException.class)
     public void testGetBytesByteBuffer2() {
         byte[] bytes = {'a', 'b', 'c', 'd', 'e', 'f', 'g'};
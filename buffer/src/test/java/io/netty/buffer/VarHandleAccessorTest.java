@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class VarHandleAccessorTest {
+
+    private VarHandleAccessor accessor;
+
+    @Before
+    public void setUp() {
+        // Only available on Java 9+. Create it directly, as instance() returns null if Unsafe is available.
+        Object maybeAccessor = VarHandleAccessor.newAccessor();
+        assumeTrue(maybeAccessor instanceof VarHandleAccessor);
+        accessor = (VarHandleAccessor) maybeAccessor;
+    }
+
+    @Test
+    public void testArray() {
+        byte[] array = new byte[16];
+        ByteBuffer be = ByteBuffer.wrap(array);
+        ByteBuffer le = ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+
+        accessor.setShort(array, 1, 0x1234);
+        assertEquals(0x1234, be.getShort(1));
+        assertEquals(0x1234, accessor.getShort(array, 1));
+        accessor.setShortLE(array, 1, 0x1234);
+        assertEquals(0x1234, le.getShort(1));
+        assertEquals(0x1234, accessor.getShortLE(array, 1));
+
+        accessor.setInt(array, 3, 0x12345678);
+        assertEquals(0x12345678, be.getInt(3));
+        assertEquals(0x12345678, accessor.getInt(array, 3));
+        accessor.setIntLE(array, 3, 0x12345678);
+        assertEquals(0x12345678, le.getInt(3));
+        assertEquals(0x12345678, accessor.getIntLE(array, 3));
+
+        accessor.setLong(array, 5, 0x123456789ABCDEF0L);
+        assertEquals(0x123456789ABCDEF0L, be.getLong(5));
+        assertEquals(0x123456789ABCDEF0L, accessor.getLong(array, 5));
+        accessor.setLongLE(array, 5, 0x123456789ABCDEF0L);
+        assertEquals(0x123456789ABCDEF0L, le.getLong(5));
+        assertEquals(0x123456789ABCDEF0L, accessor.getLongLE(array, 5));
+    }
+
+    @Test
+    public void testDirectBuffer() {
+        testBuffer(ByteBuffer.allocateDirect(16));
+    }
+
+    @Test
+    public void testHeapBuffer() {
+        testBuffer(ByteBuffer.allocate(16));
+    }
+
+    private void testBuffer(ByteBuffer buffer) {
+        // The byte order of the ByteBuffer must not change the result.
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer be = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        ByteBuffer le = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        accessor.setShort(buffer, 1, 0x1234);
+        assertEquals(0x1234, be.getShort(1));
+        assertEquals(0x1234, accessor.getShort(buffer, 1));
+        accessor.setShortLE(buffer, 1, 0x1234);
+        assertEquals(0x1234, le.getShort(1));
+        assertEquals(0x1234, accessor.getShortLE(buffer, 1));
+
+        accessor.setInt(buffer, 3, 0x12345678);
+        assertEquals(0x12345678, be.getInt(3));
+        assertEquals(0x12345678, accessor.getInt(buffer, 3));
+        accessor.setIntLE(buffer, 3, 0x12345678);
+        assertEquals(0x12345678, le.getInt(3));
+        assertEquals(0x12345678, accessor.getIntLE(buffer, 3));
+
+        accessor.setLong(buffer, 5, 0x123456789ABCDEF0L);
+        assertEquals(0x123456789ABCDEF0L, be.getLong(5));
+        assertEquals(0x123456789ABCDEF0L, accessor.getLong(buffer, 5));
+        accessor.setLongLE(buffer, 5, 0x123456789ABCDEF0L);
+        assertEquals(0x123456789ABCDEF0L, le.getLong(5));
+        assertEquals(0x123456789ABCDEF0L, accessor.getLongLE(buffer, 5));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testArrayOutOfBounds() {
+        accessor.getLong(new byte[8], 1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testBufferOutOfBounds() {
+        accessor.getInt(ByteBuffer.allocateDirect(4), 1);
+    }
+
+    @Test(expected = ReadOnlyBufferException.class)
+    public void testReadOnlyBuffer() {
+        accessor.setInt(ByteBuffer.allocateDirect(4).asReadOnlyBuffer(), 0, 1);
+    }
+}
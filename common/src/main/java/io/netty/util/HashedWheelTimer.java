@@ -59,6 +59,17 @@ import static io.netty.util.internal.StringUtil.simpleClassName;
  * (i.e. the size of the wheel) is 512.  You could specify a larger value
  * if you are going to schedule a lot of timeouts.
  *
+ * <h3>Hierarchical Wheels</h3>
+ *
+ * A timeout that is more than one revolution away stays in its bucket and is
+ * visited once per revolution, so ticks get expensive if many long timeouts
+ * are pending.  A hierarchical timer instead adds overflow wheels on demand,
+ * each of which has the same number of buckets as the one below it but whose
+ * ticks span a whole revolution of it.  A timeout is added to the lowest wheel
+ * that covers its deadline and moved down whenever its bucket of an overflow
+ * wheel is reached.  Each timeout is moved at most once per wheel, so a tick
+ * only visits the timeouts that expire or move down.
+ *
  * <h3>Do not create many instances.</h3>
  *
  * {@link HashedWheelTimer} creates a new thread whenever it is instantiated and
@@ -103,6 +114,9 @@ public class HashedWheelTimer implements Timer {
     private final long tickDuration;
     private final HashedWheelBucket[] wheel;
     private final int mask;
+    // The wheels of a hierarchical timer, starting with wheel, or null. The overflow wheels are created on demand.
+    private final HashedWheelBucket[][] levels;
+    private final int wheelShift;
     private final CountDownLatch startTimeInitialized = new CountDownLatch(1);
     private final Queue<HashedWheelTimeout> timeouts = PlatformDependent.newMpscQueue();
     private final Queue<HashedWheelTimeout> cancelledTimeouts = PlatformDependent.newMpscQueue();
@@ -240,6 +254,36 @@ public class HashedWheelTimer implements Timer {
             ThreadFactory threadFactory,
             long tickDuration, TimeUnit unit, int ticksPerWheel, boolean leakDetection,
             long maxPendingTimeouts) {
+        this(threadFactory, tickDuration, unit, ticksPerWheel, leakDetection, maxPendingTimeouts, false);
+    }
+
+    /**
+     * Creates a new timer.
+     *
+     * @param threadFactory        a {@link ThreadFactory} that creates a
+     *                             background {@link Thread} which is dedicated to
+     *                             {@link TimerTask} execution.
+     * @param tickDuration         the duration between tick
+     * @param unit                 the time unit of the {@code tickDuration}
+     * @param ticksPerWheel        the size of the wheel, and of each overflow wheel
+     * @param leakDetection        {@code true} if leak detection should be enabled always,
+     *                             if false it will only be enabled if the worker thread is not
+     *                             a daemon thread.
+     * @param  maxPendingTimeouts  The maximum number of pending timeouts after which call to
+     *                             {@code newTimeout} will result in
+     *                             {@link java.util.concurrent.RejectedExecutionException}
+     *                             being thrown. No maximum pending timeouts limit is assumed if
+     *                             this value is 0 or negative.
+     * @param hierarchical         {@code true} to use overflow wheels for timeouts that are more than
+     *                             one revolution away, see {@link HashedWheelTimer}.
+     *                             Ignored if {@code ticksPerWheel} is {@code 1}.
+     * @throws NullPointerException     if either of {@code threadFactory} and {@code unit} is {@code null}
+     * @throws IllegalArgumentException if either of {@code tickDuration} and {@code ticksPerWheel} is &lt;= 0
+     */
+    public HashedWheelTimer(
+            ThreadFactory threadFactory,
+            long tickDuration, TimeUnit unit, int ticksPerWheel, boolean leakDetection,
+            long maxPendingTimeouts, boolean hierarchical) {
 
         if (threadFactory == null) {
             throw new NullPointerException("threadFactory");
@@ -257,6 +301,14 @@ public class HashedWheelTimer implements Timer {
         // Normalize ticksPerWheel to power of two and initialize the wheel.
         wheel = createWheel(ticksPerWheel);
         mask = wheel.length - 1;
+        wheelShift = Integer.numberOfTrailingZeros(wheel.length);
+        if (hierarchical && wheelShift > 0) {
+            // Enough levels to cover any number of ticks up to Long.MAX_VALUE.
+            levels = new HashedWheelBucket[(63 + wheelShift - 1) / wheelShift][];
+            levels[0] = wheel;
+        } else {
+            levels = null;
+        }
 
         // Convert tickDuration to nanos.
         this.tickDuration = unit.toNanos(tickDuration);
@@ -470,14 +522,27 @@ public class HashedWheelTimer implements Timer {
                     HashedWheelBucket bucket =
                             wheel[idx];
                     transferTimeoutsToBuckets();
+                    if (levels != null) {
+                        cascadeTimeouts();
+                    }
                     bucket.expireTimeouts(deadline);
                     tick++;
                 }
             } while (WORKER_STATE_UPDATER.get(HashedWheelTimer.this) == WORKER_STATE_STARTED);
 
             // Fill the unprocessedTimeouts so we can return them from stop() method.
-            for (HashedWheelBucket bucket: wheel) {
-                bucket.clearTimeouts(unprocessedTimeouts);
+            if (levels != null) {
+                for (HashedWheelBucket[] level: levels) {
+                    if (level != null) {
+                        for (HashedWheelBucket bucket: level) {
+                            bucket.clearTimeouts(unprocessedTimeouts);
+                        }
+                    }
+                }
+            } else {
+                for (HashedWheelBucket bucket: wheel) {
+                    bucket.clearTimeouts(unprocessedTimeouts);
+                }
             }
             for (;;) {
                 HashedWheelTimeout timeout = timeouts.poll();
@@ -506,9 +571,13 @@ public class HashedWheelTimer implements Timer {
                 }
 
                 long calculated = timeout.deadline / tickDuration;
+                final long ticks = Math.max(calculated, tick); // Ensure we don't schedule for past.
+                if (levels != null) {
+                    addToLevel(timeout, ticks);
+                    continue;
+                }
                 timeout.remainingRounds = (calculated - tick) / wheel.length;
 
-                final long ticks = Math.max(calculated, tick); // Ensure we don't schedule for past.
                 int stopIndex = (int) (ticks & mask);
 
                 HashedWheelBucket bucket = wheel[stopIndex];
@@ -516,6 +585,46 @@ public class HashedWheelTimer implements Timer {
             }
         }
 
+        /**
+         * Adds the timeout to the lowest wheel whose revolution covers the remaining ticks, or to the highest one
+         * which it then goes around until it does.
+         */
+        private void addToLevel(HashedWheelTimeout timeout, long ticks) {
+            long remaining = ticks - tick;
+            int level = remaining < wheel.length ? 0 : Math.min(
+                    (63 - Long.numberOfLeadingZeros(remaining)) / wheelShift, levels.length - 1);
+            HashedWheelBucket[] wheel = levels[level];
+            if (wheel == null) {
+                levels[level] = wheel = createWheel(mask + 1);
+            }
+            wheel[(int) ((ticks >>> level * wheelShift) & mask)].addTimeout(timeout);
+        }
+
+        /**
+         * Moves the timeouts of the buckets of the overflow wheels that are reached by the current tick down to
+         * lower wheels, starting with the highest one so the timeouts of the current tick reach the lowest wheel.
+         */
+        private void cascadeTimeouts() {
+            int highest = 1;
+            while (highest < levels.length && (tick & (1L << highest * wheelShift) - 1) == 0) {
+                highest++;
+            }
+            for (int level = highest - 1; level > 0; level--) {
+                HashedWheelBucket[] wheel = levels[level];
+                if (wheel == null) {
+                    continue;
+                }
+                HashedWheelTimeout timeout = wheel[(int) ((tick >>> level * wheelShift) & mask)].takeTimeouts();
+                while (timeout != null) {
+                    HashedWheelTimeout next = timeout.next;
+                    timeout.next = null;
+                    timeout.prev = null;
+                    addToLevel(timeout, Math.max(timeout.deadline / tickDuration, tick));
+                    timeout = next;
+                }
+            }
+        }
+
         private void processCancelledTasks() {
             for (;;) {
                 HashedWheelTimeout timeout = cancelledTimeouts.poll();
@@ -803,6 +912,19 @@ public class HashedWheelTimer implements Timer {
             }
         }
 
+        /**
+         * Removes all {@link HashedWheelTimeout}s from this bucket and returns the first one. The others can be
+         * reached via {@link HashedWheelTimeout#next}.
+         */
+        HashedWheelTimeout takeTimeouts() {
+            HashedWheelTimeout head = this.head;
+            this.head = tail = null;
+            for (HashedWheelTimeout timeout = head; timeout != null; timeout = timeout.next) {
+                timeout.bucket = null;
+            }
+            return head;
+        }
+
         private HashedWheelTimeout pollTimeout() {
             HashedWheelTimeout head = this.head;
             if (head == null) {
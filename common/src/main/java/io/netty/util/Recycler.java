@@ -17,6 +17,8 @@
 package io.netty.util;
 
 import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.SystemPropertyUtil;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
@@ -26,6 +28,8 @@ import java.util.Arrays;
 import java.util.Map;
 import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import static io.netty.util.internal.MathUtil.safeFindNextPositivePowerOfTwo;
 import static java.lang.Math.max;
@@ -34,6 +38,12 @@ import static java.lang.Math.min;
 /**
  * Light-weight object pool based on a thread-local stack.
  *
+ * By default objects that are recycled by another thread than the one that created them are handed back via
+ * {@link WeakReference weakly referenced} queues. If {@code io.netty.recycler.useMagazines} is set, each thread
+ * uses a bounded magazine instead, and other threads return objects to it via a lock-free stack. This needs less
+ * memory and neither weak references nor finalizers. The hits, misses and drops of either implementation are
+ * exposed by {@link #metric()}.
+ *
  * @param <T> the type of the pooled object
  */
 public abstract class Recycler<T> {
@@ -56,6 +66,9 @@ public abstract class Recycler<T> {
     private static final int MAX_DELAYED_QUEUES_PER_THREAD;
     private static final int LINK_CAPACITY;
     private static final int RATIO;
+    private static final boolean DEFAULT_USE_MAGAZINES;
+    // The number of hits a thread counts locally before it publishes them to the shared counter.
+    private static final int HITS_BATCH_SIZE = 64;
 
     static {
         // In the future, we might have different maxCapacity for different object types.
@@ -86,17 +99,21 @@ public abstract class Recycler<T> {
         // bursts.
         RATIO = safeFindNextPositivePowerOfTwo(SystemPropertyUtil.getInt("io.netty.recycler.ratio", 8));
 
+        DEFAULT_USE_MAGAZINES = SystemPropertyUtil.getBoolean("io.netty.recycler.useMagazines", false);
+
         if (logger.isDebugEnabled()) {
             if (DEFAULT_MAX_CAPACITY_PER_THREAD == 0) {
                 logger.debug("-Dio.netty.recycler.maxCapacityPerThread: disabled");
                 logger.debug("-Dio.netty.recycler.maxSharedCapacityFactor: disabled");
                 logger.debug("-Dio.netty.recycler.linkCapacity: disabled");
                 logger.debug("-Dio.netty.recycler.ratio: disabled");
+                logger.debug("-Dio.netty.recycler.useMagazines: disabled");
             } else {
                 logger.debug("-Dio.netty.recycler.maxCapacityPerThread: {}", DEFAULT_MAX_CAPACITY_PER_THREAD);
                 logger.debug("-Dio.netty.recycler.maxSharedCapacityFactor: {}", MAX_SHARED_CAPACITY_FACTOR);
                 logger.debug("-Dio.netty.recycler.linkCapacity: {}", LINK_CAPACITY);
                 logger.debug("-Dio.netty.recycler.ratio: {}", RATIO);
+                logger.debug("-Dio.netty.recycler.useMagazines: {}", DEFAULT_USE_MAGAZINES);
             }
         }
 
@@ -108,23 +125,14 @@ public abstract class Recycler<T> {
     private final int ratioMask;
     private final int maxDelayedQueuesPerThread;
 
-    private final FastThreadLocal<Stack<T>> threadLocal = new FastThreadLocal<Stack<T>>() {
-        @Override
-        protected Stack<T> initialValue() {
-            return new Stack<T>(Recycler.this, Thread.currentThread(), maxCapacityPerThread, maxSharedCapacityFactor,
-                    ratioMask, maxDelayedQueuesPerThread);
-        }
+    private final LongCounter hits = PlatformDependent.newLongCounter();
+    private final LongCounter misses = PlatformDependent.newLongCounter();
+    private final LongCounter drops = PlatformDependent.newLongCounter();
+    private final RecyclerMetric metric = new DefaultRecyclerMetric();
 
-        @Override
-        protected void onRemoval(Stack<T> value) {
-            // Let us remove the WeakOrderQueue from the WeakHashMap directly if its safe to remove some overhead
-            if (value.threadRef.get() == Thread.currentThread()) {
-               if (DELAYED_RECYCLED.isSet()) {
-                   DELAYED_RECYCLED.get().remove(value);
-               }
-            }
-        }
-    };
+    // Only one of them is used, depending on useMagazines.
+    private final FastThreadLocal<Stack<T>> threadLocal;
+    private final FastThreadLocal<Magazine<T>> magazines;
 
     protected Recycler() {
         this(DEFAULT_MAX_CAPACITY_PER_THREAD);
@@ -140,6 +148,19 @@ public abstract class Recycler<T> {
 
     protected Recycler(int maxCapacityPerThread, int maxSharedCapacityFactor,
                        int ratio, int maxDelayedQueuesPerThread) {
+        this(maxCapacityPerThread, maxSharedCapacityFactor, ratio, maxDelayedQueuesPerThread, DEFAULT_USE_MAGAZINES);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param useMagazines {@code true} to pool the objects in magazines, see {@link Recycler}. Each thread may then
+     *                     return up to {@code maxCapacityPerThread / maxSharedCapacityFactor} objects to the
+     *                     magazine of another thread until that thread takes them, and
+     *                     {@code maxDelayedQueuesPerThread} is not used.
+     */
+    protected Recycler(int maxCapacityPerThread, int maxSharedCapacityFactor,
+                       int ratio, int maxDelayedQueuesPerThread, boolean useMagazines) {
         ratioMask = safeFindNextPositivePowerOfTwo(ratio) - 1;
         if (maxCapacityPerThread <= 0) {
             this.maxCapacityPerThread = 0;
@@ -150,18 +171,70 @@ public abstract class Recycler<T> {
             this.maxSharedCapacityFactor = max(1, maxSharedCapacityFactor);
             this.maxDelayedQueuesPerThread = max(0, maxDelayedQueuesPerThread);
         }
+        if (useMagazines) {
+            threadLocal = null;
+            magazines = new FastThreadLocal<Magazine<T>>() {
+                @Override
+                protected Magazine<T> initialValue() {
+                    return new Magazine<T>(Recycler.this, Thread.currentThread(), Recycler.this.maxCapacityPerThread,
+                            Recycler.this.maxSharedCapacityFactor, ratioMask);
+                }
+
+                @Override
+                protected void onRemoval(Magazine<T> value) {
+                    value.flushHits();
+                }
+            };
+        } else {
+            magazines = null;
+            threadLocal = new FastThreadLocal<Stack<T>>() {
+                @Override
+                protected Stack<T> initialValue() {
+                    return new Stack<T>(Recycler.this, Thread.currentThread(), Recycler.this.maxCapacityPerThread,
+                            Recycler.this.maxSharedCapacityFactor, ratioMask, Recycler.this.maxDelayedQueuesPerThread);
+                }
+
+                @Override
+                protected void onRemoval(Stack<T> value) {
+                    value.flushHits();
+                    // Let us remove the WeakOrderQueue from the WeakHashMap directly if its safe to remove some
+                    // overhead
+                    if (value.threadRef.get() == Thread.currentThread()) {
+                       if (DELAYED_RECYCLED.isSet()) {
+                           DELAYED_RECYCLED.get().remove(value);
+                       }
+                    }
+                }
+            };
+        }
     }
 
     @SuppressWarnings("unchecked")
     public final T get() {
         if (maxCapacityPerThread == 0) {
+            misses.increment();
             return newObject((Handle<T>) NOOP_HANDLE);
         }
+        if (magazines != null) {
+            Magazine<T> magazine = magazines.get();
+            MagazineHandle<T> handle = magazine.pop();
+            if (handle == null) {
+                misses.increment();
+                handle = magazine.newHandle();
+                handle.value = newObject(handle);
+            } else {
+                magazine.recordHit();
+            }
+            return (T) handle.value;
+        }
         Stack<T> stack = threadLocal.get();
         DefaultHandle<T> handle = stack.pop();
         if (handle == null) {
+            misses.increment();
             handle = stack.newHandle();
             handle.value = newObject(handle);
+        } else {
+            stack.recordHit();
         }
         return (T) handle.value;
     }
@@ -175,6 +248,15 @@ public abstract class Recycler<T> {
             return false;
         }
 
+        if (handle instanceof MagazineHandle) {
+            MagazineHandle<T> h = (MagazineHandle<T>) handle;
+            if (h.magazine.parent != this) {
+                return false;
+            }
+            h.recycle(o);
+            return true;
+        }
+
         DefaultHandle<T> h = (DefaultHandle<T>) handle;
         if (h.stack.parent != this) {
             return false;
@@ -185,11 +267,18 @@ public abstract class Recycler<T> {
     }
 
     final int threadLocalCapacity() {
-        return threadLocal.get().elements.length;
+        return magazines != null ? magazines.get().elements.length : threadLocal.get().elements.length;
     }
 
     final int threadLocalSize() {
-        return threadLocal.get().size;
+        return magazines != null ? magazines.get().size : threadLocal.get().size;
+    }
+
+    /**
+     * Returns a {@link RecyclerMetric} for this {@link Recycler}.
+     */
+    public final RecyclerMetric metric() {
+        return metric;
     }
 
     protected abstract T newObject(Handle<T> handle);
@@ -198,6 +287,60 @@ public abstract class Recycler<T> {
         void recycle(T object);
     }
 
+    private final class DefaultRecyclerMetric implements RecyclerMetric {
+        @Override
+        public long numHits() {
+            // Publish the hits of the calling thread, so they are included.
+            if (magazines != null) {
+                if (magazines.isSet()) {
+                    magazines.get().flushHits();
+                }
+            } else if (threadLocal != null && threadLocal.isSet()) {
+                threadLocal.get().flushHits();
+            }
+            return hits.value();
+        }
+
+        @Override
+        public long numMisses() {
+            return misses.value();
+        }
+
+        @Override
+        public long numDrops() {
+            return drops.value();
+        }
+
+        @Override
+        public String toString() {
+            return "RecyclerMetric(hits: " + numHits() + ", misses: " + numMisses() + ", drops: " + numDrops() + ')';
+        }
+    }
+
+    // Counts the hits of the thread that owns a pool locally, and publishes them in batches to keep get() cheap.
+    private abstract static class LocalPool {
+        private final LongCounter hits;
+        private int pendingHits;
+
+        LocalPool(LongCounter hits) {
+            this.hits = hits;
+        }
+
+        final void recordHit() {
+            if (++pendingHits == HITS_BATCH_SIZE) {
+                flushHits();
+            }
+        }
+
+        final void flushHits() {
+            int pendingHits = this.pendingHits;
+            if (pendingHits != 0) {
+                this.pendingHits = 0;
+                hits.add(pendingHits);
+            }
+        }
+    }
+
     static final class DefaultHandle<T> implements Handle<T> {
         private int lastRecycledId;
         private int recycleId;
@@ -307,10 +450,12 @@ public abstract class Recycler<T> {
         // pointer to another queue of delayed items for the same stack
         private WeakOrderQueue next;
         private final WeakReference<Thread> owner;
+        private final LongCounter drops;
         private final int id = ID_GENERATOR.getAndIncrement();
 
         private WeakOrderQueue() {
             owner = null;
+            drops = null;
             head = new Head(null);
         }
 
@@ -323,6 +468,7 @@ public abstract class Recycler<T> {
             head = new Head(stack.availableSharedCapacity);
             head.link = tail;
             owner = new WeakReference<Thread>(thread);
+            drops = stack.parent.drops;
         }
 
         static WeakOrderQueue newQueue(Stack<?> stack, Thread thread) {
@@ -356,6 +502,7 @@ public abstract class Recycler<T> {
             if ((writeIndex = tail.get()) == LINK_CAPACITY) {
                 if (!head.reserveSpace(LINK_CAPACITY)) {
                     // Drop it.
+                    drops.increment();
                     return;
                 }
                 // We allocate a Link so reserve the space
@@ -419,6 +566,7 @@ public abstract class Recycler<T> {
 
                     if (dst.dropHandle(element)) {
                         // Drop the object.
+                        dst.parent.drops.increment();
                         continue;
                     }
                     element.stack = dst;
@@ -444,7 +592,7 @@ public abstract class Recycler<T> {
         }
     }
 
-    static final class Stack<T> {
+    static final class Stack<T> extends LocalPool {
 
         // we keep a queue of per-thread queues, which is appended to once only, each time a new thread other
         // than the stack owner recycles: when we run out of items in our stack we iterate this collection
@@ -472,6 +620,7 @@ public abstract class Recycler<T> {
 
         Stack(Recycler<T> parent, Thread thread, int maxCapacity, int maxSharedCapacityFactor,
               int ratioMask, int maxDelayedQueues) {
+            super(parent.hits);
             this.parent = parent;
             threadRef = new WeakReference<Thread>(thread);
             this.maxCapacity = maxCapacity;
@@ -607,6 +756,7 @@ public abstract class Recycler<T> {
             int size = this.size;
             if (size >= maxCapacity || dropHandle(item)) {
                 // Hit the maximum capacity or should drop - drop the possibly youngest object.
+                parent.drops.increment();
                 return;
             }
             if (size == elements.length) {
@@ -627,16 +777,19 @@ public abstract class Recycler<T> {
                 if (delayedRecycled.size() >= maxDelayedQueues) {
                     // Add a dummy queue so we know we should drop the object
                     delayedRecycled.put(this, WeakOrderQueue.DUMMY);
+                    parent.drops.increment();
                     return;
                 }
                 // Check if we already reached the maximum number of delayed queues and if we can allocate at all.
                 if ((queue = WeakOrderQueue.allocate(this, thread)) == null) {
                     // drop object
+                    parent.drops.increment();
                     return;
                 }
                 delayedRecycled.put(this, queue);
             } else if (queue == WeakOrderQueue.DUMMY) {
                 // drop object
+                parent.drops.increment();
                 return;
             }
 
@@ -658,4 +811,164 @@ public abstract class Recycler<T> {
             return new DefaultHandle<T>(this);
         }
     }
+
+    static final class MagazineHandle<T> implements Handle<T> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<MagazineHandle> STATE_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(MagazineHandle.class, "state");
+
+        private static final int STATE_CLAIMED = 0;
+        private static final int STATE_AVAILABLE = 1;
+
+        private volatile int state; // STATE_CLAIMED
+        boolean hasBeenRecycled;
+
+        // The next handle on the return stack of the magazine and the number of handles on it including this one.
+        MagazineHandle<?> next;
+        int returnedCount;
+
+        private final Magazine<?> magazine;
+        private Object value;
+
+        MagazineHandle(Magazine<?> magazine) {
+            this.magazine = magazine;
+        }
+
+        @Override
+        public void recycle(Object object) {
+            if (object != value) {
+                throw new IllegalArgumentException("object does not belong to handle");
+            }
+            if (!STATE_UPDATER.compareAndSet(this, STATE_CLAIMED, STATE_AVAILABLE)) {
+                throw new IllegalStateException("recycled already");
+            }
+            magazine.push(this);
+        }
+
+        void claim() {
+            STATE_UPDATER.lazySet(this, STATE_CLAIMED);
+        }
+    }
+
+    // A bounded pool of the handles of one thread. Other threads return handles by pushing them onto a lock-free
+    // stack, which the owner takes as a whole once its pool is empty. As the owner never removes single handles
+    // from the stack there is no ABA problem.
+    static final class Magazine<T> extends LocalPool {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Magazine, MagazineHandle> RETURNED_UPDATER =
+                AtomicReferenceFieldUpdater.newUpdater(Magazine.class, MagazineHandle.class, "returned");
+
+        final Recycler<T> parent;
+        // Only used to tell if the owner recycles, see Stack.threadRef for why it is weak.
+        final WeakReference<Thread> threadRef;
+
+        private final int maxCapacity;
+        private final int maxReturned;
+        private final int ratioMask;
+        private MagazineHandle<?>[] elements;
+        private int size;
+        private int handleRecycleCount = -1; // Start with -1 so the first one will be recycled.
+        private volatile MagazineHandle<?> returned;
+
+        Magazine(Recycler<T> parent, Thread thread, int maxCapacity, int maxSharedCapacityFactor, int ratioMask) {
+            super(parent.hits);
+            this.parent = parent;
+            threadRef = new WeakReference<Thread>(thread);
+            this.maxCapacity = maxCapacity;
+            maxReturned = max(maxCapacity / maxSharedCapacityFactor, 1);
+            this.ratioMask = ratioMask;
+            elements = new MagazineHandle[min(INITIAL_CAPACITY, maxCapacity)];
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        MagazineHandle<T> pop() {
+            int size = this.size;
+            if (size == 0) {
+                if (!takeReturned()) {
+                    return null;
+                }
+                size = this.size;
+            }
+            size --;
+            MagazineHandle ret = elements[size];
+            elements[size] = null;
+            this.size = size;
+            ret.claim();
+            return ret;
+        }
+
+        private boolean takeReturned() {
+            if (returned == null) {
+                return false;
+            }
+            // Reverse the stack, so the handles are added in the order in which they were returned.
+            MagazineHandle<?> handle = RETURNED_UPDATER.getAndSet(this, null);
+            MagazineHandle<?> first = null;
+            while (handle != null) {
+                MagazineHandle<?> next = handle.next;
+                handle.next = first;
+                first = handle;
+                handle = next;
+            }
+            while (first != null) {
+                MagazineHandle<?> next = first.next;
+                first.next = null;
+                add(first);
+                first = next;
+            }
+            return size != 0;
+        }
+
+        void push(MagazineHandle<?> handle) {
+            if (threadRef.get() == Thread.currentThread()) {
+                add(handle);
+            } else {
+                pushReturned(handle);
+            }
+        }
+
+        private void add(MagazineHandle<?> handle) {
+            int size = this.size;
+            if (size >= maxCapacity || dropHandle(handle)) {
+                parent.drops.increment();
+                return;
+            }
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, min(size << 1, maxCapacity));
+            }
+            elements[size] = handle;
+            this.size = size + 1;
+        }
+
+        private void pushReturned(MagazineHandle<?> handle) {
+            for (;;) {
+                MagazineHandle<?> head = returned;
+                int count = head == null ? 1 : head.returnedCount + 1;
+                if (count > maxReturned) {
+                    parent.drops.increment();
+                    return;
+                }
+                handle.next = head;
+                handle.returnedCount = count;
+                if (RETURNED_UPDATER.compareAndSet(this, head, handle)) {
+                    return;
+                }
+            }
+        }
+
+        private boolean dropHandle(MagazineHandle<?> handle) {
+            if (!handle.hasBeenRecycled) {
+                if ((++handleRecycleCount & ratioMask) != 0) {
+                    // Drop the object.
+                    return true;
+                }
+                handle.hasBeenRecycled = true;
+            }
+            return false;
+        }
+
+        MagazineHandle<T> newHandle() {
+            return new MagazineHandle<T>(this);
+        }
+    }
 }
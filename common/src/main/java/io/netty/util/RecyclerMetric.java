@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util;
+
+/**
+ * Expose metrics for a {@link Recycler}, and so for the type of objects it pools.
+ *
+ * The hits of a thread are published in batches, so the hits of other threads than the calling one may lag behind.
+ */
+public interface RecyclerMetric {
+
+    /**
+     * Returns the number of times {@link Recycler#get()} returned a pooled object.
+     */
+    long numHits();
+
+    /**
+     * Returns the number of times {@link Recycler#get()} had to create a new object.
+     */
+    long numMisses();
+
+    /**
+     * Returns the number of recycled objects that were dropped instead of pooled, as the pool was full or the
+     * object was only allowed to be pooled at the configured ratio.
+     */
+    long numDrops();
+}
@@ -15,6 +15,7 @@
  */
 package io.netty.util.concurrent;
 
+import io.netty.util.internal.UnstableApi;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 
@@ -165,4 +166,23 @@ public abstract class AbstractEventExecutor extends AbstractExecutorService impl
             logger.warn("A task raised an exception. Task: {}", task, t);
         }
     }
+
+    /**
+     * Like {@link #execute(Runnable)} but does not wake up the executor if it is waiting for work, so the task may
+     * only be run once the executor wakes up for another reason. Use this for tasks that are not urgent to save the
+     * cost of the wake-up, which is a system call for event loops that wait on a selector.
+     *
+     * This is equivalent to passing a {@link LazyRunnable} to {@link #execute(Runnable)}. The default implementation
+     * just delegates to {@link #execute(Runnable)}.
+     */
+    @UnstableApi
+    public void lazyExecute(Runnable task) {
+        execute(task);
+    }
+
+    /**
+     * Marker interface for {@link Runnable}s that are executed as if {@link #lazyExecute(Runnable)} was used.
+     */
+    @UnstableApi
+    public interface LazyRunnable extends Runnable { }
 }
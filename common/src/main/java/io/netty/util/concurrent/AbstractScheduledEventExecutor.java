@@ -15,7 +15,6 @@
  */
 package io.netty.util.concurrent;
 
-import io.netty.util.internal.DefaultPriorityQueue;
 import io.netty.util.internal.ObjectUtil;
 import io.netty.util.internal.PriorityQueue;
 
@@ -30,7 +29,7 @@ import java.util.concurrent.TimeUnit;
  */
 public abstract class AbstractScheduledEventExecutor extends AbstractEventExecutor {
 
-    private static final Comparator<ScheduledFutureTask<?>> SCHEDULED_FUTURE_TASK_COMPARATOR =
+    static final Comparator<ScheduledFutureTask<?>> SCHEDULED_FUTURE_TASK_COMPARATOR =
             new Comparator<ScheduledFutureTask<?>>() {
                 @Override
                 public int compare(ScheduledFutureTask<?> o1, ScheduledFutureTask<?> o2) {
@@ -39,6 +38,9 @@ public abstract class AbstractScheduledEventExecutor extends AbstractEventExecut
             };
 
     PriorityQueue<ScheduledFutureTask<?>> scheduledTaskQueue;
+    // The factory of scheduledTaskQueue.
+    private ScheduledTaskQueueFactory scheduledTaskQueueFactory;
+    private volatile ScheduledTaskQueueFactory newScheduledTaskQueueFactory = ScheduledTaskQueueFactory.PRIORITY_QUEUE;
 
     protected AbstractScheduledEventExecutor() {
     }
@@ -52,15 +54,30 @@ public abstract class AbstractScheduledEventExecutor extends AbstractEventExecut
     }
 
     PriorityQueue<ScheduledFutureTask<?>> scheduledTaskQueue() {
-        if (scheduledTaskQueue == null) {
-            scheduledTaskQueue = new DefaultPriorityQueue<ScheduledFutureTask<?>>(
-                    SCHEDULED_FUTURE_TASK_COMPARATOR,
-                    // Use same initial capacity as java.util.PriorityQueue
-                    11);
+        ScheduledTaskQueueFactory factory = newScheduledTaskQueueFactory;
+        if (scheduledTaskQueue == null || scheduledTaskQueueFactory != factory) {
+            PriorityQueue<ScheduledFutureTask<?>> oldQueue = scheduledTaskQueue;
+            scheduledTaskQueue = factory.newQueue(this);
+            scheduledTaskQueueFactory = factory;
+            if (oldQueue != null) {
+                for (ScheduledFutureTask<?> task: oldQueue.toArray(new ScheduledFutureTask<?>[0])) {
+                    oldQueue.removeTyped(task);
+                    scheduledTaskQueue.add(task);
+                }
+            }
         }
         return scheduledTaskQueue;
     }
 
+    /**
+     * Sets the {@link ScheduledTaskQueueFactory} which creates the queue of the scheduled tasks. The default is
+     * {@link ScheduledTaskQueueFactory#PRIORITY_QUEUE}. The tasks that are scheduled already are moved to the new
+     * queue the next time a task is scheduled or cancelled.
+     */
+    public void setScheduledTaskQueueFactory(ScheduledTaskQueueFactory factory) {
+        newScheduledTaskQueueFactory = ObjectUtil.checkNotNull(factory, "factory");
+    }
+
     private static boolean isNullOrEmpty(Queue<ScheduledFutureTask<?>> queue) {
         return queue == null || queue.isEmpty();
     }
@@ -101,15 +118,15 @@ public abstract class AbstractScheduledEventExecutor extends AbstractEventExecut
     protected final Runnable pollScheduledTask(long nanoTime) {
         assert inEventLoop();
 
-        Queue<ScheduledFutureTask<?>> scheduledTaskQueue = this.scheduledTaskQueue;
+        PriorityQueue<ScheduledFutureTask<?>> scheduledTaskQueue = this.scheduledTaskQueue;
         ScheduledFutureTask<?> scheduledTask = scheduledTaskQueue == null ? null : scheduledTaskQueue.peek();
         if (scheduledTask == null) {
             return null;
         }
 
         if (scheduledTask.deadlineNanos() <= nanoTime) {
-            scheduledTaskQueue.remove();
-            return scheduledTask;
+            // A ScheduledTaskWheel may return a placeholder that is not in the queue, see ScheduledTaskWheel#peek().
+            return scheduledTaskQueue.removeTyped(scheduledTask) ? scheduledTask : null;
         }
         return null;
     }
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link EventExecutorGroup} whose {@link #next()} returns a new {@link OrderedEventExecutor} each time, so each
+ * pipeline that adds handlers with the group gets its own executor. The tasks of an executor are queued by the
+ * executor itself and run in order by an {@link Executor} shared by the group, which is only given the executor while
+ * it has tasks to run. An executor therefore holds no thread while it is idle, and needs no shutdown when its channel
+ * is closed.
+ */
+abstract class AbstractSerialEventExecutorGroup extends AbstractEventExecutorGroup {
+
+    private final Executor executor;
+    private final int maxTasksPerRun;
+    // The number of executors that have tasks to run.
+    private final AtomicInteger activeExecutors = new AtomicInteger();
+    private final Promise<?> terminationFuture = new DefaultPromise<Void>(GlobalEventExecutor.INSTANCE);
+    private volatile boolean shutdown;
+
+    /**
+     * @param executor          the {@link Executor} that runs the executors
+     * @param maxTasksPerRun    the number of tasks an executor may run before it gives way to other executors
+     */
+    AbstractSerialEventExecutorGroup(Executor executor, int maxTasksPerRun) {
+        this.executor = ObjectUtil.checkNotNull(executor, "executor");
+        this.maxTasksPerRun = ObjectUtil.checkPositive(maxTasksPerRun, "maxTasksPerRun");
+    }
+
+    /**
+     * Returns a new {@link OrderedEventExecutor}.
+     */
+    @Override
+    public EventExecutor next() {
+        return new SerialEventExecutor(this);
+    }
+
+    /**
+     * Returns an empty {@link Iterator}, as the executors of this group are not retained.
+     */
+    @Override
+    public Iterator<EventExecutor> iterator() {
+        return Collections.<EventExecutor>emptyList().iterator();
+    }
+
+    @Override
+    public boolean isShuttingDown() {
+        return shutdown;
+    }
+
+    @Override
+    public Future<?> shutdownGracefully(long quietPeriod, long timeout, TimeUnit unit) {
+        shutdown();
+        return terminationFuture();
+    }
+
+    @Override
+    public Future<?> terminationFuture() {
+        return terminationFuture;
+    }
+
+    @Override
+    @Deprecated
+    public void shutdown() {
+        shutdown = true;
+        if (activeExecutors.get() == 0) {
+            terminate();
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminationFuture.isDone();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminationFuture.await(timeout, unit);
+    }
+
+    /**
+     * Invoked once all executors ran their tasks after the group was shut down.
+     */
+    void terminated() { }
+
+    private void start(Runnable run) {
+        activeExecutors.incrementAndGet();
+        try {
+            executor.execute(run);
+        } catch (Throwable cause) {
+            stop();
+            PlatformDependent.throwException(cause);
+        }
+    }
+
+    private void stop() {
+        if (activeExecutors.decrementAndGet() == 0 && shutdown) {
+            terminate();
+        }
+    }
+
+    private void terminate() {
+        if (terminationFuture.trySuccess(null)) {
+            terminated();
+        }
+    }
+
+    /**
+     * Runs its tasks in order on the {@link Executor} of the group. Scheduled tasks are kept by the executor, which
+     * asks the {@link GlobalEventExecutor} to wake it up when the next one is due.
+     */
+    private static final class SerialEventExecutor extends AbstractScheduledEventExecutor
+            implements OrderedEventExecutor, Runnable {
+
+        private static final int NONE = 0;
+        private static final int SUBMITTED = 1;
+        private static final int RUNNING = 2;
+
+        private static final Runnable WAKEUP_TASK = new Runnable() {
+            @Override
+            public void run() {
+                // Do nothing.
+            }
+        };
+
+        private final AbstractSerialEventExecutorGroup parent;
+        private final Queue<Runnable> tasks = PlatformDependent.newMpscQueue();
+        private final AtomicInteger state = new AtomicInteger();
+        private volatile Thread thread;
+
+        // Only accessed by the thread that runs the tasks.
+        private ScheduledFuture<?> wakeupFuture;
+        private long wakeupDeadlineNanos;
+
+        private final Runnable wakeup = new Runnable() {
+            @Override
+            public void run() {
+                if (!parent.isShuttingDown()) {
+                    execute(WAKEUP_TASK);
+                }
+            }
+        };
+
+        SerialEventExecutor(AbstractSerialEventExecutorGroup parent) {
+            super(parent);
+            this.parent = parent;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            ObjectUtil.checkNotNull(task, "task");
+            if (parent.isShutdown()) {
+                throw new RejectedExecutionException("event executor terminated");
+            }
+            tasks.offer(task);
+            if (state.compareAndSet(NONE, SUBMITTED)) {
+                parent.start(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(SUBMITTED, RUNNING)) {
+                return;
+            }
+            thread = Thread.currentThread();
+            for (;;) {
+                boolean ranAll = runTasks();
+                scheduleWakeup();
+                thread = null;
+
+                if (!ranAll) {
+                    state.set(SUBMITTED);
+                    try {
+                        // Give way to the other executors, this run still counts as active.
+                        parent.executor.execute(this);
+                        return;
+                    } catch (Throwable ignore) {
+                        // Most likely the executor is shutting down, so keep on running the tasks here.
+                        state.set(RUNNING);
+                        thread = Thread.currentThread();
+                        continue;
+                    }
+                }
+
+                state.set(NONE);
+                // A producer may have added a task after the last poll but before the state was set to NONE, without
+                // starting another run. If so, it is still up to this run to run it.
+                if (tasks.peek() == null || !state.compareAndSet(NONE, RUNNING)) {
+                    parent.stop();
+                    return;
+                }
+                thread = Thread.currentThread();
+            }
+        }
+
+        /**
+         * Runs the due scheduled tasks and the queued tasks, and returns {@code false} if there may be more to run.
+         */
+        private boolean runTasks() {
+            for (int i = 0; i < parent.maxTasksPerRun; i++) {
+                Runnable task = hasScheduledTasks() ? pollScheduledTask(nanoTime()) : null;
+                if (task == null) {
+                    task = tasks.poll();
+                    if (task == null) {
+                        return true;
+                    }
+                }
+                safeExecute(task);
+            }
+            return false;
+        }
+
+        private void scheduleWakeup() {
+            ScheduledFutureTask<?> next = peekScheduledTask();
+            if (next == null) {
+                return;
+            }
+            long deadlineNanos = next.deadlineNanos();
+            if (wakeupFuture != null && !wakeupFuture.isDone()) {
+                if (wakeupDeadlineNanos <= deadlineNanos) {
+                    return;
+                }
+                wakeupFuture.cancel(false);
+            }
+            wakeupDeadlineNanos = deadlineNanos;
+            wakeupFuture = GlobalEventExecutor.INSTANCE.schedule(
+                    wakeup, Math.max(0, deadlineNanos - nanoTime()), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public boolean inEventLoop(Thread thread) {
+            return thread == this.thread;
+        }
+
+        @Override
+        public boolean isShuttingDown() {
+            return parent.isShuttingDown();
+        }
+
+        @Override
+        public Future<?> shutdownGracefully(long quietPeriod, long timeout, TimeUnit unit) {
+            return parent.shutdownGracefully(quietPeriod, timeout, unit);
+        }
+
+        @Override
+        public Future<?> terminationFuture() {
+            return parent.terminationFuture();
+        }
+
+        @Override
+        @Deprecated
+        public void shutdown() {
+            parent.shutdown();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return parent.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return parent.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return parent.awaitTermination(timeout, unit);
+        }
+    }
+}
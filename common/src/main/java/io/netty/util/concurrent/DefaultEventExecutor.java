@@ -63,8 +63,7 @@ public final class DefaultEventExecutor extends SingleThreadEventExecutor {
         for (;;) {
             Runnable task = takeTask();
             if (task != null) {
-                task.run();
-                updateLastExecutionTime();
+                runTask(task);
             }
 
             if (confirmShutdown()) {
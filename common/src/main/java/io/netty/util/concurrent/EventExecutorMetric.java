@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+/**
+ * Expose metrics for a {@link SingleThreadEventExecutor}. All methods may be called from any thread. The values are
+ * updated by the executor thread after each batch of tasks, so they may lag behind while a batch is running.
+ *
+ * The histograms are returned as arrays of counts, where the count at index {@code 0} is for the value {@code 0}
+ * and the count at index {@code i > 0} is for values in the range {@code [2^(i-1), 2^i)}. The last index also
+ * counts all larger values.
+ *
+ * The times and the histograms are only recorded while the
+ * {@linkplain SingleThreadEventExecutor#setDetailedMetricsEnabled(boolean) detailed metrics} are enabled.
+ */
+public interface EventExecutorMetric {
+
+    /**
+     * Returns the number of tasks that are waiting to be run.
+     *
+     * @see SingleThreadEventExecutor#pendingTasks()
+     */
+    int pendingTasks();
+
+    /**
+     * Returns the number of tasks that were run, including scheduled tasks.
+     */
+    long numExecutedTasks();
+
+    /**
+     * Returns the total time in nanoseconds spent running tasks while the detailed metrics were enabled. The
+     * {@link PowerOfTwoChoicesEventExecutorChooserFactory#TASK_TIME} estimator enables them.
+     */
+    long taskTimeNanos();
+
+    /**
+     * Returns the number of times the executor ran its pending tasks. This is once per iteration for event loops,
+     * and once per task for executors that take their tasks one by one, like {@link DefaultEventExecutor}.
+     */
+    long numIterations();
+
+    /**
+     * Returns a histogram of the number of tasks that were run per iteration.
+     */
+    long[] tasksPerIterationHistogram();
+
+    /**
+     * Returns a histogram of the time in microseconds that scheduled tasks were run after their deadline. A loop
+     * that is overloaded shows an increasing lag before the latency of its channels does.
+     */
+    long[] scheduledTaskLagHistogram();
+}
@@ -18,9 +18,12 @@ package io.netty.util.concurrent;
 import io.netty.util.internal.InternalThreadLocalMap;
 import io.netty.util.internal.PlatformDependent;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * A special variant of {@link ThreadLocal} that yields higher access performance when accessed from a
@@ -36,6 +39,12 @@ import java.util.Set;
  * Note that the fast path is only possible on threads that extend {@link FastThreadLocalThread}, because it requires
  * a special field to store the necessary state.  An access by any other kind of thread falls back to a regular
  * {@link ThreadLocal}.
+ * </p><p>
+ * A {@link FastThreadLocal} that is created dynamically, for example one per connection pool, should be
+ * {@link #release() released} once it is not used anymore, so its index can be reused and the tables of the threads
+ * do not keep growing. The index is only reused once every thread that had a value removed it, so a thread that
+ * terminates without calling {@link #removeAll()} keeps it in use. A {@link FastThreadLocalThread} that runs a
+ * {@link Runnable}, like the ones created by {@link DefaultThreadFactory}, calls it when it terminates.
  * </p>
  *
  * @param <V> the type of the thread-local variable
@@ -45,6 +54,15 @@ public class FastThreadLocal<V> {
 
     private static final int variablesToRemoveIndex = InternalThreadLocalMap.nextVariableIndex();
 
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<FastThreadLocal> HOLDERS_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(FastThreadLocal.class, "holders");
+
+    // The released variables which some threads may still have a value for, in the order they were released.
+    private static final List<FastThreadLocal<?>> releasedVariables = new ArrayList<FastThreadLocal<?>>();
+    // The number of variables released so far, only written while holding the lock of releasedVariables.
+    private static volatile long releaseCount;
+
     /**
      * Removes all {@link FastThreadLocal} variables bound to the current thread.  This operation is useful when you
      * are in a container environment, and you don't want to leave the thread local variables in the threads you do not
@@ -68,7 +86,7 @@ public class FastThreadLocal<V> {
                 }
             }
         } finally {
-            InternalThreadLocalMap.remove();
+            InternalThreadLocalMap.removeMap();
         }
     }
 
@@ -122,8 +140,35 @@ public class FastThreadLocal<V> {
         variablesToRemove.remove(variable);
     }
 
+    /**
+     * Removes the values of the variables released since the last call from the given map, which must be for the
+     * current thread, and shrinks its table if possible.
+     */
+    private static void removeReleasedVariables(InternalThreadLocalMap threadLocalMap) {
+        FastThreadLocal<?>[] variables;
+        synchronized (releasedVariables) {
+            long seen = threadLocalMap.releasedVariables();
+            int i = releasedVariables.size();
+            while (i > 0 && releasedVariables.get(i - 1).releaseSequence >= seen) {
+                i --;
+            }
+            variables = releasedVariables.subList(i, releasedVariables.size()).toArray(new FastThreadLocal[0]);
+            threadLocalMap.setReleasedVariables(releaseCount);
+        }
+        for (FastThreadLocal<?> variable: variables) {
+            variable.remove(threadLocalMap);
+        }
+        threadLocalMap.trimIndexedVariableTable();
+    }
+
     private final int index;
 
+    // The number of threads that have a value set for this variable.
+    private volatile int holders;
+    private volatile boolean released;
+    // The value of releaseCount when this variable was released, guarded by releasedVariables.
+    private long releaseSequence;
+
     public FastThreadLocal() {
         index = InternalThreadLocalMap.nextVariableIndex();
     }
@@ -190,11 +235,45 @@ public class FastThreadLocal<V> {
             PlatformDependent.throwException(e);
         }
 
-        threadLocalMap.setIndexedVariable(index, v);
-        addToVariablesToRemove(threadLocalMap, this);
+        addValue(threadLocalMap, v);
         return v;
     }
 
+    /**
+     * Stores the value of the current thread, which had no value before.
+     *
+     * @return see {@link InternalThreadLocalMap#setIndexedVariable(int, Object)}.
+     */
+    private boolean addValue(InternalThreadLocalMap threadLocalMap, V value) {
+        // Count the holder before storing the value, as release() would reuse the index in between otherwise.
+        HOLDERS_UPDATER.incrementAndGet(this);
+        boolean added = false;
+        try {
+            added = threadLocalMap.setIndexedVariable(index, value);
+        } finally {
+            if (added) {
+                valueAdded(threadLocalMap);
+            } else {
+                // initialValue() set the value itself, or the table could not be expanded.
+                valueRemoved();
+            }
+        }
+        return added;
+    }
+
+    private void valueAdded(InternalThreadLocalMap threadLocalMap) {
+        addToVariablesToRemove(threadLocalMap, this);
+        if (threadLocalMap.releasedVariables() != releaseCount) {
+            removeReleasedVariables(threadLocalMap);
+        }
+    }
+
+    private void valueRemoved() {
+        if (HOLDERS_UPDATER.decrementAndGet(this) == 0 && released) {
+            releaseIndex();
+        }
+    }
+
     /**
      * Set the value for the current thread.
      */
@@ -224,11 +303,11 @@ public class FastThreadLocal<V> {
      * @return see {@link InternalThreadLocalMap#setIndexedVariable(int, Object)}.
      */
     private boolean setKnownNotUnset(InternalThreadLocalMap threadLocalMap, V value) {
-        if (threadLocalMap.setIndexedVariable(index, value)) {
-            addToVariablesToRemove(threadLocalMap, this);
-            return true;
+        if (threadLocalMap.isIndexedVariableSet(index)) {
+            threadLocalMap.setIndexedVariable(index, value);
+            return false;
         }
-        return false;
+        return addValue(threadLocalMap, value);
     }
 
     /**
@@ -267,6 +346,7 @@ public class FastThreadLocal<V> {
         removeFromVariablesToRemove(threadLocalMap, this);
 
         if (v != InternalThreadLocalMap.UNSET) {
+            valueRemoved();
             try {
                 onRemoval((V) v);
             } catch (Exception e) {
@@ -275,6 +355,47 @@ public class FastThreadLocal<V> {
         }
     }
 
+    /**
+     * Removes the value of the current thread and releases the index of this variable, which is reused by a new
+     * {@link FastThreadLocal} once no thread has a value for this variable anymore. Other threads remove their values,
+     * calling {@link #onRemoval(Object)}, the next time they add a value for any {@link FastThreadLocal}. This
+     * variable must not be used anymore after it was released.
+     */
+    public final void release() {
+        remove();
+        synchronized (releasedVariables) {
+            if (released) {
+                return;
+            }
+            releaseSequence = releaseCount;
+            releasedVariables.add(this);
+            releaseCount = releaseSequence + 1;
+            released = true;
+        }
+        if (holders == 0) {
+            releaseIndex();
+        }
+    }
+
+    private void releaseIndex() {
+        synchronized (releasedVariables) {
+            // Both release() and the removal of the last value may get here, only one of them releases the index.
+            int i = releasedVariables.size() - 1;
+            while (i >= 0 && releasedVariables.get(i) != this) {
+                i --;
+            }
+            if (i < 0) {
+                return;
+            }
+            releasedVariables.remove(i);
+        }
+        InternalThreadLocalMap.releaseVariableIndex(index);
+        InternalThreadLocalMap threadLocalMap = InternalThreadLocalMap.getIfSet();
+        if (threadLocalMap != null) {
+            threadLocalMap.trimIndexedVariableTable();
+        }
+    }
+
     /**
      * Returns the initial value for this thread-local variable.
      */
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link BlockingQueue} backed by a lock-free multi-producer single-consumer queue, so
+ * {@link SingleThreadEventExecutor#takeTask()} can block on it without producers acquiring a lock or allocating
+ * a node per task.
+ *
+ * The consumer publishes itself before it parks and checks the queue again, while the first producer that sees it
+ * published after a successful {@link #offer(Runnable)} unpublishes and unparks it, so it is unparked only once.
+ * Only the event loop thread may take tasks. {@link #offer(Runnable)} never blocks, while {@link #put(Runnable)} and
+ * {@link #offer(Runnable, long, TimeUnit)} wait for space by parking with an increasing backoff, as the consumer does
+ * not signal producers so that taking a task stays cheap. They must not be called by the consumer itself.
+ *
+ * The MPSC queue can only remove its head, so {@link #remove(Object)} and {@link #iterator()} move the queued tasks
+ * to a deque that is polled first. The consumer side is guarded by a lock for this, which is only contended while a
+ * task is removed, so producers stay lock-free.
+ */
+final class MpscTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private static final AtomicReferenceFieldUpdater<MpscTaskQueue, Thread> WAITER_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(MpscTaskQueue.class, Thread.class, "waiter");
+    private static final long MIN_PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MAX_PRODUCER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Queue<Runnable> queue;
+    private final int maxCapacity;
+    // The consumer thread while it is parked or about to park.
+    private volatile Thread waiter;
+    // Guards taking tasks out of queue, which remove(Object) does as well as the consumer.
+    private final Object consumerLock = new Object();
+    // The tasks that were moved out of queue, which come before the ones still in it. Guarded by consumerLock.
+    private final ArrayDeque<Runnable> front = new ArrayDeque<Runnable>();
+
+    MpscTaskQueue(int maxCapacity) {
+        this.maxCapacity = maxCapacity;
+        queue = maxCapacity == Integer.MAX_VALUE ? PlatformDependent.<Runnable>newMpscQueue()
+                                                 : PlatformDependent.<Runnable>newMpscQueue(maxCapacity);
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        if (!queue.offer(ObjectUtil.checkNotNull(task, "task"))) {
+            return false;
+        }
+        Thread waiter = this.waiter;
+        if (waiter != null && WAITER_UPDATER.compareAndSet(this, waiter, null)) {
+            LockSupport.unpark(waiter);
+        }
+        return true;
+    }
+
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        long parkNanos = MIN_PRODUCER_PARK_NANOS;
+        while (!offer(task)) {
+            parkNanos = parkProducer(parkNanos, Long.MAX_VALUE);
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long parkNanos = MIN_PRODUCER_PARK_NANOS;
+        while (!offer(task)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            parkNanos = parkProducer(parkNanos, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Parks a producer that found the queue full for at most {@code parkNanos} and {@code remainingNanos}, and
+     * returns the time to park for the next time.
+     */
+    private static long parkProducer(long parkNanos, long remainingNanos) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        LockSupport.parkNanos(Math.min(parkNanos, remainingNanos));
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return Math.min(parkNanos << 1, MAX_PRODUCER_PARK_NANOS);
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        for (;;) {
+            Runnable task = poll();
+            if (task != null) {
+                return task;
+            }
+            park(-1);
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (;;) {
+            Runnable task = poll();
+            if (task != null) {
+                return task;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            park(remaining);
+        }
+    }
+
+    /**
+     * Parks the consumer until a task is offered, the timeout expires or the thread is interrupted. This may also
+     * return spuriously.
+     */
+    private void park(long timeoutNanos) throws InterruptedException {
+        waiter = Thread.currentThread();
+        try {
+            // Check again after publishing the waiter, as a producer may have missed it.
+            if (isEmpty()) {
+                if (timeoutNanos < 0) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, timeoutNanos);
+                }
+            }
+        } finally {
+            waiter = null;
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        synchronized (consumerLock) {
+            Runnable task = front.poll();
+            return task != null ? task : queue.poll();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        synchronized (consumerLock) {
+            Runnable task = front.peek();
+            return task != null ? task : queue.peek();
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (consumerLock) {
+            return front.size() + queue.size();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        synchronized (consumerLock) {
+            return front.isEmpty() && queue.isEmpty();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return maxCapacity == Integer.MAX_VALUE ? Integer.MAX_VALUE : Math.max(0, maxCapacity - size());
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        synchronized (consumerLock) {
+            return front.remove(o) || moveToFront(o);
+        }
+    }
+
+    @Override
+    public Iterator<Runnable> iterator() {
+        synchronized (consumerLock) {
+            moveToFront(null);
+            return Collections.unmodifiableList(new ArrayList<Runnable>(front)).iterator();
+        }
+    }
+
+    /**
+     * Moves the tasks in {@link #queue} to {@link #front} until {@code o}, if not {@code null}, is found, which is
+     * then dropped. The tasks offered while moving are left in {@link #queue}, so producers cannot keep this from
+     * returning.
+     *
+     * @return {@code true} if {@code o} was found.
+     */
+    private boolean moveToFront(Object o) {
+        assert Thread.holdsLock(consumerLock);
+        for (int n = queue.size(); n > 0; n--) {
+            Runnable task = queue.poll();
+            if (task == null) {
+                break;
+            }
+            if (o != null && o.equals(task)) {
+                return true;
+            }
+            front.add(task);
+        }
+        return false;
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        int drained = 0;
+        while (drained < maxElements) {
+            Runnable task = poll();
+            if (task == null) {
+                break;
+            }
+            c.add(task);
+            drained++;
+        }
+        return drained;
+    }
+}
@@ -15,6 +15,8 @@
  */
 package io.netty.util.concurrent;
 
+import io.netty.util.internal.ObjectUtil;
+
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -164,6 +166,35 @@ public abstract class MultithreadEventExecutorGroup extends AbstractEventExecuto
         return children.length;
     }
 
+    /**
+     * Sets the {@link ScheduledTaskQueueFactory} of the child executors which support scheduling, for example
+     * {@link ScheduledTaskQueueFactory#timingWheel()} if they schedule many timeouts.
+     *
+     * @see AbstractScheduledEventExecutor#setScheduledTaskQueueFactory(ScheduledTaskQueueFactory)
+     */
+    public void setScheduledTaskQueueFactory(ScheduledTaskQueueFactory factory) {
+        ObjectUtil.checkNotNull(factory, "factory");
+        for (EventExecutor e: children) {
+            if (e instanceof AbstractScheduledEventExecutor) {
+                ((AbstractScheduledEventExecutor) e).setScheduledTaskQueueFactory(factory);
+            }
+        }
+    }
+
+    /**
+     * Sets the {@link SlowTaskDetector} of the child executors, or disables the detection if {@code null}. A single
+     * detector may be shared by several groups.
+     *
+     * @see SingleThreadEventExecutor#setSlowTaskDetector(SlowTaskDetector)
+     */
+    public void setSlowTaskDetector(SlowTaskDetector detector) {
+        for (EventExecutor e: children) {
+            if (e instanceof SingleThreadEventExecutor) {
+                ((SingleThreadEventExecutor) e).setSlowTaskDetector(detector);
+            }
+        }
+    }
+
     /**
      * Create a new EventExecutor which will later then accessible via the {@link #next()}  method. This method will be
      * called for each thread that will serve this {@link MultithreadEventExecutorGroup}.
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.UnstableApi;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chooses the less loaded of two {@link EventExecutor}s picked at random, which keeps the executors of a group
+ * evenly loaded when the work they are given, like long-lived connections, differs a lot in weight. Unlike always
+ * choosing the least loaded executor, this does not send a burst of work to the same executor while the load it
+ * reports lags behind.
+ *
+ * The load is given by a {@link LoadEstimator}, which is either read as is, or as the increase of a counter over a
+ * recent window, like the time an executor was busy.
+ */
+@UnstableApi
+public final class PowerOfTwoChoicesEventExecutorChooserFactory implements EventExecutorChooserFactory {
+
+    /**
+     * Estimates the load of an {@link EventExecutor}. It may be called from any thread, so it should be cheap and
+     * must not block.
+     */
+    public interface LoadEstimator {
+        /**
+         * Returns the load of the given executor.
+         */
+        long load(EventExecutor executor);
+    }
+
+    /**
+     * A {@link LoadEstimator} that reads times which the executors only record while their
+     * {@linkplain SingleThreadEventExecutor#setDetailedMetricsEnabled(boolean) detailed metrics} are enabled. The
+     * choosers created with such an estimator enable the detailed metrics of their executors.
+     */
+    public interface TimeLoadEstimator extends LoadEstimator {
+    }
+
+    /**
+     * The number of {@linkplain SingleThreadEventExecutor#pendingTasks() pending tasks}.
+     */
+    public static final LoadEstimator PENDING_TASKS = new LoadEstimator() {
+        @Override
+        public long load(EventExecutor executor) {
+            return executor instanceof SingleThreadEventExecutor ?
+                    ((SingleThreadEventExecutor) executor).pendingTasks() : 0;
+        }
+    };
+
+    /**
+     * The total time the executor spent running tasks, which is a counter. The choosers created with it enable the
+     * detailed metrics of their executors, as the time is not recorded otherwise.
+     *
+     * @see EventExecutorMetric#taskTimeNanos()
+     */
+    public static final LoadEstimator TASK_TIME = new TimeLoadEstimator() {
+        @Override
+        public long load(EventExecutor executor) {
+            return executor instanceof SingleThreadEventExecutor ?
+                    ((SingleThreadEventExecutor) executor).metric().taskTimeNanos() : 0;
+        }
+    };
+
+    private static final long DEFAULT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final LoadEstimator estimator;
+    private final long windowNanos;
+
+    private PowerOfTwoChoicesEventExecutorChooserFactory(LoadEstimator estimator, long windowNanos) {
+        this.estimator = ObjectUtil.checkNotNull(estimator, "estimator");
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * Returns a factory whose choosers choose by the current load, for example {@link #PENDING_TASKS}.
+     */
+    public static PowerOfTwoChoicesEventExecutorChooserFactory leastLoaded(LoadEstimator estimator) {
+        return new PowerOfTwoChoicesEventExecutorChooserFactory(estimator, 0);
+    }
+
+    /**
+     * Returns a factory whose choosers choose by the increase of the given counter over the last second.
+     */
+    public static PowerOfTwoChoicesEventExecutorChooserFactory leastRecentlyLoaded(LoadEstimator counter) {
+        return new PowerOfTwoChoicesEventExecutorChooserFactory(counter, DEFAULT_WINDOW_NANOS);
+    }
+
+    /**
+     * Returns a factory whose choosers choose by the increase of the given counter, like {@link #TASK_TIME}, over
+     * a window which is renewed every {@code window}.
+     */
+    public static PowerOfTwoChoicesEventExecutorChooserFactory leastRecentlyLoaded(
+            LoadEstimator counter, long window, TimeUnit unit) {
+        ObjectUtil.checkPositive(window, "window");
+        return new PowerOfTwoChoicesEventExecutorChooserFactory(counter, unit.toNanos(window));
+    }
+
+    @Override
+    public EventExecutorChooser newChooser(EventExecutor[] executors) {
+        if (executors.length == 1) {
+            return new SingleEventExecutorChooser(executors[0]);
+        }
+        if (estimator instanceof TimeLoadEstimator) {
+            for (EventExecutor executor: executors) {
+                if (executor instanceof SingleThreadEventExecutor) {
+                    ((SingleThreadEventExecutor) executor).setDetailedMetricsEnabled(true);
+                }
+            }
+        }
+        return windowNanos == 0 ? new LeastLoadedEventExecutorChooser(executors, estimator)
+                                : new LeastRecentlyLoadedEventExecutorChooser(executors, estimator, windowNanos);
+    }
+
+    private static final class SingleEventExecutorChooser implements EventExecutorChooser {
+        private final EventExecutor executor;
+
+        SingleEventExecutorChooser(EventExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public EventExecutor next() {
+            return executor;
+        }
+    }
+
+    private abstract static class AbstractPowerOfTwoChoicesChooser implements EventExecutorChooser {
+        final EventExecutor[] executors;
+
+        AbstractPowerOfTwoChoicesChooser(EventExecutor[] executors) {
+            this.executors = executors;
+        }
+
+        @Override
+        public EventExecutor next() {
+            Random random = PlatformDependent.threadLocalRandom();
+            int length = executors.length;
+            int first = random.nextInt(length);
+            // Pick a second index that differs from the first one.
+            int second = (first + 1 + random.nextInt(length - 1)) % length;
+            return load(first) <= load(second) ? executors[first] : executors[second];
+        }
+
+        abstract long load(int index);
+    }
+
+    private static final class LeastLoadedEventExecutorChooser extends AbstractPowerOfTwoChoicesChooser {
+        private final LoadEstimator estimator;
+
+        LeastLoadedEventExecutorChooser(EventExecutor[] executors, LoadEstimator estimator) {
+            super(executors);
+            this.estimator = estimator;
+        }
+
+        @Override
+        long load(int index) {
+            return estimator.load(executors[index]);
+        }
+    }
+
+    private static final class LeastRecentlyLoadedEventExecutorChooser extends AbstractPowerOfTwoChoicesChooser {
+        private final LoadEstimator counter;
+        private final long windowNanos;
+        private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+        // The values of the counters when the current window started.
+        private volatile long[] windowStartCounts;
+        // The increase of the counters over the previous window, which is added to the current one so the load does
+        // not drop to zero when a window is renewed.
+        private volatile long[] previousWindowLoads;
+
+        LeastRecentlyLoadedEventExecutorChooser(EventExecutor[] executors, LoadEstimator counter, long windowNanos) {
+            super(executors);
+            this.counter = counter;
+            this.windowNanos = windowNanos;
+            windowStartCounts = counts();
+            previousWindowLoads = new long[executors.length];
+        }
+
+        @Override
+        public EventExecutor next() {
+            long start = windowStart.get();
+            long nanoTime = System.nanoTime();
+            // Only the thread that renews the window updates the counts, the others use the current ones.
+            if (nanoTime - start >= windowNanos && windowStart.compareAndSet(start, nanoTime)) {
+                long[] counts = counts();
+                long[] startCounts = windowStartCounts;
+                long[] loads = new long[counts.length];
+                for (int i = 0; i < loads.length; i++) {
+                    loads[i] = counts[i] - startCounts[i];
+                }
+                previousWindowLoads = loads;
+                windowStartCounts = counts;
+            }
+            return super.next();
+        }
+
+        @Override
+        long load(int index) {
+            return previousWindowLoads[index] + counter.load(executors[index]) - windowStartCounts[index];
+        }
+
+        private long[] counts() {
+            long[] counts = new long[executors.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = counter.load(executors[i]);
+            }
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram with a bucket per power of two, as described in {@link EventExecutorMetric}. Only a single thread may
+ * record values, but any thread may take a snapshot.
+ */
+final class PowerOfTwoHistogram {
+
+    private final AtomicLongArray counts;
+
+    PowerOfTwoHistogram(int buckets) {
+        counts = new AtomicLongArray(buckets);
+    }
+
+    void record(long value) {
+        int bucket = value <= 0 ? 0 : Math.min(64 - Long.numberOfLeadingZeros(value), counts.length() - 1);
+        // There is a single writer, so there is no need for an atomic increment.
+        counts.lazySet(bucket, counts.get(bucket) + 1);
+    }
+
+    long[] snapshot() {
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+}
@@ -47,6 +47,11 @@ final class ScheduledFutureTask<V> extends PromiseTask<V> implements ScheduledFu
 
     private int queueIndex = INDEX_NOT_IN_QUEUE;
 
+    // Set while the task is in a timing wheel of a ScheduledTaskWheel.
+    ScheduledTaskWheel.Bucket wheelBucket;
+    ScheduledFutureTask<?> wheelPrev;
+    ScheduledFutureTask<?> wheelNext;
+
     ScheduledFutureTask(
             AbstractScheduledEventExecutor executor,
             Runnable runnable, V result, long nanoTime) {
@@ -84,6 +89,14 @@ final class ScheduledFutureTask<V> extends PromiseTask<V> implements ScheduledFu
         return deadlineNanos;
     }
 
+    /**
+     * Moves the deadline of a task that is not in a queue, like the placeholder task of {@link ScheduledTaskWheel}.
+     */
+    void setDeadlineNanos(long deadlineNanos) {
+        assert queueIndex == INDEX_NOT_IN_QUEUE && wheelBucket == null;
+        this.deadlineNanos = deadlineNanos;
+    }
+
     public long delayNanos() {
         return Math.max(0, deadlineNanos() - nanoTime());
     }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.DefaultPriorityQueue;
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PriorityQueue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the queue in which an {@link AbstractScheduledEventExecutor} keeps its scheduled tasks.
+ *
+ * @see MultithreadEventExecutorGroup#setScheduledTaskQueueFactory(ScheduledTaskQueueFactory)
+ * @see AbstractScheduledEventExecutor#setScheduledTaskQueueFactory(ScheduledTaskQueueFactory)
+ */
+public abstract class ScheduledTaskQueueFactory {
+
+    /**
+     * Keeps the scheduled tasks in a binary heap, so scheduling and cancelling a task takes {@code O(log n)}. This
+     * is the default.
+     */
+    public static final ScheduledTaskQueueFactory PRIORITY_QUEUE = new ScheduledTaskQueueFactory() {
+        @Override
+        PriorityQueue<ScheduledFutureTask<?>> newQueue(AbstractScheduledEventExecutor executor) {
+            return new DefaultPriorityQueue<ScheduledFutureTask<?>>(
+                    AbstractScheduledEventExecutor.SCHEDULED_FUTURE_TASK_COMPARATOR,
+                    // Use same initial capacity as java.util.PriorityQueue
+                    11);
+        }
+
+        @Override
+        public String toString() {
+            return "PRIORITY_QUEUE";
+        }
+    };
+
+    /**
+     * Returns a factory of timing wheels with a tick duration of 10 milliseconds and 512 ticks per wheel.
+     *
+     * @see #timingWheel(long, TimeUnit, int)
+     */
+    public static ScheduledTaskQueueFactory timingWheel() {
+        return timingWheel(10, TimeUnit.MILLISECONDS, 512);
+    }
+
+    /**
+     * Returns a factory of timing wheels, which schedule and cancel tasks in constant time. This suits executors
+     * with many scheduled tasks that are mostly cancelled, like the idle and read timeouts of many channels.
+     *
+     * Tasks that are due in less than two ticks are kept in a binary heap. Others are added to hierarchical timing
+     * wheels and moved to the heap one tick before their deadline, so they are still run in order and on time.
+     *
+     * @param tickDuration   the duration of a tick
+     * @param unit           the time unit of the {@code tickDuration}
+     * @param ticksPerWheel  the number of ticks per wheel, which is rounded up to a power of two
+     */
+    public static ScheduledTaskQueueFactory timingWheel(long tickDuration, TimeUnit unit, final int ticksPerWheel) {
+        ObjectUtil.checkNotNull(unit, "unit");
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration: " + tickDuration + " (expected: > 0)");
+        }
+        if (ticksPerWheel < 2 || ticksPerWheel > 1 << 30) {
+            throw new IllegalArgumentException("ticksPerWheel: " + ticksPerWheel + " (expected: 2 - 2^30)");
+        }
+        final long tickNanos = unit.toNanos(tickDuration);
+        return new ScheduledTaskQueueFactory() {
+            @Override
+            PriorityQueue<ScheduledFutureTask<?>> newQueue(AbstractScheduledEventExecutor executor) {
+                return new ScheduledTaskWheel(executor, tickNanos, ticksPerWheel);
+            }
+
+            @Override
+            public String toString() {
+                return "timingWheel(tickDuration: " + tickNanos + "ns, ticksPerWheel: " + ticksPerWheel + ')';
+            }
+        };
+    }
+
+    // Only the queues of this package are supported, as they depend on the scheduled tasks.
+    ScheduledTaskQueueFactory() { }
+
+    abstract PriorityQueue<ScheduledFutureTask<?>> newQueue(AbstractScheduledEventExecutor executor);
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.DefaultPriorityQueue;
+import io.netty.util.internal.MathUtil;
+import io.netty.util.internal.PriorityQueue;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * A {@link PriorityQueue} of {@link ScheduledFutureTask}s which keeps the tasks that are due in two or more ticks in
+ * hierarchical timing wheels, like {@link io.netty.util.HashedWheelTimer} does, so they are added and removed in
+ * constant time. One tick before its deadline a task is moved to a {@link DefaultPriorityQueue}, from which it is
+ * polled on time.
+ *
+ * The ticks are processed lazily by {@link #peek()} and {@link #poll()}. As long as no task is due {@link #peek()}
+ * returns a placeholder task whose deadline is the time the next tick needs to be processed, so the event loop wakes
+ * up for it. The same placeholder is reused for every tick and is never contained in the queue, so
+ * {@link #removeTyped(ScheduledFutureTask)} returns {@code false} for it even if its deadline passed in the meantime.
+ *
+ * This class is not thread-safe and must only be used by its event loop.
+ */
+final class ScheduledTaskWheel extends AbstractQueue<ScheduledFutureTask<?>>
+        implements PriorityQueue<ScheduledFutureTask<?>> {
+
+    private static final Callable<Void> WAKE_UP = new Callable<Void>() {
+        @Override
+        public Void call() {
+            return null;
+        }
+    };
+
+    private final AbstractScheduledEventExecutor executor;
+    private final DefaultPriorityQueue<ScheduledFutureTask<?>> dueTasks =
+            new DefaultPriorityQueue<ScheduledFutureTask<?>>(
+                    AbstractScheduledEventExecutor.SCHEDULED_FUTURE_TASK_COMPARATOR, 11);
+    private final long tickNanos;
+    private final int mask;
+    private final int wheelShift;
+    // The wheels starting with the one of single ticks. They are created on demand.
+    private final Bucket[][] levels;
+
+    // The next tick to process.
+    private long tick;
+    private int wheelSize;
+    // The tick the placeholder task is for, or -1 if it has to be computed.
+    private long wakeUpTick = -1;
+    private final ScheduledFutureTask<Void> wakeUpTask;
+
+    ScheduledTaskWheel(AbstractScheduledEventExecutor executor, long tickNanos, int ticksPerWheel) {
+        this.executor = executor;
+        this.tickNanos = tickNanos;
+        int wheelLength = MathUtil.findNextPositivePowerOfTwo(ticksPerWheel);
+        mask = wheelLength - 1;
+        wheelShift = Integer.numberOfTrailingZeros(wheelLength);
+        // Enough levels to cover any number of ticks up to Long.MAX_VALUE.
+        levels = new Bucket[(63 + wheelShift - 1) / wheelShift][];
+        tick = ScheduledFutureTask.nanoTime() / tickNanos;
+        wakeUpTask = new ScheduledFutureTask<Void>(executor, WAKE_UP, 0);
+    }
+
+    @Override
+    public boolean offer(ScheduledFutureTask<?> task) {
+        if (task.wheelBucket != null) {
+            throw new IllegalArgumentException("task already in the queue: " + task);
+        }
+        if (wheelSize == 0) {
+            // Skip the ticks in which the wheels were empty.
+            advance();
+        }
+        long deadlineTick = task.deadlineNanos() / tickNanos;
+        if (deadlineTick <= tick) {
+            return dueTasks.offer(task);
+        }
+        addToWheel(task, deadlineTick, tick);
+        wheelSize++;
+        wakeUpTick = -1;
+        return true;
+    }
+
+    /**
+     * Adds the task to the lowest wheel whose revolution covers its deadline, or to the highest one which it then
+     * goes around until it does.
+     */
+    private void addToWheel(ScheduledFutureTask<?> task, long deadlineTick, long current) {
+        long remaining = deadlineTick - current;
+        int level = remaining <= mask ? 0 : Math.min(
+                (63 - Long.numberOfLeadingZeros(remaining)) / wheelShift, levels.length - 1);
+        Bucket[] wheel = levels[level];
+        if (wheel == null) {
+            levels[level] = wheel = newWheel(mask + 1);
+        }
+        wheel[(int) ((deadlineTick >>> level * wheelShift) & mask)].add(task);
+    }
+
+    private static Bucket[] newWheel(int length) {
+        Bucket[] wheel = new Bucket[length];
+        for (int i = 0; i < wheel.length; i ++) {
+            wheel[i] = new Bucket();
+        }
+        return wheel;
+    }
+
+    /**
+     * Processes all ticks up to the one after the current one, so their tasks are moved to {@link #dueTasks} one
+     * tick before they are due.
+     */
+    private void advance() {
+        long lastTick = ScheduledFutureTask.nanoTime() / tickNanos + 1;
+        if (tick > lastTick) {
+            return;
+        }
+        while (wheelSize != 0 && tick <= lastTick) {
+            processTick(tick++);
+        }
+        if (tick <= lastTick) {
+            // The wheels are empty.
+            tick = lastTick + 1;
+        }
+        wakeUpTick = -1;
+    }
+
+    private void processTick(long tick) {
+        // Move the tasks of the buckets of the overflow wheels that are reached down to lower wheels, starting with
+        // the highest one so the tasks of this tick reach the lowest wheel.
+        int highest = 1;
+        while (highest < levels.length && (tick & (1L << highest * wheelShift) - 1) == 0) {
+            highest++;
+        }
+        for (int level = highest - 1; level > 0; level--) {
+            Bucket[] wheel = levels[level];
+            if (wheel == null) {
+                continue;
+            }
+            ScheduledFutureTask<?> task = wheel[(int) ((tick >>> level * wheelShift) & mask)].takeAll();
+            while (task != null) {
+                ScheduledFutureTask<?> next = task.wheelNext;
+                task.wheelNext = null;
+                addToWheel(task, Math.max(task.deadlineNanos() / tickNanos, tick), tick);
+                task = next;
+            }
+        }
+
+        Bucket[] wheel = levels[0];
+        if (wheel != null) {
+            ScheduledFutureTask<?> task = wheel[(int) (tick & mask)].takeAll();
+            while (task != null) {
+                ScheduledFutureTask<?> next = task.wheelNext;
+                task.wheelNext = null;
+                wheelSize--;
+                dueTasks.offer(task);
+                task = next;
+            }
+        }
+    }
+
+    @Override
+    public ScheduledFutureTask<?> poll() {
+        advance();
+        return dueTasks.poll();
+    }
+
+    @Override
+    public ScheduledFutureTask<?> peek() {
+        advance();
+        ScheduledFutureTask<?> task = dueTasks.peek();
+        if (task != null || wheelSize == 0) {
+            return task;
+        }
+        if (wakeUpTick == -1) {
+            // The next tick that moves tasks: either one whose bucket is not empty, or one that moves tasks down
+            // from the overflow wheels.
+            long tick = this.tick;
+            Bucket[] wheel = levels[0];
+            while ((tick & mask) != 0 && (wheel == null || wheel[(int) (tick & mask)].head == null)) {
+                tick++;
+            }
+            wakeUpTick = tick;
+            wakeUpTask.setDeadlineNanos((tick - 1) * tickNanos);
+        }
+        return wakeUpTask;
+    }
+
+    @Override
+    public int size() {
+        return dueTasks.size() + wheelSize;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return wheelSize == 0 && dueTasks.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof ScheduledFutureTask && containsTyped((ScheduledFutureTask<?>) o);
+    }
+
+    @Override
+    public boolean containsTyped(ScheduledFutureTask<?> task) {
+        return task.wheelBucket != null || dueTasks.containsTyped(task);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof ScheduledFutureTask && removeTyped((ScheduledFutureTask<?>) o);
+    }
+
+    @Override
+    public boolean removeTyped(ScheduledFutureTask<?> task) {
+        Bucket bucket = task.wheelBucket;
+        if (bucket != null) {
+            bucket.remove(task);
+            wheelSize--;
+            wakeUpTick = -1;
+            return true;
+        }
+        return dueTasks.removeTyped(task);
+    }
+
+    @Override
+    public void priorityChanged(ScheduledFutureTask<?> task) {
+        if (task.wheelBucket != null) {
+            removeTyped(task);
+            offer(task);
+        } else {
+            dueTasks.priorityChanged(task);
+        }
+    }
+
+    @Override
+    public void clear() {
+        dueTasks.clear();
+        clearWheels();
+    }
+
+    @Override
+    public void clearIgnoringIndexes() {
+        dueTasks.clearIgnoringIndexes();
+        // The links are cleared anyway, as containsTyped(...) and removeTyped(...) rely on them.
+        clearWheels();
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = null;
+        }
+    }
+
+    private void clearWheels() {
+        if (wheelSize != 0) {
+            for (Bucket[] wheel: levels) {
+                if (wheel != null) {
+                    for (Bucket bucket: wheel) {
+                        ScheduledFutureTask<?> task = bucket.takeAll();
+                        while (task != null) {
+                            ScheduledFutureTask<?> next = task.wheelNext;
+                            task.wheelNext = null;
+                            task = next;
+                        }
+                    }
+                }
+            }
+        }
+        wheelSize = 0;
+        wakeUpTick = -1;
+    }
+
+    private List<ScheduledFutureTask<?>> tasks() {
+        List<ScheduledFutureTask<?>> tasks = new ArrayList<ScheduledFutureTask<?>>(size());
+        Collections.addAll(tasks, dueTasks.toArray(new ScheduledFutureTask<?>[0]));
+        for (Bucket[] wheel: levels) {
+            if (wheel != null) {
+                for (Bucket bucket: wheel) {
+                    for (ScheduledFutureTask<?> task = bucket.head; task != null; task = task.wheelNext) {
+                        tasks.add(task);
+                    }
+                }
+            }
+        }
+        return tasks;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return tasks().toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return tasks().toArray(a);
+    }
+
+    @Override
+    public Iterator<ScheduledFutureTask<?>> iterator() {
+        return Collections.unmodifiableList(tasks()).iterator();
+    }
+
+    /**
+     * A doubly linked list of the {@link ScheduledFutureTask}s of a tick, which act as the nodes themselves.
+     */
+    static final class Bucket {
+        ScheduledFutureTask<?> head;
+        private ScheduledFutureTask<?> tail;
+
+        void add(ScheduledFutureTask<?> task) {
+            task.wheelBucket = this;
+            if (head == null) {
+                head = tail = task;
+            } else {
+                tail.wheelNext = task;
+                task.wheelPrev = tail;
+                tail = task;
+            }
+        }
+
+        void remove(ScheduledFutureTask<?> task) {
+            ScheduledFutureTask<?> prev = task.wheelPrev;
+            ScheduledFutureTask<?> next = task.wheelNext;
+            if (prev == null) {
+                head = next;
+            } else {
+                prev.wheelNext = next;
+            }
+            if (next == null) {
+                tail = prev;
+            } else {
+                next.wheelPrev = prev;
+            }
+            task.wheelBucket = null;
+            task.wheelPrev = null;
+            task.wheelNext = null;
+        }
+
+        /**
+         * Removes all tasks and returns the first one. The others are linked via
+         * {@link ScheduledFutureTask#wheelNext}, which the caller has to clear.
+         */
+        ScheduledFutureTask<?> takeAll() {
+            ScheduledFutureTask<?> head = this.head;
+            this.head = tail = null;
+            for (ScheduledFutureTask<?> task = head; task != null; task = task.wheelNext) {
+                task.wheelBucket = null;
+                task.wheelPrev = null;
+            }
+            return head;
+        }
+    }
+}
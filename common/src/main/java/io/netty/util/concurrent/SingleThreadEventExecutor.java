@@ -18,6 +18,7 @@ package io.netty.util.concurrent;
 import io.netty.util.internal.ObjectUtil;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.ThreadExecutorMap;
 import io.netty.util.internal.UnstableApi;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
@@ -40,6 +41,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
@@ -54,6 +56,17 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
     private static final InternalLogger logger =
             InternalLoggerFactory.getInstance(SingleThreadEventExecutor.class);
 
+    private static final boolean USE_MPSC_TASK_QUEUE =
+            SystemPropertyUtil.getBoolean("io.netty.eventexecutor.useMpscTaskQueue", true);
+
+    private static final boolean DEFAULT_DETAILED_METRICS =
+            SystemPropertyUtil.getBoolean("io.netty.eventexecutor.detailedMetrics", false);
+
+    static {
+        logger.debug("-Dio.netty.eventexecutor.useMpscTaskQueue: {}", USE_MPSC_TASK_QUEUE);
+        logger.debug("-Dio.netty.eventexecutor.detailedMetrics: {}", DEFAULT_DETAILED_METRICS);
+    }
+
     private static final int ST_NOT_STARTED = 1;
     private static final int ST_STARTED = 2;
     private static final int ST_SHUTTING_DOWN = 3;
@@ -75,6 +88,12 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
 
     private static final AtomicIntegerFieldUpdater<SingleThreadEventExecutor> STATE_UPDATER =
             AtomicIntegerFieldUpdater.newUpdater(SingleThreadEventExecutor.class, "state");
+    private static final AtomicLongFieldUpdater<SingleThreadEventExecutor> EXECUTED_TASKS_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(SingleThreadEventExecutor.class, "executedTasks");
+    private static final AtomicLongFieldUpdater<SingleThreadEventExecutor> TASK_TIME_NANOS_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(SingleThreadEventExecutor.class, "taskTimeNanos");
+    private static final AtomicLongFieldUpdater<SingleThreadEventExecutor> ITERATIONS_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(SingleThreadEventExecutor.class, "iterations");
     private static final AtomicReferenceFieldUpdater<SingleThreadEventExecutor, ThreadProperties> PROPERTIES_UPDATER =
             AtomicReferenceFieldUpdater.newUpdater(
                     SingleThreadEventExecutor.class, ThreadProperties.class, "threadProperties");
@@ -95,6 +114,19 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
 
     private long lastExecutionTime;
 
+    // Metrics, which are only updated by the executor thread. The updates are published with lazySet, so they do not
+    // need a full fence on every iteration.
+    private volatile long executedTasks;
+    private volatile long taskTimeNanos;
+    private volatile long iterations;
+    // Guards the metrics that need nanoTime() calls or update the histograms.
+    private volatile boolean detailedMetrics = DEFAULT_DETAILED_METRICS;
+    private final PowerOfTwoHistogram tasksPerIteration = new PowerOfTwoHistogram(24);
+    private final PowerOfTwoHistogram scheduledTaskLag = new PowerOfTwoHistogram(32);
+    private final EventExecutorMetric metric = new Metric();
+
+    private volatile SlowTaskDetector.Tracker slowTaskTracker;
+
     @SuppressWarnings({ "FieldMayBeFinal", "unused" })
     private volatile int state = ST_NOT_STARTED;
 
@@ -192,11 +224,16 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
 
     /**
      * Create a new {@link Queue} which will holds the tasks to execute. This default implementation will return a
-     * {@link LinkedBlockingQueue} but if your sub-class of {@link SingleThreadEventExecutor} will not do any blocking
-     * calls on the this {@link Queue} it may make sense to {@code @Override} this and return some more performant
-     * implementation that does not support blocking operations at all.
+     * lock-free {@link BlockingQueue} that only supports a single consumer, or a {@link LinkedBlockingQueue} if
+     * {@code -Dio.netty.eventexecutor.useMpscTaskQueue=false} is set. If your sub-class of
+     * {@link SingleThreadEventExecutor} will not do any blocking calls on the this {@link Queue} it may make sense to
+     * {@code @Override} this and return some more performant implementation that does not support blocking operations
+     * at all.
      */
     protected Queue<Runnable> newTaskQueue(int maxPendingTasks) {
+        if (USE_MPSC_TASK_QUEUE) {
+            return new MpscTaskQueue(maxPendingTasks);
+        }
         return new LinkedBlockingQueue<Runnable>(maxPendingTasks);
     }
 
@@ -364,18 +401,23 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
     protected boolean runAllTasks() {
         assert inEventLoop();
         boolean fetchedAll;
-        boolean ranAtLeastOne = false;
+        long runTasks = 0;
+        final boolean detailedMetrics = this.detailedMetrics;
+        final long startTime = detailedMetrics ? ScheduledFutureTask.nanoTime() : 0;
 
         do {
             fetchedAll = fetchFromScheduledTaskQueue();
-            if (runAllTasksFrom(taskQueue)) {
-                ranAtLeastOne = true;
-            }
+            runTasks += runTasksFrom(taskQueue);
         } while (!fetchedAll); // keep on processing until we fetched all scheduled tasks.
 
+        boolean ranAtLeastOne = runTasks != 0;
         if (ranAtLeastOne) {
             lastExecutionTime = ScheduledFutureTask.nanoTime();
+            if (detailedMetrics) {
+                recordTaskTime(lastExecutionTime - startTime);
+            }
         }
+        recordIteration(runTasks, detailedMetrics);
         afterRunningAllTasks();
         return ranAtLeastOne;
     }
@@ -388,15 +430,48 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
      * @return {@code true} if at least one task was executed.
      */
     protected final boolean runAllTasksFrom(Queue<Runnable> taskQueue) {
-        Runnable task = pollTaskFrom(taskQueue);
-        if (task == null) {
+        int runTasks = runTasksFrom(taskQueue);
+        if (runTasks == 0) {
             return false;
         }
+        EXECUTED_TASKS_UPDATER.lazySet(this, executedTasks + runTasks);
+        return true;
+    }
+
+    private int runTasksFrom(Queue<Runnable> taskQueue) {
+        int runTasks = 0;
         for (;;) {
-            safeExecute(task);
-            task = pollTaskFrom(taskQueue);
+            Runnable task = pollTaskFrom(taskQueue);
             if (task == null) {
-                return true;
+                return runTasks;
+            }
+            safeExecuteTask(task);
+            runTasks ++;
+        }
+    }
+
+    private void safeExecuteTask(Runnable task) {
+        SlowTaskDetector.Tracker tracker = slowTaskTracker;
+        long queueDelayNanos = 0;
+        if (task instanceof ScheduledFutureTask) {
+            boolean detailedMetrics = this.detailedMetrics;
+            if (detailedMetrics || tracker != null) {
+                queueDelayNanos = scheduledTaskLag(
+                        (ScheduledFutureTask<?>) task, ScheduledFutureTask.nanoTime(), detailedMetrics);
+            }
+        } else if (task instanceof TimedTask) {
+            TimedTask timedTask = (TimedTask) task;
+            queueDelayNanos = ScheduledFutureTask.nanoTime() - timedTask.enqueueTime;
+            task = timedTask.task;
+        }
+        if (tracker == null) {
+            safeExecute(task);
+        } else {
+            tracker.begin(task);
+            try {
+                safeExecute(task);
+            } finally {
+                tracker.end(queueDelayNanos);
             }
         }
     }
@@ -408,16 +483,19 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
     protected boolean runAllTasks(long timeoutNanos) {
         fetchFromScheduledTaskQueue();
         Runnable task = pollTask();
+        final boolean detailedMetrics = this.detailedMetrics;
         if (task == null) {
+            recordIteration(0, detailedMetrics);
             afterRunningAllTasks();
             return false;
         }
 
-        final long deadline = ScheduledFutureTask.nanoTime() + timeoutNanos;
+        final long startTime = ScheduledFutureTask.nanoTime();
+        final long deadline = startTime + timeoutNanos;
         long runTasks = 0;
         long lastExecutionTime;
         for (;;) {
-            safeExecute(task);
+            safeExecuteTask(task);
 
             runTasks ++;
 
@@ -437,11 +515,123 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
             }
         }
 
+        if (detailedMetrics) {
+            recordTaskTime(lastExecutionTime - startTime);
+        }
+        recordIteration(runTasks, detailedMetrics);
         afterRunningAllTasks();
         this.lastExecutionTime = lastExecutionTime;
         return true;
     }
 
+    /**
+     * Runs a task that was taken via {@link #takeTask()} and updates the metrics and the
+     * {@linkplain #updateLastExecutionTime() last execution time}. Any exception is propagated.
+     */
+    protected final void runTask(Runnable task) {
+        final boolean detailedMetrics = this.detailedMetrics;
+        final SlowTaskDetector.Tracker tracker = slowTaskTracker;
+        // The start time is only needed by the detailed metrics and the slow task detection.
+        final long startTime = detailedMetrics || tracker != null ? ScheduledFutureTask.nanoTime() : 0;
+        long queueDelayNanos = 0;
+        if (task instanceof ScheduledFutureTask) {
+            if (detailedMetrics || tracker != null) {
+                queueDelayNanos = scheduledTaskLag((ScheduledFutureTask<?>) task, startTime, detailedMetrics);
+            }
+        } else if (task instanceof TimedTask) {
+            TimedTask timedTask = (TimedTask) task;
+            queueDelayNanos = startTime - timedTask.enqueueTime;
+            task = timedTask.task;
+        }
+        if (tracker != null) {
+            tracker.begin(task);
+        }
+        try {
+            task.run();
+        } finally {
+            if (tracker != null) {
+                tracker.end(queueDelayNanos);
+            }
+            lastExecutionTime = ScheduledFutureTask.nanoTime();
+            if (detailedMetrics) {
+                recordTaskTime(lastExecutionTime - startTime);
+            }
+            recordIteration(1, detailedMetrics);
+        }
+    }
+
+    private void recordIteration(long runTasks, boolean detailedMetrics) {
+        // There is a single writer, so there is no need for atomic increments.
+        ITERATIONS_UPDATER.lazySet(this, iterations + 1);
+        if (runTasks != 0) {
+            EXECUTED_TASKS_UPDATER.lazySet(this, executedTasks + runTasks);
+        }
+        if (detailedMetrics) {
+            tasksPerIteration.record(runTasks);
+        }
+    }
+
+    private void recordTaskTime(long taskTimeNanos) {
+        TASK_TIME_NANOS_UPDATER.lazySet(this, this.taskTimeNanos + taskTimeNanos);
+    }
+
+    private long scheduledTaskLag(ScheduledFutureTask<?> task, long nanoTime, boolean detailedMetrics) {
+        long lagNanos = Math.max(0, nanoTime - task.deadlineNanos());
+        if (detailedMetrics) {
+            scheduledTaskLag.record(TimeUnit.NANOSECONDS.toMicros(lagNanos));
+        }
+        return lagNanos;
+    }
+
+    /**
+     * Returns the {@link EventExecutorMetric} of this executor.
+     */
+    public EventExecutorMetric metric() {
+        return metric;
+    }
+
+    /**
+     * Returns {@code true} if the {@linkplain #metric() metrics} that need to read the time or update histograms are
+     * recorded.
+     */
+    @UnstableApi
+    public final boolean isDetailedMetricsEnabled() {
+        return detailedMetrics;
+    }
+
+    /**
+     * Enables or disables the {@linkplain #metric() metrics} that need to read the time or update histograms, which
+     * are the task and I/O times and the histograms. They are disabled by default, as they add work to every
+     * iteration, unless {@code -Dio.netty.eventexecutor.detailedMetrics=true} is set.
+     */
+    @UnstableApi
+    public final void setDetailedMetricsEnabled(boolean detailedMetrics) {
+        this.detailedMetrics = detailedMetrics;
+    }
+
+    /**
+     * Reports the tasks that run or wait in the queue longer than the thresholds of the given
+     * {@link SlowTaskDetector}, or disables the detection if {@code null}. This is disabled by default, as every task
+     * is wrapped to record when it was added while enabled, so {@link #removeTask(Runnable)} cannot remove the tasks
+     * that were added in the meantime.
+     */
+    public void setSlowTaskDetector(SlowTaskDetector detector) {
+        SlowTaskDetector.Tracker oldTracker = slowTaskTracker;
+        slowTaskTracker = detector == null ? null : detector.newTracker(this);
+        if (oldTracker != null) {
+            oldTracker.detector().removeTracker(oldTracker);
+        }
+    }
+
+    /**
+     * Returns the {@link SlowTaskDetector.Tracker} that measures the work run by this executor, or {@code null} if
+     * slow task detection is disabled. The work must be measured by the executor thread.
+     */
+    @UnstableApi
+    public final SlowTaskDetector.Tracker slowTaskTracker() {
+        return slowTaskTracker;
+    }
+
     /**
      * Invoked before returning from {@link #runAllTasks()} and {@link #runAllTasks(long)}.
      */
@@ -791,7 +981,26 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         if (task == null) {
             throw new NullPointerException("task");
         }
+        execute(task, !(task instanceof LazyRunnable) && wakesUpForTask(task));
+    }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The task is run on the next iteration of the event loop. If it waits on a selector with no task scheduled,
+     * this is within {@code 1} second, as it wakes up to purge the cancelled scheduled tasks. Executors created
+     * with {@code addTaskWakesUp} set to {@code true}, such as {@link DefaultEventExecutor}, are woken up by the
+     * task queue anyway, so for them this is the same as {@link #execute(Runnable)}.
+     */
+    @Override
+    public void lazyExecute(Runnable task) {
+        execute(ObjectUtil.checkNotNull(task, "task"), false);
+    }
+
+    private void execute(Runnable task, boolean immediate) {
+        if (slowTaskTracker != null) {
+            task = new TimedTask(task);
+        }
         //// 判断添加任务的线程是否就是当前 EventLoop 中的线程
         boolean inEventLoop = inEventLoop();
         //// 添加任务到之前介绍的 taskQueue 中，
@@ -802,12 +1011,21 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
 
             //------> NioEventLoop 中的线程的方法在这里
             startThread();
-            if (isShutdown() && removeTask(task)) {
-                reject();
+            if (isShutdown()) {
+                boolean reject = false;
+                try {
+                    reject = removeTask(task);
+                } catch (UnsupportedOperationException e) {
+                    // The task queue does not support removal, which is true for the MPSC queues. The task may
+                    // still be run before the executor terminates, and will be logged otherwise.
+                }
+                if (reject) {
+                    reject();
+                }
             }
         }
 
-        if (!addTaskWakesUp && wakesUpForTask(task)) {
+        if (!addTaskWakesUp && immediate) {
             wakeup(inEventLoop);
         }
     }
@@ -919,6 +1137,7 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
 
                 // // 看这里，将 “executor” 中创建的这个线程设置为 NioEventLoop 的线程！！！
                 thread = Thread.currentThread();
+                ThreadExecutorMap.setCurrentEventExecutor(SingleThreadEventExecutor.this);
                 if (interrupted) {
                     thread.interrupt();
                 }
@@ -1026,4 +1245,59 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
             return t.isAlive();
         }
     }
+
+    /**
+     * A task that records when it was added, so its queue delay can be reported to the {@link SlowTaskDetector}.
+     */
+    private static final class TimedTask implements Runnable {
+        final Runnable task;
+        final long enqueueTime = ScheduledFutureTask.nanoTime();
+
+        TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    private final class Metric implements EventExecutorMetric {
+        @Override
+        public int pendingTasks() {
+            return SingleThreadEventExecutor.this.pendingTasks();
+        }
+
+        @Override
+        public long numExecutedTasks() {
+            return executedTasks;
+        }
+
+        @Override
+        public long taskTimeNanos() {
+            return taskTimeNanos;
+        }
+
+        @Override
+        public long numIterations() {
+            return iterations;
+        }
+
+        @Override
+        public long[] tasksPerIterationHistogram() {
+            return tasksPerIteration.snapshot();
+        }
+
+        @Override
+        public long[] scheduledTaskLagHistogram() {
+            return scheduledTaskLag.snapshot();
+        }
+
+        @Override
+        public String toString() {
+            return "EventExecutorMetric(pendingTasks: " + pendingTasks() + ", executedTasks: " + executedTasks +
+                    ", taskTimeNanos: " + taskTimeNanos + ", iterations: " + iterations + ')';
+        }
+    }
 }
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.UnstableApi;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Detects the tasks and channel handlers that block the {@link SingleThreadEventExecutor}s it is
+ * {@linkplain SingleThreadEventExecutor#setSlowTaskDetector(SlowTaskDetector) set on}, and reports them to a
+ * {@link SlowTaskListener}.
+ * <p>
+ * While enabled, an executor measures the time each task waited in its queue and the time each task and each
+ * {@code channelRead} and {@code write} of a handler ran. The time of a handler does not include the time of the
+ * handlers it invoked in turn, so the listener is given the handler that actually blocked. A single daemon thread
+ * checks all executors periodically, and samples the stack of an executor thread once per unit of work that exceeds
+ * the execution threshold. The listener is only invoked for the offenders.
+ * </p>
+ */
+public final class SlowTaskDetector {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(SlowTaskDetector.class);
+    private static final ThreadFactory threadFactory =
+            new DefaultThreadFactory("slowTaskDetector", true, Thread.MIN_PRIORITY, null);
+
+    private final SlowTaskListener listener;
+    private final long executionThresholdNanos;
+    private final long queueDelayThresholdNanos;
+    private final long samplePeriodNanos;
+    private final List<Tracker> trackers = new CopyOnWriteArrayList<Tracker>();
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    /**
+     * Creates a new instance which reports work that runs or waits in the queue longer than {@code threshold}.
+     */
+    public SlowTaskDetector(SlowTaskListener listener, long threshold, TimeUnit unit) {
+        this(listener, threshold, threshold, unit);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param listener             the listener the offenders are reported to
+     * @param executionThreshold   the time a task or handler may run before it is reported
+     * @param queueDelayThreshold  the time a task may wait in the queue before it is reported
+     * @param unit                 the unit of the thresholds
+     */
+    public SlowTaskDetector(SlowTaskListener listener, long executionThreshold, long queueDelayThreshold,
+                            TimeUnit unit) {
+        this.listener = ObjectUtil.checkNotNull(listener, "listener");
+        ObjectUtil.checkNotNull(unit, "unit");
+        ObjectUtil.checkPositive(executionThreshold, "executionThreshold");
+        ObjectUtil.checkPositive(queueDelayThreshold, "queueDelayThreshold");
+        executionThresholdNanos = unit.toNanos(executionThreshold);
+        queueDelayThresholdNanos = unit.toNanos(queueDelayThreshold);
+        // Sample twice per threshold, so the stack is sampled at most 1.5 thresholds after the work started.
+        samplePeriodNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), executionThresholdNanos / 2);
+    }
+
+    Tracker newTracker(EventExecutor executor) {
+        Tracker tracker = new Tracker(executor);
+        trackers.add(tracker);
+        if (started.compareAndSet(false, true)) {
+            threadFactory.newThread(new Watcher()).start();
+        }
+        return tracker;
+    }
+
+    void removeTracker(Tracker tracker) {
+        trackers.remove(tracker);
+    }
+
+    private final class Watcher implements Runnable {
+        @Override
+        public void run() {
+            for (;;) {
+                try {
+                    Thread.sleep(TimeUnit.NANOSECONDS.toMillis(samplePeriodNanos));
+                } catch (InterruptedException ignore) {
+                    // Ignore
+                }
+                long nanoTime = System.nanoTime();
+                for (Tracker tracker: trackers) {
+                    Thread thread = tracker.thread;
+                    if (tracker.executor.isTerminated() || thread != null && !thread.isAlive()) {
+                        trackers.remove(tracker);
+                    } else if (thread != null) {
+                        tracker.sample(thread, nanoTime);
+                    }
+                }
+
+                if (trackers.isEmpty()) {
+                    started.set(false);
+                    // Check again, as a tracker may have been added without starting another watcher.
+                    if (trackers.isEmpty() || !started.compareAndSet(false, true)) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Measures the units of work of a single executor. Except for {@link #sample(Thread, long)}, which is called by
+     * the watcher, all methods must be called by the executor thread.
+     */
+    @UnstableApi
+    public final class Tracker {
+        private final EventExecutor executor;
+        volatile Thread thread;
+
+        // The stack of the units of work that run nested, like handlers that invoke the next handler.
+        private Object[] works = new Object[8];
+        private long[] startTimes = new long[8];
+        private long[] childTimes = new long[8];
+        private int depth = -1;
+
+        // The innermost unit of work, for the watcher.
+        private volatile Object currentWork;
+        private volatile long currentStartTime;
+        // The last stack sampled by the watcher.
+        private volatile StackSample stackSample;
+
+        Tracker(EventExecutor executor) {
+            this.executor = executor;
+        }
+
+        SlowTaskDetector detector() {
+            return SlowTaskDetector.this;
+        }
+
+        /**
+         * Starts to measure a unit of work, which must be followed by {@link #end(long)}.
+         */
+        public void begin(Object work) {
+            if (thread == null) {
+                thread = Thread.currentThread();
+            }
+            int depth = ++this.depth;
+            if (depth == works.length) {
+                works = copyOf(works, depth << 1);
+                startTimes = copyOf(startTimes, depth << 1);
+                childTimes = copyOf(childTimes, depth << 1);
+            }
+            long startTime = System.nanoTime();
+            works[depth] = work;
+            startTimes[depth] = startTime;
+            childTimes[depth] = 0;
+            currentStartTime = startTime;
+            currentWork = work;
+        }
+
+        /**
+         * Ends the measurement of the unit of work passed to the last {@link #begin(Object)}, and reports it if it
+         * was slow.
+         *
+         * @param queueDelayNanos the time the work waited in a queue before it started.
+         */
+        public void end(long queueDelayNanos) {
+            long endTime = System.nanoTime();
+            int depth = this.depth--;
+            Object work = works[depth];
+            long startTime = startTimes[depth];
+            long executionTime = endTime - startTime;
+            long exclusiveTime = executionTime - childTimes[depth];
+            works[depth] = null;
+
+            // Take the sample before the parent is published, as the watcher may sample the parent afterwards.
+            StackTraceElement[] stack = null;
+            StackSample stackSample = this.stackSample;
+            if (stackSample != null) {
+                if (stackSample.work == work && stackSample.startTime == startTime) {
+                    stack = stackSample.stack;
+                }
+                this.stackSample = null;
+            }
+
+            if (depth > 0) {
+                childTimes[depth - 1] += executionTime;
+                currentStartTime = startTimes[depth - 1];
+                currentWork = works[depth - 1];
+            } else {
+                currentWork = null;
+            }
+
+            if (exclusiveTime >= executionThresholdNanos || queueDelayNanos >= queueDelayThresholdNanos) {
+                try {
+                    listener.slowTask(executor, work, queueDelayNanos, exclusiveTime, stack);
+                } catch (Throwable t) {
+                    logger.warn("An exception was thrown by {}.slowTask()", listener.getClass().getName(), t);
+                }
+            }
+        }
+
+        void sample(Thread thread, long nanoTime) {
+            Object work = currentWork;
+            long startTime = currentStartTime;
+            if (work == null || nanoTime - startTime < executionThresholdNanos) {
+                return;
+            }
+            StackSample stackSample = this.stackSample;
+            if (stackSample != null && stackSample.work == work && stackSample.startTime == startTime) {
+                return;
+            }
+            // The work is published together with its stack, so end() never pairs it with the stack of other work.
+            this.stackSample = new StackSample(work, startTime, thread.getStackTrace());
+        }
+    }
+
+    private static final class StackSample {
+        final Object work;
+        final long startTime;
+        final StackTraceElement[] stack;
+
+        StackSample(Object work, long startTime, StackTraceElement[] stack) {
+            this.work = work;
+            this.startTime = startTime;
+            this.stack = stack;
+        }
+    }
+
+    private static Object[] copyOf(Object[] array, int length) {
+        Object[] copy = new Object[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    private static long[] copyOf(long[] array, int length) {
+        long[] copy = new long[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+/**
+ * Listens to the tasks and handlers that a {@link SlowTaskDetector} found to block their event loop.
+ */
+public interface SlowTaskListener {
+
+    /**
+     * Invoked by the event loop thread after a unit of work ran longer than the execution threshold, or waited
+     * longer than the queue delay threshold before it ran. As this delays the event loop further, implementations
+     * should only record or log the offender.
+     *
+     * @param executor            the executor that ran the work
+     * @param work                the {@link Runnable} for tasks, or the {@code ChannelHandlerContext} of the handler
+     *                            for channel reads and writes
+     * @param queueDelayNanos     the time the task waited in the queue, or {@code 0} for handlers
+     * @param executionTimeNanos  the time the work ran, without the time of the handlers it invoked in turn
+     * @param stackSample         the stack of the event loop thread, sampled once the work exceeded the execution
+     *                            threshold, or {@code null} if it completed before it was sampled
+     */
+    void slowTask(EventExecutor executor, Object work, long queueDelayNanos, long executionTimeNanos,
+                  StackTraceElement[] stackSample);
+}
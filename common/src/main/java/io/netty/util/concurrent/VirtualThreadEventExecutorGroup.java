@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.UnstableApi;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EventExecutorGroup} to offload blocking handlers from the event loops, which gives each pipeline its own
+ * {@link OrderedEventExecutor} that runs on virtual threads on Java 21+.
+ * <p>
+ * Unlike a {@link DefaultEventExecutorGroup}, which ties each channel to one of a fixed number of threads, a
+ * blocking call only stalls the channel that made it, so thousands of blocking calls can be in flight at the same
+ * time. Each {@link #next()} returns a new executor, which the pipeline uses for all the handlers of this group. The
+ * tasks of an executor are run in order by a thread that is started when a task is submitted to an idle executor,
+ * and which returns once there are no more tasks, so an executor holds no thread while it is idle and needs no
+ * shutdown when its channel is closed.
+ * </p>
+ * <p>
+ * On older Java versions, or if the sources for Java 21 were not compiled, the tasks are run by an unbounded pool
+ * of platform threads instead, see {@link #isVirtualThreadAvailable()}.
+ * </p>
+ */
+@UnstableApi
+public final class VirtualThreadEventExecutorGroup extends AbstractSerialEventExecutorGroup {
+
+    private static final InternalLogger logger =
+            InternalLoggerFactory.getInstance(VirtualThreadEventExecutorGroup.class);
+
+    private static final String VIRTUAL_THREAD_FACTORY = "io.netty.util.concurrent.VirtualThreadFactoryJava21";
+
+    private static final ThreadFactory virtualThreadFactory;
+
+    static {
+        ThreadFactory factory = null;
+        Throwable error = null;
+        if (SystemPropertyUtil.getBoolean("io.netty.noVirtualThread", false)) {
+            error = new UnsupportedOperationException("io.netty.noVirtualThread: true");
+        } else if (PlatformDependent.javaVersion() < 21) {
+            error = new UnsupportedOperationException("Virtual threads require Java 21+");
+        } else {
+            Object maybeFactory = AccessController.doPrivileged(new PrivilegedAction<Object>() {
+                @Override
+                public Object run() {
+                    try {
+                        Class<?> clazz = Class.forName(VIRTUAL_THREAD_FACTORY, true,
+                                PlatformDependent.getClassLoader(VirtualThreadEventExecutorGroup.class));
+                        return clazz.getDeclaredConstructor().newInstance();
+                    } catch (Throwable cause) {
+                        // Either the sources for Java 21 were not compiled or virtual threads are not supported.
+                        return cause;
+                    }
+                }
+            });
+            if (maybeFactory instanceof ThreadFactory) {
+                factory = (ThreadFactory) maybeFactory;
+            } else {
+                error = (Throwable) maybeFactory;
+            }
+        }
+        if (error == null) {
+            logger.debug("Virtual threads: available");
+        } else {
+            logger.debug("Virtual threads: unavailable", error);
+        }
+        virtualThreadFactory = factory;
+    }
+
+    // The pool of platform threads, which is only used if virtual threads are not available.
+    private final ExecutorService platformThreadPool;
+
+    /**
+     * Creates a new instance which uses virtual threads if available, or a pool of platform threads otherwise.
+     */
+    public VirtualThreadEventExecutorGroup() {
+        this(virtualThreadFactory != null ? new ThreadPerTaskExecutor(virtualThreadFactory)
+                : new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                                         new DefaultThreadFactory(VirtualThreadEventExecutorGroup.class, true)));
+    }
+
+    /**
+     * Creates a new instance which starts a new {@link Thread} of the given {@link ThreadFactory} each time an idle
+     * executor is given a task.
+     */
+    public VirtualThreadEventExecutorGroup(ThreadFactory threadFactory) {
+        this(new ThreadPerTaskExecutor(threadFactory));
+    }
+
+    private VirtualThreadEventExecutorGroup(Executor executor) {
+        // A blocked executor does not stall the others, so there is no need for it to give way.
+        super(executor, Integer.MAX_VALUE);
+        platformThreadPool = executor instanceof ExecutorService ? (ExecutorService) executor : null;
+    }
+
+    /**
+     * Returns {@code true} if the executors of the groups created by {@link #VirtualThreadEventExecutorGroup()} run
+     * on virtual threads. This requires Java 21+ and can be disabled with {@code -Dio.netty.noVirtualThread=true}.
+     */
+    public static boolean isVirtualThreadAvailable() {
+        return virtualThreadFactory != null;
+    }
+
+    @Override
+    void terminated() {
+        if (platformThreadPool != null) {
+            platformThreadPool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.NettyRuntime;
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.SuppressJava6Requirement;
+import io.netty.util.internal.UnstableApi;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * {@link EventExecutorGroup} for CPU-heavy handlers, like compression or serialization, which keeps the order of the
+ * tasks of each channel while spreading the channels over all threads of a work-stealing {@link ForkJoinPool}.
+ * <p>
+ * Each {@link #next()} returns a new {@link OrderedEventExecutor}, which the pipeline uses for all the handlers of
+ * this group. An executor with tasks to run is submitted to the pool as a whole, so an idle thread steals the queue
+ * of a channel from a busy thread instead of single tasks, and a channel never runs on two threads at the same time.
+ * Unlike a {@link DefaultEventExecutorGroup}, busy channels that happen to share a thread do not hot-spot it, and
+ * unlike an {@link UnorderedThreadPoolEventExecutor}, the tasks of a channel are run in order.
+ * </p>
+ * <p>
+ * The group requires Java 7+.
+ * </p>
+ */
+@UnstableApi
+public final class WorkStealingEventExecutorGroup extends AbstractSerialEventExecutorGroup {
+
+    private final ExecutorService pool;
+
+    /**
+     * Creates a new instance with a thread per available processor.
+     */
+    public WorkStealingEventExecutorGroup() {
+        this(0);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param nThreads  the number of threads, or {@code 0} for a thread per available processor
+     */
+    public WorkStealingEventExecutorGroup(int nThreads) {
+        this(nThreads, 64);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param nThreads          the number of threads, or {@code 0} for a thread per available processor
+     * @param maxTasksPerRun    the number of tasks an executor may run before it gives way to the other executors
+     */
+    public WorkStealingEventExecutorGroup(int nThreads, int maxTasksPerRun) {
+        this(newPool(nThreads), maxTasksPerRun);
+    }
+
+    private WorkStealingEventExecutorGroup(ExecutorService pool, int maxTasksPerRun) {
+        super(pool, maxTasksPerRun);
+        this.pool = pool;
+    }
+
+    @SuppressJava6Requirement(reason = "ForkJoinPool is only available for >= 7. Has check for < 7.")
+    private static ExecutorService newPool(int nThreads) {
+        if (PlatformDependent.javaVersion() < 7) {
+            throw new UnsupportedOperationException("WorkStealingEventExecutorGroup requires Java 7+");
+        }
+        ObjectUtil.checkPositiveOrZero(nThreads, "nThreads");
+        // Run the executors in the order they were submitted, as they are never joined.
+        return new ForkJoinPool(nThreads == 0 ? NettyRuntime.availableProcessors() : nThreads,
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    @Override
+    void terminated() {
+        pool.shutdown();
+    }
+}
@@ -46,6 +46,11 @@ public final class InternalThreadLocalMap extends UnpaddedInternalThreadLocalMap
 
     public static final Object UNSET = new Object();
 
+    private static final int INDEXED_VARIABLE_TABLE_INITIAL_SIZE = 32;
+
+    // The indices below nextIndex which were released and may be handed out again, guarded by itself.
+    private static final BitSet freeIndices = new BitSet();
+
     private BitSet cleanerFlags;
 
     static {
@@ -92,7 +97,19 @@ public final class InternalThreadLocalMap extends UnpaddedInternalThreadLocalMap
         return ret;
     }
 
+    /**
+     * Removes the map of the current thread, the same as {@link FastThreadLocal#removeAll()}. The values of the
+     * {@link FastThreadLocal}s are removed first, as the indices of the released ones are not reused otherwise.
+     */
     public static void remove() {
+        FastThreadLocal.removeAll();
+    }
+
+    /**
+     * Removes the map of the current thread, whose values must have been removed by
+     * {@link FastThreadLocal#removeAll()} already.
+     */
+    public static void removeMap() {
         Thread thread = Thread.currentThread();
         if (thread instanceof FastThreadLocalThread) {
             ((FastThreadLocalThread) thread).setThreadLocalMap(null);
@@ -102,16 +119,49 @@ public final class InternalThreadLocalMap extends UnpaddedInternalThreadLocalMap
     }
 
     public static void destroy() {
-        slowThreadLocalMap.remove();
+        if (Thread.currentThread() instanceof FastThreadLocalThread) {
+            slowThreadLocalMap.remove();
+        } else {
+            // The map of the current thread is the one to destroy, so its values are removed like remove() does.
+            remove();
+        }
     }
 
     public static int nextVariableIndex() {
-        int index = nextIndex.getAndIncrement();
-        if (index < 0) {
-            nextIndex.decrementAndGet();
-            throw new IllegalStateException("too many thread-local indexed variables");
+        synchronized (freeIndices) {
+            // Prefer the lowest free index, so that the tables of indexed variables stay small.
+            int index = freeIndices.nextSetBit(0);
+            if (index >= 0) {
+                freeIndices.clear(index);
+                return index;
+            }
+            index = nextIndex.getAndIncrement();
+            if (index < 0) {
+                nextIndex.decrementAndGet();
+                throw new IllegalStateException("too many thread-local indexed variables");
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Makes an index returned by {@link #nextVariableIndex()} available again. The caller must make sure that no
+     * thread has a value set at the index anymore, as it is visible to the next owner of the index otherwise.
+     */
+    public static void releaseVariableIndex(int index) {
+        synchronized (freeIndices) {
+            int last = nextIndex.get() - 1;
+            if (index < 0 || index > last || freeIndices.get(index)) {
+                throw new IllegalArgumentException("index: " + index + " (expected: an index in use)");
+            }
+            freeIndices.set(index);
+            // Give back the free indices at the end, so lastVariableIndex() only covers the indices in use.
+            while (last >= 0 && freeIndices.get(last)) {
+                freeIndices.clear(last);
+                last --;
+            }
+            nextIndex.set(last + 1);
         }
-        return index;
     }
 
     public static int lastVariableIndex() {
@@ -127,7 +177,7 @@ public final class InternalThreadLocalMap extends UnpaddedInternalThreadLocalMap
     }
 
     private static Object[] newIndexedVariableTable() {
-        Object[] array = new Object[32];
+        Object[] array = new Object[INDEXED_VARIABLE_TABLE_INITIAL_SIZE];
         Arrays.fill(array, UNSET);
         return array;
     }
@@ -225,6 +275,18 @@ public final class InternalThreadLocalMap extends UnpaddedInternalThreadLocalMap
         return list;
     }
 
+    /**
+     * Returns the number of released {@link FastThreadLocal}s whose values were removed from this map, as recorded by
+     * {@link #setReleasedVariables(long)}.
+     */
+    public long releasedVariables() {
+        return releasedVariables;
+    }
+
+    public void setReleasedVariables(long releasedVariables) {
+        this.releasedVariables = releasedVariables;
+    }
+
     public int futureListenerStackDepth() {
         return futureListenerStackDepth;
     }
@@ -307,13 +369,7 @@ public final class InternalThreadLocalMap extends UnpaddedInternalThreadLocalMap
     private void expandIndexedVariableTableAndSet(int index, Object value) {
         Object[] oldArray = indexedVariables;
         final int oldCapacity = oldArray.length;
-        int newCapacity = index;
-        newCapacity |= newCapacity >>>  1;
-        newCapacity |= newCapacity >>>  2;
-        newCapacity |= newCapacity >>>  4;
-        newCapacity |= newCapacity >>>  8;
-        newCapacity |= newCapacity >>> 16;
-        newCapacity ++;
+        int newCapacity = indexedVariableTableCapacity(index);
 
         Object[] newArray = Arrays.copyOf(oldArray, newCapacity);
         Arrays.fill(newArray, oldCapacity, newArray.length, UNSET);
@@ -321,6 +377,38 @@ public final class InternalThreadLocalMap extends UnpaddedInternalThreadLocalMap
         indexedVariables = newArray;
     }
 
+    /**
+     * Shrinks the table of indexed variables to the smallest size which holds all variables that are set, as the
+     * indices of released variables are reused. Returns {@code true} if the table was shrunk.
+     */
+    public boolean trimIndexedVariableTable() {
+        Object[] oldArray = indexedVariables;
+        int lastIndex = oldArray.length - 1;
+        while (lastIndex >= 0 && oldArray[lastIndex] == UNSET) {
+            lastIndex --;
+        }
+        int newCapacity = Math.max(INDEXED_VARIABLE_TABLE_INITIAL_SIZE, indexedVariableTableCapacity(lastIndex));
+        if (newCapacity >= oldArray.length) {
+            return false;
+        }
+        indexedVariables = Arrays.copyOf(oldArray, newCapacity);
+        return true;
+    }
+
+    /**
+     * Returns the smallest power of two that is greater than {@code index}.
+     */
+    private static int indexedVariableTableCapacity(int index) {
+        int capacity = index;
+        capacity |= capacity >>>  1;
+        capacity |= capacity >>>  2;
+        capacity |= capacity >>>  4;
+        capacity |= capacity >>>  8;
+        capacity |= capacity >>> 16;
+        capacity ++;
+        return capacity;
+    }
+
     public Object removeIndexedVariable(int index) {
         Object[] lookup = indexedVariables;
         if (index < lookup.length) {
@@ -17,10 +17,12 @@ package io.netty.util.internal;
 
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
+import org.jctools.queues.MpmcArrayQueue;
 import org.jctools.queues.MpscArrayQueue;
 import org.jctools.queues.MpscChunkedArrayQueue;
 import org.jctools.queues.MpscUnboundedArrayQueue;
 import org.jctools.queues.SpscLinkedQueue;
+import org.jctools.queues.atomic.MpmcAtomicArrayQueue;
 import org.jctools.queues.atomic.MpscAtomicArrayQueue;
 import org.jctools.queues.atomic.MpscGrowableAtomicArrayQueue;
 import org.jctools.queues.atomic.MpscUnboundedAtomicArrayQueue;
@@ -384,6 +386,15 @@ public final class PlatformDependent {
         return new ConcurrentHashMap<K, V>(map);
     }
 
+    /**
+     * Returns {@code true} if {@link #freeDirectBuffer(ByteBuffer)} frees the memory of a direct {@link ByteBuffer}
+     * right away, or {@code false} if it does nothing and the memory is only freed once the buffer is garbage
+     * collected.
+     */
+    public static boolean canFreeDirectBuffer() {
+        return CLEANER != NOOP;
+    }
+
     /**
      * Try to deallocate the specified direct {@link ByteBuffer}. Please note this method does nothing if
      * the current platform does not support this operation or the specified buffer is not a direct buffer.
@@ -914,6 +925,14 @@ public final class PlatformDependent {
         return hasUnsafe() ? new MpscArrayQueue<T>(capacity) : new MpscAtomicArrayQueue<T>(capacity);
     }
 
+    /**
+     * Create a new {@link Queue} which is safe to use for multiple producers (different threads) and multiple
+     * consumers (different threads) with the given fixes {@code capacity}, which must be at least {@code 2}.
+     */
+    public static <T> Queue<T> newFixedMpmcQueue(int capacity) {
+        return hasUnsafe() ? new MpmcArrayQueue<T>(capacity) : new MpmcAtomicArrayQueue<T>(capacity);
+    }
+
     /**
      * Return the {@link ClassLoader} for the given {@link Class}.
      */
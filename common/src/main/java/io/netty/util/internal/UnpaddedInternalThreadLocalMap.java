@@ -37,6 +37,7 @@ class UnpaddedInternalThreadLocalMap {
 
     /** Used by {@link FastThreadLocal} */
     Object[] indexedVariables;
+    long releasedVariables;
 
     // Core thread-locals
     int futureListenerStackDepth;
@@ -40,16 +40,17 @@
 package io.netty.util.internal.logging;
 
 /**
- * Holds the results of formatting done by {@link MessageFormatter}.
+ * Holds the results of formatting done by {@link MessageFormatter}, which reuses the instance of a thread.
  */
 final class FormattingTuple {
 
-    private final String message;
-    private final Throwable throwable;
+    private String message;
+    private Throwable throwable;
 
-    FormattingTuple(String message, Throwable throwable) {
+    FormattingTuple set(String message, Throwable throwable) {
         this.message = message;
         this.throwable = throwable;
+        return this;
     }
 
     public String getMessage() {
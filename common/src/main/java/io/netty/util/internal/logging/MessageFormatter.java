@@ -107,10 +107,25 @@ import java.util.Set;
  * See also {@link #format(String, Object)},
  * {@link #format(String, Object, Object)} and
  * {@link #arrayFormat(String, Object[])} methods for more details.
+ * <p/>
+ * <p/>
+ * To keep the garbage low, the messages are built in a {@link StringBuilder}
+ * that is reused by each thread, and the returned {@link FormattingTuple} is
+ * reused by the next call on the same thread, so it must be read right away.
  */
 final class MessageFormatter {
     private static final String DELIM_STR = "{}";
     private static final char ESCAPE_CHAR = '\\';
+    private static final int BUILDER_INITIAL_CAPACITY = 256;
+    // Do not keep the builder of a thread that formatted a huge message.
+    private static final int BUILDER_MAX_CAPACITY = 4096;
+
+    private static final ThreadLocal<FormattingState> STATE = new ThreadLocal<FormattingState>() {
+        @Override
+        protected FormattingState initialValue() {
+            return new FormattingState();
+        }
+    };
 
     /**
      * Performs single argument substitution for the 'messagePattern' passed as
@@ -130,7 +145,7 @@ final class MessageFormatter {
      * @return The formatted message
      */
     static FormattingTuple format(String messagePattern, Object arg) {
-        return arrayFormat(messagePattern, new Object[]{arg});
+        return format(messagePattern, null, arg, null, 1);
     }
 
     /**
@@ -154,7 +169,7 @@ final class MessageFormatter {
      */
     static FormattingTuple format(final String messagePattern,
                                   Object argA, Object argB) {
-        return arrayFormat(messagePattern, new Object[]{argA, argB});
+        return format(messagePattern, null, argA, argB, 2);
     }
 
     /**
@@ -170,53 +185,79 @@ final class MessageFormatter {
     static FormattingTuple arrayFormat(final String messagePattern,
                                        final Object[] argArray) {
         if (argArray == null || argArray.length == 0) {
-            return new FormattingTuple(messagePattern, null);
+            return STATE.get().tuple.set(messagePattern, null);
         }
+        return format(messagePattern, argArray, null, null, argArray.length);
+    }
 
-        int lastArrIdx = argArray.length - 1;
-        Object lastEntry = argArray[lastArrIdx];
+    /**
+     * Formats either the arguments of {@code argArray}, or if it is {@code null} the {@code argCount} arguments of
+     * {@code argA} and {@code argB}, so the fixed arity methods do not need to allocate an array.
+     */
+    private static FormattingTuple format(String messagePattern, Object[] argArray,
+                                          Object argA, Object argB, int argCount) {
+        FormattingState state = STATE.get();
+        int lastArrIdx = argCount - 1;
+        Object lastEntry = argument(argArray, argA, argB, lastArrIdx);
         Throwable throwable = lastEntry instanceof Throwable? (Throwable) lastEntry : null;
 
         if (messagePattern == null) {
-            return new FormattingTuple(null, throwable);
+            return state.tuple.set(null, throwable);
         }
 
         int j = messagePattern.indexOf(DELIM_STR);
         if (j == -1) {
             // this is a simple string
-            return new FormattingTuple(messagePattern, throwable);
+            return state.tuple.set(messagePattern, throwable);
         }
 
-        StringBuilder sbuf = new StringBuilder(messagePattern.length() + 50);
+        // The toString() of an argument may log, in which case the builder of the thread is in use already.
+        StringBuilder sbuf = state.formatting ? new StringBuilder(messagePattern.length() + 50) : state.builder;
+        if (sbuf == state.builder) {
+            state.formatting = true;
+        }
         int i = 0;
         int L = 0;
-        do {
-            boolean notEscaped = j == 0 || messagePattern.charAt(j - 1) != ESCAPE_CHAR;
-            if (notEscaped) {
-                // normal case
-                sbuf.append(messagePattern, i, j);
-            } else {
-                sbuf.append(messagePattern, i, j - 1);
-                // check that escape char is not is escaped: "abc x:\\{}"
-                notEscaped = j >= 2 && messagePattern.charAt(j - 2) == ESCAPE_CHAR;
-            }
+        try {
+            do {
+                boolean notEscaped = j == 0 || messagePattern.charAt(j - 1) != ESCAPE_CHAR;
+                if (notEscaped) {
+                    // normal case
+                    sbuf.append(messagePattern, i, j);
+                } else {
+                    sbuf.append(messagePattern, i, j - 1);
+                    // check that escape char is not is escaped: "abc x:\\{}"
+                    notEscaped = j >= 2 && messagePattern.charAt(j - 2) == ESCAPE_CHAR;
+                }
 
-            i = j + 2;
-            if (notEscaped) {
-                deeplyAppendParameter(sbuf, argArray[L], null);
-                L++;
-                if (L > lastArrIdx) {
-                    break;
+                i = j + 2;
+                if (notEscaped) {
+                    deeplyAppendParameter(sbuf, argument(argArray, argA, argB, L), null);
+                    L++;
+                    if (L > lastArrIdx) {
+                        break;
+                    }
+                } else {
+                    sbuf.append(DELIM_STR);
                 }
-            } else {
-                sbuf.append(DELIM_STR);
+                j = messagePattern.indexOf(DELIM_STR, i);
+            } while (j != -1);
+
+            // append the characters following the last {} pair.
+            sbuf.append(messagePattern, i, messagePattern.length());
+            return state.tuple.set(sbuf.toString(), L <= lastArrIdx? throwable : null);
+        } finally {
+            if (sbuf == state.builder) {
+                state.release();
             }
-            j = messagePattern.indexOf(DELIM_STR, i);
-        } while (j != -1);
+        }
+    }
 
-        // append the characters following the last {} pair.
-        sbuf.append(messagePattern, i, messagePattern.length());
-        return new FormattingTuple(sbuf.toString(), L <= lastArrIdx? throwable : null);
+    private static Object argument(Object[] argArray, Object argA, Object argB, int index) {
+        if (argArray != null) {
+            return argArray[index];
+        }
+        return index == 0 ? argA : argB;
     }
 
     // special treatment of array values was suggested by 'lizongbo'
@@ -392,6 +433,24 @@ final class MessageFormatter {
         }
     }
 
+    /**
+     * The {@link StringBuilder} and {@link FormattingTuple} that are reused by a thread.
+     */
+    private static final class FormattingState {
+        final FormattingTuple tuple = new FormattingTuple();
+        StringBuilder builder = new StringBuilder(BUILDER_INITIAL_CAPACITY);
+        boolean formatting;
+
+        void release() {
+            formatting = false;
+            if (builder.capacity() > BUILDER_MAX_CAPACITY) {
+                builder = new StringBuilder(BUILDER_INITIAL_CAPACITY);
+            } else {
+                builder.setLength(0);
+            }
+        }
+    }
+
     private MessageFormatter() {
     }
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.SuppressJava6Requirement;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link ThreadFactory} that creates virtual threads. Only loaded on Java 21+, see
+ * {@link VirtualThreadEventExecutorGroup#isVirtualThreadAvailable()}.
+ */
+final class VirtualThreadFactoryJava21 implements ThreadFactory {
+
+    private final ThreadFactory factory = newVirtualThreadFactory();
+
+    @SuppressJava6Requirement(reason = "Only loaded on Java 21+")
+    private static ThreadFactory newVirtualThreadFactory() {
+        return Thread.ofVirtual().name("virtualThreadEventExecutorGroup-", 0).factory();
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        return factory.newThread(r);
+    }
+}
@@ -245,6 +245,70 @@ public class HashedWheelTimerTest {
         timer.stop();
     }
 
+    private static HashedWheelTimer newHierarchicalTimer(long tickDurationMs, int ticksPerWheel) {
+        return new HashedWheelTimer(Executors.defaultThreadFactory(), tickDurationMs, TimeUnit.MILLISECONDS,
+                ticksPerWheel, true, -1, true);
+    }
+
+    @Test
+    public void testHierarchicalExecutionOnTime() throws InterruptedException {
+        int tickDuration = 5;
+        // With 4 ticks per wheel the timeouts are spread across 5 wheels.
+        final HashedWheelTimer timer = newHierarchicalTimer(tickDuration, 4);
+        final BlockingQueue<long[]> queue = new LinkedBlockingQueue<long[]>();
+
+        int scheduledTasks = 200;
+        for (int i = 0; i < scheduledTasks; i++) {
+            final long start = System.nanoTime();
+            final long timeout = i * 7;
+            timer.newTimeout(new TimerTask() {
+                @Override
+                public void run(final Timeout t) throws Exception {
+                    queue.add(new long[] { timeout, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) });
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+
+        for (int i = 0; i < scheduledTasks; i++) {
+            long[] delay = queue.take();
+            assertTrue("delay " + delay[1] + " must be >= timeout " + delay[0], delay[1] >= delay[0]);
+            assertTrue("delay " + delay[1] + " must be < timeout " + delay[0] + " + 250",
+                    delay[1] < delay[0] + 250);
+        }
+        assertEquals(0, timer.pendingTimeouts());
+        timer.stop();
+    }
+
+    @Test
+    public void testHierarchicalCancel() throws InterruptedException {
+        int tickDuration = 5;
+        final HashedWheelTimer timer = newHierarchicalTimer(tickDuration, 4);
+        final CountDownLatch latch = new CountDownLatch(1);
+        Timeout[] timeouts = new Timeout[4];
+        for (int i = 0; i < timeouts.length; i++) {
+            timeouts[i] = timer.newTimeout(createCountDownLatchTimerTask(latch), 100 << i, TimeUnit.MILLISECONDS);
+        }
+        // Let the timeouts be added to the overflow wheels before cancelling them.
+        Thread.sleep(tickDuration * 4);
+        for (Timeout timeout: timeouts) {
+            assertTrue(timeout.cancel());
+        }
+        assertFalse(latch.await(1000, TimeUnit.MILLISECONDS));
+        assertEquals(0, timer.pendingTimeouts());
+        timer.stop();
+    }
+
+    @Test
+    public void testHierarchicalStopTimer() throws InterruptedException {
+        final HashedWheelTimer timer = newHierarchicalTimer(10, 8);
+        timer.newTimeout(createNoOpTimerTask(), 1, TimeUnit.SECONDS);
+        timer.newTimeout(createNoOpTimerTask(), 100, TimeUnit.SECONDS);
+        timer.newTimeout(createNoOpTimerTask(), 1, TimeUnit.DAYS);
+        timer.newTimeout(createNoOpTimerTask(), Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        Thread.sleep(100);
+        assertEquals(4, timer.stop().size());
+    }
+
     private static TimerTask createNoOpTimerTask() {
         return new TimerTask() {
             @Override
@@ -17,7 +17,10 @@ package io.netty.util;
 
 import org.junit.Test;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -36,6 +39,29 @@ public class RecyclerTest {
         };
     }
 
+    private static Recycler<HandledObject> newMagazineRecycler(int max, int maxSharedCapacityFactor, int ratio) {
+        return new Recycler<HandledObject>(max, maxSharedCapacityFactor, ratio, 0, true) {
+            @Override
+            protected HandledObject newObject(
+                    Recycler.Handle<HandledObject> handle) {
+                return new HandledObject(handle);
+            }
+        };
+    }
+
+    private static void recycleInOtherThread(final HandledObject... objects) throws InterruptedException {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                for (HandledObject object: objects) {
+                    object.recycle();
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+    }
+
     @Test(timeout = 5000L)
     public void testThreadCanBeCollectedEvenIfHandledObjectIsReferenced() throws Exception {
         final Recycler<HandledObject> recycler = newRecycler(1024);
@@ -277,6 +303,138 @@ public class RecyclerTest {
                 " internally", array.length - maxCapacity / 2 <= instancesCount.get());
     }
 
+    @Test
+    public void testMetric() throws Exception {
+        Recycler<HandledObject> recycler = newRecycler(1024);
+        HandledObject object = recycler.get();
+        HandledObject object2 = recycler.get();
+        object.recycle();
+        assertSame(object, recycler.get());
+        recycleInOtherThread(object2);
+        // Dropped when it is transferred as only every 8th new handle is pooled.
+        assertNotSame(object2, recycler.get());
+
+        RecyclerMetric metric = recycler.metric();
+        assertEquals(1, metric.numHits());
+        assertEquals(3, metric.numMisses());
+        assertEquals(1, metric.numDrops());
+    }
+
+    @Test
+    public void testMagazineRecycle() {
+        Recycler<HandledObject> recycler = newMagazineRecycler(1024, 2, 1);
+        HandledObject object = recycler.get();
+        object.recycle();
+        HandledObject object2 = recycler.get();
+        assertSame(object, object2);
+        object2.recycle();
+        assertEquals(1, recycler.threadLocalSize());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMagazineMultipleRecycle() {
+        Recycler<HandledObject> recycler = newMagazineRecycler(1024, 2, 1);
+        HandledObject object = recycler.get();
+        object.recycle();
+        object.recycle();
+    }
+
+    @Test
+    public void testMagazineMultipleRecycleAtDifferentThread() throws Exception {
+        Recycler<HandledObject> recycler = newMagazineRecycler(1024, 2, 1);
+        final HandledObject object = recycler.get();
+        recycleInOtherThread(object);
+        final AtomicReference<IllegalStateException> exceptionStore = new AtomicReference<IllegalStateException>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    object.recycle();
+                } catch (IllegalStateException e) {
+                    exceptionStore.set(e);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotNull(exceptionStore.get());
+    }
+
+    @Test
+    public void testMagazineRecycleAtDifferentThread() throws Exception {
+        Recycler<HandledObject> recycler = newMagazineRecycler(256, 2, 2);
+        HandledObject o = recycler.get();
+        HandledObject o2 = recycler.get();
+        recycleInOtherThread(o, o2);
+
+        // Only every second new handle is pooled.
+        assertSame(o, recycler.get());
+        assertNotSame(o2, recycler.get());
+
+        RecyclerMetric metric = recycler.metric();
+        assertEquals(1, metric.numHits());
+        assertEquals(3, metric.numMisses());
+        assertEquals(1, metric.numDrops());
+    }
+
+    @Test
+    public void testMagazineMaxCapacityWithRecycleAtDifferentThread() throws Exception {
+        final int maxCapacity = 8;
+        Recycler<HandledObject> recycler = newMagazineRecycler(maxCapacity, 2, 1);
+        HandledObject[] array = new HandledObject[maxCapacity * 2];
+        for (int i = 0; i < array.length; i ++) {
+            array[i] = recycler.get();
+        }
+
+        // Other threads may only return maxCapacity / maxSharedCapacityFactor objects.
+        recycleInOtherThread(array);
+        assertEquals(0, recycler.threadLocalSize());
+        assertEquals(maxCapacity * 2 - maxCapacity / 2, recycler.metric().numDrops());
+
+        for (int i = 0; i < maxCapacity / 2; i ++) {
+            assertNotNull(recycler.get());
+        }
+        assertEquals(maxCapacity / 2, recycler.metric().numHits());
+        assertEquals(maxCapacity * 2, recycler.metric().numMisses());
+        recycler.get();
+        assertEquals(maxCapacity * 2 + 1, recycler.metric().numMisses());
+        assertTrue(maxCapacity >= recycler.threadLocalCapacity());
+    }
+
+    @Test
+    public void testMagazineConcurrentRecycle() throws Exception {
+        final Recycler<HandledObject> recycler = newMagazineRecycler(1024, 2, 1);
+        final int numObjects = 512;
+        final HandledObject[] array = new HandledObject[numObjects];
+        for (int i = 0; i < array.length; i ++) {
+            array[i] = recycler.get();
+        }
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i ++) {
+            final int offset = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = offset; j < array.length; j += 4) {
+                        array[j].recycle();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+
+        Set<HandledObject> objects = Collections.newSetFromMap(new IdentityHashMap<HandledObject, Boolean>());
+        for (int i = 0; i < numObjects; i ++) {
+            objects.add(recycler.get());
+        }
+        assertEquals(numObjects, objects.size());
+        assertEquals(numObjects, recycler.metric().numHits());
+        assertEquals(0, recycler.metric().numDrops());
+    }
+
     static final class HandledObject {
         Recycler.Handle<HandledObject> handle;
 
@@ -16,11 +16,14 @@
 
 package io.netty.util.concurrent;
 
+import io.netty.util.internal.InternalThreadLocalMap;
 import io.netty.util.internal.ObjectCleaner;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.lang.reflect.Field;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -28,6 +31,7 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 public class FastThreadLocalTest {
     @Before
@@ -138,6 +142,137 @@ public class FastThreadLocalTest {
         assertEquals(0, ObjectCleaner.getLiveSetCount() - sizeWhenStart);
     }
 
+    @Test
+    public void testReleaseReusesIndex() {
+        FastThreadLocal<String> var = new FastThreadLocal<String>();
+        int lastIndex = InternalThreadLocalMap.lastVariableIndex();
+        var.set("value");
+        var.release();
+        assertThat(FastThreadLocal.size(), is(0));
+
+        FastThreadLocal<String> var2 = new FastThreadLocal<String>();
+        assertEquals(lastIndex, InternalThreadLocalMap.lastVariableIndex());
+        assertThat(var2.isSet(), is(false));
+        assertThat(var2.get(), is(nullValue()));
+        var2.release();
+    }
+
+    @Test(timeout = 10000)
+    public void testReleaseWaitsForOtherThreads() throws Throwable {
+        final FastThreadLocal<String> other = new FastThreadLocal<String>();
+        final TestFastThreadLocal var = new TestFastThreadLocal();
+        final int lastIndex = InternalThreadLocalMap.lastVariableIndex();
+        final CountDownLatch set = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        final AtomicReference<Throwable> throwable = new AtomicReference<Throwable>();
+        Thread thread = new FastThreadLocalThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    var.get();
+                    set.countDown();
+                    released.await();
+                    // Adding a value for any variable removes the values of the released variables.
+                    other.get();
+                } catch (Throwable t) {
+                    throwable.set(t);
+                }
+            }
+        });
+        thread.start();
+        set.await();
+
+        var.release();
+        // The index is still in use by the other thread.
+        assertEquals(lastIndex, InternalThreadLocalMap.lastVariableIndex());
+        released.countDown();
+        thread.join();
+        if (throwable.get() != null) {
+            throw throwable.get();
+        }
+        assertEquals(thread.getName(), var.onRemovalCalled.get());
+        assertEquals(lastIndex - 1, InternalThreadLocalMap.lastVariableIndex());
+
+        other.release();
+        assertEquals(lastIndex - 2, InternalThreadLocalMap.lastVariableIndex());
+    }
+
+    @Test(timeout = 10000)
+    public void testReleaseWithInternalThreadLocalMapRemove() throws Throwable {
+        final FastThreadLocal<String> var = new FastThreadLocal<String>();
+        final int lastIndex = InternalThreadLocalMap.lastVariableIndex();
+        final CountDownLatch set = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        final AtomicReference<Throwable> throwable = new AtomicReference<Throwable>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    var.set("value");
+                    set.countDown();
+                    released.await();
+                    InternalThreadLocalMap.remove();
+                } catch (Throwable t) {
+                    throwable.set(t);
+                }
+            }
+        });
+        thread.start();
+        set.await();
+
+        var.release();
+        assertEquals(lastIndex, InternalThreadLocalMap.lastVariableIndex());
+        released.countDown();
+        thread.join();
+        if (throwable.get() != null) {
+            throw throwable.get();
+        }
+        assertEquals(lastIndex - 1, InternalThreadLocalMap.lastVariableIndex());
+    }
+
+    @Test(timeout = 10000)
+    public void testReleaseWithTerminatedThread() throws Exception {
+        final FastThreadLocal<String> var = new FastThreadLocal<String>();
+        final int lastIndex = InternalThreadLocalMap.lastVariableIndex();
+        // A thread that does not call removeAll() when it terminates.
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                var.set("value");
+            }
+        });
+        thread.start();
+        thread.join();
+
+        var.release();
+        // The value of the terminated thread is never removed, so the index is not reused.
+        assertEquals(lastIndex, InternalThreadLocalMap.lastVariableIndex());
+    }
+
+    @Test
+    public void testReleaseShrinksTable() throws Exception {
+        InternalThreadLocalMap threadLocalMap = InternalThreadLocalMap.get();
+        int capacity = indexedVariableTableCapacity(threadLocalMap);
+        @SuppressWarnings("unchecked")
+        FastThreadLocal<String>[] vars = new FastThreadLocal[capacity + 1];
+        for (int i = 0; i < vars.length; i ++) {
+            vars[i] = new FastThreadLocal<String>();
+            vars[i].set("value");
+        }
+        assertTrue(indexedVariableTableCapacity(threadLocalMap) > capacity);
+
+        for (FastThreadLocal<String> var: vars) {
+            var.release();
+        }
+        assertTrue(indexedVariableTableCapacity(threadLocalMap) <= capacity);
+    }
+
+    private static int indexedVariableTableCapacity(InternalThreadLocalMap threadLocalMap) throws Exception {
+        Field field = InternalThreadLocalMap.class.getSuperclass().getDeclaredField("indexedVariables");
+        field.setAccessible(true);
+        return ((Object[]) field.get(threadLocalMap)).length;
+    }
+
     @Test(timeout = 4000)
     public void testOnRemoveCalledForFastThreadLocalGet() throws Exception {
         testOnRemoveCalled(true, true);
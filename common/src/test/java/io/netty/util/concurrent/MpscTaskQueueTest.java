@@ -0,0 +1,228 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MpscTaskQueueTest {
+
+    private static final Runnable NO_OP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    @Test(timeout = 5000)
+    public void testTakeIsWokenUpByOffer() throws Exception {
+        final MpscTaskQueue queue = new MpscTaskQueue(Integer.MAX_VALUE);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignore) {
+                    // Ignore
+                }
+                queue.offer(NO_OP);
+            }
+        });
+        producer.start();
+        assertSame(NO_OP, queue.take());
+        producer.join();
+    }
+
+    @Test(timeout = 5000)
+    public void testPollTimeout() throws Exception {
+        MpscTaskQueue queue = new MpscTaskQueue(Integer.MAX_VALUE);
+        long start = System.nanoTime();
+        assertNull(queue.poll(100, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+
+        queue.offer(NO_OP);
+        assertSame(NO_OP, queue.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void testTakeIsInterrupted() throws Exception {
+        MpscTaskQueue queue = new MpscTaskQueue(Integer.MAX_VALUE);
+        Thread.currentThread().interrupt();
+        try {
+            queue.take();
+            fail();
+        } catch (InterruptedException expected) {
+            // Expected
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testPutWaitsForSpace() throws Exception {
+        final MpscTaskQueue queue = newFullQueue();
+        final CountDownLatch put = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.put(NO_OP);
+                    put.countDown();
+                } catch (InterruptedException ignore) {
+                    // Ignore
+                }
+            }
+        });
+        producer.start();
+        assertFalse(put.await(100, TimeUnit.MILLISECONDS));
+
+        int size = queue.size();
+        assertSame(NO_OP, queue.take());
+        put.await();
+        assertEquals(size, queue.size());
+        producer.join();
+    }
+
+    @Test(timeout = 5000)
+    public void testOfferTimeoutWhenFull() throws Exception {
+        MpscTaskQueue queue = newFullQueue();
+        long start = System.nanoTime();
+        assertFalse(queue.offer(NO_OP, 100, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+
+        queue.take();
+        assertTrue(queue.offer(NO_OP, 1, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void testPutIsInterrupted() throws Exception {
+        MpscTaskQueue queue = newFullQueue();
+        Thread.currentThread().interrupt();
+        try {
+            queue.put(NO_OP);
+            fail();
+        } catch (InterruptedException expected) {
+            // Expected
+        }
+    }
+
+    private static MpscTaskQueue newFullQueue() {
+        MpscTaskQueue queue = new MpscTaskQueue(1024);
+        while (queue.offer(NO_OP)) {
+            // Fill the queue, its capacity may be rounded up.
+        }
+        return queue;
+    }
+
+    @Test
+    public void testRemove() {
+        MpscTaskQueue queue = new MpscTaskQueue(Integer.MAX_VALUE);
+        Runnable[] tasks = new Runnable[4];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new Runnable() {
+                @Override
+                public void run() {
+                }
+            };
+        }
+        queue.offer(tasks[0]);
+        queue.offer(tasks[1]);
+        queue.offer(tasks[2]);
+        assertTrue(queue.remove(tasks[1]));
+        assertFalse(queue.remove(tasks[1]));
+        assertEquals(2, queue.size());
+        queue.offer(tasks[3]);
+        assertTrue(queue.remove(tasks[3]));
+        assertFalse(queue.remove(tasks[3]));
+        assertTrue(queue.contains(tasks[2]));
+
+        // The order is kept.
+        assertSame(tasks[0], queue.poll());
+        assertSame(tasks[2], queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testIterator() {
+        MpscTaskQueue queue = new MpscTaskQueue(16);
+        queue.offer(NO_OP);
+        queue.offer(NO_OP);
+        int count = 0;
+        for (Runnable task: queue) {
+            assertSame(NO_OP, task);
+            count++;
+        }
+        assertEquals(2, count);
+        assertEquals(2, queue.size());
+        assertEquals(14, queue.remainingCapacity());
+    }
+
+    @Test(timeout = 30000)
+    public void testManyProducers() throws Exception {
+        final MpscTaskQueue queue = new MpscTaskQueue(Integer.MAX_VALUE);
+        final int producers = 8;
+        final int tasksPerProducer = 100000;
+        final AtomicInteger runs = new AtomicInteger();
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < producers; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ignore) {
+                        // Ignore
+                    }
+                    for (int i = 0; i < tasksPerProducer; i++) {
+                        queue.offer(task);
+                        if (i % 1000 == 0) {
+                            // Give the consumer a chance to park.
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (int i = 0; i < producers * tasksPerProducer; i++) {
+            queue.take().run();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        assertEquals(producers * tasksPerProducer, runs.get());
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.concurrent.EventExecutorChooserFactory.EventExecutorChooser;
+import io.netty.util.concurrent.PowerOfTwoChoicesEventExecutorChooserFactory.LoadEstimator;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PowerOfTwoChoicesEventExecutorChooserFactoryTest {
+
+    private static final EventExecutor[] executors = new EventExecutor[4];
+    private final Map<EventExecutor, Long> loads = new IdentityHashMap<EventExecutor, Long>();
+    private final LoadEstimator estimator = new LoadEstimator() {
+        @Override
+        public long load(EventExecutor executor) {
+            synchronized (loads) {
+                Long load = loads.get(executor);
+                return load == null ? 0 : load;
+            }
+        }
+    };
+
+    @BeforeClass
+    public static void setUp() {
+        for (int i = 0; i < executors.length; i++) {
+            executors[i] = new DefaultEventExecutor();
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        for (EventExecutor executor: executors) {
+            executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+        }
+    }
+
+    private void setLoad(EventExecutor executor, long load) {
+        synchronized (loads) {
+            loads.put(executor, load);
+        }
+    }
+
+    @Test
+    public void testSingleExecutor() {
+        EventExecutorChooser chooser = PowerOfTwoChoicesEventExecutorChooserFactory.leastLoaded(estimator)
+                .newChooser(new EventExecutor[] { executors[0] });
+        assertSame(executors[0], chooser.next());
+    }
+
+    @Test
+    public void testLeastLoadedOfTwo() {
+        EventExecutorChooser chooser = PowerOfTwoChoicesEventExecutorChooserFactory.leastLoaded(estimator)
+                .newChooser(new EventExecutor[] { executors[0], executors[1] });
+        setLoad(executors[0], 10);
+        setLoad(executors[1], 5);
+        for (int i = 0; i < 100; i++) {
+            assertSame(executors[1], chooser.next());
+        }
+    }
+
+    @Test
+    public void testMostLoadedIsNeverChosen() {
+        EventExecutorChooser chooser = PowerOfTwoChoicesEventExecutorChooserFactory.leastLoaded(estimator)
+                .newChooser(executors.clone());
+        for (int i = 0; i < executors.length; i++) {
+            setLoad(executors[i], i);
+        }
+        int[] chosen = new int[executors.length];
+        for (int i = 0; i < 1000; i++) {
+            EventExecutor executor = chooser.next();
+            assertNotSame(executors[executors.length - 1], executor);
+            for (int j = 0; j < executors.length; j++) {
+                if (executors[j] == executor) {
+                    chosen[j]++;
+                }
+            }
+        }
+        // The least loaded executor wins whenever it is picked, which is for half of the choices.
+        assertTrue(chosen[0] > chosen[1]);
+        assertTrue(chosen[1] > chosen[2]);
+    }
+
+    @Test
+    public void testLeastRecentlyLoaded() throws Exception {
+        EventExecutorChooser chooser = PowerOfTwoChoicesEventExecutorChooserFactory.leastRecentlyLoaded(
+                estimator, 50, TimeUnit.MILLISECONDS).newChooser(new EventExecutor[] { executors[0], executors[1] });
+        // Only the first executor is busy during the first window, and is still chosen against after it.
+        setLoad(executors[0], 1000);
+        setLoad(executors[1], 0);
+        assertSame(executors[1], chooser.next());
+
+        Thread.sleep(60);
+        assertSame(executors[1], chooser.next());
+        // Now only the second executor was busy during the last window.
+        setLoad(executors[1], 100);
+        Thread.sleep(60);
+        assertSame(executors[0], chooser.next());
+    }
+
+    @Test(timeout = 5000)
+    public void testTaskTimeEnablesDetailedMetrics() throws Exception {
+        DefaultEventExecutor busy = new DefaultEventExecutor();
+        DefaultEventExecutor idle = new DefaultEventExecutor();
+        try {
+            // The detailed metrics are disabled by default, so the task time would always be 0 without the chooser.
+            assertFalse(busy.isDetailedMetricsEnabled());
+            EventExecutorChooser chooser = PowerOfTwoChoicesEventExecutorChooserFactory.leastRecentlyLoaded(
+                    PowerOfTwoChoicesEventExecutorChooserFactory.TASK_TIME, 50, TimeUnit.MILLISECONDS)
+                    .newChooser(new EventExecutor[] { busy, idle });
+            assertTrue(busy.isDetailedMetricsEnabled());
+            assertTrue(idle.isDetailedMetricsEnabled());
+
+            busy.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }).syncUninterruptibly();
+            // The time of a task is recorded after it completed its future, so wait for the next task.
+            busy.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // NOOP
+                }
+            }).syncUninterruptibly();
+            assertTrue(busy.metric().taskTimeNanos() > 0);
+
+            Thread.sleep(60);
+            for (int i = 0; i < 100; i++) {
+                assertSame(idle, chooser.next());
+            }
+        } finally {
+            busy.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+            idle.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+}
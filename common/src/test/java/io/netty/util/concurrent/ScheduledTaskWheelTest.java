@@ -0,0 +1,223 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ScheduledTaskWheelTest {
+
+    private static final Callable<Void> NO_OP = new Callable<Void>() {
+        @Override
+        public Void call() {
+            return null;
+        }
+    };
+
+    private DefaultEventExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new DefaultEventExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    private ScheduledFutureTask<Void> newTask(long delayMillis) {
+        return new ScheduledFutureTask<Void>(
+                executor, NO_OP, ScheduledFutureTask.deadlineNanos(TimeUnit.MILLISECONDS.toNanos(delayMillis)));
+    }
+
+    @Test
+    public void testPollInOrderAndOnTime() throws Exception {
+        // 1ms ticks and 4 ticks per wheel, so the tasks are spread across 5 wheels.
+        ScheduledTaskWheel queue = new ScheduledTaskWheel(executor, TimeUnit.MILLISECONDS.toNanos(1), 4);
+        Random random = new Random();
+        List<ScheduledFutureTask<Void>> tasks = new ArrayList<ScheduledFutureTask<Void>>();
+        for (int i = 0; i < 500; i++) {
+            ScheduledFutureTask<Void> task = newTask(random.nextInt(400));
+            tasks.add(task);
+            assertTrue(queue.offer(task));
+        }
+        assertEquals(tasks.size(), queue.size());
+
+        long lastDeadline = 0;
+        int polled = 0;
+        while (polled < tasks.size()) {
+            ScheduledFutureTask<?> task = queue.peek();
+            long now = ScheduledFutureTask.nanoTime();
+            if (task.deadlineNanos() > now) {
+                Thread.sleep(Math.max(0, TimeUnit.NANOSECONDS.toMillis(task.deadlineNanos() - now)));
+                continue;
+            }
+            if (!queue.removeTyped(task)) {
+                // The placeholder became due after it was returned by peek().
+                assertFalse(tasks.contains(task));
+                continue;
+            }
+            assertTrue(tasks.contains(task));
+            assertTrue(task.deadlineNanos() >= lastDeadline);
+            lastDeadline = task.deadlineNanos();
+            polled++;
+        }
+        assertTrue(queue.isEmpty());
+        assertNull(queue.peek());
+    }
+
+    @Test
+    public void testRemove() {
+        ScheduledTaskWheel queue = new ScheduledTaskWheel(executor, TimeUnit.MILLISECONDS.toNanos(10), 8);
+        ScheduledFutureTask<Void> dueTask = newTask(0);
+        ScheduledFutureTask<Void> task = newTask(1000);
+        ScheduledFutureTask<Void> longTask = newTask(TimeUnit.DAYS.toMillis(1));
+        queue.add(dueTask);
+        queue.add(task);
+        queue.add(longTask);
+        assertEquals(3, queue.toArray().length);
+        assertTrue(queue.contains(longTask));
+
+        assertTrue(queue.removeTyped(task));
+        assertFalse(queue.containsTyped(task));
+        assertFalse(queue.removeTyped(task));
+        assertTrue(queue.remove(longTask));
+        assertEquals(1, queue.size());
+        assertSame(dueTask, queue.peek());
+        assertTrue(queue.removeTyped(dueTask));
+        assertTrue(queue.isEmpty());
+        assertNull(queue.peek());
+
+        // Removed tasks can be added again.
+        queue.add(task);
+        assertEquals(1, queue.size());
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertFalse(queue.containsTyped(task));
+    }
+
+    @Test
+    public void testWakeUpTaskIsNeverDue() {
+        ScheduledTaskWheel queue = new ScheduledTaskWheel(executor, TimeUnit.MILLISECONDS.toNanos(10), 8);
+        queue.add(newTask(TimeUnit.HOURS.toMillis(1)));
+        ScheduledFutureTask<?> wakeUpTask = queue.peek();
+        assertTrue(wakeUpTask.deadlineNanos() > ScheduledFutureTask.nanoTime());
+        assertEquals(0, queue.toArray().length - 1);
+        assertFalse(queue.containsTyped(wakeUpTask));
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testWakeUpTaskIsReused() throws Exception {
+        ScheduledTaskWheel queue = new ScheduledTaskWheel(executor, TimeUnit.MILLISECONDS.toNanos(1), 8);
+        queue.add(newTask(TimeUnit.HOURS.toMillis(1)));
+        ScheduledFutureTask<?> wakeUpTask = queue.peek();
+        long deadline = wakeUpTask.deadlineNanos();
+        Thread.sleep(10);
+        assertSame(wakeUpTask, queue.peek());
+        assertTrue(wakeUpTask.deadlineNanos() > deadline);
+    }
+
+    @Test
+    public void testClearIgnoringIndexes() {
+        ScheduledTaskWheel queue = new ScheduledTaskWheel(executor, TimeUnit.MILLISECONDS.toNanos(10), 8);
+        ScheduledFutureTask<Void> task = newTask(TimeUnit.HOURS.toMillis(1));
+        queue.add(task);
+        queue.clearIgnoringIndexes();
+        assertTrue(queue.isEmpty());
+        assertFalse(queue.containsTyped(task));
+        assertFalse(queue.removeTyped(task));
+        assertEquals(0, queue.size());
+
+        // The task can be added again.
+        queue.add(task);
+        assertTrue(queue.containsTyped(task));
+        assertEquals(1, queue.size());
+    }
+
+    @Test(timeout = 10000)
+    public void testEventExecutor() throws Exception {
+        executor.setScheduledTaskQueueFactory(ScheduledTaskQueueFactory.timingWheel(1, TimeUnit.MILLISECONDS, 8));
+        final BlockingQueue<Integer> runs = new LinkedBlockingQueue<Integer>();
+        List<ScheduledFuture<?>> cancelled = new ArrayList<ScheduledFuture<?>>();
+        for (int i = 0; i < 1000; i++) {
+            cancelled.add(executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    runs.add(-1);
+                }
+            }, 100 + i, TimeUnit.MILLISECONDS));
+        }
+        for (int i = 0; i < 10; i++) {
+            final int delay = 50 - i * 5;
+            final long start = System.nanoTime();
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(delay));
+                    runs.add(delay);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        for (ScheduledFuture<?> future: cancelled) {
+            assertTrue(future.cancel(false));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(5 + i * 5), runs.take());
+        }
+        assertNull(runs.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void testChangeFactory() throws Exception {
+        Future<?> first = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+        // The scheduled task is moved to the new queue.
+        executor.setScheduledTaskQueueFactory(ScheduledTaskQueueFactory.timingWheel());
+        Future<?> second = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+        second.sync();
+        first.sync();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTicksPerWheel() {
+        ScheduledTaskQueueFactory.timingWheel(1, TimeUnit.MILLISECONDS, 1);
+    }
+}
@@ -25,7 +25,9 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class SingleThreadEventExecutorTest {
@@ -170,4 +172,171 @@ public class SingleThreadEventExecutorTest {
             executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
         }
     }
+
+    @Test(timeout = 5000)
+    public void testLazyExecuteDoesNotWakeUp() throws Exception {
+        final AtomicInteger wakeups = new AtomicInteger();
+        SingleThreadEventExecutor executor = new SingleThreadEventExecutor(
+                null, new DefaultThreadFactory("test"), false) {
+            @Override
+            protected void run() {
+                while (!confirmShutdown()) {
+                    Runnable task = takeTask();
+                    if (task != null) {
+                        task.run();
+                    }
+                }
+            }
+
+            @Override
+            protected void wakeup(boolean inEventLoop) {
+                if (!inEventLoop) {
+                    wakeups.incrementAndGet();
+                }
+                super.wakeup(inEventLoop);
+            }
+        };
+        try {
+            final CountDownLatch lazyLatch = new CountDownLatch(2);
+            executor.lazyExecute(new Runnable() {
+                @Override
+                public void run() {
+                    lazyLatch.countDown();
+                }
+            });
+            executor.execute(new AbstractEventExecutor.LazyRunnable() {
+                @Override
+                public void run() {
+                    lazyLatch.countDown();
+                }
+            });
+            // The task queue wakes up takeTask() itself, so the lazy tasks are run.
+            lazyLatch.await();
+            Assert.assertEquals(0, wakeups.get());
+
+            final CountDownLatch latch = new CountDownLatch(1);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    latch.countDown();
+                }
+            });
+            latch.await();
+            Assert.assertEquals(1, wakeups.get());
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testRemoveTask() throws Exception {
+        DefaultEventExecutor executor = new DefaultEventExecutor();
+        try {
+            final CountDownLatch latch = new CountDownLatch(1);
+            // Keep the executor busy so the tasks stay in the queue.
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            final AtomicInteger runs = new AtomicInteger();
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    runs.incrementAndGet();
+                }
+            };
+            executor.execute(task);
+            Future<?> future = executor.submit(task);
+            Assert.assertTrue(executor.removeTask(task));
+            Assert.assertFalse(executor.removeTask(task));
+            latch.countDown();
+            future.sync();
+            Assert.assertEquals(1, runs.get());
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testMetric() throws Exception {
+        DefaultEventExecutor executor = new DefaultEventExecutor();
+        try {
+            Assert.assertFalse(executor.isDetailedMetricsEnabled());
+            final EventExecutorMetric metric = executor.metric();
+            runMetricTasks(executor, new Runnable() {
+                @Override
+                public void run() {
+                    Assert.assertEquals(12, metric.numExecutedTasks());
+                    Assert.assertEquals(12, metric.numIterations());
+                    Assert.assertEquals(0, sum(metric.tasksPerIterationHistogram()));
+                    Assert.assertEquals(0, sum(metric.scheduledTaskLagHistogram()));
+                    Assert.assertEquals(0, metric.taskTimeNanos());
+                    Assert.assertEquals(0, metric.pendingTasks());
+                }
+            });
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testDetailedMetric() throws Exception {
+        DefaultEventExecutor executor = new DefaultEventExecutor();
+        try {
+            executor.setDetailedMetricsEnabled(true);
+            final EventExecutorMetric metric = executor.metric();
+            runMetricTasks(executor, new Runnable() {
+                @Override
+                public void run() {
+                    Assert.assertEquals(12, metric.numExecutedTasks());
+                    Assert.assertEquals(12, metric.numIterations());
+                    Assert.assertEquals(12, metric.tasksPerIterationHistogram()[1]);
+                    Assert.assertEquals(1, sum(metric.scheduledTaskLagHistogram()));
+                    Assert.assertTrue(metric.taskTimeNanos() > 0);
+                    Assert.assertEquals(0, metric.pendingTasks());
+                }
+            });
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Runs 10 tasks and a scheduled task, which is added to the queue by another task as it is scheduled from
+     * another thread, and then the given assertions.
+     */
+    private static void runMetricTasks(SingleThreadEventExecutor executor, Runnable assertions) {
+        for (int i = 0; i < 10; i++) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // NOOP
+                }
+            }).syncUninterruptibly();
+        }
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                // NOOP
+            }
+        }, 10, TimeUnit.MILLISECONDS).syncUninterruptibly();
+
+        // The metrics of a task are updated after it completed its future, so check them from the executor thread
+        // once all tasks did run.
+        executor.submit(assertions).syncUninterruptibly();
+    }
+
+    private static long sum(long[] histogram) {
+        long sum = 0;
+        for (long count: histogram) {
+            sum += count;
+        }
+        return sum;
+    }
 }
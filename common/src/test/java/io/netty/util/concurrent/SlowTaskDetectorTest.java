@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SlowTaskDetectorTest {
+
+    private final BlockingQueue<Report> reports = new LinkedBlockingQueue<Report>();
+    private final SlowTaskListener listener = new SlowTaskListener() {
+        @Override
+        public void slowTask(EventExecutor executor, Object work, long queueDelayNanos, long executionTimeNanos,
+                             StackTraceElement[] stackSample) {
+            reports.add(new Report(executor, work, queueDelayNanos, executionTimeNanos, stackSample));
+        }
+    };
+    private DefaultEventExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new DefaultEventExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+    }
+
+    @Test(timeout = 5000)
+    public void testSlowTaskIsReportedWithStackSample() throws Exception {
+        executor.setSlowTaskDetector(new SlowTaskDetector(listener, 50, 1000, TimeUnit.MILLISECONDS));
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                sleep(200);
+            }
+        };
+        executor.execute(task);
+
+        Report report = reports.take();
+        assertSame(executor, report.executor);
+        assertSame(task, report.work);
+        assertTrue(report.executionTimeNanos >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertNotNull(report.stackSample);
+        assertTrue(containsMethod(report.stackSample, "sleep"));
+    }
+
+    @Test(timeout = 5000)
+    public void testFastTasksAreNotReported() throws Exception {
+        executor.setSlowTaskDetector(new SlowTaskDetector(listener, 500, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 100; i++) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).sync();
+        }
+        assertNull(reports.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void testQueueDelayIsReported() throws Exception {
+        executor.setSlowTaskDetector(new SlowTaskDetector(listener, 1000, 50, TimeUnit.MILLISECONDS));
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                sleep(200);
+            }
+        });
+        Runnable delayed = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        executor.execute(delayed);
+
+        Report report = reports.take();
+        assertSame(delayed, report.work);
+        assertTrue(report.queueDelayNanos >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertNull(report.stackSample);
+    }
+
+    @Test(timeout = 5000)
+    public void testNestedWorkIsExcluded() throws Exception {
+        executor.setSlowTaskDetector(new SlowTaskDetector(listener, 100, 1000, TimeUnit.MILLISECONDS));
+        final Object inner = new Object();
+        Runnable outer = new Runnable() {
+            @Override
+            public void run() {
+                SlowTaskDetector.Tracker tracker = executor.slowTaskTracker();
+                tracker.begin(inner);
+                try {
+                    sleep(200);
+                } finally {
+                    tracker.end(0);
+                }
+            }
+        };
+        executor.execute(outer);
+
+        Report report = reports.take();
+        assertSame(inner, report.work);
+        assertNull(reports.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void testStackSampleBelongsToReportedWork() throws Exception {
+        // Thresholds high enough that only the samples taken below are seen.
+        SlowTaskDetector detector = new SlowTaskDetector(listener, 1, TimeUnit.HOURS);
+        SlowTaskDetector.Tracker tracker = detector.newTracker(executor);
+        long delay = TimeUnit.HOURS.toNanos(1);
+        Object outer = new Object();
+        Object inner = new Object();
+        tracker.begin(outer);
+        tracker.begin(inner);
+        tracker.sample(Thread.currentThread(), System.nanoTime() + delay);
+        tracker.end(delay);
+
+        Report report = reports.take();
+        assertSame(inner, report.work);
+        assertNotNull(report.stackSample);
+
+        // The sample of the inner work must not be reported for the outer work.
+        tracker.end(delay);
+        report = reports.take();
+        assertSame(outer, report.work);
+        assertNull(report.stackSample);
+
+        tracker.begin(outer);
+        tracker.sample(Thread.currentThread(), System.nanoTime() + delay);
+        tracker.end(delay);
+        report = reports.take();
+        assertSame(outer, report.work);
+        assertNotNull(report.stackSample);
+        detector.removeTracker(tracker);
+    }
+
+    @Test(timeout = 5000)
+    public void testDisable() throws Exception {
+        executor.setSlowTaskDetector(new SlowTaskDetector(listener, 10, TimeUnit.MILLISECONDS));
+        executor.setSlowTaskDetector(null);
+        assertNull(executor.slowTaskTracker());
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                sleep(50);
+            }
+        }).sync();
+        assertEquals(0, reports.size());
+    }
+
+    private static boolean containsMethod(StackTraceElement[] stack, String methodName) {
+        for (StackTraceElement element: stack) {
+            if (element.getMethodName().equals(methodName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Report {
+        final EventExecutor executor;
+        final Object work;
+        final long queueDelayNanos;
+        final long executionTimeNanos;
+        final StackTraceElement[] stackSample;
+
+        Report(EventExecutor executor, Object work, long queueDelayNanos, long executionTimeNanos,
+               StackTraceElement[] stackSample) {
+            this.executor = executor;
+            this.work = work;
+            this.queueDelayNanos = queueDelayNanos;
+            this.executionTimeNanos = executionTimeNanos;
+            this.stackSample = stackSample;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VirtualThreadEventExecutorGroupTest {
+
+    private final VirtualThreadEventExecutorGroup group = new VirtualThreadEventExecutorGroup();
+
+    @After
+    public void tearDown() {
+        group.shutdownGracefully().syncUninterruptibly();
+    }
+
+    @Test
+    public void testNextReturnsNewOrderedExecutors() {
+        EventExecutor first = group.next();
+        EventExecutor second = group.next();
+        assertNotSame(first, second);
+        assertTrue(first instanceof OrderedEventExecutor);
+        assertFalse(group.iterator().hasNext());
+    }
+
+    @Test(timeout = 5000)
+    public void testTasksRunInOrder() throws Exception {
+        final EventExecutor executor = group.next();
+        final List<Integer> results = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> expected = new ArrayList<Integer>();
+        final CountDownLatch latch = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            final int value = i;
+            expected.add(value);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    assertTrue(executor.inEventLoop());
+                    results.add(value);
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await();
+        assertEquals(expected, results);
+        assertFalse(executor.inEventLoop());
+    }
+
+    @Test(timeout = 5000)
+    public void testBlockedExecutorDoesNotStallOthers() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        group.next().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        try {
+            for (int i = 0; i < 100; i++) {
+                group.next().submit(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                }).sync();
+            }
+        } finally {
+            blocked.countDown();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testSchedule() throws Exception {
+        final EventExecutor executor = group.next();
+        final long start = System.nanoTime();
+        ScheduledFuture<Boolean> future = executor.schedule(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return executor.inEventLoop();
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+        assertTrue(future.get());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test(timeout = 5000)
+    public void testShutdown() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        EventExecutor executor = group.next();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        group.shutdownGracefully();
+        assertTrue(group.isShuttingDown());
+        assertFalse(group.isTerminated());
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail();
+        } catch (RejectedExecutionException expected) {
+            // expected
+        }
+        latch.countDown();
+        assertTrue(group.terminationFuture().await(1000));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WorkStealingEventExecutorGroupTest {
+
+    private final WorkStealingEventExecutorGroup group = new WorkStealingEventExecutorGroup(4, 8);
+
+    @After
+    public void tearDown() {
+        group.shutdownGracefully().syncUninterruptibly();
+    }
+
+    @Test(timeout = 10000)
+    public void testTasksOfEachExecutorRunInOrderAndOneAtATime() throws Exception {
+        final int executors = 16;
+        final int tasks = 1000;
+        final CountDownLatch latch = new CountDownLatch(executors * tasks);
+        final AtomicReference<String> error = new AtomicReference<String>();
+        final Set<Thread> threads = Collections.synchronizedSet(
+                Collections.newSetFromMap(new IdentityHashMap<Thread, Boolean>()));
+        for (int i = 0; i < executors; i++) {
+            final EventExecutor executor = group.next();
+            final AtomicBoolean running = new AtomicBoolean();
+            final int[] next = new int[1];
+            for (int j = 0; j < tasks; j++) {
+                final int value = j;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!running.compareAndSet(false, true)) {
+                            error.set("tasks of an executor ran concurrently");
+                        }
+                        if (!executor.inEventLoop()) {
+                            error.set("not in event loop");
+                        }
+                        if (next[0]++ != value) {
+                            error.set("tasks ran out of order");
+                        }
+                        threads.add(Thread.currentThread());
+                        running.set(false);
+                        latch.countDown();
+                    }
+                });
+            }
+        }
+        latch.await();
+        assertNull(error.get());
+        assertTrue(threads.size() > 1);
+    }
+
+    @Test(timeout = 5000)
+    public void testIdleThreadRunsOtherExecutors() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        group.next().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        try {
+            for (int i = 0; i < 100; i++) {
+                group.next().submit(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                }).sync();
+            }
+        } finally {
+            blocked.countDown();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testTerminates() throws Exception {
+        group.next().submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).sync();
+        group.shutdownGracefully();
+        assertTrue(group.awaitTermination(1, TimeUnit.SECONDS));
+    }
+}
@@ -321,4 +321,48 @@ public class MessageFormatterTest {
         assertEquals("123java.lang.Throwable", ft.getMessage());
         assertNull(ft.getThrowable());
     }
+
+    @Test
+    public void testThrowable() {
+        FormattingTuple ft;
+        Throwable t = new Throwable();
+
+        ft = MessageFormatter.format("Value is {}.", t);
+        assertEquals("Value is java.lang.Throwable.", ft.getMessage());
+        assertNull(ft.getThrowable());
+
+        ft = MessageFormatter.format("No subst", t);
+        assertEquals("No subst", ft.getMessage());
+        assertEquals(t, ft.getThrowable());
+
+        ft = MessageFormatter.format("Value is {}.", 1, t);
+        assertEquals("Value is 1.", ft.getMessage());
+        assertEquals(t, ft.getThrowable());
+
+        ft = MessageFormatter.format("Value {} is smaller than {}.", 1, t);
+        assertEquals("Value 1 is smaller than java.lang.Throwable.", ft.getMessage());
+        assertNull(ft.getThrowable());
+    }
+
+    @Test
+    public void testFormatWhileFormatting() {
+        Object arg = new Object() {
+            @Override
+            public String toString() {
+                return MessageFormatter.format("inner {} and {}", 1, 2).getMessage();
+            }
+        };
+        assertEquals("outer inner 1 and 2 and 3", MessageFormatter.format("outer {} and {}", arg, 3).getMessage());
+        assertEquals("outer 4", MessageFormatter.format("outer {}", 4).getMessage());
+    }
+
+    @Test
+    public void testLongMessage() {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            expected.append('a');
+        }
+        assertEquals(expected.toString(), MessageFormatter.format("{}", expected).getMessage());
+        assertEquals("Value is 1.", MessageFormatter.format("Value is {}.", 1).getMessage());
+    }
 }
@@ -16,6 +16,7 @@
 package io.netty.microbench.buffer;
 
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.microbench.util.AbstractMicrobenchmark;
 import org.openjdk.jmh.annotations.Benchmark;
@@ -34,11 +35,21 @@ public class ByteBufAllocatorConcurrentBenchmark  extends AbstractMicrobenchmark
 
     private static final ByteBufAllocator unpooledAllocator = new UnpooledByteBufAllocator(true, true);
 
-    @Param({ "00064", "00256", "01024", "04096" })
+    // A single arena without thread caches is shared by all benchmark threads, which is the worst case in terms of
+    // contention when there are more allocating threads than arenas.
+    private static final ByteBufAllocator contendedPooledAllocator = new PooledByteBufAllocator(
+            true, 0, 1, 8192, 11, 0, 0, 0, true);
+
+    @Param({ "00064", "00256", "01024", "04096", "16384", "65536" })
     public int size;
 
     @Benchmark
     public boolean allocateRelease() {
         return unpooledAllocator.directBuffer(size).release();
     }
+
+    @Benchmark
+    public boolean allocateReleaseContendedPooled() {
+        return contendedPooledAllocator.directBuffer(size).release();
+    }
 }
@@ -38,6 +38,9 @@ public class
     private ByteBuf wrapped;
     private ByteBuf asciiBuffer;
     private ByteBuf utf8Buffer;
+    private ByteBuf asciiDirectBuffer;
+    private ByteBuf searchHeapBuffer;
+    private ByteBuf searchDirectBuffer;
 
     private StringBuilder asciiSequence;
     private String ascii;
@@ -67,6 +70,15 @@ public class
 
         asciiBuffer = Unpooled.copiedBuffer(ascii, CharsetUtil.US_ASCII);
         utf8Buffer = Unpooled.copiedBuffer(utf8, CharsetUtil.UTF_8);
+        asciiDirectBuffer = Unpooled.directBuffer(ascii.length()).writeBytes(asciiBuffer, 0, ascii.length());
+
+        // A header block of 1 KiB which is only terminated by the last byte.
+        searchHeapBuffer = Unpooled.buffer(1024);
+        while (searchHeapBuffer.isWritable(2)) {
+            searchHeapBuffer.writeByte('a' + searchHeapBuffer.writerIndex() % 26);
+        }
+        searchHeapBuffer.writeByte('\n');
+        searchDirectBuffer = Unpooled.directBuffer(1024).writeBytes(searchHeapBuffer, 0, 1024);
     }
 
     @TearDown
@@ -75,6 +87,9 @@ public class
         wrapped.release();
         asciiBuffer.release();
         utf8Buffer.release();
+        asciiDirectBuffer.release();
+        searchHeapBuffer.release();
+        searchDirectBuffer.release();
     }
 
     @Benchmark
@@ -182,4 +197,40 @@ public class
     public String decodeStringUtf8() {
         return utf8Buffer.toString(CharsetUtil.UTF_8);
     }
+
+    @Benchmark
+    public void writeUtf8AsciiString() {
+        buffer.resetWriterIndex();
+        ByteBufUtil.writeUtf8(buffer, ascii);
+    }
+
+    @Benchmark
+    public String decodeStringUtf8Ascii() {
+        return asciiBuffer.toString(CharsetUtil.UTF_8);
+    }
+
+    @Benchmark
+    public String decodeStringUtf8AsciiDirect() {
+        return asciiDirectBuffer.toString(CharsetUtil.UTF_8);
+    }
+
+    @Benchmark
+    public int indexOfHeap() {
+        return searchHeapBuffer.indexOf(0, searchHeapBuffer.writerIndex(), (byte) '\n');
+    }
+
+    @Benchmark
+    public int indexOfDirect() {
+        return searchDirectBuffer.indexOf(0, searchDirectBuffer.writerIndex(), (byte) '\n');
+    }
+
+    @Benchmark
+    public boolean isTextAsciiHeap() {
+        return ByteBufUtil.isText(searchHeapBuffer, CharsetUtil.US_ASCII);
+    }
+
+    @Benchmark
+    public boolean isTextAsciiDirect() {
+        return ByteBufUtil.isText(searchDirectBuffer, CharsetUtil.US_ASCII);
+    }
 }
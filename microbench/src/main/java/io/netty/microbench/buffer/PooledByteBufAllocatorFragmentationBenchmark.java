@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.buffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PoolChunkListMetric;
+import io.netty.buffer.PoolChunkMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+/**
+ * Replays a size distribution as seen by a HTTP proxy (small header / frame buffers mixed with body buffers of a
+ * few KiB up to a few hundred KiB) against a {@link PooledByteBufAllocator} and reports how much memory of the
+ * chunks is used to hold the live buffers.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class PooledByteBufAllocatorFragmentationBenchmark extends AbstractMicrobenchmark {
+
+    // Upper bounds of the size buckets and the percentage of allocations that fall into each of them.
+    private static final int[] BUCKETS = { 256, 2048, 8192, 16384, 65536, 262144 };
+    private static final int[] PERCENTAGES = { 20, 25, 20, 20, 12, 3 };
+    private static final int NUM_SIZES = 64 * 1024;
+    private static final int SAMPLE_MASK = 1023;
+
+    @Param({ "false", "true" })
+    public boolean useSizeClasses;
+
+    @Param({ "4096", "8192" })
+    public int pageSize;
+
+    @Param({ "2048" })
+    public int liveBuffers;
+
+    private PooledByteBufAllocator allocator;
+    private int[] sizes;
+    private ByteBuf[] buffers;
+    private int sizeIdx;
+    private int bufferIdx;
+    private long requestedBytes;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Memory {
+        /**
+         * Bytes requested by the live buffers.
+         */
+        public long requestedBytes;
+        /**
+         * Bytes of the chunks that are in use to serve the live buffers.
+         */
+        public long usedBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int maxOrder = Integer.numberOfTrailingZeros(16 * 1024 * 1024 / pageSize);
+        // Use one arena and no caches so the numbers only reflect how the buffers are placed in the chunks.
+        allocator = new PooledByteBufAllocator(true, 0, 1, pageSize, maxOrder, 0, 0, 0, false, 0, useSizeClasses);
+
+        Random random = new Random(42);
+        sizes = new int[NUM_SIZES];
+        for (int i = 0; i < sizes.length; i++) {
+            int p = random.nextInt(100);
+            int bucket = 0;
+            while (p >= PERCENTAGES[bucket]) {
+                p -= PERCENTAGES[bucket++];
+            }
+            int min = bucket == 0 ? 1 : BUCKETS[bucket - 1] + 1;
+            sizes[i] = min + random.nextInt(BUCKETS[bucket] - min + 1);
+        }
+
+        buffers = new ByteBuf[liveBuffers];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = allocate();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        for (ByteBuf buffer : buffers) {
+            buffer.release();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetCounters(Memory memory) {
+        memory.requestedBytes = 0;
+        memory.usedBytes = 0;
+    }
+
+    @Benchmark
+    public ByteBuf replaceBuffer(Memory memory) {
+        int idx = bufferIdx;
+        bufferIdx = idx + 1 == buffers.length ? 0 : idx + 1;
+        ByteBuf old = buffers[idx];
+        requestedBytes -= old.capacity();
+        old.release();
+        ByteBuf buffer = allocate();
+        buffers[idx] = buffer;
+
+        if ((sizeIdx & SAMPLE_MASK) == 0) {
+            memory.requestedBytes = requestedBytes;
+            memory.usedBytes = usedBytes();
+        }
+        return buffer;
+    }
+
+    private ByteBuf allocate() {
+        int size = sizes[sizeIdx];
+        sizeIdx = sizeIdx + 1 == sizes.length ? 0 : sizeIdx + 1;
+        requestedBytes += size;
+        return allocator.directBuffer(size);
+    }
+
+    private long usedBytes() {
+        long used = 0;
+        for (PoolArenaMetric arena : allocator.metric().directArenas()) {
+            for (PoolChunkListMetric list : arena.chunkLists()) {
+                for (PoolChunkMetric chunk : list) {
+                    used += chunk.chunkSize() - chunk.freeBytes();
+                }
+            }
+        }
+        return used;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.buffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.ResourceLeakDetector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks retain / release of pooled buffers with and without a thread confined reference count.
+ */
+@State(Scope.Thread)
+public class PooledByteBufRefCntBenchmark extends AbstractMicrobenchmark {
+
+    static {
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.DISABLED);
+    }
+
+    @Param({ "false", "true" })
+    public boolean threadConfinedRefCnt;
+
+    private ByteBuf buffer;
+
+    @Setup
+    public void setup() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 1, 8192, 11,
+                PooledByteBufAllocator.defaultTinyCacheSize(), PooledByteBufAllocator.defaultSmallCacheSize(),
+                PooledByteBufAllocator.defaultNormalCacheSize(), true, 0, false, 0, 0, 0, threadConfinedRefCnt);
+        // Allocated by the benchmark thread, so it is the owner of the buffer.
+        buffer = allocator.directBuffer(1024).writeZero(1024);
+    }
+
+    @TearDown
+    public void teardown() {
+        buffer.release();
+    }
+
+    @Benchmark
+    public boolean retainRelease() {
+        return buffer.retain().release();
+    }
+
+    @Benchmark
+    public boolean retainedSlices() {
+        ByteBuf first = buffer.retainedSlice(0, 512);
+        ByteBuf second = buffer.retainedSlice(512, 512);
+        return first.release() & second.release();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.concurrent;
+
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Measures the throughput of {@link SingleThreadEventExecutor#execute(Runnable)} with many producers, for the
+ * MPSC task queue of {@link DefaultEventExecutor} and the {@link LinkedBlockingQueue} it used before.
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class EventExecutorTaskQueueBenchmark extends AbstractMicrobenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({ "mpsc", "linked" })
+    public String taskQueue;
+
+    private SingleThreadEventExecutor executor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        executor = "linked".equals(taskQueue) ? new LinkedQueueEventExecutor() : new DefaultEventExecutor();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        executor.shutdownGracefully().syncUninterruptibly();
+    }
+
+    /**
+     * Executes a batch of tasks and waits for them, so the producers can not outpace the executor.
+     */
+    @Benchmark
+    public void executeBatch() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(BATCH_SIZE);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            executor.execute(task);
+        }
+        latch.await();
+    }
+
+    private static final class LinkedQueueEventExecutor extends SingleThreadEventExecutor {
+
+        LinkedQueueEventExecutor() {
+            super(null, new DefaultThreadFactory(LinkedQueueEventExecutor.class), true);
+        }
+
+        @Override
+        protected Queue<Runnable> newTaskQueue(int maxPendingTasks) {
+            return new LinkedBlockingQueue<Runnable>(maxPendingTasks);
+        }
+
+        @Override
+        protected void run() {
+            for (;;) {
+                Runnable task = takeTask();
+                if (task != null) {
+                    runTask(task);
+                }
+
+                if (confirmShutdown()) {
+                    break;
+                }
+            }
+        }
+    }
+}
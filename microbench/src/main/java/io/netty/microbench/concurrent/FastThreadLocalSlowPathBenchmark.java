@@ -76,4 +76,26 @@ public class FastThreadLocalSlowPathBenchmark extends AbstractMicrobenchmark {
         }
         return result;
     }
+
+    @Benchmark
+    public int jdkThreadLocalShortLived() {
+        ThreadLocal<Integer> threadLocal = new ThreadLocal<Integer>();
+        threadLocal.set(1);
+        int result = threadLocal.get();
+        threadLocal.remove();
+        return result;
+    }
+
+    /**
+     * Creates and releases a variable per invocation, which reuses the released indices instead of growing the
+     * tables of the threads.
+     */
+    @Benchmark
+    public int fastThreadLocalShortLived() {
+        FastThreadLocal<Integer> threadLocal = new FastThreadLocal<Integer>();
+        threadLocal.set(1);
+        int result = threadLocal.get();
+        threadLocal.release();
+        return result;
+    }
 }
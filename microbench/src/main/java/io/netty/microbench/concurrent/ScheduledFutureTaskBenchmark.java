@@ -16,10 +16,10 @@
 package io.netty.microbench.concurrent;
 
 import io.netty.channel.DefaultEventLoop;
-import io.netty.channel.EventLoop;
 import io.netty.microbench.util.AbstractMicrobenchmark;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.concurrent.ScheduledTaskQueueFactory;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Param;
@@ -36,7 +36,16 @@ import java.util.concurrent.TimeUnit;
 @State(Scope.Benchmark)
 public class ScheduledFutureTaskBenchmark extends AbstractMicrobenchmark {
 
-    static final EventLoop executor = new DefaultEventLoop();
+    static final DefaultEventLoop executor = new DefaultEventLoop();
+
+    @Param({ "false", "true" })
+    public boolean timingWheel;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        executor.setScheduledTaskQueueFactory(timingWheel ? ScheduledTaskQueueFactory.timingWheel()
+                : ScheduledTaskQueueFactory.PRIORITY_QUEUE);
+    }
 
     @State(Scope.Thread)
     public static class FuturesHolder {
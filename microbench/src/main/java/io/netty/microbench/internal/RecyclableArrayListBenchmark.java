@@ -16,16 +16,28 @@
 package io.netty.microbench.internal;
 
 import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.RecyclableArrayList;
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Threads;
 
+import java.util.Queue;
+
 /**
  * This class benchmarks different allocators with different allocation sizes.
+ *
+ * The {@code recycleOtherThread} groups get lists in one thread and recycle them in other threads, which hand them
+ * back to the thread that got them. As the recycler of {@link RecyclableArrayList} is static, {@code useMagazines}
+ * only takes effect if each trial runs in a new fork.
  */
 @State(Scope.Benchmark)
 @Threads(4)
@@ -35,9 +47,67 @@ public class RecyclableArrayListBenchmark extends AbstractMicrobenchmark {
     @Param({ "00000", "00256", "01024", "04096", "16384", "65536" })
     public int size;
 
+    @Param({ "false", "true" })
+    public boolean useMagazines;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        System.setProperty("io.netty.recycler.useMagazines", String.valueOf(useMagazines));
+    }
+
     @Benchmark
     public void recycleSameThread() {
         RecyclableArrayList list = RecyclableArrayList.newInstance(size);
         list.recycle();
     }
+
+    @State(Scope.Group)
+    public static class HandOff {
+        final Queue<RecyclableArrayList> queue = PlatformDependent.newFixedMpmcQueue(1024);
+
+        @TearDown
+        public void teardown() {
+            for (;;) {
+                RecyclableArrayList list = queue.poll();
+                if (list == null) {
+                    break;
+                }
+                list.recycle();
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("recycleOtherThread")
+    @GroupThreads(1)
+    public void get(HandOff handOff) {
+        RecyclableArrayList list = RecyclableArrayList.newInstance(size);
+        if (!handOff.queue.offer(list)) {
+            list.recycle();
+        }
+    }
+
+    @Benchmark
+    @Group("recycleOtherThread")
+    @GroupThreads(1)
+    public void recycle(HandOff handOff) {
+        RecyclableArrayList list = handOff.queue.poll();
+        if (list != null) {
+            list.recycle();
+        }
+    }
+
+    @Benchmark
+    @Group("recycleManyOtherThreads")
+    @GroupThreads(1)
+    public void getForMany(HandOff handOff) {
+        get(handOff);
+    }
+
+    @Benchmark
+    @Group("recycleManyOtherThreads")
+    @GroupThreads(3)
+    public void recycleFromMany(HandOff handOff) {
+        recycle(handOff);
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.util;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single wheel of {@link HashedWheelTimer} with the hierarchical one while many long timeouts, like
+ * idle and connect timeouts of 30 to 300 seconds, are pending.
+ */
+@State(Scope.Benchmark)
+public class HashedWheelTimerBenchmark extends AbstractMicrobenchmark {
+
+    private static final TimerTask NO_OP = new TimerTask() {
+        @Override
+        public void run(Timeout timeout) {
+            // NOOP
+        }
+    };
+
+    @Param({ "false", "true" })
+    public boolean hierarchical;
+
+    @Param({ "0", "1000000" })
+    public int pendingTimeouts;
+
+    private HashedWheelTimer timer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        timer = new HashedWheelTimer(new DefaultThreadFactory("timer"), 1, TimeUnit.MILLISECONDS, 512, true, -1,
+                hierarchical);
+        Random random = PlatformDependent.threadLocalRandom();
+        for (int i = 0; i < pendingTimeouts; i++) {
+            timer.newTimeout(NO_OP, 30000 + random.nextInt(270000), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        timer.stop();
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel() {
+        return timer.newTimeout(NO_OP, 60, TimeUnit.SECONDS).cancel();
+    }
+
+    /**
+     * Waits for a batch of short timeouts, which takes longer if the ticks in between are expensive.
+     */
+    @Benchmark
+    public void expireShortTimeouts() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(100);
+        TimerTask task = new TimerTask() {
+            @Override
+            public void run(Timeout timeout) {
+                latch.countDown();
+            }
+        };
+        for (int i = 0; i < 100; i++) {
+            timer.newTimeout(task, i % 10, TimeUnit.MILLISECONDS);
+        }
+        latch.await();
+    }
+}
@@ -36,6 +36,7 @@
 #include <inttypes.h>
 #include <link.h>
 #include <time.h>
+#include <sched.h>
 
 #include "netty_epoll_linuxsocket.h"
 #include "netty_unix_buffer.h"
@@ -381,6 +382,37 @@ static jint netty_epoll_native_splice0(JNIEnv* env, jclass clazz, jint fd, jlong
     return (jint) res;
 }
 
+static jint netty_epoll_native_setCurrentThreadAffinity0(JNIEnv* env, jclass clazz, jintArray cpus) {
+    cpu_set_t cpu_set;
+    jsize len = (*env)->GetArrayLength(env, cpus);
+    jint* elements;
+    int i;
+
+    if (len <= 0) {
+        return -EINVAL;
+    }
+    elements = (*env)->GetIntArrayElements(env, cpus, NULL);
+    if (elements == NULL) {
+        return -ENOMEM;
+    }
+
+    CPU_ZERO(&cpu_set);
+    for (i = 0; i < len; i++) {
+        if (elements[i] < 0 || elements[i] >= CPU_SETSIZE) {
+            (*env)->ReleaseIntArrayElements(env, cpus, elements, JNI_ABORT);
+            return -EINVAL;
+        }
+        CPU_SET(elements[i], &cpu_set);
+    }
+    (*env)->ReleaseIntArrayElements(env, cpus, elements, JNI_ABORT);
+
+    // A pid of 0 is the calling thread.
+    if (sched_setaffinity(0, sizeof(cpu_set), &cpu_set) == -1) {
+        return -errno;
+    }
+    return 0;
+}
+
 static jint netty_epoll_native_tcpMd5SigMaxKeyLen(JNIEnv* env, jclass clazz) {
     struct tcp_md5sig md5sig;
 
@@ -421,7 +453,8 @@ static const JNINativeMethod fixed_method_table[] = {
   // "sendmmsg0" has a dynamic signature
   { "sizeofEpollEvent", "()I", (void *) netty_epoll_native_sizeofEpollEvent },
   { "offsetofEpollData", "()I", (void *) netty_epoll_native_offsetofEpollData },
-  { "splice0", "(IJIJJ)I", (void *) netty_epoll_native_splice0 }
+  { "splice0", "(IJIJJ)I", (void *) netty_epoll_native_splice0 },
+  { "setCurrentThreadAffinity0", "([I)I", (void *) netty_epoll_native_setCurrentThreadAffinity0 }
 };
 static const jint fixed_method_table_size = sizeof(fixed_method_table) / sizeof(fixed_method_table[0]);
 
@@ -25,6 +25,8 @@ import io.netty.channel.unix.IovArray;
 import io.netty.util.IntSupplier;
 import io.netty.util.collection.IntObjectHashMap;
 import io.netty.util.collection.IntObjectMap;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 import io.netty.util.concurrent.RejectedExecutionHandler;
 import io.netty.util.internal.ObjectUtil;
 import io.netty.util.internal.PlatformDependent;
@@ -35,6 +37,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Queue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
@@ -60,6 +63,8 @@ class EpollEventLoop extends SingleThreadEventLoop {
     private final FileDescriptor eventFd;
     private final FileDescriptor timerFd;
     private final IntObjectMap<AbstractEpollChannel> channels = new IntObjectHashMap<AbstractEpollChannel>(4096);
+    // The size of channels, which can be read from any thread.
+    private volatile int registeredChannels;
     private final boolean allowGrowing;
     private final EpollEventArray events;
 
@@ -165,6 +170,7 @@ class EpollEventLoop extends SingleThreadEventLoop {
     @Override
     protected void wakeup(boolean inEventLoop) {
         if (!inEventLoop && WAKEN_UP_UPDATER.compareAndSet(this, 0, 1)) {
+            recordWakeup();
             // write to the evfd which will then wake-up epoll_wait(...)
             Native.eventFdWrite(eventFd.intValue(), 1L);
         }
@@ -178,6 +184,7 @@ class EpollEventLoop extends SingleThreadEventLoop {
         int fd = ch.socket.intValue();
         Native.epollCtlAdd(epollFd.intValue(), fd, ch.flags);
         channels.put(fd, ch);
+        registeredChannels = channels.size();
     }
 
     /**
@@ -197,6 +204,7 @@ class EpollEventLoop extends SingleThreadEventLoop {
         if (ch.isOpen()) {
             int fd = ch.socket.intValue();
             if (channels.remove(fd) != null) {
+                registeredChannels = channels.size();
                 // Remove the epoll. This is only needed if it's still open as otherwise it will be automatically
                 // removed once the file-descriptor is closed.
                 Native.epollCtlDel(epollFd.intValue(), ch.fd().intValue());
@@ -204,6 +212,11 @@ class EpollEventLoop extends SingleThreadEventLoop {
         }
     }
 
+    @Override
+    public int registeredChannels() {
+        return registeredChannels;
+    }
+
     @Override
     protected Queue<Runnable> newTaskQueue(int maxPendingTasks) {
         // This event loop never calls takeTask()
@@ -229,6 +242,34 @@ class EpollEventLoop extends SingleThreadEventLoop {
         this.ioRatio = ioRatio;
     }
 
+    /**
+     * Pins the thread of this event loop to the given CPUs. This is done by the event loop itself, so the returned
+     * {@link Future} fails if {@code sched_setaffinity} fails, which is also logged.
+     */
+    public Future<Void> setCpuAffinity(int... cpus) {
+        ObjectUtil.checkNotNull(cpus, "cpus");
+        if (cpus.length == 0) {
+            throw new IllegalArgumentException("cpus is empty");
+        }
+        final int[] cpuSet = cpus.clone();
+        Future<Void> future = submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                Native.setCurrentThreadAffinity(cpuSet);
+                return null;
+            }
+        });
+        future.addListener(new FutureListener<Void>() {
+            @Override
+            public void operationComplete(Future<Void> future) {
+                if (!future.isSuccess()) {
+                    logger.warn("Failed to set the CPU affinity of {}", EpollEventLoop.this, future.cause());
+                }
+            }
+        });
+        return future;
+    }
+
     private int epollWait(boolean oldWakeup) throws IOException {
         // If a task was submitted when wakenUp value was 1, the task didn't get a chance to produce wakeup event.
         // So we need to check task queue again before calling epoll_wait. If we don't, the task might be pended
@@ -314,11 +355,16 @@ class EpollEventLoop extends SingleThreadEventLoop {
 
                 final int ioRatio = this.ioRatio;
                 if (ioRatio == 100) {
+                    final boolean detailedMetrics = isDetailedMetricsEnabled();
+                    final long ioStartTime = detailedMetrics ? System.nanoTime() : 0;
                     try {
                         if (strategy > 0) {
                             processReady(events, strategy);
                         }
                     } finally {
+                        if (detailedMetrics) {
+                            recordIoTime(System.nanoTime() - ioStartTime);
+                        }
                         // Ensure we always run tasks.
                         runAllTasks();
                     }
@@ -332,6 +378,9 @@ class EpollEventLoop extends SingleThreadEventLoop {
                     } finally {
                         // Ensure we always run tasks.
                         final long ioTime = System.nanoTime() - ioStartTime;
+                        if (isDetailedMetricsEnabled()) {
+                            recordIoTime(ioTime);
+                        }
                         runAllTasks(ioTime * (100 - ioRatio) / ioRatio);
                     }
                 }
@@ -24,6 +24,7 @@ import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.EventExecutorChooserFactory;
 import io.netty.util.concurrent.RejectedExecutionHandler;
 import io.netty.util.concurrent.RejectedExecutionHandlers;
+import io.netty.util.internal.ObjectUtil;
 
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
@@ -129,6 +130,25 @@ public final class EpollEventLoopGroup extends MultithreadEventLoopGroup {
         }
     }
 
+    /**
+     * Pins the threads of the child event loops to the given sets of CPUs, so the {@code n}th event loop runs on
+     * {@code cpuSets[n % cpuSets.length]}. For example, giving each event loop its own core keeps its caches warm,
+     * and giving all event loops the cores of a NUMA node keeps their memory local if they allocate from the arenas
+     * of that node.
+     *
+     * @see EpollEventLoop#setCpuAffinity(int...)
+     */
+    public void setCpuAffinity(int[]... cpuSets) {
+        ObjectUtil.checkNotNull(cpuSets, "cpuSets");
+        if (cpuSets.length == 0) {
+            throw new IllegalArgumentException("cpuSets is empty");
+        }
+        int i = 0;
+        for (EventExecutor e: this) {
+            ((EpollEventLoop) e).setCpuAffinity(cpuSets[i++ % cpuSets.length]);
+        }
+    }
+
     @Override
     protected EventLoop newChild(Executor executor, Object... args) throws Exception {
         return new EpollEventLoop(this, executor, (Integer) args[0],
@@ -182,6 +182,19 @@ public final class Native {
     private static native int sendmmsg0(
             int fd, NativeDatagramPacketArray.NativeDatagramPacket[] msgs, int offset, int len);
 
+    // Thread related
+    /**
+     * Pins the calling thread to the given CPUs via {@code sched_setaffinity}.
+     */
+    public static void setCurrentThreadAffinity(int... cpus) throws IOException {
+        int res = setCurrentThreadAffinity0(cpus);
+        if (res < 0) {
+            throw newIOException("sched_setaffinity", res);
+        }
+    }
+
+    private static native int setCurrentThreadAffinity0(int[] cpus);
+
     // epoll_event related
     public static native int sizeofEpollEvent();
     public static native int offsetofEpollData();
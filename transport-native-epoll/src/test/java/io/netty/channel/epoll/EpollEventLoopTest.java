@@ -22,10 +22,18 @@ import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.RejectedExecutionHandlers;
 import io.netty.util.concurrent.ThreadPerTaskExecutor;
+import org.junit.Assume;
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
@@ -63,4 +71,44 @@ public class EpollEventLoopTest {
             group.shutdownGracefully();
         }
     }
+
+    @Test
+    public void testSetCpuAffinity() throws Exception {
+        EpollEventLoopGroup group = new EpollEventLoopGroup(1);
+        try {
+            EpollEventLoop loop = (EpollEventLoop) group.next();
+            // The cpuset of the host or container does not necessarily include CPU 0.
+            int cpu = firstAllowedCpu();
+            Assume.assumeTrue("allowed CPUs unknown", cpu >= 0);
+            assertTrue(loop.setCpuAffinity(cpu).await().isSuccess());
+            // CPU_SETSIZE is out of range.
+            assertFalse(loop.setCpuAffinity(1024).await().isSuccess());
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
+    /**
+     * Returns the first CPU the current thread may run on, or {@code -1} if unknown.
+     */
+    private static int firstAllowedCpu() throws IOException {
+        File status = new File("/proc/self/status");
+        if (!status.canRead()) {
+            return -1;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(status), "US-ASCII"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // For example "Cpus_allowed_list:\t2-3,6".
+                if (line.startsWith("Cpus_allowed_list:")) {
+                    Matcher matcher = Pattern.compile("\\d+").matcher(line.substring("Cpus_allowed_list:".length()));
+                    return matcher.find() ? Integer.parseInt(matcher.group()) : -1;
+                }
+            }
+            return -1;
+        } finally {
+            reader.close();
+        }
+    }
 }
@@ -116,6 +116,7 @@ final class KQueueEventLoop extends SingleThreadEventLoop {
     @Override
     protected void wakeup(boolean inEventLoop) {
         if (!inEventLoop && WAKEN_UP_UPDATER.compareAndSet(this, 0, 1)) {
+            recordWakeup();
             wakeup();
         }
     }
@@ -252,11 +253,16 @@ final class KQueueEventLoop extends SingleThreadEventLoop {
 
                 final int ioRatio = this.ioRatio;
                 if (ioRatio == 100) {
+                    final boolean detailedMetrics = isDetailedMetricsEnabled();
+                    final long ioStartTime = detailedMetrics ? System.nanoTime() : 0;
                     try {
                         if (strategy > 0) {
                             processReady(strategy);
                         }
                     } finally {
+                        if (detailedMetrics) {
+                            recordIoTime(System.nanoTime() - ioStartTime);
+                        }
                         runAllTasks();
                     }
                 } else {
@@ -268,6 +274,9 @@ final class KQueueEventLoop extends SingleThreadEventLoop {
                         }
                     } finally {
                         final long ioTime = System.nanoTime() - ioStartTime;
+                        if (isDetailedMetricsEnabled()) {
+                            recordIoTime(ioTime);
+                        }
                         runAllTasks(ioTime * (100 - ioRatio) / ioRatio);
                     }
                 }
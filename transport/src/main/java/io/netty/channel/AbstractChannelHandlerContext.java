@@ -24,6 +24,8 @@ import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ResourceLeakHint;
 import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.OrderedEventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import io.netty.util.concurrent.SlowTaskDetector;
 import io.netty.util.internal.PromiseNotificationUtil;
 import io.netty.util.internal.ThrowableUtil;
 import io.netty.util.internal.ObjectUtil;
@@ -373,10 +375,18 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
 
     private void invokeChannelRead(Object msg) {
         if (invokeHandler()) {
+            SlowTaskDetector.Tracker tracker = slowTaskTracker();
+            if (tracker != null) {
+                tracker.begin(this);
+            }
             try {
                 ((ChannelInboundHandler) handler()).channelRead(this, msg);
             } catch (Throwable t) {
                 notifyHandlerException(t);
+            } finally {
+                if (tracker != null) {
+                    tracker.end(0);
+                }
             }
         } else {
             fireChannelRead(msg);
@@ -754,13 +764,27 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
     }
 
     private void invokeWrite0(Object msg, ChannelPromise promise) {
+        SlowTaskDetector.Tracker tracker = slowTaskTracker();
+        if (tracker != null) {
+            tracker.begin(this);
+        }
         try {
             ((ChannelOutboundHandler) handler()).write(this, msg, promise);
         } catch (Throwable t) {
             notifyOutboundHandlerException(t, promise);
+        } finally {
+            if (tracker != null) {
+                tracker.end(0);
+            }
         }
     }
 
+    private SlowTaskDetector.Tracker slowTaskTracker() {
+        EventExecutor executor = executor();
+        return executor instanceof SingleThreadEventExecutor ?
+                ((SingleThreadEventExecutor) executor).slowTaskTracker() : null;
+    }
+
     @Override
     public ChannelHandlerContext flush() {
         final AbstractChannelHandlerContext next = findContextOutbound();
@@ -51,8 +51,7 @@ public class DefaultEventLoop extends SingleThreadEventLoop {
         for (;;) {
             Runnable task = takeTask();
             if (task != null) {
-                task.run();
-                updateLastExecutionTime();
+                runTask(task);
             }
 
             if (confirmShutdown()) {
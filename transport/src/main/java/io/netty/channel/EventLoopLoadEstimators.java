@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.PowerOfTwoChoicesEventExecutorChooserFactory;
+import io.netty.util.concurrent.PowerOfTwoChoicesEventExecutorChooserFactory.LoadEstimator;
+import io.netty.util.concurrent.PowerOfTwoChoicesEventExecutorChooserFactory.TimeLoadEstimator;
+import io.netty.util.internal.UnstableApi;
+
+/**
+ * {@link LoadEstimator}s for {@link SingleThreadEventLoop}s, to be used with a
+ * {@link PowerOfTwoChoicesEventExecutorChooserFactory}. For example, the child group of a {@code ServerBootstrap}
+ * can spread the accepted channels by the number of channels of its event loops:
+ *
+ * <pre>
+ * EventLoopGroup childGroup = new NioEventLoopGroup(0, null,
+ *         PowerOfTwoChoicesEventExecutorChooserFactory.leastLoaded(EventLoopLoadEstimators.REGISTERED_CHANNELS),
+ *         SelectorProvider.provider(), DefaultSelectStrategyFactory.INSTANCE);
+ * </pre>
+ */
+@UnstableApi
+public final class EventLoopLoadEstimators {
+
+    /**
+     * The number of {@linkplain EventLoopMetric#registeredChannels() registered channels}, plus the number of pending
+     * tasks to account for the channels which are being registered.
+     */
+    public static final LoadEstimator REGISTERED_CHANNELS = new LoadEstimator() {
+        @Override
+        public long load(EventExecutor executor) {
+            if (executor instanceof SingleThreadEventLoop) {
+                SingleThreadEventLoop loop = (SingleThreadEventLoop) executor;
+                return Math.max(0, loop.registeredChannels()) + loop.pendingTasks();
+            }
+            return 0;
+        }
+    };
+
+    /**
+     * The total time the event loop spent processing I/O events and running tasks, which is a counter to be used
+     * with {@link PowerOfTwoChoicesEventExecutorChooserFactory#leastRecentlyLoaded(LoadEstimator)}. The choosers
+     * created with it enable the detailed metrics of their event loops, as the times are not recorded otherwise.
+     */
+    public static final LoadEstimator BUSY_TIME = new TimeLoadEstimator() {
+        @Override
+        public long load(EventExecutor executor) {
+            if (executor instanceof SingleThreadEventLoop) {
+                EventLoopMetric metric = ((SingleThreadEventLoop) executor).metric();
+                return metric.ioTimeNanos() + metric.taskTimeNanos();
+            }
+            return PowerOfTwoChoicesEventExecutorChooserFactory.TASK_TIME.load(executor);
+        }
+    };
+
+    private EventLoopLoadEstimators() { }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel;
+
+import io.netty.util.concurrent.EventExecutorMetric;
+
+/**
+ * Expose metrics for a {@link SingleThreadEventLoop}, in addition to the ones of its tasks.
+ *
+ * Comparing {@link #ioTimeNanos()} with {@link #taskTimeNanos()} shows how the time of the loop is split between I/O
+ * and tasks, which the {@code ioRatio} of the transports aims to control.
+ */
+public interface EventLoopMetric extends EventExecutorMetric {
+
+    /**
+     * Returns the total time in nanoseconds spent processing I/O events while the detailed metrics were enabled,
+     * without the time spent waiting for them. This is {@code 0} for event loops that do not do I/O themselves.
+     * The {@link EventLoopLoadEstimators#BUSY_TIME} estimator enables the detailed metrics.
+     */
+    long ioTimeNanos();
+
+    /**
+     * Returns the number of times another thread woke up the event loop while it was waiting for I/O events or
+     * tasks, for example by writing to the selector or event file descriptor.
+     */
+    long numWakeups();
+
+    /**
+     * Returns the number of {@link Channel}s registered to the event loop, or {@code -1} if it is not known.
+     */
+    int registeredChannels();
+}
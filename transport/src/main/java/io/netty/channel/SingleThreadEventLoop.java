@@ -15,16 +15,20 @@
  */
 package io.netty.channel;
 
+import io.netty.util.concurrent.EventExecutorMetric;
 import io.netty.util.concurrent.RejectedExecutionHandler;
 import io.netty.util.concurrent.RejectedExecutionHandlers;
 import io.netty.util.concurrent.SingleThreadEventExecutor;
+import io.netty.util.internal.LongCounter;
 import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.SystemPropertyUtil;
 import io.netty.util.internal.UnstableApi;
 
 import java.util.Queue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * Abstract base class for {@link EventLoop}s that execute all its submitted tasks in a single thread.
@@ -35,7 +39,14 @@ public abstract class SingleThreadEventLoop extends SingleThreadEventExecutor im
     protected static final int DEFAULT_MAX_PENDING_TASKS = Math.max(16,
             SystemPropertyUtil.getInt("io.netty.eventLoop.maxPendingTasks", Integer.MAX_VALUE));
 
+    private static final AtomicLongFieldUpdater<SingleThreadEventLoop> IO_TIME_NANOS_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(SingleThreadEventLoop.class, "ioTimeNanos");
+
     private final Queue<Runnable> tailTasks;
+    private final LongCounter wakeups = PlatformDependent.newLongCounter();
+    // Only updated by the event loop thread, with lazySet.
+    private volatile long ioTimeNanos;
+    private final EventLoopMetric metric = new Metric();
 
     protected SingleThreadEventLoop(EventLoopGroup parent, ThreadFactory threadFactory, boolean addTaskWakesUp) {
         this(parent, threadFactory, addTaskWakesUp, DEFAULT_MAX_PENDING_TASKS, RejectedExecutionHandlers.reject());
@@ -137,6 +148,36 @@ public abstract class SingleThreadEventLoop extends SingleThreadEventExecutor im
         return tailTasks.remove(ObjectUtil.checkNotNull(task, "task"));
     }
 
+    /**
+     * Returns the number of {@link Channel}s registered to this event loop, or {@code -1} if it is not known, which
+     * is the default.
+     */
+    @UnstableApi
+    public int registeredChannels() {
+        return -1;
+    }
+
+    @Override
+    public EventLoopMetric metric() {
+        return metric;
+    }
+
+    /**
+     * Adds the time spent processing I/O events to the {@linkplain #metric() metrics}. This must only be called
+     * by the event loop thread, and only if the {@linkplain #isDetailedMetricsEnabled() detailed metrics} are
+     * enabled.
+     */
+    protected final void recordIoTime(long ioTimeNanos) {
+        IO_TIME_NANOS_UPDATER.lazySet(this, this.ioTimeNanos + ioTimeNanos);
+    }
+
+    /**
+     * Counts a wake-up of the event loop thread in the {@linkplain #metric() metrics}.
+     */
+    protected final void recordWakeup() {
+        wakeups.increment();
+    }
+
     @Override
     protected boolean wakesUpForTask(Runnable task) {
         return !(task instanceof NonWakeupRunnable);
@@ -160,5 +201,62 @@ public abstract class SingleThreadEventLoop extends SingleThreadEventExecutor im
     /**
      * Marker interface for {@link Runnable} that will not trigger an {@link #wakeup(boolean)} in all cases.
      */
-    interface NonWakeupRunnable extends Runnable { }
+    interface NonWakeupRunnable extends LazyRunnable { }
+
+    private final class Metric implements EventLoopMetric {
+        private final EventExecutorMetric executorMetric = SingleThreadEventLoop.super.metric();
+
+        @Override
+        public int pendingTasks() {
+            return executorMetric.pendingTasks();
+        }
+
+        @Override
+        public long numExecutedTasks() {
+            return executorMetric.numExecutedTasks();
+        }
+
+        @Override
+        public long taskTimeNanos() {
+            return executorMetric.taskTimeNanos();
+        }
+
+        @Override
+        public long numIterations() {
+            return executorMetric.numIterations();
+        }
+
+        @Override
+        public long[] tasksPerIterationHistogram() {
+            return executorMetric.tasksPerIterationHistogram();
+        }
+
+        @Override
+        public long[] scheduledTaskLagHistogram() {
+            return executorMetric.scheduledTaskLagHistogram();
+        }
+
+        @Override
+        public long ioTimeNanos() {
+            return ioTimeNanos;
+        }
+
+        @Override
+        public long numWakeups() {
+            return wakeups.value();
+        }
+
+        @Override
+        public int registeredChannels() {
+            return SingleThreadEventLoop.this.registeredChannels();
+        }
+
+        @Override
+        public String toString() {
+            return "EventLoopMetric(pendingTasks: " + pendingTasks() + ", executedTasks: " + numExecutedTasks() +
+                    ", taskTimeNanos: " + taskTimeNanos() + ", ioTimeNanos: " + ioTimeNanos +
+                    ", iterations: " + numIterations() + ", wakeups: " + numWakeups() +
+                    ", registeredChannels: " + registeredChannels() + ')';
+        }
+    }
 }
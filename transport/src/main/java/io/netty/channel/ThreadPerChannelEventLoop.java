@@ -64,8 +64,7 @@ public class ThreadPerChannelEventLoop extends SingleThreadEventLoop {
         for (;;) {
             Runnable task = takeTask();
             if (task != null) {
-                task.run();
-                updateLastExecutionTime();
+                runTask(task);
             }
 
             Channel ch = this.ch;
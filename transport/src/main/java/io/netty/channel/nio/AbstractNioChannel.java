@@ -415,6 +415,7 @@ public abstract class AbstractNioChannel extends AbstractChannel {
 
                 //也就意味着，后续一定有某个地方会需要修改这个 selectionKey 的监听集合。
                 selectionKey = javaChannel().register(eventLoop().unwrappedSelector(), 0, this);
+                eventLoop().channelRegistered();
                 return;
             } catch (CancelledKeyException e) {
                 if (!selected) {
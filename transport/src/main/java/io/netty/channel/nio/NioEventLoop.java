@@ -130,6 +130,8 @@ public final class NioEventLoop extends SingleThreadEventLoop {
     private volatile int ioRatio = 50;
     private int cancelledKeys;
     private boolean needsToSelectAgain;
+    // Only updated by the event loop thread.
+    private volatile int registeredChannels;
 
     // 在 Netty 中，NioEventLoopGroup 代表线程池，NioEventLoop 就是其中的线程。
     // 线程池 NioEventLoopGroup 是池中的线程 NioEventLoop 的 parent，从上面的代码中的取名可以看出。
@@ -481,10 +483,15 @@ public final class NioEventLoop extends SingleThreadEventLoop {
                 // // 默认地，ioRatio 的值是 50
                 final int ioRatio = this.ioRatio;
                 if (ioRatio == 100) {
+                    final boolean detailedMetrics = isDetailedMetricsEnabled();
+                    final long ioStartTime = detailedMetrics ? System.nanoTime() : 0;
                     try {
                         //// 如果 ioRatio 设置为 100，那么先执行 IO 操作，然后在 finally 块中执行 taskQueue 中的任务
                         processSelectedKeys();
                     } finally {
+                        if (detailedMetrics) {
+                            recordIoTime(System.nanoTime() - ioStartTime);
+                        }
                         // Ensure we always run tasks.
                         //// 2. 执行非 IO 任务，也就是 taskQueue 中的任务
                         runAllTasks();
@@ -499,6 +506,9 @@ public final class NioEventLoop extends SingleThreadEventLoop {
                         //// 根据 IO 操作消耗的时间，计算执行非 IO 操作（runAllTasks）可以用多少时间.
                         // Ensure we always run tasks.
                         final long ioTime = System.nanoTime() - ioStartTime;
+                        if (isDetailedMetricsEnabled()) {
+                            recordIoTime(ioTime);
+                        }
 
                         runAllTasks(ioTime * (100 - ioRatio) / ioRatio);
                     }
@@ -549,8 +559,21 @@ public final class NioEventLoop extends SingleThreadEventLoop {
         }
     }
 
+    /**
+     * Counts a {@link AbstractNioChannel} that registered itself to the {@link Selector}.
+     */
+    void channelRegistered() {
+        registeredChannels++;
+    }
+
+    @Override
+    public int registeredChannels() {
+        return registeredChannels;
+    }
+
     void cancel(SelectionKey key) {
         key.cancel();
+        registeredChannels--;
         cancelledKeys ++;
         if (cancelledKeys >= CLEANUP_INTERVAL) {
             cancelledKeys = 0;
@@ -745,6 +768,7 @@ public final class NioEventLoop extends SingleThreadEventLoop {
     @Override
     protected void wakeup(boolean inEventLoop) {
         if (!inEventLoop && wakenUp.compareAndSet(false, true)) {
+            recordWakeup();
             selector.wakeup();
         }
     }
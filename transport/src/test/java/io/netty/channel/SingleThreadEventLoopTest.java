@@ -505,6 +505,34 @@ public class SingleThreadEventLoopTest {
                                  onIteration1.getInvocationCount(), is(0));
     }
 
+    @Test(timeout = 10000)
+    public void testRemoveOnEventLoopIterationFromDefaultEventLoop() throws Exception {
+        DefaultEventLoop loop = new DefaultEventLoop();
+        try {
+            final CountDownLatch latch = new CountDownLatch(1);
+            // Keep the event loop busy so the task stays in the queue.
+            loop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            CountingRunnable onIteration = new CountingRunnable();
+            loop.executeAfterEventLoopIteration(onIteration);
+            assertTrue(loop.removeAfterEventLoopIterationTask(onIteration));
+            assertFalse(loop.removeAfterEventLoopIterationTask(onIteration));
+            latch.countDown();
+            loop.submit(new CountingRunnable()).sync();
+            assertEquals(0, onIteration.getInvocationCount());
+        } finally {
+            loop.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
     private static final class SingleThreadEventLoopA extends SingleThreadEventLoop {
 
         final AtomicInteger cleanedUp = new AtomicInteger();
@@ -19,6 +19,7 @@ import io.netty.channel.AbstractEventLoopTest;
 import io.netty.channel.Channel;
 import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.EventLoopMetric;
 import io.netty.channel.socket.ServerSocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.concurrent.Future;
@@ -171,4 +172,54 @@ public class NioEventLoopTest extends AbstractEventLoopTest {
             group.shutdownGracefully();
         }
     }
+
+    @Test(timeout = 5000)
+    public void testMetric() throws Exception {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        final NioEventLoop loop = (NioEventLoop) group.next();
+        try {
+            loop.setDetailedMetricsEnabled(true);
+            final EventLoopMetric metric = loop.metric();
+            assertEquals(0, metric.registeredChannels());
+
+            Channel channel = new NioServerSocketChannel();
+            loop.register(channel).syncUninterruptibly();
+            assertEquals(1, metric.registeredChannels());
+
+            // Wake-ups are counted by the submitting thread, once a task finds the loop blocked in select().
+            while (metric.numWakeups() == 0) {
+                loop.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        // NOOP
+                    }
+                }).syncUninterruptibly();
+            }
+            // The metrics of a task are updated after it completed its future, so check them from the loop.
+            loop.submit(new Runnable() {
+                @Override
+                public void run() {
+                    assertTrue(metric.numExecutedTasks() >= 2);
+                    assertTrue(metric.numIterations() > 0);
+                    long iterations = 0;
+                    for (long count: metric.tasksPerIterationHistogram()) {
+                        iterations += count;
+                    }
+                    assertTrue(iterations > 0);
+                }
+            }).syncUninterruptibly();
+
+            channel.close().syncUninterruptibly();
+            // The channel is deregistered by a task that runs after it was closed.
+            loop.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // NOOP
+                }
+            }).syncUninterruptibly();
+            assertEquals(0, metric.registeredChannels());
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
 }